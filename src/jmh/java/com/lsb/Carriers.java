@@ -0,0 +1,137 @@
+package com.lsb;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Синтетические изображения-носители и полезные нагрузки для бенчмарков.
+ * <p>
+ * Все данные генерируются детерминированно из начального значения, поэтому
+ * бенчмарки не требуют внешних файлов и сети.
+ * </p>
+ */
+final class Carriers {
+
+    /** Размер заголовка контейнера в пикселях. */
+    private static final long HEADER_PIXELS = PayloadHeader.SIZE * 8L;
+
+    private Carriers() {
+    }
+
+    /**
+     * Преобразует имя типа изображения из параметра бенчмарка.
+     *
+     * @param name {@code INT_RGB} или {@code 3BYTE_BGR}.
+     * @return Константа {@code BufferedImage.TYPE_*}.
+     */
+    static int imageType(String name) {
+        switch (name) {
+            case "INT_RGB": return BufferedImage.TYPE_INT_RGB;
+            case "3BYTE_BGR": return BufferedImage.TYPE_3BYTE_BGR;
+            default: throw new IllegalArgumentException("Неизвестный тип изображения: " + name);
+        }
+    }
+
+    /**
+     * Создает почти квадратное изображение, заполненное шумом.
+     *
+     * @param type       Тип изображения ({@code TYPE_INT_RGB} или {@code TYPE_3BYTE_BGR}).
+     * @param megapixels Число мегапикселей.
+     * @param seed       Начальное значение генератора.
+     * @return Изображение.
+     */
+    static BufferedImage noiseImage(int type, int megapixels, long seed) {
+        int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000.0));
+        int height = (int) ((megapixels * 1_000_000L + width - 1) / width);
+        BufferedImage image = new BufferedImage(width, height, type);
+        SplittableRandom random = new SplittableRandom(seed);
+        // Массив заполняется напрямую: setRGB для 100 Мп занимает слишком много времени.
+        if (image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < data.length; i++) {
+                data[i] = random.nextInt() & 0xFFFFFF;
+            }
+        } else {
+            byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) random.nextInt();
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Ограничивает размер полезной нагрузки емкостью изображения при схеме {@link BitLayout#DEFAULT}.
+     *
+     * @param payloadBytes Запрошенный размер.
+     * @param image        Изображение-носитель.
+     * @return Размер, помещающийся в изображение вместе с заголовком контейнера.
+     */
+    static int fitPayload(int payloadBytes, BufferedImage image) {
+        long capacity = ((long) image.getWidth() * image.getHeight() - HEADER_PIXELS) / 8;
+        return (int) Math.min(payloadBytes, capacity);
+    }
+
+    /**
+     * Создает текст из печатных символов ASCII (длина в UTF-8 равна числу символов).
+     *
+     * @param length Длина текста.
+     * @param seed   Начальное значение генератора.
+     * @return Текст.
+     */
+    static String asciiText(int length, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) random.nextInt(' ', '~' + 1);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Сохраняет изображение в формате BMP.
+     *
+     * @param image Изображение.
+     * @param path  Путь к файлу.
+     * @return {@code path}.
+     * @throws IOException Если запись не удалась.
+     */
+    static Path writeBmp(BufferedImage image, Path path) throws IOException {
+        if (!ImageIO.write(image, "bmp", path.toFile())) {
+            throw new IOException("Не удалось сохранить изображение: " + path);
+        }
+        return path;
+    }
+
+    /**
+     * Удаляет временный каталог вместе с содержимым.
+     *
+     * @param dir Каталог или {@code null}.
+     * @throws IOException Если удалить файлы не удалось.
+     */
+    static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
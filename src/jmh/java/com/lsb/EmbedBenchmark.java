@@ -0,0 +1,90 @@
+package com.lsb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Встраивание текста в формате контейнера (заголовок, полезная нагрузка, заполнение хвоста шумом).
+ * <p>
+ * {@code MEMORY} — встраивание в растр {@link BufferedImage} без ввода-вывода;
+ * {@code FILE} — полный вызов {@link EmbedText#embedText(String, String, String)} с BMP на диске.
+ * BMP сохраняется как 24-битный для обоих типов изображения, поэтому в режиме {@code FILE}
+ * параметр {@code imageType} влияет только на подготовку носителя.
+ * Полезная нагрузка, не помещающаяся в изображение, уменьшается до его емкости.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "--add-modules", "jdk.incubator.vector"})
+public class EmbedBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int megapixels;
+
+    @Param({"INT_RGB", "3BYTE_BGR"})
+    public String imageType;
+
+    @Param({"1024", "65536", "1048576"})
+    public int payloadBytes;
+
+    @Param({"MEMORY", "FILE"})
+    public String io;
+
+    private LSBRaster raster;
+    private byte[] payload;
+    private String text;
+    private Path dir;
+    private Path carrier;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BufferedImage image = Carriers.noiseImage(Carriers.imageType(imageType), megapixels, 1);
+        text = Carriers.asciiText(Carriers.fitPayload(payloadBytes, image), 2);
+        payload = text.getBytes(StandardCharsets.UTF_8);
+        if ("FILE".equals(io)) {
+            dir = Files.createTempDirectory("lsb-jmh");
+            carrier = Carriers.writeBmp(image, dir.resolve("carrier.bmp"));
+            output = dir.resolve("stego.bmp");
+        } else {
+            raster = LSBRaster.wrap(image);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Carriers.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public Object embed() throws IOException {
+        if (raster == null) {
+            EmbedText.embedText(carrier.toString(), text, output.toString());
+            return output;
+        }
+        byte[] header = PayloadHeader.of(payload, 0, BitLayout.DEFAULT).toBytes();
+        EmbedText.embedParts(raster, header, EmbedOptions.DEFAULT, payload);
+        return raster;
+    }
+}
@@ -0,0 +1,82 @@
+package com.lsb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Извлечение текста, встроенного в формате контейнера.
+ * <p>
+ * {@code MEMORY} — извлечение из растра {@link BufferedImage};
+ * {@code FILE} — полный вызов {@link ExtractText#extractText(String)} с BMP на диске
+ * (считываются только строки с полезной нагрузкой).
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "--add-modules", "jdk.incubator.vector"})
+public class ExtractBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int megapixels;
+
+    @Param({"INT_RGB", "3BYTE_BGR"})
+    public String imageType;
+
+    @Param({"1024", "65536", "1048576"})
+    public int payloadBytes;
+
+    @Param({"MEMORY", "FILE"})
+    public String io;
+
+    private LSBRaster raster;
+    private Path dir;
+    private Path stego;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BufferedImage image = Carriers.noiseImage(Carriers.imageType(imageType), megapixels, 1);
+        byte[] payload = Carriers.asciiText(Carriers.fitPayload(payloadBytes, image), 2).getBytes(StandardCharsets.UTF_8);
+        LSBRaster source = LSBRaster.wrap(image);
+        EmbedText.embedParts(source, PayloadHeader.of(payload, 0, BitLayout.DEFAULT).toBytes(), EmbedOptions.DEFAULT, payload);
+        if ("FILE".equals(io)) {
+            dir = Files.createTempDirectory("lsb-jmh");
+            stego = Carriers.writeBmp(image, dir.resolve("stego.bmp"));
+        } else {
+            raster = source;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Carriers.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public String extract() throws IOException {
+        if (raster == null) {
+            return ExtractText.extractText(stego.toString());
+        }
+        return ExtractText.extractText(raster, "END");
+    }
+}
@@ -0,0 +1,72 @@
+package com.lsb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение визуализации младших битов.
+ * <p>
+ * {@code MEMORY} — визуализация уже загруженного изображения;
+ * {@code FILE} — загрузка BMP через {@link ImageIO} и визуализация, как в приложении.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "--add-modules", "jdk.incubator.vector"})
+public class VisualizationBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int megapixels;
+
+    @Param({"INT_RGB", "3BYTE_BGR"})
+    public String imageType;
+
+    @Param({"MEMORY", "FILE"})
+    public String io;
+
+    private BufferedImage image;
+    private Path dir;
+    private Path carrier;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        image = Carriers.noiseImage(Carriers.imageType(imageType), megapixels, 1);
+        if ("FILE".equals(io)) {
+            dir = Files.createTempDirectory("lsb-jmh");
+            carrier = Carriers.writeBmp(image, dir.resolve("carrier.bmp"));
+            image = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Carriers.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public BufferedImage visualize() throws IOException {
+        BufferedImage source = image != null ? image : ImageIO.read(carrier.toFile());
+        return LSBVisualization.visualizeLSBBits(source);
+    }
+}
@@ -0,0 +1,599 @@
+package com.lsb;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Пакетный режим командной строки без графического интерфейса.
+ * <p>
+ * Подкоманды {@code embed}, {@code extract}, {@code visualize}, {@code analyze} и {@code probe} обрабатывают файлы,
+ * каталоги (все изображения каталога) и файлы-манифесты ({@code @jobs.txt}, по одному
+ * заданию в строке: {@code вход[<TAB>выход[<TAB>файл текста]]}). Каждое задание выполняется
+ * в отдельном виртуальном потоке; число одновременно выполняемых заданий ограничено
+ * параметром {@code --concurrency}, поэтому чтение, вычисления и запись разных файлов
+ * перекрываются. Для каждого задания в отчет выводится строка JSON с результатом и временем.
+ * С параметром {@code --band-bytes} изображения обрабатываются полосами через {@link StripPipeline},
+ * так что память ограничена размером полосы, а не размером изображения.
+ * </p>
+ * <p>
+ * Коды завершения: {@value #EXIT_OK} — все задания выполнены, {@value #EXIT_FAILED} — часть
+ * заданий завершилась ошибкой, {@value #EXIT_USAGE} — некорректные аргументы.
+ * Классы JavaFX в этом режиме не загружаются.
+ * </p>
+ */
+public final class BatchCli {
+
+    /** Все задания выполнены успешно. */
+    public static final int EXIT_OK = 0;
+    /** Хотя бы одно задание завершилось ошибкой. */
+    public static final int EXIT_FAILED = 1;
+    /** Некорректные аргументы командной строки. */
+    public static final int EXIT_USAGE = 2;
+
+    /** Подкоманды пакетного режима. */
+    private static final Set<String> COMMANDS = Set.of("embed", "extract", "visualize", "analyze", "probe", "help");
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Использование:",
+            "  embed     [параметры] (--text ТЕКСТ | --text-file ФАЙЛ) --out КАТАЛОГ ВХОД...",
+            "  extract   [параметры] [--out КАТАЛОГ] ВХОД...",
+            "  visualize [параметры] --out КАТАЛОГ ВХОД...",
+            "  analyze   [параметры] ВХОД...",
+            "  probe     [параметры] ВХОД...   (размеры, емкость и заголовок контейнера без декодирования)",
+            "",
+            "ВХОД — файл изображения, каталог с изображениями или @манифест",
+            "(строки: вход[<TAB>выход[<TAB>файл текста]], # — комментарий).",
+            "",
+            "Параметры:",
+            "  --concurrency N   число одновременно обрабатываемых файлов (по умолчанию — число ядер)",
+            "  --report ФАЙЛ     файл отчета JSON lines (по умолчанию — стандартный вывод)",
+            "  --metrics ФАЙЛ    записать в файл метрики этапов (JSON) по завершении",
+            "  --layout СХЕМА    схема размещения для embed, например rgb:2 (по умолчанию b:1)",
+            "  --no-tail-fill    embed: не заполнять неиспользуемые биты шумом",
+            "  --compress        embed: сжимать данные (deflate), если это уменьшает их размер",
+            "  --format F        embed: формат результата bmp или png (по умолчанию bmp)",
+            "  --png-level N     embed: уровень сжатия PNG 0–9 (по умолчанию 6)",
+            "  --key КЛЮЧ        embed, extract: рассеять контейнер по изображению с ключом",
+            "  --text-file ФАЙЛ  embed: встроить содержимое файла как есть (двоичные данные)",
+            "  --delimiter D     extract: разделитель для изображений без заголовка (по умолчанию END)",
+            "  --binary          extract: записать данные контейнера в --out без декодирования (расширение .bin)",
+            "  --channel К       visualize: канал r, g, b или a (по умолчанию b)",
+            "  --plane N         visualize: номер бита 0–7 (по умолчанию 0)",
+            "  --band-bytes N    embed, extract, visualize: обрабатывать изображение полосами по N байтов",
+            "                    без загрузки целиком (для изображений больше памяти)",
+            "  --threshold T     analyze: оценка, начиная с которой изображение подозрительно (по умолчанию 0.1)");
+
+    private BatchCli() {
+    }
+
+    /**
+     * Проверяет, является ли аргумент подкомандой пакетного режима.
+     *
+     * @param arg Первый аргумент командной строки.
+     * @return {@code true}, если приложение нужно запускать без графического интерфейса.
+     */
+    public static boolean isCommand(String arg) {
+        return COMMANDS.contains(arg);
+    }
+
+    /**
+     * Выполняет подкоманду.
+     *
+     * @param args Аргументы командной строки (первый — подкоманда).
+     * @param out  Поток для отчета, если не указан {@code --report}.
+     * @param err  Поток для сообщений об ошибках и итоговой сводки.
+     * @return Код завершения.
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        Options options;
+        List<Job> jobs;
+        if (args.length == 0 || !isCommand(args[0])) {
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        try {
+            options = Options.parse(args);
+            if (options.command.equals("help")) {
+                out.println(USAGE);
+                return EXIT_OK;
+            }
+            jobs = options.collectJobs();
+        } catch (IllegalArgumentException | IOException e) {
+            err.println("Ошибка: " + e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        PrintStream report = out;
+        MetricsRegistry previous = Metrics.getRegistry();
+        InMemoryMetrics metrics = options.metrics != null ? new InMemoryMetrics() : null;
+        try {
+            if (options.report != null) {
+                report = new PrintStream(Files.newOutputStream(options.report), false, StandardCharsets.UTF_8);
+            }
+            if (metrics != null) {
+                Metrics.setRegistry(metrics);
+            }
+            long start = System.nanoTime();
+            int failed = execute(options, jobs, report, err);
+            err.printf(Locale.ROOT, "Заданий: %d, с ошибкой: %d, время: %.1f мс%n",
+                    jobs.size(), failed, (System.nanoTime() - start) / 1e6);
+            if (metrics != null) {
+                Files.writeString(options.metrics, metrics.snapshot().toJson() + System.lineSeparator());
+            }
+            return failed == 0 ? EXIT_OK : EXIT_FAILED;
+        } catch (IOException e) {
+            err.println("Ошибка: " + e.getMessage());
+            return EXIT_USAGE;
+        } finally {
+            if (metrics != null) {
+                Metrics.setRegistry(previous);
+            }
+            if (report != out) {
+                report.close();
+            }
+        }
+    }
+
+    /**
+     * Выполняет задания в виртуальных потоках, ограничивая число одновременно выполняемых.
+     * <p>
+     * Для каждого задания в отчет выводится ровно одна строка. Исключение задания — ошибка только
+     * этого задания. {@link Error} (например, {@link OutOfMemoryError}) тоже завершает задание
+     * ошибкой, но память и состояние, общие для всех потоков, после него ненадежны, поэтому
+     * еще не начатые задания пропускаются со статусом {@code skipped} и считаются неудачными.
+     * </p>
+     *
+     * @param options Параметры.
+     * @param jobs    Задания.
+     * @param report  Поток отчета.
+     * @param err     Поток для сообщения о прерывании.
+     * @return Число заданий, завершившихся ошибкой или пропущенных.
+     */
+    private static int execute(Options options, List<Job> jobs, PrintStream report, PrintStream err) {
+        Semaphore permits = new Semaphore(options.concurrency);
+        AtomicInteger failed = new AtomicInteger();
+        AtomicReference<Error> fatal = new AtomicReference<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Job job : jobs) {
+                executor.submit(() -> {
+                    permits.acquireUninterruptibly();
+                    long start = System.nanoTime();
+                    boolean ok = false;
+                    String line = null;
+                    try {
+                        Metrics.gauge("batch.queue", permits.getQueueLength());
+                        Error cause = fatal.get();
+                        if (cause != null) {
+                            line = job.toJson("skipped", "\"error\":" + json("Запуск прерван: " + cause), 0);
+                        } else {
+                            line = job.toJson("ok", runJob(options, job), System.nanoTime() - start);
+                            ok = true;
+                        }
+                    } catch (Exception e) {
+                        line = job.toJson("error", errorFields(e), System.nanoTime() - start);
+                    } catch (Error e) {
+                        // Изображения, не помещающиеся в память, обрабатываются с --band-bytes.
+                        fatal.compareAndSet(null, e);
+                        line = job.toJson("error", errorFields(e), System.nanoTime() - start);
+                    } finally {
+                        permits.release();
+                        if (!ok) {
+                            failed.incrementAndGet();
+                        }
+                        if (line != null) {
+                            synchronized (report) {
+                                report.println(line);
+                                report.flush();
+                            }
+                        }
+                    }
+                });
+            }
+        }
+        if (fatal.get() != null) {
+            err.println("Ошибка: запуск прерван после " + fatal.get()
+                    + (fatal.get() instanceof OutOfMemoryError ? " (для больших изображений используйте --band-bytes)" : ""));
+        }
+        return failed.get();
+    }
+
+    /**
+     * @return Поля строки отчета с сообщением и типом ошибки.
+     */
+    private static String errorFields(Throwable e) {
+        return "\"error\":" + json(e.getMessage()) + ",\"errorType\":" + json(e.getClass().getSimpleName());
+    }
+
+    /**
+     * Выполняет одно задание.
+     *
+     * @param options Параметры.
+     * @param job     Задание.
+     * @return Дополнительные поля строки отчета (фрагмент JSON без фигурных скобок).
+     * @throws IOException Если задание не удалось выполнить.
+     */
+    private static String runJob(Options options, Job job) throws IOException {
+        switch (options.command) {
+            case "embed": {
+                EmbedOptions embedOptions = EmbedOptions.DEFAULT
+                        .withLayout(options.layout)
+                        .withTailFill(options.tailFill ? TailFill.RANDOM : TailFill.NONE)
+                        .withCodec(options.compress ? PayloadCodecs.DEFLATE : null)
+                        .withPngLevel(options.pngLevel)
+                        .withKey(options.key);
+                Path payloadFile = job.textFile != null ? job.textFile : options.textFile;
+                if (options.strips != null) {
+                    if (payloadFile != null) {
+                        try (FileChannel channel = FileChannel.open(payloadFile)) {
+                            options.strips.embed(job.input, channel, channel.size(), job.output, embedOptions);
+                            return "\"bytes\":" + channel.size();
+                        }
+                    }
+                    if (options.text == null) {
+                        throw new IOException("Не указан текст для встраивания (--text, --text-file или столбец манифеста)");
+                    }
+                    byte[] text = options.text.getBytes(StandardCharsets.UTF_8);
+                    options.strips.embed(job.input, Channels.newChannel(new ByteArrayInputStream(text)), text.length,
+                            job.output, embedOptions);
+                    return "\"bytes\":" + text.length;
+                }
+                if (payloadFile != null) {
+                    // Файл встраивается как есть, порциями, без преобразования в строку.
+                    EmbedText.embedData(job.input.toString(), payloadFile, job.output.toString(), embedOptions);
+                    return "\"bytes\":" + Files.size(payloadFile);
+                }
+                if (options.text == null) {
+                    throw new IOException("Не указан текст для встраивания (--text, --text-file или столбец манифеста)");
+                }
+                EmbedText.embedText(job.input.toString(), options.text, job.output.toString(), embedOptions);
+                return "\"bytes\":" + options.text.getBytes(StandardCharsets.UTF_8).length;
+            }
+            case "extract": {
+                if (options.strips != null) {
+                    if (options.binary) {
+                        if (job.output == null) {
+                            throw new IOException("Для --binary нужен выходной каталог (--out)");
+                        }
+                        try (OutputStream out = Files.newOutputStream(job.output)) {
+                            return "\"bytes\":" + options.strips.extract(job.input, Channels.newChannel(out));
+                        }
+                    }
+                    ByteArrayOutputStream data = new ByteArrayOutputStream();
+                    options.strips.extract(job.input, Channels.newChannel(data));
+                    String text = data.toString(StandardCharsets.UTF_8);
+                    if (job.output == null) {
+                        return "\"bytes\":" + data.size() + ",\"text\":" + json(text);
+                    }
+                    Files.writeString(job.output, text, StandardCharsets.UTF_8);
+                    return "\"bytes\":" + data.size();
+                }
+                if (options.binary) {
+                    if (job.output == null) {
+                        throw new IOException("Для --binary нужен выходной каталог (--out)");
+                    }
+                    try (OutputStream out = Files.newOutputStream(job.output)) {
+                        return "\"bytes\":" + ExtractText.extractData(job.input.toString(),
+                                Channels.newChannel(out), Progress.NONE, options.key);
+                    }
+                }
+                String text = options.key != null
+                        ? ExtractText.extractText(job.input.toString(), options.key)
+                        : ExtractText.extractText(job.input.toString(), options.delimiter);
+                if (job.output == null) {
+                    return "\"bytes\":" + text.getBytes(StandardCharsets.UTF_8).length + ",\"text\":" + json(text);
+                }
+                Files.writeString(job.output, text, StandardCharsets.UTF_8);
+                return "\"bytes\":" + text.getBytes(StandardCharsets.UTF_8).length;
+            }
+            case "visualize": {
+                if (options.strips != null) {
+                    options.strips.visualize(job.input, options.channel, options.plane, job.output);
+                    PngHeader header = PngHeader.read(job.output);
+                    return "\"width\":" + header.getWidth() + ",\"height\":" + header.getHeight();
+                }
+                BufferedImage visualization;
+                try (LSBRaster raster = LSBRaster.read(job.input)) {
+                    visualization = LSBVisualization.visualizeLSBBits(raster, options.channel, options.plane);
+                }
+                if (!ImageIO.write(visualization, "png", job.output.toFile())) {
+                    throw new IOException("Не удалось сохранить изображение: " + job.output);
+                }
+                return "\"width\":" + visualization.getWidth() + ",\"height\":" + visualization.getHeight();
+            }
+            case "analyze": {
+                Steganalysis.Report analysis = Steganalysis.analyze(job.input);
+                StringBuilder fields = new StringBuilder(String.format(Locale.ROOT, "\"score\":%.4f,\"suspicious\":%b",
+                        analysis.getScore(), analysis.getScore() >= options.threshold));
+                for (Steganalysis.ChannelReport channel : analysis.getChannels()) {
+                    fields.append(String.format(Locale.ROOT,
+                            ",%s:{\"chiSquare\":%.2f,\"chiSquareP\":%.4f,\"rs\":%.4f,\"spa\":%.4f,\"entropy\":%.4f}",
+                            json(channel.getChannel().name().toLowerCase(Locale.ROOT)), channel.getChiSquare(),
+                            channel.getChiSquareProbability(), channel.getRsEstimate(), channel.getSpaEstimate(),
+                            channel.getEntropy()));
+                }
+                return fields.toString();
+            }
+            case "probe": {
+                String probe = ImageProbe.probe(job.input).toJson();
+                return probe.substring(1, probe.length() - 1);
+            }
+            default:
+                throw new IllegalStateException(options.command);
+        }
+    }
+
+    /**
+     * Экранирует строку для JSON.
+     *
+     * @param s Строка.
+     * @return Строковый литерал JSON в кавычках.
+     */
+    static String json(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Задание пакетной обработки: один входной файл.
+     */
+    private static final class Job {
+        /** Порядковый номер задания. */
+        final int index;
+        /** Входное изображение. */
+        final Path input;
+        /** Выходной файл или {@code null} (extract без {@code --out}). */
+        final Path output;
+        /** Файл с данными для встраивания или {@code null}, если используются общие данные. */
+        final Path textFile;
+
+        Job(int index, Path input, Path output, Path textFile) {
+            this.index = index;
+            this.input = input;
+            this.output = output;
+            this.textFile = textFile;
+        }
+
+        /**
+         * Формирует строку отчета.
+         *
+         * @param status Статус ({@code ok} или {@code error}).
+         * @param fields Дополнительные поля.
+         * @param nanos  Время выполнения в наносекундах.
+         * @return Строка JSON.
+         */
+        String toJson(String status, String fields, long nanos) {
+            return String.format(Locale.ROOT, "{\"job\":%d,\"input\":%s,\"output\":%s,\"status\":\"%s\",\"millis\":%.3f,%s}",
+                    index, json(input.toString()), json(output != null ? output.toString() : null), status, nanos / 1e6, fields);
+        }
+    }
+
+    /**
+     * Разобранные аргументы командной строки.
+     */
+    private static final class Options {
+        String command;
+        final List<String> inputs = new ArrayList<>();
+        Path outDir;
+        Path report;
+        Path metrics;
+        String text;
+        Path textFile;
+        BitLayout layout = BitLayout.DEFAULT;
+        boolean tailFill = true;
+        boolean compress;
+        String format = "bmp";
+        int pngLevel = PngEncoder.DEFAULT_LEVEL;
+        byte[] key;
+        String delimiter = "END";
+        boolean binary;
+        BitLayout.Channel channel = BitLayout.Channel.BLUE;
+        int plane;
+        double threshold = 0.1;
+        /** Потоковая обработка полосами ({@code --band-bytes}) или {@code null}. */
+        StripPipeline strips;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Разбирает аргументы.
+         *
+         * @param args Аргументы командной строки.
+         * @return Параметры.
+         * @throws IllegalArgumentException Если аргументы некорректны.
+         */
+        static Options parse(String[] args) {
+            Options o = new Options();
+            o.command = args[0];
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--out": o.outDir = Path.of(value(args, ++i, arg)); break;
+                    case "--report": o.report = Path.of(value(args, ++i, arg)); break;
+                    case "--metrics": o.metrics = Path.of(value(args, ++i, arg)); break;
+                    case "--text": o.text = value(args, ++i, arg); break;
+                    case "--text-file": o.textFile = Path.of(value(args, ++i, arg)); break;
+                    case "--layout": o.layout = BitLayout.parse(value(args, ++i, arg)); break;
+                    case "--no-tail-fill": o.tailFill = false; break;
+                    case "--compress": o.compress = true; break;
+                    case "--format": o.format = value(args, ++i, arg).toLowerCase(Locale.ROOT); break;
+                    case "--png-level": o.pngLevel = Integer.parseInt(value(args, ++i, arg)); break;
+                    case "--key": o.key = PixelPermutation.key(value(args, ++i, arg)); break;
+                    case "--delimiter": o.delimiter = value(args, ++i, arg); break;
+                    case "--binary": o.binary = true; break;
+                    case "--channel": o.channel = BitLayout.Channel.parse(value(args, ++i, arg)); break;
+                    case "--plane": o.plane = Integer.parseInt(value(args, ++i, arg)); break;
+                    case "--threshold": o.threshold = Double.parseDouble(value(args, ++i, arg)); break;
+                    case "--concurrency": o.concurrency = Integer.parseInt(value(args, ++i, arg)); break;
+                    case "--band-bytes": o.strips = new StripPipeline(Long.parseLong(value(args, ++i, arg))); break;
+                    default:
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+                        }
+                        o.inputs.add(arg);
+                }
+            }
+            if (o.command.equals("help")) {
+                return o;
+            }
+            if (!o.format.equals("bmp") && !o.format.equals("png")) {
+                throw new IllegalArgumentException("--format должен быть bmp или png");
+            }
+            if (o.pngLevel < 0 || o.pngLevel > 9) {
+                throw new IllegalArgumentException("--png-level должен быть от 0 до 9");
+            }
+            if (o.strips != null && o.key != null) {
+                throw new IllegalArgumentException("--band-bytes несовместим с --key");
+            }
+            if (o.concurrency < 1) {
+                throw new IllegalArgumentException("--concurrency должен быть положительным");
+            }
+            if (o.inputs.isEmpty()) {
+                throw new IllegalArgumentException("Не указаны входные файлы");
+            }
+            return o;
+        }
+
+        private static String value(String[] args, int i, String name) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException("Не указано значение параметра " + name);
+            }
+            return args[i];
+        }
+
+        /**
+         * Составляет список заданий из файлов, каталогов и манифестов.
+         *
+         * @return Задания в порядке перечисления.
+         * @throws IOException              Если каталог или манифест не удалось прочитать.
+         * @throws IllegalArgumentException Если для задания нельзя определить выходной файл или
+         *                                  два задания записывают результат в один файл
+         *                                  (например, {@code a.png} и {@code a.bmp} одного каталога).
+         */
+        List<Job> collectJobs() throws IOException {
+            List<Job> jobs = new ArrayList<>();
+            for (String input : inputs) {
+                if (input.startsWith("@")) {
+                    Path manifest = Path.of(input.substring(1));
+                    Path base = manifest.toAbsolutePath().getParent();
+                    for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                        if (line.isBlank() || line.startsWith("#")) {
+                            continue;
+                        }
+                        String[] columns = line.split("\t");
+                        Path in = base.resolve(columns[0].trim());
+                        Path out = columns.length > 1 && !columns[1].isBlank() ? base.resolve(columns[1].trim()) : null;
+                        Path text = columns.length > 2 && !columns[2].isBlank() ? base.resolve(columns[2].trim()) : null;
+                        jobs.add(job(jobs.size(), in, out, text));
+                    }
+                } else if (Files.isDirectory(Path.of(input))) {
+                    for (Path in : listImages(Path.of(input))) {
+                        jobs.add(job(jobs.size(), in, null, null));
+                    }
+                } else {
+                    jobs.add(job(jobs.size(), Path.of(input), null, null));
+                }
+            }
+            Map<Path, Job> outputs = new HashMap<>();
+            for (Job job : jobs) {
+                if (job.output == null) {
+                    continue;
+                }
+                Job previous = outputs.putIfAbsent(job.output.toAbsolutePath().normalize(), job);
+                if (previous != null) {
+                    // Задания выполняются одновременно, и один результат молча заменил бы другой.
+                    throw new IllegalArgumentException("Задания " + previous.input + " и " + job.input
+                            + " записывают результат в один файл " + job.output);
+                }
+            }
+            if (outDir != null) {
+                Files.createDirectories(outDir);
+            }
+            return jobs;
+        }
+
+        /**
+         * Создает задание, определяя выходной файл по {@code --out}, если он не задан явно.
+         */
+        private Job job(int index, Path input, Path output, Path textFile) {
+            if (output == null && outDir != null) {
+                String name = input.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                String stem = dot > 0 ? name.substring(0, dot) : name;
+                switch (command) {
+                    case "embed": output = outDir.resolve(stem + "." + format); break;
+                    case "extract": output = outDir.resolve(stem + (binary ? ".bin" : ".txt")); break;
+                    case "analyze":
+                    case "probe": break;
+                    default: output = outDir.resolve(stem + "-lsb.png"); break;
+                }
+            }
+            if (output == null && !command.equals("extract") && !command.equals("analyze") && !command.equals("probe")) {
+                throw new IllegalArgumentException("Не указан выходной каталог (--out) для " + input);
+            }
+            return new Job(index, input, output, textFile);
+        }
+
+        /**
+         * Перечисляет изображения каталога (без подкаталогов) в алфавитном порядке.
+         */
+        private static List<Path> listImages(Path dir) throws IOException {
+            Set<String> suffixes = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            suffixes.addAll(List.of(ImageIO.getReaderFileSuffixes()));
+            try (Stream<Path> files = Files.list(dir)) {
+                return files.filter(Files::isRegularFile)
+                        .filter(path -> {
+                            String name = path.getFileName().toString();
+                            int dot = name.lastIndexOf('.');
+                            return dot > 0 && suffixes.contains(name.substring(dot + 1));
+                        })
+                        .sorted()
+                        .toList();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
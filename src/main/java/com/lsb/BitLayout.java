@@ -0,0 +1,224 @@
+package com.lsb;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Схема размещения битов в пикселях: набор каналов и число младших битов в каждом.
+ * <p>
+ * Биты последовательности распределяются по пикселям построчно; внутри пикселя —
+ * по каналам в порядке R, G, B, A (только выбранные), внутри канала — от старшего
+ * из используемых битов к младшему. Схема {@link #DEFAULT} (один младший бит синего
+ * канала) совпадает с исходным способом встраивания.
+ * </p>
+ */
+public final class BitLayout {
+
+    /**
+     * Канал пикселя.
+     */
+    public enum Channel {
+        /** Красный. */
+        RED(16, 1),
+        /** Зеленый. */
+        GREEN(8, 2),
+        /** Синий. */
+        BLUE(0, 4),
+        /** Альфа-канал. */
+        ALPHA(24, 8);
+
+        /** Сдвиг канала в значении ARGB. */
+        private final int shift;
+        /** Бит канала в сериализованной схеме. */
+        private final int flag;
+
+        Channel(int shift, int flag) {
+            this.shift = shift;
+            this.flag = flag;
+        }
+
+        /** @return Сдвиг канала в значении ARGB ({@code 0xAARRGGBB}). */
+        public int shift() {
+            return shift;
+        }
+
+        /**
+         * Разбирает канал из строки из одной буквы.
+         *
+         * @param spec Буква {@code r}, {@code g}, {@code b} или {@code a}.
+         * @return Канал.
+         * @throws IllegalArgumentException Если строка не состоит из одной буквы канала.
+         */
+        public static Channel parse(String spec) {
+            String letter = spec.trim().toLowerCase(Locale.ROOT);
+            if (letter.length() != 1) {
+                throw new IllegalArgumentException("Укажите один канал (r, g, b или a): " + spec);
+            }
+            return forLetter(letter.charAt(0));
+        }
+
+        private static Channel forLetter(char letter) {
+            switch (letter) {
+                case 'r': return RED;
+                case 'g': return GREEN;
+                case 'b': return BLUE;
+                case 'a': return ALPHA;
+                default: throw new IllegalArgumentException("Неизвестный канал: " + letter);
+            }
+        }
+    }
+
+    /** Максимальное число младших битов на канал. */
+    public static final int MAX_BITS_PER_CHANNEL = 4;
+
+    /** Один младший бит синего канала. */
+    public static final BitLayout DEFAULT = new BitLayout(EnumSet.of(Channel.BLUE), 1);
+
+    /** Каналы в порядке обхода. */
+    private final Channel[] channels;
+    /** Число младших битов на канал. */
+    private final int bitsPerChannel;
+
+    private BitLayout(Set<Channel> channels, int bitsPerChannel) {
+        this.channels = channels.toArray(new Channel[0]);
+        this.bitsPerChannel = bitsPerChannel;
+    }
+
+    /**
+     * Создает схему.
+     *
+     * @param bitsPerChannel Число младших битов на канал (1–{@value #MAX_BITS_PER_CHANNEL}).
+     * @param channels       Используемые каналы; порядок обхода всегда R, G, B, A.
+     * @return Схема размещения.
+     * @throws IllegalArgumentException Если параметры вне допустимых значений.
+     */
+    public static BitLayout of(int bitsPerChannel, Channel... channels) {
+        if (bitsPerChannel < 1 || bitsPerChannel > MAX_BITS_PER_CHANNEL) {
+            throw new IllegalArgumentException("Число битов на канал должно быть от 1 до " + MAX_BITS_PER_CHANNEL);
+        }
+        if (channels.length == 0) {
+            throw new IllegalArgumentException("Не выбран ни один канал");
+        }
+        EnumSet<Channel> set = EnumSet.noneOf(Channel.class);
+        for (Channel channel : channels) {
+            set.add(channel);
+        }
+        return new BitLayout(set, bitsPerChannel);
+    }
+
+    /**
+     * Разбирает схему из строки вида {@code "rgb:2"} (каналы и число битов на канал).
+     *
+     * @param spec Строка: буквы {@code r}, {@code g}, {@code b}, {@code a} и необязательное {@code :k}.
+     * @return Схема размещения.
+     * @throws IllegalArgumentException Если строка некорректна.
+     */
+    public static BitLayout parse(String spec) {
+        String[] parts = spec.trim().toLowerCase(Locale.ROOT).split(":", 2);
+        int bits = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+        Channel[] channels = new Channel[parts[0].length()];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = Channel.forLetter(parts[0].charAt(i));
+        }
+        return of(bits, channels);
+    }
+
+    /**
+     * Восстанавливает схему из байта, записанного {@link #toByte()}.
+     *
+     * @param value Сериализованная схема.
+     * @return Схема размещения.
+     * @throws IllegalArgumentException Если значение некорректно.
+     */
+    public static BitLayout fromByte(int value) {
+        EnumSet<Channel> set = EnumSet.noneOf(Channel.class);
+        for (Channel channel : Channel.values()) {
+            if ((value & channel.flag) != 0) {
+                set.add(channel);
+            }
+        }
+        return of(((value >> 4) & 0x3) + 1, set.toArray(new Channel[0]));
+    }
+
+    /**
+     * Сериализует схему в один байт: биты 0–3 — маска каналов, биты 4–5 — число битов на канал минус один.
+     *
+     * @return Сериализованная схема.
+     */
+    public int toByte() {
+        int value = (bitsPerChannel - 1) << 4;
+        for (Channel channel : channels) {
+            value |= channel.flag;
+        }
+        return value;
+    }
+
+    /** @return Каналы в порядке обхода (копия). */
+    public Channel[] getChannels() {
+        return channels.clone();
+    }
+
+    /**
+     * @param index Номер канала в порядке обхода.
+     * @return Канал.
+     */
+    Channel channel(int index) {
+        return channels[index];
+    }
+
+    /** @return Число используемых каналов. */
+    public int channelCount() {
+        return channels.length;
+    }
+
+    /** @return Число младших битов на канал. */
+    public int getBitsPerChannel() {
+        return bitsPerChannel;
+    }
+
+    /** @return Число битов, размещаемых в одном пикселе. */
+    public int bitsPerPixel() {
+        return channels.length * bitsPerChannel;
+    }
+
+    /**
+     * Вычисляет число пикселей, занимаемых последовательностью битов.
+     *
+     * @param bits Число битов.
+     * @return Число пикселей (с округлением вверх).
+     */
+    public long pixelsFor(long bits) {
+        int bpp = bitsPerPixel();
+        return (bits + bpp - 1) / bpp;
+    }
+
+    /** @return {@code true}, если схема использует альфа-канал. */
+    public boolean usesAlpha() {
+        for (Channel channel : channels) {
+            if (channel == Channel.ALPHA) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BitLayout && ((BitLayout) o).toByte() == toByte();
+    }
+
+    @Override
+    public int hashCode() {
+        return toByte();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Channel channel : channels) {
+            sb.append(Character.toLowerCase(channel.name().charAt(0)));
+        }
+        return sb.append(':').append(bitsPerChannel).toString();
+    }
+}
@@ -0,0 +1,171 @@
+package com.lsb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Заголовок файла BMP (BITMAPFILEHEADER и BITMAPINFOHEADER или его расширения).
+ * <p>
+ * Разбирается непосредственно из первых байтов файла без декодирования пикселей.
+ * Прямой доступ к пикселям ({@link BmpRaster}) поддерживается для несжатых
+ * 24- и 32-битных изображений со стандартным порядком каналов B, G, R.
+ * </p>
+ */
+public final class BmpHeader {
+
+    /** Размер BITMAPFILEHEADER. */
+    private static final int FILE_HEADER_SIZE = 14;
+    /** Размер BITMAPINFOHEADER. */
+    private static final int INFO_HEADER_SIZE = 40;
+    /** Число байтов, достаточное для разбора заголовка вместе с масками BI_BITFIELDS. */
+    private static final int READ_SIZE = FILE_HEADER_SIZE + INFO_HEADER_SIZE + 16;
+    /** Несжатые пиксели. */
+    private static final int BI_RGB = 0;
+    /** Несжатые пиксели с битовыми масками каналов. */
+    private static final int BI_BITFIELDS = 3;
+
+    /** Смещение пиксельных данных от начала файла. */
+    private final long pixelOffset;
+    /** Ширина изображения. */
+    private final int width;
+    /** Высота изображения (всегда положительная). */
+    private final int height;
+    /** {@code true}, если строки хранятся сверху вниз. */
+    private final boolean topDown;
+    /** Бит на пиксель. */
+    private final int bitsPerPixel;
+    /** Тип сжатия. */
+    private final int compression;
+    /** Маски красного, зеленого и синего каналов (для BI_BITFIELDS). */
+    private final int[] masks;
+
+    private BmpHeader(long pixelOffset, int width, int height, boolean topDown,
+                      int bitsPerPixel, int compression, int[] masks) {
+        this.pixelOffset = pixelOffset;
+        this.width = width;
+        this.height = height;
+        this.topDown = topDown;
+        this.bitsPerPixel = bitsPerPixel;
+        this.compression = compression;
+        this.masks = masks;
+    }
+
+    /**
+     * Читает заголовок BMP из файла.
+     *
+     * @param path Путь к файлу.
+     * @return Заголовок или {@code null}, если файл не является BMP с заголовком BITMAPINFOHEADER или новее.
+     * @throws IOException Если произошла ошибка чтения файла.
+     */
+    public static BmpHeader read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // Читаем, пока не заполним буфер или не достигнем конца файла.
+            }
+            buffer.flip();
+            return parse(buffer);
+        }
+    }
+
+    /**
+     * Разбирает заголовок BMP.
+     *
+     * @param buffer Первые байты файла.
+     * @return Заголовок или {@code null}, если данные не являются заголовком BMP с BITMAPINFOHEADER или новее.
+     */
+    public static BmpHeader parse(ByteBuffer buffer) {
+        ByteBuffer b = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int base = b.position();
+        if (b.remaining() < FILE_HEADER_SIZE + INFO_HEADER_SIZE
+                || b.get(base) != 'B' || b.get(base + 1) != 'M') {
+            return null;
+        }
+        long pixelOffset = Integer.toUnsignedLong(b.getInt(base + 10));
+        int infoSize = b.getInt(base + 14);
+        if (infoSize < INFO_HEADER_SIZE) {
+            return null; // BITMAPCOREHEADER и прочие устаревшие варианты
+        }
+        int width = b.getInt(base + 18);
+        int height = b.getInt(base + 22);
+        int bitsPerPixel = b.getShort(base + 28) & 0xFFFF;
+        int compression = b.getInt(base + 30);
+        int[] masks = new int[3];
+        if (compression == BI_BITFIELDS && b.remaining() >= FILE_HEADER_SIZE + INFO_HEADER_SIZE + 12) {
+            for (int i = 0; i < masks.length; i++) {
+                masks[i] = b.getInt(base + FILE_HEADER_SIZE + INFO_HEADER_SIZE + 4 * i);
+            }
+        }
+        if (width <= 0 || height == 0 || height == Integer.MIN_VALUE) {
+            return null;
+        }
+        return new BmpHeader(pixelOffset, width, Math.abs(height), height < 0,
+                bitsPerPixel, compression, masks);
+    }
+
+    /**
+     * Проверяет, поддерживается ли прямой доступ к пикселям.
+     *
+     * @return {@code true} для несжатых 24-битных изображений и 32-битных изображений
+     *         с каналами B, G, R в младших трех байтах пикселя.
+     */
+    public boolean isDirectAccessSupported() {
+        if (bitsPerPixel == 24) {
+            return compression == BI_RGB;
+        }
+        if (bitsPerPixel == 32) {
+            return compression == BI_RGB || (compression == BI_BITFIELDS
+                    && masks[0] == 0xFF0000 && masks[1] == 0xFF00 && masks[2] == 0xFF);
+        }
+        return false;
+    }
+
+    /** @return Смещение пиксельных данных от начала файла. */
+    public long getPixelOffset() {
+        return pixelOffset;
+    }
+
+    /** @return Ширина изображения. */
+    public int getWidth() {
+        return width;
+    }
+
+    /** @return Высота изображения. */
+    public int getHeight() {
+        return height;
+    }
+
+    /** @return {@code true}, если строки хранятся сверху вниз. */
+    public boolean isTopDown() {
+        return topDown;
+    }
+
+    /** @return Бит на пиксель. */
+    public int getBitsPerPixel() {
+        return bitsPerPixel;
+    }
+
+    /** @return Тип сжатия (0 — BI_RGB, 3 — BI_BITFIELDS и т.д.). */
+    public int getCompression() {
+        return compression;
+    }
+
+    /** @return Байт на пиксель. */
+    public int getBytesPerPixel() {
+        return bitsPerPixel / 8;
+    }
+
+    /** @return Длина строки в файле с учетом выравнивания до 4 байтов. */
+    public long getRowStride() {
+        return (((long) bitsPerPixel * width + 31) / 32) * 4;
+    }
+
+    /** @return Общее число пикселей. */
+    public long pixelCount() {
+        return (long) width * height;
+    }
+}
@@ -0,0 +1,296 @@
+package com.lsb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Растр, отображающий пиксели файла BMP в память через {@link FileChannel#map}.
+ * <p>
+ * Файл не декодируется целиком: строки отображаются сегментами по мере обращения,
+ * поэтому извлечение затрагивает только строки с данными, а встраивание изменяет
+ * младшие биты непосредственно в файле. Растр может также работать с содержимым файла,
+ * уже находящимся в памяти ({@link #wrap(ByteBuffer, boolean)}), например с телом HTTP-запроса.
+ * Поддерживаются форматы, для которых
+ * {@link BmpHeader#isDirectAccessSupported()} возвращает {@code true}. Альфа-канал
+ * недоступен: декодер {@code ImageIO} игнорирует четвертый байт 32-битных пикселей.
+ * </p>
+ */
+public final class BmpRaster extends LSBRaster {
+
+    /** Максимальный размер одного отображаемого сегмента. */
+    private static final long SEGMENT_SIZE = 1L << 30;
+    /** Размер заголовков BITMAPFILEHEADER и BITMAPINFOHEADER, записываемых {@link #write}. */
+    static final int WRITE_HEADER_SIZE = 54;
+
+    /** Канал файла или {@code null} для растра в памяти. */
+    private final FileChannel channel;
+    /** Заголовок файла. */
+    private final BmpHeader header;
+    /** Режим отображения. */
+    private final FileChannel.MapMode mode;
+    /** Длина строки в файле. */
+    private final int stride;
+    /** Байт на пиксель. */
+    private final int pixelStride;
+    /** Число строк файла в одном сегменте. */
+    private final int rowsPerSegment;
+    /**
+     * Отображенные сегменты (создаются при первом обращении, в том числе из разных потоков);
+     * у растра в памяти — один сегмент со всеми строками.
+     */
+    private final AtomicReferenceArray<ByteBuffer> segments;
+
+    /**
+     * @param channel Канал файла или {@code null}.
+     * @param memory  Содержимое файла в памяти (с текущей позиции), если {@code channel} равен {@code null}.
+     */
+    private BmpRaster(FileChannel channel, ByteBuffer memory, BmpHeader header, boolean writable) throws IOException {
+        super(header.getWidth(), header.getHeight());
+        this.channel = channel;
+        this.header = header;
+        this.mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        this.stride = (int) header.getRowStride();
+        this.pixelStride = header.getBytesPerPixel();
+        this.rowsPerSegment = channel == null ? height : (int) Math.max(1, Math.min(height, SEGMENT_SIZE / stride));
+        this.segments = new AtomicReferenceArray<>((height + rowsPerSegment - 1) / rowsPerSegment);
+
+        long size = channel != null ? channel.size() : memory.remaining();
+        long lastRowEnd = header.getPixelOffset() + (long) stride * (height - 1) + (long) width * pixelStride;
+        if (size < lastRowEnd) {
+            throw new IOException("Файл BMP поврежден: недостаточно пиксельных данных");
+        }
+        if (memory != null) {
+            ByteBuffer pixels = writable ? memory : memory.asReadOnlyBuffer();
+            int offset = (int) header.getPixelOffset();
+            segments.set(0, pixels.slice(memory.position() + offset, (int) size - offset));
+        }
+    }
+
+    /**
+     * Открывает файл BMP для прямого доступа к пикселям.
+     *
+     * @param path     Путь к файлу.
+     * @param writable {@code true}, если младшие биты будут изменяться непосредственно в файле.
+     * @return Растр; должен быть закрыт после использования.
+     * @throws IOException Если файл не удалось открыть или его формат не поддерживается.
+     */
+    public static BmpRaster open(Path path, boolean writable) throws IOException {
+        BmpHeader header = BmpHeader.read(path);
+        if (header == null || !header.isDirectAccessSupported()) {
+            throw new IOException("Неподдерживаемый формат BMP: " + path);
+        }
+        FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new BmpRaster(channel, null, header, writable);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Создает растр над содержимым файла BMP в памяти.
+     *
+     * @param file     Содержимое файла от текущей позиции до предела буфера.
+     * @param writable {@code true}, если младшие биты будут изменяться непосредственно в {@code file}.
+     * @return Растр; закрывать не требуется.
+     * @throws IOException Если данные не являются BMP поддерживаемого формата.
+     */
+    public static BmpRaster wrap(ByteBuffer file, boolean writable) throws IOException {
+        BmpHeader header = BmpHeader.parse(file);
+        if (header == null || !header.isDirectAccessSupported()) {
+            throw new IOException("Неподдерживаемый формат BMP");
+        }
+        return new BmpRaster(null, file, header, writable);
+    }
+
+    /**
+     * Проверяет, можно ли открыть файл через {@link #open(Path, boolean)}.
+     *
+     * @param path Путь к файлу.
+     * @return {@code true}, если файл является BMP поддерживаемого формата.
+     */
+    public static boolean isSupported(Path path) {
+        try {
+            BmpHeader header = BmpHeader.read(path);
+            return header != null && header.isDirectAccessSupported();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Записывает растр в формате BMP (24 бита, без сжатия, строки снизу вверх).
+     * <p>
+     * Строки накапливаются в {@code buffer} и записываются в канал, когда он заполняется,
+     * поэтому запись не выделяет памяти, пропорциональной размеру изображения. Альфа-канал не записывается.
+     * </p>
+     *
+     * @param raster Растр.
+     * @param out    Приемник; не закрывается.
+     * @param buffer Рабочий буфер длиной не меньше {@value #WRITE_HEADER_SIZE} байтов и длины строки файла.
+     * @param values Буферы строки: не меньше трех массивов длиной не меньше ширины растра.
+     * @throws IOException Если произошла ошибка записи или изображение слишком велико для BMP.
+     */
+    static void write(LSBRaster raster, WritableByteChannel out, byte[] buffer, byte[][] values) throws IOException {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        ByteBuffer block = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        int stride = putHeader(block, width, height);
+        for (int y = height - 1; y >= 0; y--) {
+            if (block.remaining() < stride) {
+                drain(block, out);
+            }
+            raster.readLSB(y, 0, width, BitLayout.Channel.BLUE, 0xFF, values[0], 0);
+            raster.readLSB(y, 0, width, BitLayout.Channel.GREEN, 0xFF, values[1], 0);
+            raster.readLSB(y, 0, width, BitLayout.Channel.RED, 0xFF, values[2], 0);
+            int p = block.position();
+            for (int x = 0; x < width; x++, p += 3) {
+                buffer[p] = values[0][x];
+                buffer[p + 1] = values[1][x];
+                buffer[p + 2] = values[2][x];
+            }
+            for (int end = block.position() + stride; p < end; p++) {
+                buffer[p] = 0; // Выравнивание строки до 4 байтов
+            }
+            block.position(p);
+        }
+        drain(block, out);
+    }
+
+    /**
+     * Помещает в буфер заголовок 24-битного BMP без сжатия ({@value #WRITE_HEADER_SIZE} байтов).
+     *
+     * @param block  Буфер с порядком байтов little-endian.
+     * @param width  Ширина изображения.
+     * @param height Высота изображения (строки хранятся снизу вверх).
+     * @return Длина строки файла с выравниванием до 4 байтов.
+     * @throws IOException Если изображение слишком велико для BMP.
+     */
+    static int putHeader(ByteBuffer block, int width, int height) throws IOException {
+        int stride = (width * 3 + 3) & ~3;
+        long size = WRITE_HEADER_SIZE + (long) stride * height;
+        if (size > 0xFFFFFFFFL) {
+            throw new IOException("Изображение слишком велико для BMP: " + width + "x" + height);
+        }
+        block.put((byte) 'B').put((byte) 'M').putInt((int) size).putInt(0).putInt(WRITE_HEADER_SIZE)
+                .putInt(40).putInt(width).putInt(height).putShort((short) 1).putShort((short) 24)
+                .putInt(0).putInt(stride * height).putInt(2835).putInt(2835).putInt(0).putInt(0);
+        return stride;
+    }
+
+    private static void drain(ByteBuffer block, WritableByteChannel out) throws IOException {
+        block.flip();
+        while (block.hasRemaining()) {
+            out.write(block);
+        }
+        block.clear();
+    }
+
+    /** @return Заголовок файла. */
+    public BmpHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Возвращает сегмент, содержащий строку файла, отображая его при необходимости.
+     *
+     * @param fileRow Номер строки в порядке хранения в файле.
+     * @return Сегмент.
+     */
+    private ByteBuffer segment(int fileRow) {
+        int index = fileRow / rowsPerSegment;
+        ByteBuffer segment = segments.get(index);
+        if (segment == null) {
+            long position = header.getPixelOffset() + (long) index * rowsPerSegment * stride;
+            try {
+                long size = Math.min((long) rowsPerSegment * stride, channel.size() - position);
+                segment = channel.map(mode, position, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!segments.compareAndSet(index, null, segment)) {
+                segment = segments.get(index); // Сегмент уже отобразил другой поток
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Переводит номер строки изображения в номер строки файла.
+     *
+     * @param y Номер строки изображения (сверху вниз).
+     * @return Номер строки в файле.
+     */
+    private int fileRow(int y) {
+        return header.isTopDown() ? y : height - 1 - y;
+    }
+
+    /**
+     * Возвращает смещение канала внутри пикселя (пиксели BMP хранятся как B, G, R[, X]).
+     *
+     * @param channel Канал.
+     * @return Смещение в байтах.
+     */
+    private static int channelOffset(BitLayout.Channel channel) {
+        switch (channel) {
+            case BLUE: return 0;
+            case GREEN: return 1;
+            case RED: return 2;
+            default: throw new IllegalArgumentException("Изображение не содержит канал " + channel);
+        }
+    }
+
+    @Override
+    protected void readLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+        int row = fileRow(y);
+        ByteBuffer segment = segment(row);
+        int p = (row % rowsPerSegment) * stride + x0 * pixelStride + channelOffset(channel);
+        for (int i = 0; i < len; i++, p += pixelStride) {
+            values[off + i] = (byte) (segment.get(p) & mask);
+        }
+    }
+
+    @Override
+    protected void writeLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+        int row = fileRow(y);
+        ByteBuffer segment = segment(row);
+        int p = (row % rowsPerSegment) * stride + x0 * pixelStride + channelOffset(channel);
+        for (int i = 0; i < len; i++, p += pixelStride) {
+            segment.put(p, (byte) ((segment.get(p) & ~mask) | values[off + i]));
+        }
+    }
+
+    /**
+     * Сбрасывает измененные сегменты на диск и закрывает файл. Для растра в памяти ничего не делает.
+     *
+     * @throws IOException Если произошла ошибка закрытия файла.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        if (mode == FileChannel.MapMode.READ_WRITE) {
+            try (Metrics.Timer timer = Metrics.start(Metrics.Phase.ENCODE)) {
+                for (int i = 0; i < segments.length(); i++) {
+                    if (segments.get(i) instanceof MappedByteBuffer segment) {
+                        segment.force();
+                    }
+                }
+                timer.pixels(pixelCount());
+            }
+        }
+        channel.close();
+    }
+}
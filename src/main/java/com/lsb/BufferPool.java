@@ -0,0 +1,114 @@
+package com.lsb;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограниченный пул байтовых массивов для многократного использования больших буферов
+ * (тел запросов, пикселей BMP).
+ * <p>
+ * Массивы выдаются по классам размеров — степеням двойки от {@value #MIN_SIZE} байтов
+ * до {@code maxBufferSize}; запросы большего размера обслуживаются новыми массивами, которые
+ * в пул не возвращаются. Суммарный объем свободных массивов в пуле не превышает
+ * {@code maxIdleBytes}: лишние массивы при возврате отбрасываются и достаются сборщику мусора.
+ * Методы можно вызывать из разных потоков.
+ * </p>
+ */
+public final class BufferPool {
+
+    /** Размер наименьшего класса. */
+    public static final int MIN_SIZE = 64 * 1024;
+
+    /** Свободные массивы по классам размеров; класс {@code i} содержит массивы по {@code MIN_SIZE << i} байтов. */
+    private final ConcurrentLinkedDeque<byte[]>[] classes;
+    private final long maxIdleBytes;
+    private final int maxBufferSize;
+    private final AtomicLong idleBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Создает пул.
+     *
+     * @param maxIdleBytes  Наибольший суммарный объем свободных массивов.
+     * @param maxBufferSize Наибольший размер массива, возвращаемого в пул (округляется вверх до степени двойки).
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(long maxIdleBytes, int maxBufferSize) {
+        if (maxBufferSize > 1 << 30) {
+            throw new IllegalArgumentException("Слишком большой размер буфера: " + maxBufferSize);
+        }
+        int count = sizeClass(Math.max(MIN_SIZE, maxBufferSize)) + 1;
+        this.classes = new ConcurrentLinkedDeque[count];
+        for (int i = 0; i < count; i++) {
+            classes[i] = new ConcurrentLinkedDeque<>();
+        }
+        this.maxIdleBytes = maxIdleBytes;
+        this.maxBufferSize = MIN_SIZE << (count - 1);
+    }
+
+    /**
+     * Выдает массив не меньше заданного размера. Содержимое массива не очищается.
+     *
+     * @param minSize Необходимый размер.
+     * @return Массив длиной не меньше {@code minSize}.
+     */
+    public byte[] acquire(int minSize) {
+        if (minSize > maxBufferSize) {
+            misses.incrementAndGet();
+            return new byte[minSize];
+        }
+        int index = sizeClass(minSize);
+        byte[] buffer = classes[index].pollFirst();
+        if (buffer == null) {
+            misses.incrementAndGet();
+            return new byte[MIN_SIZE << index];
+        }
+        idleBytes.addAndGet(-buffer.length);
+        hits.incrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Возвращает массив в пул. Массивы, не выданные пулом, и массивы сверх ограничения
+     * объема отбрасываются.
+     *
+     * @param buffer Массив; после возврата его нельзя использовать.
+     */
+    public void release(byte[] buffer) {
+        int length = buffer.length;
+        if (length < MIN_SIZE || length > maxBufferSize || Integer.bitCount(length) != 1) {
+            return;
+        }
+        if (idleBytes.addAndGet(length) > maxIdleBytes) {
+            idleBytes.addAndGet(-length);
+            return;
+        }
+        classes[sizeClass(length)].offerFirst(buffer); // Последний возвращенный массив выдается первым
+    }
+
+    /** @return Суммарный объем свободных массивов в пуле. */
+    public long idleBytes() {
+        return idleBytes.get();
+    }
+
+    /** @return Число запросов, обслуженных массивом из пула. */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** @return Число запросов, для которых был создан новый массив. */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Номер класса размеров, вмещающего {@code size} байтов.
+     */
+    private static int sizeClass(int size) {
+        if (size <= MIN_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros((size - 1) / MIN_SIZE);
+    }
+}
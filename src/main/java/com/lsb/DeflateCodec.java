@@ -0,0 +1,80 @@
+package com.lsb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * Сжатие полезной нагрузки форматом zlib ({@link Deflater}).
+ * <p>
+ * Поток zlib содержит собственную контрольную сумму Adler-32 исходных данных,
+ * поэтому повреждение сжатых данных обнаруживается и при распаковке.
+ * </p>
+ */
+public final class DeflateCodec implements PayloadCodec {
+
+    /** Идентификатор метода в заголовке контейнера. */
+    public static final int ID = 1;
+
+    /** Размер внутренних буферов потоков сжатия. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Уровень сжатия. */
+    private final int level;
+
+    /**
+     * Создает метод сжатия.
+     *
+     * @param level Уровень сжатия {@link Deflater} (0–9 или {@link Deflater#DEFAULT_COMPRESSION}).
+     * @throws IllegalArgumentException Если уровень вне допустимых значений.
+     */
+    public DeflateCodec(int level) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Уровень сжатия должен быть от 0 до 9");
+        }
+        this.level = level;
+    }
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public OutputStream encoder(OutputStream out) {
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public OutputStream decoder(OutputStream out) {
+        Inflater inflater = new Inflater();
+        return new InflaterOutputStream(out, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "deflate:" + level;
+    }
+}
@@ -0,0 +1,70 @@
+package com.lsb;
+
+/**
+ * Потоковый поиск разделителя в последовательности байтов (автомат Кнута — Морриса — Пратта).
+ * <p>
+ * Байты подаются по одному методом {@link #accept(byte)}; автомат сообщает о вхождении
+ * разделителя сразу после его последнего байта, не храня прочитанные данные.
+ * </p>
+ */
+public final class DelimiterMatcher {
+
+    /** Байты разделителя. */
+    private final byte[] pattern;
+    /** Префикс-функция: длина наибольшего собственного префикса, совпадающего с суффиксом. */
+    private final int[] failure;
+    /** Число байтов разделителя, совпавших на текущий момент. */
+    private int matched;
+
+    /**
+     * Создает автомат для заданного разделителя.
+     *
+     * @param pattern Байты разделителя.
+     */
+    public DelimiterMatcher(byte[] pattern) {
+        this.pattern = pattern.clone();
+        this.failure = new int[pattern.length];
+        for (int i = 1, k = 0; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+    }
+
+    /**
+     * Подает очередной байт на вход автомата.
+     *
+     * @param b Очередной байт.
+     * @return {@code true}, если этим байтом завершилось вхождение разделителя.
+     */
+    public boolean accept(byte b) {
+        if (pattern.length == 0) {
+            return true;
+        }
+        while (matched > 0 && b != pattern[matched]) {
+            matched = failure[matched - 1];
+        }
+        if (b == pattern[matched]) {
+            matched++;
+        }
+        if (matched == pattern.length) {
+            matched = failure[matched - 1];
+            return true;
+        }
+        return false;
+    }
+
+    /** @return Длина разделителя в байтах. */
+    public int length() {
+        return pattern.length;
+    }
+
+    /** Сбрасывает автомат в начальное состояние. */
+    public void reset() {
+        matched = 0;
+    }
+}
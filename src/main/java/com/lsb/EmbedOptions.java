@@ -0,0 +1,107 @@
+package com.lsb;
+
+/**
+ * Параметры встраивания в формате контейнера.
+ * <p>
+ * Экземпляры неизменяемы; методы {@code with...} возвращают копию с измененным параметром.
+ * </p>
+ */
+public final class EmbedOptions {
+
+    /**
+     * Параметры по умолчанию: схема {@link BitLayout#DEFAULT}, хвост заполняется шумом, без сжатия,
+     * PNG сохраняется с уровнем {@value PngEncoder#DEFAULT_LEVEL}, пиксели используются по порядку.
+     */
+    public static final EmbedOptions DEFAULT = new EmbedOptions(BitLayout.DEFAULT, TailFill.RANDOM, null, PngEncoder.DEFAULT_LEVEL, null);
+
+    /** Схема размещения полезной нагрузки. */
+    private final BitLayout layout;
+    /** Способ заполнения неиспользуемых битов. */
+    private final TailFill tailFill;
+    /** Метод сжатия полезной нагрузки; {@code null} — без сжатия. */
+    private final PayloadCodec codec;
+    /** Уровень сжатия результирующего изображения PNG. */
+    private final int pngLevel;
+    /** Ключ перестановки пикселей; {@code null} — пиксели используются по порядку. */
+    private final byte[] key;
+
+    private EmbedOptions(BitLayout layout, TailFill tailFill, PayloadCodec codec, int pngLevel, byte[] key) {
+        this.layout = layout;
+        this.tailFill = tailFill;
+        this.codec = codec;
+        this.pngLevel = pngLevel;
+        this.key = key;
+    }
+
+    /**
+     * @param layout Схема размещения полезной нагрузки.
+     * @return Копия параметров с указанной схемой.
+     */
+    public EmbedOptions withLayout(BitLayout layout) {
+        return new EmbedOptions(layout, tailFill, codec, pngLevel, key);
+    }
+
+    /**
+     * @param tailFill Способ заполнения неиспользуемых битов.
+     * @return Копия параметров с указанным способом заполнения.
+     */
+    public EmbedOptions withTailFill(TailFill tailFill) {
+        return new EmbedOptions(layout, tailFill, codec, pngLevel, key);
+    }
+
+    /**
+     * @param codec Метод сжатия полезной нагрузки (например, {@link PayloadCodecs#DEFLATE})
+     *              или {@code null}, чтобы не сжимать.
+     * @return Копия параметров с указанным методом сжатия.
+     */
+    public EmbedOptions withCodec(PayloadCodec codec) {
+        return new EmbedOptions(layout, tailFill, codec, pngLevel, key);
+    }
+
+    /**
+     * @param pngLevel Уровень сжатия от 0 до 9 для результирующего изображения PNG
+     *                 (выходной файл с расширением {@code .png}).
+     * @return Копия параметров с указанным уровнем.
+     */
+    public EmbedOptions withPngLevel(int pngLevel) {
+        if (pngLevel < 0 || pngLevel > 9) {
+            throw new IllegalArgumentException("Уровень сжатия PNG должен быть от 0 до 9: " + pngLevel);
+        }
+        return new EmbedOptions(layout, tailFill, codec, pngLevel, key);
+    }
+
+    /**
+     * @param key Ключ, по которому контейнер рассеивается по изображению
+     *            (см. {@link PixelPermutation}), или {@code null}, чтобы использовать пиксели по порядку.
+     *            Для извлечения нужен тот же ключ.
+     * @return Копия параметров с указанным ключом.
+     */
+    public EmbedOptions withKey(byte[] key) {
+        return new EmbedOptions(layout, tailFill, codec, pngLevel, key == null ? null : key.clone());
+    }
+
+    /** @return Схема размещения полезной нагрузки. */
+    public BitLayout getLayout() {
+        return layout;
+    }
+
+    /** @return Способ заполнения неиспользуемых битов. */
+    public TailFill getTailFill() {
+        return tailFill;
+    }
+
+    /** @return Метод сжатия полезной нагрузки или {@code null}, если сжатие не используется. */
+    public PayloadCodec getCodec() {
+        return codec;
+    }
+
+    /** @return Уровень сжатия результирующего изображения PNG. */
+    public int getPngLevel() {
+        return pngLevel;
+    }
+
+    /** @return Копия ключа перестановки пикселей или {@code null}, если пиксели используются по порядку. */
+    public byte[] getKey() {
+        return key == null ? null : key.clone();
+    }
+}
@@ -1,10 +1,18 @@
 package com.lsb;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.util.Random;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 
 /**
  * Класс, реализующий встраивание текста в изображение
@@ -12,25 +20,32 @@ import java.util.Random;
  * <p>
  * Текст кодируется в UTF-8, затем преобразуется в последовательность байтов,
  * и каждый бит этих байтов записывается в младший бит синего канала
- * пикселей изображения. Если текст вместе с разделителем короче, чем
+ * пикселей изображения (или, в формате контейнера, по схеме {@link BitLayout}). Если текст вместе с разделителем короче, чем
  * доступное количество битов в изображении, оставшиеся биты заполняются
- * псевдослучайными значениями.
+ * псевдослучайными значениями (см. {@link TailFill}).
  * </p>
- * <p>Важно: входное и выходное изображения должны быть в формате BMP.</p>
+ * <p>Конец текста обозначается либо разделителем (старая схема), либо
+ * заголовком {@link PayloadHeader} с длиной и контрольной суммой.</p>
+ * <p>Методы {@code embedData} встраивают произвольные двоичные данные из потока
+ * порциями, не загружая их целиком в память; методы {@code embedText} — обертки над ними.
+ * Методы {@code updateData}/{@code updateText} обновляют уже встроенный контейнер на месте,
+ * перезаписывая только изменившиеся биты.</p>
+ * <p>Входное изображение — BMP или PNG; результат сохраняется в PNG, если выходной файл имеет
+ * расширение {@code .png} (см. {@link PngEncoder}), иначе в BMP.</p>
+ * <p>Статические методы берут рабочие буферы из пула {@link StegoEngine}; для обработки
+ * множества изображений в одном потоке можно использовать собственный {@link StegoEngine}.</p>
  */
 public class EmbedText {
 
-    /**
-     * Генератор псевдослучайных чисел для заполнения неиспользуемых битов.
-     */
-    private static final Random random = new Random();
+    /** Размер пробной порции, по которой решается, применять ли сжатие. */
+    static final int PROBE_BYTES = 64 * 1024;
 
     /**
      * Встраивает текст в изображение, используя метод LSB.
      *
-     * @param imagePath  Путь к исходному изображению в формате BMP.
+     * @param imagePath  Путь к исходному изображению (BMP или PNG).
      * @param text       Текст для встраивания (будет закодирован в UTF-8).
-     * @param outputPath Путь для сохранения результирующего изображения в формате BMP.
+     * @param outputPath Путь для сохранения результирующего изображения (PNG при расширении {@code .png}, иначе BMP).
      * @param delimiter  Разделитель, добавляемый к тексту для обозначения его конца при извлечении.
      * @throws IOException Если произошла ошибка чтения или записи изображения,
      *                     если изображение слишком мало для встраивания текста,
@@ -38,40 +53,575 @@ public class EmbedText {
      * @see com.lsb.ExtractText#extractText(String, String)
      */
     public static void embedText(String imagePath, String text, String outputPath, String delimiter) throws IOException {
-        BufferedImage image = ImageIO.read(new File(imagePath));
-        if (image == null) {
-            throw new IOException("Не удалось загрузить изображение: " + imagePath);
+        byte[] payload = (text + delimiter).getBytes(StandardCharsets.UTF_8);
+        try (StegoEngine engine = StegoEngine.pooled()) {
+            embed(engine, imagePath, outputPath, payload.length * 8L, EmbedOptions.DEFAULT, Progress.NONE,
+                    raster -> embedParts(raster, new byte[0], EmbedOptions.DEFAULT, payload));
+        }
+    }
+
+    /**
+     * Встраивает текст в изображение в формате контейнера с заголовком {@link PayloadHeader}.
+     * <p>
+     * В отличие от {@link #embedText(String, String, String, String)}, конец текста определяется
+     * записанной длиной, поэтому текст может содержать любые символы, а целостность
+     * проверяется по контрольной сумме при извлечении.
+     * </p>
+     *
+     * @param imagePath  Путь к исходному изображению (BMP или PNG).
+     * @param text       Текст для встраивания (будет закодирован в UTF-8).
+     * @param outputPath Путь для сохранения результирующего изображения (PNG при расширении {@code .png}, иначе BMP).
+     * @throws IOException Если произошла ошибка чтения или записи изображения
+     *                     или если изображение слишком мало для встраивания текста.
+     * @see com.lsb.ExtractText#extractText(String)
+     */
+    public static void embedText(String imagePath, String text, String outputPath) throws IOException {
+        embedText(imagePath, text, outputPath, BitLayout.DEFAULT);
+    }
+
+    /**
+     * Встраивает текст в формате контейнера, размещая полезную нагрузку по заданной схеме.
+     * <p>
+     * Схема записывается в заголовок, поэтому при извлечении ее указывать не нужно.
+     * Например, схема {@code BitLayout.of(2, RED, GREEN, BLUE)} размещает 6 битов
+     * в каждом пикселе, увеличивая емкость в 6 раз.
+     * </p>
+     *
+     * @param imagePath  Путь к исходному изображению (BMP или PNG).
+     * @param text       Текст для встраивания (будет закодирован в UTF-8).
+     * @param outputPath Путь для сохранения результирующего изображения (PNG при расширении {@code .png}, иначе BMP).
+     * @param layout     Схема размещения битов полезной нагрузки.
+     * @throws IOException Если произошла ошибка чтения или записи изображения, если изображение
+     *                     слишком мало или не содержит каналов схемы.
+     * @see com.lsb.ExtractText#extractText(String)
+     */
+    public static void embedText(String imagePath, String text, String outputPath, BitLayout layout) throws IOException {
+        embedText(imagePath, text, outputPath, EmbedOptions.DEFAULT.withLayout(layout));
+    }
+
+    /**
+     * Встраивает текст в формате контейнера с заданными параметрами.
+     *
+     * @param imagePath  Путь к исходному изображению (BMP или PNG).
+     * @param text       Текст для встраивания (будет закодирован в UTF-8).
+     * @param outputPath Путь для сохранения результирующего изображения (PNG при расширении {@code .png}, иначе BMP).
+     * @param options    Параметры встраивания (схема размещения, заполнение хвоста).
+     * @throws IOException Если произошла ошибка чтения или записи изображения, если изображение
+     *                     слишком мало или не содержит каналов схемы.
+     * @see com.lsb.ExtractText#extractText(String)
+     */
+    public static void embedText(String imagePath, String text, String outputPath, EmbedOptions options) throws IOException {
+        embedText(imagePath, text, outputPath, options, Progress.NONE);
+    }
+
+    /**
+     * Встраивает текст в формате контейнера с отслеживанием хода выполнения и отменой.
+     *
+     * @param imagePath  Путь к исходному изображению (BMP или PNG).
+     * @param text       Текст для встраивания (будет закодирован в UTF-8).
+     * @param outputPath Путь для сохранения результирующего изображения (PNG при расширении {@code .png}, иначе BMP).
+     * @param options    Параметры встраивания.
+     * @param progress   Отслеживание хода выполнения (см. {@link #embedData(String, ReadableByteChannel, long, String, EmbedOptions, Progress)}).
+     * @throws IOException Если произошла ошибка чтения или записи изображения, если изображение
+     *                     слишком мало или не содержит каналов схемы.
+     * @throws java.util.concurrent.CancellationException Если операция отменена.
+     */
+    public static void embedText(String imagePath, String text, String outputPath, EmbedOptions options, Progress progress) throws IOException {
+        try (StegoEngine engine = StegoEngine.pooled()) {
+            engine.embedText(imagePath, text, outputPath, options, progress);
+        }
+    }
+
+    /**
+     * Встраивает двоичные данные из потока в формате контейнера.
+     * <p>
+     * Данные считываются и встраиваются порциями ({@link ParallelLSB#chunkBytes(BitLayout)} байтов);
+     * контрольная сумма вычисляется по ходу чтения, а заголовок записывается последним.
+     * Если в параметрах задан метод сжатия ({@link EmbedOptions#withCodec(PayloadCodec)}),
+     * данные сжимаются потоком; несжимаемые данные встраиваются как есть.
+     * Из потока считывается ровно {@code length} байтов; поток не закрывается.
+     * </p>
+     *
+     * @param imagePath  Путь к исходному изображению (BMP или PNG).
+     * @param payload    Источник данных.
+     * @param length     Число байтов для встраивания.
+     * @param outputPath Путь для сохранения результирующего изображения (PNG при расширении {@code .png}, иначе BMP).
+     * @param options    Параметры встраивания.
+     * @throws IOException Если произошла ошибка чтения или записи, если поток короче {@code length}
+     *                     или если изображение слишком мало или не содержит каналов схемы.
+     * @see com.lsb.ExtractText#extractData(String, java.io.OutputStream)
+     */
+    public static void embedData(String imagePath, InputStream payload, long length, String outputPath, EmbedOptions options) throws IOException {
+        embedData(imagePath, Channels.newChannel(payload), length, outputPath, options);
+    }
+
+    /**
+     * Встраивает двоичные данные из канала в формате контейнера
+     * (см. {@link #embedData(String, InputStream, long, String, EmbedOptions)}).
+     *
+     * @param imagePath  Путь к исходному изображению (BMP или PNG).
+     * @param payload    Источник данных; не закрывается.
+     * @param length     Число байтов для встраивания.
+     * @param outputPath Путь для сохранения результирующего изображения (PNG при расширении {@code .png}, иначе BMP).
+     * @param options    Параметры встраивания.
+     * @throws IOException Если произошла ошибка чтения или записи, если канал короче {@code length}
+     *                     или если изображение слишком мало или не содержит каналов схемы.
+     */
+    public static void embedData(String imagePath, ReadableByteChannel payload, long length, String outputPath, EmbedOptions options) throws IOException {
+        embedData(imagePath, payload, length, outputPath, options, Progress.NONE);
+    }
+
+    /**
+     * Встраивает двоичные данные из канала с отслеживанием хода выполнения и отменой.
+     * <p>
+     * Объем работы — пиксели, занятые контейнером, а если хвост заполняется шумом — все пиксели
+     * изображения. После {@link Progress#cancel()} встраивание прерывается на ближайшей строке;
+     * созданный при этом выходной файл удаляется (если он не совпадает с исходным).
+     * </p>
+     *
+     * @param imagePath  Путь к исходному изображению (BMP или PNG).
+     * @param payload    Источник данных; не закрывается.
+     * @param length     Число байтов для встраивания.
+     * @param outputPath Путь для сохранения результирующего изображения (PNG при расширении {@code .png}, иначе BMP).
+     * @param options    Параметры встраивания.
+     * @param progress   Отслеживание хода выполнения или {@link Progress#NONE}.
+     * @throws IOException Если произошла ошибка чтения или записи, если канал короче {@code length}
+     *                     или если изображение слишком мало или не содержит каналов схемы.
+     * @throws java.util.concurrent.CancellationException Если операция отменена.
+     */
+    public static void embedData(String imagePath, ReadableByteChannel payload, long length, String outputPath,
+                                 EmbedOptions options, Progress progress) throws IOException {
+        try (StegoEngine engine = StegoEngine.pooled()) {
+            engine.embedData(imagePath, payload, length, outputPath, options, progress);
+        }
+    }
+
+    /**
+     * Встраивает содержимое файла в формате контейнера.
+     *
+     * @param imagePath   Путь к исходному изображению (BMP или PNG).
+     * @param payloadFile Файл с данными.
+     * @param outputPath  Путь для сохранения результирующего изображения (PNG при расширении {@code .png}, иначе BMP).
+     * @param options     Параметры встраивания.
+     * @throws IOException Если произошла ошибка чтения или записи или если изображение
+     *                     слишком мало или не содержит каналов схемы.
+     */
+    public static void embedData(String imagePath, Path payloadFile, String outputPath, EmbedOptions options) throws IOException {
+        try (FileChannel channel = FileChannel.open(payloadFile)) {
+            embedData(imagePath, channel, channel.size(), outputPath, options);
+        }
+    }
+
+    /**
+     * Обновляет текст, ранее встроенный в формате контейнера, изменяя только отличающиеся биты
+     * (см. {@link #updateData(String, byte[], EmbedOptions)}).
+     *
+     * @param imagePath Путь к изображению с контейнером; изменяется на месте.
+     * @param text      Новый текст (будет закодирован в UTF-8).
+     * @param options   Параметры встраивания.
+     * @return Число перезаписанных пикселей.
+     * @throws IOException Если произошла ошибка чтения или записи изображения, если изображение
+     *                     слишком мало или не содержит каналов схемы.
+     */
+    public static long updateText(String imagePath, String text, EmbedOptions options) throws IOException {
+        return updateData(imagePath, text.getBytes(StandardCharsets.UTF_8), options);
+    }
+
+    /**
+     * Обновляет полезную нагрузку контейнера, изменяя только пиксели, биты которых отличаются.
+     * <p>
+     * Из изображения считываются заголовок и биты, занимаемые новой полезной нагрузкой; они
+     * сравниваются с новыми данными, и перезаписываются только отличающиеся группы пикселей,
+     * измененные байты заголовка (длина и контрольная сумма) и, если данные стали короче,
+     * пиксели, освободившиеся от прежних данных (заполняются согласно {@link EmbedOptions#getTailFill()}).
+     * Остальной хвост не изменяется. Несжатый BMP изменяется на месте через отображение файла
+     * в память, поэтому на диск записываются только затронутые строки.
+     * </p>
+     * <p>
+     * Если изображение не содержит контейнера текущей версии, если прежние данные сжаты, если
+     * схема размещения отличается от {@code options} или если задан метод сжатия, контейнер
+     * встраивается заново целиком.
+     * </p>
+     *
+     * @param imagePath Путь к изображению с контейнером; изменяется на месте.
+     * @param payload   Новая полезная нагрузка.
+     * @param options   Параметры встраивания.
+     * @return Число перезаписанных пикселей.
+     * @throws IOException Если произошла ошибка чтения или записи изображения, если изображение
+     *                     слишком мало или не содержит каналов схемы.
+     */
+    public static long updateData(String imagePath, byte[] payload, EmbedOptions options) throws IOException {
+        long pixelsNeeded = PayloadHeader.SIZE * 8L + options.getLayout().pixelsFor(payload.length * 8L);
+        long[] written = new long[1];
+        try (StegoEngine engine = StegoEngine.pooled()) {
+            embed(engine, imagePath, imagePath, pixelsNeeded, options, Progress.NONE,
+                    raster -> written[0] = patchContainer(engine, raster, options, payload));
+        }
+        return written[0];
+    }
+
+    /**
+     * Действие над растром открытого изображения.
+     */
+    @FunctionalInterface
+    interface RasterWriter {
+        void write(LSBRaster raster) throws IOException;
+    }
+
+    /**
+     * Открывает изображение для встраивания, проверяет емкость и каналы и передает растр {@code writer}.
+     * <p>
+     * Несжатый BMP копируется один раз и изменяется через {@link BmpRaster} без
+     * декодирования и повторного кодирования; если {@code outputPath} совпадает с
+     * {@code imagePath}, файл изменяется на месте. Если выходной файл имеет расширение
+     * {@code .png}, результат кодируется {@link PngEncoder} с уровнем {@link EmbedOptions#getPngLevel()}
+     * (несжатый BMP при этом считывается в память без декодирования). Прочие изображения
+     * декодируются в изображение контекста {@code engine} и сохраняются в 24-битный BMP без альфа-канала,
+     * поэтому схемы с каналом {@link BitLayout.Channel#ALPHA} требуют PNG. Если в {@code options} задан ключ,
+     * {@code writer} получает представление растра с переставленными пикселями ({@link PixelPermutation}).
+     * </p>
+     *
+     * @param engine       Контекст с рабочими буферами.
+     * @param imagePath    Путь к исходному изображению.
+     * @param outputPath   Путь для сохранения результирующего изображения.
+     * @param pixelsNeeded Число пикселей, занимаемых данными.
+     * @param options      Параметры встраивания (схема размещения, уровень сжатия PNG и ключ).
+     * @param progress     Отслеживание хода выполнения; подключается к растру.
+     * @param writer       Запись данных в растр.
+     * @throws IOException Если произошла ошибка чтения или записи изображения, если изображение
+     *                     слишком мало или не содержит каналов схемы.
+     */
+    static void embed(StegoEngine engine, String imagePath, String outputPath, long pixelsNeeded, EmbedOptions options,
+                      Progress progress, RasterWriter writer) throws IOException {
+        Path source = Path.of(imagePath);
+        Path target = Path.of(outputPath);
+        BitLayout layout = options.getLayout();
+        BmpHeader bmp = BmpHeader.read(source);
+        boolean directBmp = bmp != null && bmp.isDirectAccessSupported();
+        boolean png = PngEncoder.isPng(target);
+        if (directBmp && !png) {
+            checkCapacity(pixelsNeeded, bmp.pixelCount());
+            if (layout.usesAlpha()) {
+                throw new IOException("Изображение не содержит канал " + BitLayout.Channel.ALPHA);
+            }
+            boolean copied = !Files.exists(target) || !Files.isSameFile(source, target);
+            boolean done = false;
+            try {
+                BmpRaster opened;
+                try (Metrics.Timer timer = Metrics.start(Metrics.Phase.DECODE)) {
+                    if (copied) {
+                        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    opened = BmpRaster.open(target, true);
+                    timer.pixels(opened.pixelCount());
+                }
+                try (BmpRaster raster = opened) {
+                    raster.setProgress(progress);
+                    writer.write(view(raster, options));
+                }
+                done = true;
+            } finally {
+                if (copied && !done) {
+                    Files.deleteIfExists(target); // Не оставляем наполовину записанный файл
+                }
+            }
+            return;
+        }
+
+        if (layout.usesAlpha() && !png) {
+            throw new IOException("Канал " + BitLayout.Channel.ALPHA + " не сохраняется в BMP");
+        }
+        LSBRaster raster;
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.DECODE)) {
+            if (directBmp) {
+                raster = BmpRaster.wrap(engine.readFile(source), true);
+            } else {
+                raster = LSBRaster.wrap(engine.decode(source));
+            }
+            timer.pixels(raster.pixelCount());
+        }
+        checkCapacity(pixelsNeeded, raster.pixelCount());
+        for (BitLayout.Channel channel : layout.getChannels()) {
+            if (!raster.hasChannel(channel)) {
+                throw new IOException("Изображение не содержит канал " + channel);
+            }
         }
+        raster.setProgress(progress);
+        writer.write(view(raster, options));
+        progress.checkCancelled();
 
-        byte[] textBytes = (text + delimiter).getBytes();
-        long totalBitsNeeded = (long) textBytes.length * 8;
-        long totalBitsAvailable = (long) image.getWidth() * image.getHeight();
+        if (png) {
+            PngEncoder.withLevel(options.getPngLevel()).write(raster, target);
+            return;
+        }
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.ENCODE)) {
+            engine.writeBmp(raster, target);
+            timer.pixels(raster.pixelCount());
+        }
+    }
 
-        if (totalBitsNeeded > totalBitsAvailable) {
+    /**
+     * Возвращает растр, в который записывается контейнер: сам {@code raster} или,
+     * если задан ключ, его представление с переставленными пикселями.
+     */
+    private static LSBRaster view(LSBRaster raster, EmbedOptions options) {
+        byte[] key = options.getKey();
+        return key == null ? raster : PixelPermutation.scatter(raster, key);
+    }
+
+    /**
+     * Проверяет, помещаются ли данные в изображение.
+     *
+     * @param pixelsNeeded    Число пикселей, занимаемых данными.
+     * @param pixelsAvailable Число пикселей изображения.
+     * @throws IOException Если изображение слишком мало.
+     */
+    private static void checkCapacity(long pixelsNeeded, long pixelsAvailable) throws IOException {
+        if (pixelsNeeded > pixelsAvailable) {
             throw new IOException("Изображение слишком мало для встраивания текста");
         }
+    }
 
-        int textIndex = 0;
+    /**
+     * Встраивает заголовок и полезную нагрузку с начала растра и заполняет остаток
+     * согласно {@link EmbedOptions#getTailFill()}.
+     * Для больших изображений работа распределяется по ядрам через {@link ParallelLSB}.
+     *
+     * @param raster  Растр изображения.
+     * @param header  Байты, встраиваемые по схеме {@link BitLayout#DEFAULT}.
+     * @param options Параметры встраивания.
+     * @param payload Полезная нагрузка.
+     */
+    static void embedParts(LSBRaster raster, byte[] header, EmbedOptions options, byte[] payload) {
+        ParallelLSB parallel = ParallelLSB.common();
+        BitLayout layout = options.getLayout();
+        long pixel = header.length * 8L;
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.EMBED)) {
+            raster.embedBytes(0, header, 0, header.length);
+            parallel.embedBytes(raster, layout, pixel, payload, 0, payload.length);
+            pixel += layout.pixelsFor(payload.length * 8L);
+            timer.pixels(pixel).bytes(header.length + (long) payload.length);
+        }
+        options.getTailFill().apply(parallel, raster, layout, pixel);
+    }
 
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                int rgb = image.getRGB(x, y);
-                int blue = rgb & 0xFF;
+    /**
+     * Встраивает контейнер, считывая полезную нагрузку из канала порциями, и заполняет остаток
+     * согласно {@link EmbedOptions#getTailFill()}.
+     * <p>
+     * Если задан метод сжатия, сначала сжимается пробная порция в {@value #PROBE_BYTES} байтов:
+     * если она не уменьшается, данные встраиваются без сжатия. Иначе данные сжимаются потоком
+     * прямо в растр. Контрольная сумма вычисляется по ходу записи, поэтому заголовок
+     * записывается после данных.
+     * </p>
+     *
+     * @param raster  Растр изображения.
+     * @param options Параметры встраивания.
+     * @param payload Источник полезной нагрузки.
+     * @param length  Число байтов полезной нагрузки.
+     * @return Индекс пикселя, следующего за контейнером.
+     * @throws IOException Если произошла ошибка чтения, если канал короче {@code length}
+     *                     или если данные не помещаются в изображение.
+     */
+    static long embedContainer(LSBRaster raster, EmbedOptions options, ReadableByteChannel payload, int length) throws IOException {
+        try (StegoEngine engine = StegoEngine.pooled()) {
+            return embedContainer(engine, raster, options, payload, length);
+        }
+    }
 
-                if (textIndex < textBytes.length * 8) {
-                    int bitToEmbed = (textBytes[textIndex / 8] >> (7 - (textIndex % 8))) & 1;
-                    blue = (blue & ~1) | bitToEmbed;
-                    textIndex++;
+    /**
+     * Встраивает контейнер (см. {@link #embedContainer(LSBRaster, EmbedOptions, ReadableByteChannel, int)}),
+     * используя рабочие буферы контекста.
+     *
+     * @param engine  Контекст с рабочими буферами.
+     * @param raster  Растр изображения.
+     * @param options Параметры встраивания.
+     * @param payload Источник полезной нагрузки.
+     * @param length  Число байтов полезной нагрузки.
+     * @return Индекс пикселя, следующего за контейнером.
+     * @throws IOException Если произошла ошибка чтения, если канал короче {@code length}
+     *                     или если данные не помещаются в изображение.
+     */
+    static long embedContainer(StegoEngine engine, LSBRaster raster, EmbedOptions options, ReadableByteChannel payload,
+                               int length) throws IOException {
+        BitLayout layout = options.getLayout();
+        PayloadCodec codec = options.getCodec();
+        Progress progress = raster.getProgress();
+        progress.begin(options.getTailFill().isEnabled() ? raster.pixelCount()
+                : PayloadHeader.SIZE * 8L + layout.pixelsFor(length * 8L));
+        InputStream in = Channels.newInputStream(payload);
+        long start = PayloadHeader.SIZE * 8L;
+        byte[][] rows = engine.rows(layout.channelCount(), raster.getWidth());
+        LSBOutputStream out = new LSBOutputStream(raster, layout, start,
+                engine.chunk(LSBOutputStream.bufferSize(raster, layout, start)), rows);
+        byte[] buffer = engine.copyBuffer();
+        int flags = 0;
+        long copied = 0;
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.EMBED)) {
+            if (codec != null && length > 0) {
+                int probe = in.readNBytes(buffer, 0, Math.min(length, PROBE_BYTES));
+                copied = probe;
+                if (copied < Math.min(length, PROBE_BYTES)) {
+                    throw new EOFException("Данные закончились раньше заявленной длины " + length);
+                }
+                if (compresses(codec, buffer, probe)) {
+                    flags = codec.id();
+                    // Закрытие кодера завершает сжатие и встраивает последнюю порцию.
+                    try (OutputStream encoder = codec.encoder(out)) {
+                        encoder.write(buffer, 0, probe);
+                        copied += copy(in, encoder, length - copied, buffer);
+                    }
+                } else {
+                    out.write(buffer, 0, probe);
                 }
-                else {
-                    blue = (blue & ~1) | random.nextInt(2); // Set LSB to 0 or 1 randomly
+            }
+            if (flags == 0) {
+                copied += copy(in, out, length - copied, buffer);
+                out.close();
+            }
+            if (copied < length) {
+                throw new EOFException("Данные закончились раньше заявленной длины " + length);
+            }
+            PayloadHeader header = new PayloadHeader(PayloadHeader.VERSION, flags, layout, (int) out.getCount(), out.getChecksum());
+            raster.embedBytes(0, header.toBytes(), 0, PayloadHeader.SIZE);
+            timer.pixels(out.getEndPixel()).bytes(copied);
+        }
+        options.getTailFill().apply(ParallelLSB.common(), raster, layout, out.getEndPixel(), rows);
+        progress.finish();
+        return out.getEndPixel();
+    }
+
+    /**
+     * Приводит контейнер в растре к новой полезной нагрузке, перезаписывая только отличающиеся биты.
+     * <p>
+     * Сравнение идет порциями по {@link ParallelLSB#chunkBytes(BitLayout)} байтов с шагом в
+     * наименьшее число байтов, занимающее целое число пикселей (для схемы с 6 битами на пиксель —
+     * 3 байта в 4 пикселях), чтобы перезаписываемые участки не задевали соседние данные.
+     * </p>
+     *
+     * @param engine  Контекст с рабочими буферами.
+     * @param raster  Растр изображения.
+     * @param options Параметры встраивания.
+     * @param payload Новая полезная нагрузка.
+     * @return Число перезаписанных пикселей.
+     * @throws IOException Если произошла ошибка при повторном встраивании.
+     */
+    static long patchContainer(StegoEngine engine, LSBRaster raster, EmbedOptions options, byte[] payload) throws IOException {
+        BitLayout layout = options.getLayout();
+        byte[] head = new byte[PayloadHeader.SIZE];
+        raster.extractBytes(0, head, 0, head.length);
+        PayloadHeader old = null;
+        if (PayloadHeader.hasMagic(head)) {
+            try {
+                old = PayloadHeader.parse(head);
+            } catch (IOException e) {
+                // Поврежденный заголовок: контейнер встраивается заново.
+            }
+        }
+        long start = PayloadHeader.SIZE * 8L;
+        if (old == null || old.getVersion() != PayloadHeader.VERSION || old.getCodecId() != 0
+                || options.getCodec() != null || !old.getLayout().equals(layout)
+                || old.getLength() * 8L > raster.capacityBits(layout, start)) {
+            long end = embedContainer(engine, raster, options, Channels.newChannel(new ByteArrayInputStream(payload)), payload.length);
+            return options.getTailFill().isEnabled() ? raster.pixelCount() : end;
+        }
+
+        long written = 0;
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.EMBED)) {
+            ParallelLSB parallel = ParallelLSB.common();
+            int bitsPerPixel = layout.bitsPerPixel();
+            // НОД(bitsPerPixel, 8) — наибольшая степень двойки, делящая bitsPerPixel, но не больше 8.
+            int unit = bitsPerPixel / Math.min(Integer.lowestOneBit(bitsPerPixel), 8);
+            int size = Math.min(ParallelLSB.chunkBytes(layout), Math.max(payload.length, 1));
+            byte[] current = engine.chunk(size);
+            for (int pos = 0; pos < payload.length; pos += size) {
+                int n = Math.min(size, payload.length - pos);
+                parallel.extractBytes(raster, layout, start + pos * 8L / bitsPerPixel, current, 0, n);
+                int i = 0;
+                while (i < n) {
+                    int mismatch = Arrays.mismatch(payload, pos + i, pos + n, current, i, n);
+                    if (mismatch < 0) {
+                        break;
+                    }
+                    int from = (i + mismatch) / unit * unit;
+                    int to = Math.min(from + unit, n);
+                    while (to < n && !Arrays.equals(payload, pos + to, pos + Math.min(to + unit, n),
+                            current, to, Math.min(to + unit, n))) {
+                        to = Math.min(to + unit, n);
+                    }
+                    raster.embedBytes(layout, start + (pos + from) * 8L / bitsPerPixel, payload, pos + from, to - from);
+                    written += layout.pixelsFor((to - from) * 8L);
+                    i = to;
+                }
+            }
+
+            byte[] updated = PayloadHeader.of(payload, 0, layout).toBytes();
+            for (int b = 0; b < updated.length; b++) {
+                if (updated[b] != head[b]) {
+                    raster.embedBytes(b * 8L, updated, b, 1);
+                    written += 8;
                 }
+            }
+            timer.pixels(written).bytes(payload.length);
+        }
 
-                rgb = (rgb & 0xFFFFFF00) | blue;
-                image.setRGB(x, y, rgb);
+        long end = start + layout.pixelsFor(payload.length * 8L);
+        long oldEnd = start + layout.pixelsFor(old.getLength() * 8L);
+        if (oldEnd > end && options.getTailFill().isEnabled()) {
+            options.getTailFill().apply(raster, layout, end, oldEnd); // Не оставляем остаток прежних данных
+            written += oldEnd - end;
+        }
+        return written;
+    }
+
+    /**
+     * Проверяет, уменьшает ли метод сжатия размер пробной порции.
+     *
+     * @param codec  Метод сжатия.
+     * @param probe  Начало полезной нагрузки.
+     * @param length Число байтов в {@code probe}.
+     * @return {@code true}, если сжатые данные короче исходных.
+     * @throws IOException Если сжатие завершилось ошибкой.
+     */
+    static boolean compresses(PayloadCodec codec, byte[] probe, int length) throws IOException {
+        long[] size = new long[1];
+        OutputStream counter = new OutputStream() {
+            @Override
+            public void write(int b) {
+                size[0]++;
             }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                size[0] += len;
+            }
+        };
+        try (OutputStream encoder = codec.encoder(counter)) {
+            encoder.write(probe, 0, length);
         }
+        return size[0] < length;
+    }
 
-        ImageIO.write(image, "bmp", new File(outputPath));
+    /**
+     * Копирует не больше {@code limit} байтов.
+     *
+     * @param in     Источник.
+     * @param out    Приемник.
+     * @param limit  Максимальное число байтов.
+     * @param buffer Буфер копирования.
+     * @return Число скопированных байтов (меньше {@code limit}, если источник закончился).
+     * @throws IOException Если произошла ошибка чтения или записи.
+     */
+    static long copy(InputStream in, OutputStream out, long limit, byte[] buffer) throws IOException {
+        long copied = 0;
+        while (copied < limit) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, limit - copied));
+            if (n < 0) {
+                break;
+            }
+            out.write(buffer, 0, n);
+            copied += n;
+        }
+        return copied;
     }
-}
\ No newline at end of file
+}
@@ -1,73 +1,318 @@
 package com.lsb;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.io.InputStream;
+import java.io.FilterOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
 
 /**
  * Класс, предоставляющий функциональность для извлечения текста,
  * встроенного в изображение с помощью метода наименьшего значащего бита (LSB).
  * <p>
- * Предполагается, что текст был встроен в синий канал изображения в формате BMP.
+ * Носителем может быть изображение BMP или PNG. Текст в формате контейнера
+ * {@link PayloadHeader} извлекается по схеме размещения битов, записанной в заголовке
+ * (любые из каналов R, G, B и A); текст с разделителем ищется в синем канале.
  * </p>
+ * <p>Методы {@code extractData} записывают двоичные данные контейнера в поток порциями,
+ * не собирая их в один массив.</p>
  */
 public class ExtractText {
 
     /**
      * Извлекает текст из изображения, в которое он был встроен с помощью метода LSB.
      *
-     * <p>Метод считывает изображение в формате BMP, извлекает младшие биты синего канала
-     * каждого пикселя, объединяет их в байты и декодирует полученную
-     * последовательность байтов в строку, используя кодировку UTF-8.
-     * Извлечение продолжается до тех пор, пока не будет найден разделитель,
-     * указывающий на конец встроенного текста.</p>
+     * <p>Если изображение начинается с заголовка контейнера {@link PayloadHeader},
+     * текст извлекается по записанной длине с проверкой контрольной суммы, а разделитель
+     * не используется. Иначе метод извлекает младшие биты синего канала
+     * пикселей, объединяет их в байты и сравнивает поток байтов с разделителем,
+     * указывающим на конец встроенного текста. Извлечение прекращается сразу после
+     * найденного разделителя; в строку (UTF-8) декодируются только байты перед ним.</p>
      *
-     * @param imagePath Путь к файлу изображения в формате BMP, содержащему встроенный текст.
+     * @param imagePath Путь к файлу изображения (BMP или PNG), содержащему встроенный текст.
      * @param delimiter Разделитель, обозначающий конец встроенного текста.
      * @return Извлеченный текст, декодированный с использованием UTF-8.
      *         Если текст не найден или произошла ошибка, возвращается пустая строка.
-     * @throws IOException Если произошла ошибка при чтении файла изображения
-     *                     или если файл изображения не соответствует формату BMP.
+     * @throws IOException Если произошла ошибка при чтении файла изображения,
+     *                     если формат файла изображения не поддерживается
+     *                     или если контейнер поврежден.
      * @see com.lsb.EmbedText#embedText(String, String, String, String)
      */
     public static String extractText(String imagePath, String delimiter) throws IOException {
-        BufferedImage image = ImageIO.read(new File(imagePath));
-        if (image == null) {
-            throw new IOException("Не удалось загрузить изображение"); // Кидаем исключение, если изображение не загрузилось.
+        return extractText(imagePath, delimiter, Progress.NONE);
+    }
+
+    /**
+     * Извлекает текст (см. {@link #extractText(String, String)}) с отслеживанием хода выполнения
+     * и отменой. Объем работы — пиксели контейнера, а для текста с разделителем — все пиксели
+     * изображения (поиск может закончиться раньше).
+     *
+     * @param imagePath Путь к файлу изображения (BMP или PNG), содержащему встроенный текст.
+     * @param delimiter Разделитель, обозначающий конец встроенного текста.
+     * @param progress  Отслеживание хода выполнения или {@link Progress#NONE}.
+     * @return Извлеченный текст или пустая строка, если текст не найден.
+     * @throws IOException Если произошла ошибка при чтении файла изображения или если контейнер поврежден.
+     * @throws java.util.concurrent.CancellationException Если операция отменена.
+     */
+    public static String extractText(String imagePath, String delimiter, Progress progress) throws IOException {
+        try (LSBRaster raster = LSBRaster.read(Path.of(imagePath))) {
+            raster.setProgress(progress);
+            return extractText(raster, delimiter);
+        }
+    }
+
+    /**
+     * Извлекает текст из растра (см. {@link #extractText(String, String)}).
+     * Ход выполнения отмечается в {@link LSBRaster#getProgress()}.
+     *
+     * @param raster    Растр изображения.
+     * @param delimiter Разделитель, обозначающий конец встроенного текста.
+     * @return Извлеченный текст или пустая строка, если текст не найден.
+     * @throws IOException Если контейнер поврежден.
+     */
+    static String extractText(LSBRaster raster, String delimiter) throws IOException {
+        byte[] head = new byte[PayloadHeader.SIZE];
+        try (InputStream in = new LSBInputStream(raster, 0)) {
+            if (in.readNBytes(head, 0, head.length) == head.length && PayloadHeader.hasMagic(head)) {
+                ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                try (StegoEngine engine = StegoEngine.pooled()) {
+                    readContainer(engine, raster, PayloadHeader.parse(head), Channels.newChannel(payload));
+                }
+                return payload.toString(StandardCharsets.UTF_8);
+            }
         }
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate((image.getWidth() * image.getHeight()) / 8);
-        byte currentByte = 0;
-        int bitIndex = 0;
-
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                int rgb = image.getRGB(x, y);
-                int blue = rgb & 0xff;
-                int bit = blue & 1;
-
-                currentByte = (byte) ((currentByte << 1) | bit);
-                bitIndex++;
-                if (bitIndex == 8) {
-                    byteBuffer.put(currentByte);
-                    currentByte = 0;
-                    bitIndex = 0;
+        DelimiterMatcher matcher = new DelimiterMatcher(delimiter.getBytes(StandardCharsets.UTF_8));
+        if (matcher.length() == 0) {
+            return "";
+        }
+        raster.getProgress().begin(raster.pixelCount());
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+        // Биты читаются по мере необходимости; чтение прекращается на первом вхождении разделителя.
+        try (InputStream in = new LSBInputStream(raster, 0)) {
+            int b;
+            while ((b = in.read()) != -1) {
+                payload.write(b);
+                if (matcher.accept((byte) b)) {
+                    raster.getProgress().finish();
+                    return new String(payload.toByteArray(), 0, payload.size() - matcher.length(), StandardCharsets.UTF_8);
                 }
             }
         }
-        byteBuffer.flip();
-        byte[] bytes = Arrays.copyOf(byteBuffer.array(), byteBuffer.limit());
-        String extractedText = new String(bytes, StandardCharsets.UTF_8);
-
-        int delimiterIndex = extractedText.indexOf(delimiter);
-        if (delimiterIndex != -1) {
-            return extractedText.substring(0, delimiterIndex);
-        } else {
-            return ""; // Возвращаем пустую строку, если разделитель не найден.
+        return ""; // Возвращаем пустую строку, если разделитель не найден.
+    }
+
+    /**
+     * Извлекает текст, встроенный в формате контейнера с заголовком {@link PayloadHeader}.
+     *
+     * <p>Считывается ровно столько пикселей, сколько занимают заголовок и полезная нагрузка;
+     * схема размещения битов берется из заголовка.</p>
+     *
+     * @param imagePath Путь к файлу изображения (BMP или PNG), содержащему встроенный текст.
+     * @return Извлеченный текст, декодированный с использованием UTF-8.
+     * @throws IOException Если произошла ошибка при чтении файла изображения, если заголовок
+     *                     не найден или если длина и контрольная сумма не совпадают.
+     * @see com.lsb.EmbedText#embedText(String, String, String)
+     */
+    public static String extractText(String imagePath) throws IOException {
+        return extractText(imagePath, (byte[]) null);
+    }
+
+    /**
+     * Извлекает текст контейнера, рассеянного по изображению с ключом
+     * (см. {@link EmbedOptions#withKey(byte[])}).
+     *
+     * @param imagePath Путь к файлу изображения, содержащему контейнер.
+     * @param key       Ключ, использованный при встраивании, или {@code null}, если пиксели
+     *                  использовались по порядку.
+     * @return Извлеченный текст, декодированный с использованием UTF-8.
+     * @throws IOException Если произошла ошибка при чтении файла изображения, если заголовок
+     *                     не найден (в том числе при неверном ключе) или если длина и контрольная
+     *                     сумма не совпадают.
+     */
+    public static String extractText(String imagePath, byte[] key) throws IOException {
+        try (StegoEngine engine = StegoEngine.pooled()) {
+            return engine.extractText(imagePath, key);
+        }
+    }
+
+    /**
+     * Извлекает двоичные данные контейнера в поток.
+     * <p>
+     * Данные записываются порциями по мере извлечения, а контрольная сумма проверяется
+     * в конце; если она не совпадает, в поток уже могут быть записаны поврежденные данные.
+     * Поток не закрывается.
+     * </p>
+     *
+     * @param imagePath Путь к файлу изображения, содержащему контейнер.
+     * @param out       Приемник данных.
+     * @return Число извлеченных байтов.
+     * @throws IOException Если произошла ошибка чтения или записи, если заголовок
+     *                     не найден или если длина и контрольная сумма не совпадают.
+     * @see com.lsb.EmbedText#embedData(String, InputStream, long, String, EmbedOptions)
+     */
+    public static long extractData(String imagePath, OutputStream out) throws IOException {
+        return extractData(imagePath, Channels.newChannel(out));
+    }
+
+    /**
+     * Извлекает двоичные данные контейнера в канал (см. {@link #extractData(String, OutputStream)}).
+     *
+     * @param imagePath Путь к файлу изображения, содержащему контейнер.
+     * @param out       Приемник данных; не закрывается.
+     * @return Число извлеченных байтов.
+     * @throws IOException Если произошла ошибка чтения или записи, если заголовок
+     *                     не найден или если длина и контрольная сумма не совпадают.
+     */
+    public static long extractData(String imagePath, WritableByteChannel out) throws IOException {
+        return extractData(imagePath, out, Progress.NONE);
+    }
+
+    /**
+     * Извлекает двоичные данные контейнера в канал с отслеживанием хода выполнения и отменой.
+     *
+     * @param imagePath Путь к файлу изображения, содержащему контейнер.
+     * @param out       Приемник данных; не закрывается.
+     * @param progress  Отслеживание хода выполнения или {@link Progress#NONE}.
+     * @return Число извлеченных байтов.
+     * @throws IOException Если произошла ошибка чтения или записи, если заголовок
+     *                     не найден или если длина и контрольная сумма не совпадают.
+     * @throws java.util.concurrent.CancellationException Если операция отменена.
+     */
+    public static long extractData(String imagePath, WritableByteChannel out, Progress progress) throws IOException {
+        return extractData(imagePath, out, progress, null);
+    }
+
+    /**
+     * Извлекает двоичные данные контейнера, рассеянного по изображению с ключом.
+     * Считываются только пиксели, занятые заголовком и полезной нагрузкой.
+     *
+     * @param imagePath Путь к файлу изображения, содержащему контейнер.
+     * @param out       Приемник данных; не закрывается.
+     * @param progress  Отслеживание хода выполнения или {@link Progress#NONE}.
+     * @param key       Ключ, использованный при встраивании, или {@code null}, если пиксели
+     *                  использовались по порядку.
+     * @return Число извлеченных байтов.
+     * @throws IOException Если произошла ошибка чтения или записи, если заголовок
+     *                     не найден (в том числе при неверном ключе) или если длина и контрольная
+     *                     сумма не совпадают.
+     * @throws java.util.concurrent.CancellationException Если операция отменена.
+     */
+    public static long extractData(String imagePath, WritableByteChannel out, Progress progress, byte[] key) throws IOException {
+        try (StegoEngine engine = StegoEngine.pooled()) {
+            return engine.extractData(imagePath, out, progress, key);
+        }
+    }
+
+    /**
+     * Извлекает двоичные данные контейнера из растра в канал.
+     * Ход выполнения отмечается в {@link LSBRaster#getProgress()}.
+     *
+     * @param raster Растр изображения.
+     * @param out    Приемник данных; не закрывается.
+     * @return Число извлеченных байтов.
+     * @throws IOException Если произошла ошибка записи, если заголовок
+     *                     не найден или если длина и контрольная сумма не совпадают.
+     */
+    static long extractData(LSBRaster raster, WritableByteChannel out) throws IOException {
+        try (StegoEngine engine = StegoEngine.pooled()) {
+            return extractData(engine, raster, out);
+        }
+    }
+
+    /**
+     * Извлекает двоичные данные контейнера из растра, используя рабочие буферы контекста.
+     *
+     * @param engine Контекст с рабочими буферами.
+     * @param raster Растр изображения.
+     * @param out    Приемник данных; не закрывается.
+     * @return Число извлеченных байтов.
+     * @throws IOException Если произошла ошибка записи, если заголовок
+     *                     не найден или если длина и контрольная сумма не совпадают.
+     */
+    static long extractData(StegoEngine engine, LSBRaster raster, WritableByteChannel out) throws IOException {
+        byte[] head = new byte[PayloadHeader.SIZE];
+        byte[][] rows = engine.rows(BitLayout.DEFAULT.channelCount(), raster.getWidth());
+        raster.extractBytes(BitLayout.DEFAULT, 0, head, 0, (int) Math.min(head.length, raster.pixelCount() / 8), rows);
+        return readContainer(engine, raster, PayloadHeader.parse(head), out);
+    }
+
+    /**
+     * Считывает полезную нагрузку контейнера, расположенную сразу после заголовка,
+     * и записывает ее в канал порциями ({@link ParallelLSB#chunkBytes(BitLayout)} байтов).
+     * Каждая порция извлекается параллельно через {@link ParallelLSB}; сжатые данные
+     * распаковываются методом, указанным в заголовке.
+     *
+     * @param engine Контекст с рабочими буферами.
+     * @param raster Растр изображения.
+     * @param header Разобранный заголовок.
+     * @param target Приемник полезной нагрузки.
+     * @return Число байтов, записанных в {@code target} (после распаковки).
+     * @throws IOException Если данных меньше заявленного, если контрольная сумма не совпадает
+     *                     или если произошла ошибка записи.
+     */
+    private static long readContainer(StegoEngine engine, LSBRaster raster, PayloadHeader header, WritableByteChannel target) throws IOException {
+        long start = header.payloadStartPixel();
+        BitLayout layout = header.getLayout();
+        if ((long) header.getLength() * 8 > raster.capacityBits(layout, start)) {
+            throw new IOException("Длина встроенных данных превышает емкость изображения");
+        }
+        for (BitLayout.Channel channel : layout.getChannels()) {
+            if (!raster.hasChannel(channel)) {
+                throw new IOException("Изображение не содержит канал " + channel);
+            }
+        }
+        PayloadCodec codec = header.getCodecId() == 0 ? null : PayloadCodecs.forId(header.getCodecId());
+        ParallelLSB parallel = ParallelLSB.common();
+        Progress progress = raster.getProgress();
+        progress.begin(start + layout.pixelsFor(header.getLength() * 8L));
+        int size = Math.min(ParallelLSB.chunkBytes(layout), Math.max(header.getLength(), 1));
+        byte[] chunk = engine.chunk(size);
+        byte[][] rows = engine.rows(layout.channelCount(), raster.getWidth());
+        CRC32 crc = new CRC32();
+        long[] written = new long[1];
+        // Подсчитывает байты, записанные в target (поле out — поток над ним); закрытие не закрывает канал.
+        OutputStream counted = new FilterOutputStream(Channels.newOutputStream(target)) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                written[0] += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        OutputStream sink = codec == null ? counted : codec.decoder(counted);
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.EXTRACT)) {
+            long pixel = start;
+            for (int remaining = header.getLength(); remaining > 0; ) {
+                int n = Math.min(size, remaining);
+                parallel.extractBytes(raster, layout, pixel, chunk, 0, n, rows);
+                crc.update(chunk, 0, n);
+                sink.write(chunk, 0, n);
+                pixel += layout.pixelsFor(n * 8L);
+                remaining -= n;
+            }
+            header.verify(header.getLength(), (int) crc.getValue());
+            // Закрытие декодера завершает распаковку и проверяет целостность сжатого потока.
+            sink.close();
+            timer.pixels(pixel).bytes(written[0]);
         }
+        progress.finish();
+        return written[0];
     }
-}
\ No newline at end of file
+}
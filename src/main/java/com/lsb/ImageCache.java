@@ -0,0 +1,285 @@
+package com.lsb;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Кэш декодированных изображений и производных от них данных (битовых плоскостей, изображений
+ * для отображения), общий для всех окон и операций приложения.
+ * <p>
+ * Записи привязаны к пути, размеру и времени изменения файла: после перезаписи файла старые
+ * записи больше не находятся и вытесняются. Объем кэша ограничен суммарным размером значений
+ * в байтах; давно не использованные записи вытесняются, но удерживаются мягкими ссылками,
+ * пока сборщику мусора не понадобится память. Одновременные запросы одной записи выполняют
+ * загрузку один раз: остальные потоки ждут ее результата.
+ * </p>
+ */
+public final class ImageCache {
+
+    /** Объем кэша по умолчанию: четверть кучи, но не больше 1 ГиБ. */
+    public static final long DEFAULT_MAX_BYTES = Math.min(Runtime.getRuntime().maxMemory() / 4, 1L << 30);
+
+    private static final ImageCache COMMON = new ImageCache(DEFAULT_MAX_BYTES);
+
+    /** Загруженные значения. */
+    private final LruCache<Key, Entry> entries;
+    /** Выполняющиеся загрузки. */
+    private final ConcurrentHashMap<Key, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * Загрузчик значения по пути к файлу.
+     *
+     * @param <T> Тип значения.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        /**
+         * @param path Путь к файлу.
+         * @return Значение (не {@code null}).
+         * @throws IOException Если значение не удалось загрузить.
+         */
+        T load(Path path) throws IOException;
+    }
+
+    /**
+     * Создает кэш.
+     *
+     * @param maxBytes Наибольший суммарный объем значений в байтах.
+     */
+    public ImageCache(long maxBytes) {
+        this.entries = new LruCache<>(maxBytes, entry -> entry.bytes, true);
+    }
+
+    /**
+     * @return Общий кэш приложения.
+     */
+    public static ImageCache common() {
+        return COMMON;
+    }
+
+    /**
+     * Возвращает декодированное изображение, декодируя файл только при первом обращении.
+     * Изображение общее для всех вызывающих и не должно изменяться.
+     *
+     * @param path Путь к файлу изображения.
+     * @return Изображение.
+     * @throws IOException Если файл не удалось прочитать или декодировать.
+     */
+    public BufferedImage image(Path path) throws IOException {
+        return get(path, "image", p -> {
+            BufferedImage image = ImageIO.read(p.toFile());
+            if (image == null) {
+                throw new IOException("Не удалось загрузить изображение");
+            }
+            return image;
+        }, ImageCache::sizeOf);
+    }
+
+    /**
+     * Возвращает битовую плоскость канала изображения.
+     *
+     * @param path    Путь к файлу изображения.
+     * @param channel Канал.
+     * @param plane   Номер бита (0 — младший, не больше 7).
+     * @return Битовая плоскость.
+     * @throws IOException Если файл не удалось прочитать.
+     */
+    public LSBPlane plane(Path path, BitLayout.Channel channel, int plane) throws IOException {
+        return plane(path, channel, plane, Progress.NONE);
+    }
+
+    /**
+     * Возвращает битовую плоскость канала изображения, отслеживая ход ее построения.
+     * Если плоскость уже есть в кэше или строится другим потоком, {@code progress} не используется.
+     *
+     * @param path     Путь к файлу изображения.
+     * @param channel  Канал.
+     * @param plane    Номер бита (0 — младший, не больше 7).
+     * @param progress Отслеживание хода выполнения или {@link Progress#NONE}.
+     * @return Битовая плоскость.
+     * @throws IOException Если файл не удалось прочитать.
+     * @throws java.util.concurrent.CancellationException Если построение отменено.
+     */
+    public LSBPlane plane(Path path, BitLayout.Channel channel, int plane, Progress progress) throws IOException {
+        return get(path, "plane:" + channel + ":" + plane, p -> {
+            try (LSBRaster raster = raster(p)) {
+                raster.setProgress(progress);
+                progress.begin(raster.pixelCount());
+                LSBPlane result = LSBPlane.of(raster, channel, plane);
+                progress.finish();
+                return result;
+            }
+        }, LSBPlane::sizeInBytes);
+    }
+
+    /**
+     * Открывает растр изображения для чтения младших битов без повторного декодирования.
+     * <p>
+     * Если изображение уже есть в кэше, растр строится над ним; файлы BMP поддерживаемого формата
+     * отображаются в память; остальные изображения декодируются и помещаются в кэш.
+     * Растр разделяет пиксели с кэшем, поэтому записывать в него нельзя.
+     * </p>
+     *
+     * @param path Путь к файлу изображения.
+     * @return Растр; должен быть закрыт после использования.
+     * @throws IOException Если файл не удалось прочитать.
+     */
+    public LSBRaster raster(Path path) throws IOException {
+        Entry cached = entries.get(Key.of(path, "image"));
+        if (cached != null) {
+            return LSBRaster.wrap((BufferedImage) cached.value);
+        }
+        if (BmpRaster.isSupported(path)) {
+            return BmpRaster.open(path, false);
+        }
+        return LSBRaster.wrap(image(path));
+    }
+
+    /**
+     * Возвращает значение, производное от файла, загружая его при первом обращении.
+     *
+     * @param path    Путь к файлу.
+     * @param kind    Вид значения; разные виды одного файла хранятся независимо.
+     * @param loader  Загрузчик.
+     * @param weigher Размер значения в байтах.
+     * @param <T>     Тип значения.
+     * @return Значение.
+     * @throws IOException Если файл не найден или загрузчик завершился ошибкой.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Path path, String kind, Loader<T> loader, ToLongFunction<? super T> weigher) throws IOException {
+        Key key = Key.of(path, kind);
+        Entry cached = entries.get(key);
+        if (cached != null) {
+            return (T) cached.value;
+        }
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> running = loading.putIfAbsent(key, own);
+        if (running != null) {
+            try {
+                return (T) running.join();
+            } catch (CompletionException e) {
+                throw rethrow(e.getCause());
+            }
+        }
+        try {
+            cached = entries.get(key); // Загрузка могла завершиться между проверками
+            T value = cached != null ? (T) cached.value : Objects.requireNonNull(loader.load(key.path));
+            if (cached == null) {
+                entries.put(key, new Entry(value, weigher.applyAsLong(value)));
+            }
+            own.complete(value);
+            return value;
+        } catch (IOException | RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, own);
+        }
+    }
+
+    /**
+     * Удаляет все записи файла независимо от его размера и времени изменения.
+     *
+     * @param path Путь к файлу.
+     */
+    public void invalidate(Path path) {
+        Path normalized = path.toAbsolutePath().normalize();
+        entries.removeIf(key -> key.path.equals(normalized));
+    }
+
+    /** Удаляет все записи. */
+    public void clear() {
+        entries.clear();
+    }
+
+    /** @return Суммарный объем записей в байтах (без вытесненных в мягкие ссылки). */
+    public long sizeInBytes() {
+        return entries.weight();
+    }
+
+    /**
+     * Оценивает объем пикселей изображения.
+     *
+     * @param image Изображение.
+     * @return Размер буфера данных в байтах.
+     */
+    static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    private static IOException rethrow(Throwable cause) {
+        if (cause instanceof IOException) {
+            return new IOException(cause.getMessage(), cause);
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Значение и его размер.
+     */
+    private static final class Entry {
+        final Object value;
+        final long bytes;
+
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Ключ записи: файл в определенном состоянии и вид значения.
+     */
+    private static final class Key {
+        final Path path;
+        final long size;
+        final FileTime modified;
+        final String kind;
+
+        private Key(Path path, long size, FileTime modified, String kind) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.kind = kind;
+        }
+
+        static Key of(Path path, String kind) throws IOException {
+            Path normalized = path.toAbsolutePath().normalize();
+            BasicFileAttributes attributes = Files.readAttributes(normalized, BasicFileAttributes.class);
+            return new Key(normalized, attributes.size(), attributes.lastModifiedTime(), kind);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return size == other.size && modified.equals(other.modified) && path.equals(other.path) && kind.equals(other.kind);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, modified, kind);
+        }
+    }
+}
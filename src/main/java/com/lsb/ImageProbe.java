@@ -0,0 +1,345 @@
+package com.lsb;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Сведения об изображении, полученные без декодирования пикселей: размеры, формат,
+ * емкость при разных схемах размещения и заголовок встроенного контейнера.
+ * <p>
+ * Размеры берутся из заголовка файла ({@link BmpHeader}, {@link PngHeader}, для прочих
+ * форматов — из метаданных {@link ImageReader}). Заголовок контейнера {@link PayloadHeader}
+ * занимает первые {@code PayloadHeader.SIZE * 8} пикселей, поэтому для его поиска
+ * читаются только первые строки: у BMP — напрямую из файла, у PNG — распаковкой начала
+ * данных через {@link PngRowReader}, у прочих форматов — чтением области через
+ * {@link ImageReadParam#setSourceRegion(Rectangle)}. Контейнеры, рассеянные ключом
+ * ({@link PixelPermutation}), без ключа не обнаруживаются.
+ * </p>
+ * <p>
+ * Используется для планирования пакетной обработки ({@link ShardedPayload#capacity(Path, BitLayout)}),
+ * в сервисе ({@code /capacity}, {@code /probe}), в подкоманде {@code probe} пакетного режима
+ * и в интерфейсе, чтобы не загружать изображение целиком.
+ * </p>
+ */
+public final class ImageProbe {
+
+    /** Схемы, емкость которых приводится в {@link #toJson()}. */
+    static final List<BitLayout> COMMON_LAYOUTS = List.of(
+            BitLayout.DEFAULT, BitLayout.parse("rgb:1"), BitLayout.parse("rgb:2"), BitLayout.parse("rgb:4"));
+    /** Схемы с альфа-каналом, емкость которых приводится в {@link #toJson()} для изображений с альфа-каналом. */
+    static final List<BitLayout> ALPHA_LAYOUTS = List.of(BitLayout.parse("rgba:1"), BitLayout.parse("rgba:2"));
+
+    /** Формат файла в нижнем регистре ({@code bmp}, {@code png} и т. д.). */
+    private final String format;
+    private final int width;
+    private final int height;
+    /** Бит на пиксель в файле. */
+    private final int bitsPerPixel;
+    private final boolean alpha;
+    /** Заголовок контейнера или {@code null}. */
+    private final PayloadHeader payloadHeader;
+
+    private ImageProbe(String format, int width, int height, int bitsPerPixel, boolean alpha, PayloadHeader payloadHeader) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.bitsPerPixel = bitsPerPixel;
+        this.alpha = alpha;
+        this.payloadHeader = payloadHeader != null
+                && (long) payloadHeader.getLength() * 8 <= capacityBits(payloadHeader.getLayout(), payloadHeader.payloadStartPixel())
+                ? payloadHeader : null;
+    }
+
+    /**
+     * Исследует файл изображения.
+     *
+     * @param path Путь к файлу.
+     * @return Сведения об изображении.
+     * @throws IOException Если файл не удалось прочитать или формат не распознан.
+     */
+    public static ImageProbe probe(Path path) throws IOException {
+        BmpHeader bmp = BmpHeader.read(path);
+        if (bmp != null && bmp.isDirectAccessSupported()) {
+            try (BmpRaster raster = BmpRaster.open(path, false)) {
+                return of(bmp, raster);
+            }
+        }
+        PngHeader png = PngHeader.read(path);
+        if (png != null && png.isStreamingSupported()) {
+            try (PngRowReader reader = PngRowReader.open(path)) {
+                return of(reader);
+            }
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            return of(in);
+        }
+    }
+
+    /**
+     * Исследует изображение, находящееся в памяти.
+     *
+     * @param data Массив с содержимым файла.
+     * @param off  Смещение начала файла.
+     * @param len  Длина файла.
+     * @return Сведения об изображении.
+     * @throws IOException Если данные повреждены или формат не распознан.
+     */
+    public static ImageProbe probe(byte[] data, int off, int len) throws IOException {
+        ByteBuffer file = ByteBuffer.wrap(data, off, len);
+        BmpHeader bmp = BmpHeader.parse(file);
+        if (bmp != null && bmp.isDirectAccessSupported()) {
+            return of(bmp, BmpRaster.wrap(file, false));
+        }
+        PngHeader png = PngHeader.parse(file);
+        if (png != null && png.isStreamingSupported()) {
+            try (PngRowReader reader = new PngRowReader(new ByteArrayInputStream(data, off, len))) {
+                return of(reader);
+            }
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data, off, len))) {
+            return of(in);
+        }
+    }
+
+    private static ImageProbe of(BmpHeader header, BmpRaster raster) {
+        return new ImageProbe("bmp", header.getWidth(), header.getHeight(), header.getBitsPerPixel(), false,
+                container(raster));
+    }
+
+    private static ImageProbe of(PngRowReader reader) throws IOException {
+        PngHeader header = reader.getHeader();
+        return new ImageProbe("png", header.getWidth(), header.getHeight(), header.getBitsPerPixel(), header.hasAlpha(),
+                container(head(reader, PayloadHeader.SIZE * 8L)));
+    }
+
+    private static ImageProbe of(ImageInputStream in) throws IOException {
+        ImageReader reader = reader(in);
+        try {
+            reader.setInput(in, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            ImageTypeSpecifier type = types.hasNext() ? types.next() : null;
+            BufferedImage head = head(reader, PayloadHeader.SIZE * 8L);
+            return new ImageProbe(reader.getFormatName().toLowerCase(Locale.ROOT), width, height,
+                    type != null ? type.getColorModel().getPixelSize() : head.getColorModel().getPixelSize(),
+                    head.getColorModel().hasAlpha(), container(LSBRaster.wrap(head)));
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Читает начало полезной нагрузки контейнера, так же как {@link #probe(Path)}, декодируя только
+     * первые строки изображения. Используется {@link ShardedPayload}, чтобы прочитать заголовки частей,
+     * не извлекая контейнеры целиком.
+     *
+     * @param path  Путь к файлу.
+     * @param count Число байтов.
+     * @return Первые {@code count} байтов полезной нагрузки или {@code null}, если контейнер не найден,
+     *         сжат (начало данных доступно только после распаковки) или короче {@code count}.
+     * @throws IOException Если файл не удалось прочитать или формат не распознан.
+     */
+    static byte[] payloadPrefix(Path path, int count) throws IOException {
+        // Схема использует не меньше одного бита на пиксель, поэтому начало данных лежит
+        // в первых (SIZE + count) * 8 пикселях при любой схеме.
+        long pixels = (PayloadHeader.SIZE + (long) count) * 8;
+        BmpHeader bmp = BmpHeader.read(path);
+        if (bmp != null && bmp.isDirectAccessSupported()) {
+            try (BmpRaster raster = BmpRaster.open(path, false)) {
+                return payloadPrefix(raster, count);
+            }
+        }
+        PngHeader png = PngHeader.read(path);
+        if (png != null && png.isStreamingSupported()) {
+            try (PngRowReader reader = PngRowReader.open(path)) {
+                return payloadPrefix(head(reader, pixels), count);
+            }
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            ImageReader reader = reader(in);
+            try {
+                reader.setInput(in, true, true);
+                return payloadPrefix(LSBRaster.wrap(head(reader, pixels)), count);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static byte[] payloadPrefix(LSBRaster raster, int count) {
+        PayloadHeader header = container(raster);
+        if (header == null || header.getCodecId() != 0 || header.getLength() < count
+                || header.payloadStartPixel() + header.getLayout().pixelsFor(count * 8L) > raster.pixelCount()) {
+            return null;
+        }
+        byte[] prefix = new byte[count];
+        raster.extractBytes(header.getLayout(), header.payloadStartPixel(), prefix, 0, count);
+        return prefix;
+    }
+
+    /**
+     * @return Декодер, распознающий формат потока.
+     * @throws IOException Если формат не распознан.
+     */
+    private static ImageReader reader(ImageInputStream in) throws IOException {
+        Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+        if (readers == null || !readers.hasNext()) {
+            throw new IOException("Не удалось загрузить изображение");
+        }
+        return readers.next();
+    }
+
+    /**
+     * Распаковывает первые строки PNG, содержащие {@code pixels} пикселей.
+     */
+    private static LSBRaster head(PngRowReader reader, long pixels) throws IOException {
+        PngHeader header = reader.getHeader();
+        int rows = rows(header.getWidth(), header.getHeight(), pixels);
+        byte[] data = new byte[rows * reader.getRowBytes()];
+        reader.readRows(data, 0, rows);
+        return reader.raster(data, rows);
+    }
+
+    /**
+     * Декодирует область из первых строк, содержащих {@code pixels} пикселей.
+     */
+    private static BufferedImage head(ImageReader reader, long pixels) throws IOException {
+        int width = reader.getWidth(0);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, 0, width, rows(width, reader.getHeight(0), pixels)));
+        return reader.read(0, param);
+    }
+
+    /**
+     * @return Число первых строк, содержащих {@code pixels} пикселей (не больше высоты изображения).
+     */
+    private static int rows(int width, int height, long pixels) {
+        return (int) Math.min(height, (pixels + width - 1) / width);
+    }
+
+    /**
+     * Читает заголовок контейнера из первых пикселей.
+     *
+     * @return Заголовок или {@code null}, если сигнатура не найдена или заголовок некорректен.
+     */
+    private static PayloadHeader container(LSBRaster raster) {
+        byte[] head = new byte[PayloadHeader.SIZE];
+        raster.extractBytes(BitLayout.DEFAULT, 0, head, 0, (int) Math.min(head.length, raster.pixelCount() / 8));
+        if (!PayloadHeader.hasMagic(head)) {
+            return null;
+        }
+        try {
+            return PayloadHeader.parse(head);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** @return Формат файла в нижнем регистре. */
+    public String getFormat() {
+        return format;
+    }
+
+    /** @return Ширина изображения. */
+    public int getWidth() {
+        return width;
+    }
+
+    /** @return Высота изображения. */
+    public int getHeight() {
+        return height;
+    }
+
+    /** @return Бит на пиксель в файле. */
+    public int getBitsPerPixel() {
+        return bitsPerPixel;
+    }
+
+    /** @return {@code true}, если изображение содержит альфа-канал, доступный для встраивания. */
+    public boolean hasAlpha() {
+        return alpha;
+    }
+
+    /** @return Общее число пикселей. */
+    public long pixelCount() {
+        return (long) width * height;
+    }
+
+    /**
+     * Вычисляет емкость изображения в битах при заданной схеме, как {@link LSBRaster#capacityBits(BitLayout, long)}.
+     * Палитровые и полутоновые изображения встраиваются в RGB-копию ({@link LSBRaster#trueColor(BufferedImage)}),
+     * поэтому их емкость совпадает с емкостью RGB-изображения того же размера.
+     *
+     * @param layout     Схема размещения.
+     * @param startPixel Индекс первого используемого пикселя.
+     * @return Число битов или 0, если схема использует отсутствующий альфа-канал.
+     */
+    public long capacityBits(BitLayout layout, long startPixel) {
+        if (layout.usesAlpha() && !alpha) {
+            return 0;
+        }
+        return Math.max(0, pixelCount() - startPixel) * layout.bitsPerPixel();
+    }
+
+    /**
+     * Вычисляет, сколько байтов данных помещается в изображение вместе с заголовком контейнера.
+     *
+     * @param layout Схема размещения.
+     * @return Емкость в байтах.
+     */
+    public long capacityBytes(BitLayout layout) {
+        return capacityBits(layout, PayloadHeader.SIZE * 8L) / 8;
+    }
+
+    /**
+     * @return Заголовок встроенного контейнера или {@code null}, если изображение
+     *         не содержит контейнера (или он рассеян ключом).
+     */
+    public PayloadHeader getPayloadHeader() {
+        return payloadHeader;
+    }
+
+    /**
+     * Сериализует сведения в JSON: формат, размеры, емкость для распространенных схем
+     * и поля заголовка контейнера ({@code null}, если контейнер не найден).
+     *
+     * @return Объект JSON.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                "{\"format\":%s,\"width\":%d,\"height\":%d,\"bitsPerPixel\":%d,\"alpha\":%b,\"capacityBytes\":{",
+                BatchCli.json(format), width, height, bitsPerPixel, alpha));
+        String separator = "";
+        for (List<BitLayout> layouts : List.of(COMMON_LAYOUTS, ALPHA_LAYOUTS)) {
+            if (layouts == ALPHA_LAYOUTS && !alpha) {
+                continue;
+            }
+            for (BitLayout layout : layouts) {
+                sb.append(separator).append(BatchCli.json(layout.toString())).append(':').append(capacityBytes(layout));
+                separator = ",";
+            }
+        }
+        sb.append("},\"container\":");
+        if (payloadHeader == null) {
+            sb.append("null");
+        } else {
+            sb.append(String.format(Locale.ROOT, "{\"version\":%d,\"layout\":%s,\"codec\":%d,\"length\":%d}",
+                    payloadHeader.getVersion(), BatchCli.json(payloadHeader.getLayout().toString()),
+                    payloadHeader.getCodecId(), payloadHeader.getLength()));
+        }
+        return sb.append('}').toString();
+    }
+}
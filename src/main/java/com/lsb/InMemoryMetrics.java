@@ -0,0 +1,200 @@
+package com.lsb;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Реестр метрик в памяти: суммы по этапам и последние и наибольшие значения показателей.
+ * Снимок ({@link #snapshot()}) можно вывести в JSON, например в конце пакетной обработки
+ * или по запросу {@code GET /metrics} сервера.
+ */
+public final class InMemoryMetrics implements MetricsRegistry {
+
+    private final Map<Metrics.Phase, PhaseCounters> phases = new EnumMap<>(Metrics.Phase.class);
+    private final Map<String, GaugeCounters> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Создает пустой реестр.
+     */
+    public InMemoryMetrics() {
+        for (Metrics.Phase phase : Metrics.Phase.values()) {
+            phases.put(phase, new PhaseCounters());
+        }
+    }
+
+    @Override
+    public void recordPhase(Metrics.Phase phase, long nanos, long pixels, long bytes, long allocatedBytes) {
+        PhaseCounters c = phases.get(phase);
+        c.count.increment();
+        c.nanos.add(nanos);
+        c.maxNanos.accumulateAndGet(nanos, Math::max);
+        c.pixels.add(pixels);
+        c.bytes.add(bytes);
+        if (allocatedBytes >= 0) {
+            c.allocated.add(allocatedBytes);
+        }
+    }
+
+    @Override
+    public void recordGauge(String name, long value) {
+        GaugeCounters g = gauges.computeIfAbsent(name, k -> new GaugeCounters());
+        g.last.set(value);
+        g.max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Возвращает согласованные по каждому счетчику значения на текущий момент.
+     *
+     * @return Снимок метрик.
+     */
+    public Snapshot snapshot() {
+        Map<Metrics.Phase, PhaseStats> phaseStats = new EnumMap<>(Metrics.Phase.class);
+        phases.forEach((phase, c) -> phaseStats.put(phase, new PhaseStats(c.count.sum(), c.nanos.sum(),
+                c.maxNanos.get(), c.pixels.sum(), c.bytes.sum(), c.allocated.sum())));
+        Map<String, long[]> gaugeValues = new TreeMap<>();
+        gauges.forEach((name, g) -> gaugeValues.put(name, new long[]{g.last.get(), g.max.get()}));
+        return new Snapshot(phaseStats, gaugeValues);
+    }
+
+    private static final class PhaseCounters {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final LongAdder pixels = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder allocated = new LongAdder();
+    }
+
+    private static final class GaugeCounters {
+        final AtomicLong last = new AtomicLong();
+        final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    /**
+     * Суммы по одному этапу.
+     */
+    public static final class PhaseStats {
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long pixels;
+        private final long bytes;
+        private final long allocatedBytes;
+
+        private PhaseStats(long count, long totalNanos, long maxNanos, long pixels, long bytes, long allocatedBytes) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.pixels = pixels;
+            this.bytes = bytes;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        /** @return Число завершенных этапов. */
+        public long getCount() {
+            return count;
+        }
+
+        /** @return Суммарная длительность в наносекундах. */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /** @return Наибольшая длительность в наносекундах. */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /** @return Суммарное число обработанных пикселей. */
+        public long getPixels() {
+            return pixels;
+        }
+
+        /** @return Суммарное число обработанных байтов. */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /** @return Суммарный объем памяти, выделенной потоками этапов (там, где он измерялся). */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    /**
+     * Снимок метрик.
+     */
+    public static final class Snapshot {
+        private final Map<Metrics.Phase, PhaseStats> phases;
+        private final Map<String, long[]> gauges;
+
+        private Snapshot(Map<Metrics.Phase, PhaseStats> phases, Map<String, long[]> gauges) {
+            this.phases = phases;
+            this.gauges = gauges;
+        }
+
+        /**
+         * @param phase Этап.
+         * @return Суммы по этапу.
+         */
+        public PhaseStats getPhase(Metrics.Phase phase) {
+            return phases.get(phase);
+        }
+
+        /**
+         * @param name Имя показателя.
+         * @return Последнее значение или 0, если показатель не передавался.
+         */
+        public long getGauge(String name) {
+            long[] values = gauges.get(name);
+            return values == null ? 0 : values[0];
+        }
+
+        /**
+         * @param name Имя показателя.
+         * @return Наибольшее значение или 0, если показатель не передавался.
+         */
+        public long getGaugeMax(String name) {
+            long[] values = gauges.get(name);
+            return values == null ? 0 : values[1];
+        }
+
+        /**
+         * @return Снимок в формате JSON: этапы с ненулевым числом вызовов и показатели.
+         */
+        public String toJson() {
+            StringBuilder sb = new StringBuilder("{\"phases\":{");
+            boolean first = true;
+            for (Map.Entry<Metrics.Phase, PhaseStats> e : phases.entrySet()) {
+                PhaseStats s = e.getValue();
+                if (s.count == 0) {
+                    continue;
+                }
+                sb.append(first ? "" : ",").append(BatchCli.json(e.getKey().name().toLowerCase(Locale.ROOT)));
+                sb.append(String.format(Locale.ROOT,
+                        ":{\"count\":%d,\"totalMs\":%.3f,\"maxMs\":%.3f,\"pixels\":%d,\"bytes\":%d,\"allocatedBytes\":%d}",
+                        s.count, s.totalNanos / 1e6, s.maxNanos / 1e6, s.pixels, s.bytes, s.allocatedBytes));
+                first = false;
+            }
+            sb.append("},\"gauges\":{");
+            first = true;
+            for (Map.Entry<String, long[]> e : gauges.entrySet()) {
+                sb.append(first ? "" : ",").append(BatchCli.json(e.getKey()))
+                        .append(":{\"last\":").append(e.getValue()[0])
+                        .append(",\"max\":").append(e.getValue()[1]).append('}');
+                first = false;
+            }
+            return sb.append("}}").toString();
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.lsb;
+
+import java.io.InputStream;
+
+/**
+ * Поток байтов, последовательно извлекаемых из младших битов растра согласно {@link BitLayout}.
+ * <p>
+ * Пиксели считываются построчными блоками по мере чтения, поэтому затраты
+ * пропорциональны объему прочитанных данных, а не размеру изображения.
+ * Неполный последний байт (если число пикселей не кратно восьми) не возвращается.
+ * </p>
+ */
+public class LSBInputStream extends InputStream {
+
+    /** Источник битов. */
+    private final LSBRaster raster;
+    /** Схема размещения битов. */
+    private final BitLayout layout;
+    /** Буфер извлеченных байтов (около одной строки изображения). */
+    private final byte[] buffer;
+    /** Рабочие буферы значений каналов строки. */
+    private final byte[][] row;
+    /** Индекс следующего непрочитанного пикселя. */
+    private long pixel;
+    /** Число байтов, которые еще можно извлечь из растра. */
+    private long remaining;
+    /** Позиция чтения в {@link #buffer}. */
+    private int pos;
+    /** Число действительных байтов в {@link #buffer}. */
+    private int limit;
+
+    /**
+     * Создает поток, читающий младшие биты синего канала начиная с указанного пикселя.
+     *
+     * @param raster     Растр.
+     * @param startPixel Индекс первого пикселя.
+     */
+    public LSBInputStream(LSBRaster raster, long startPixel) {
+        this(raster, BitLayout.DEFAULT, startPixel);
+    }
+
+    /**
+     * Создает поток, читающий растр согласно схеме начиная с указанного пикселя.
+     *
+     * @param raster     Растр.
+     * @param layout     Схема размещения битов.
+     * @param startPixel Индекс первого пикселя.
+     */
+    public LSBInputStream(LSBRaster raster, BitLayout layout, long startPixel) {
+        this.raster = raster;
+        this.layout = layout;
+        this.pixel = startPixel;
+        this.remaining = raster.capacityBits(layout, startPixel) / 8;
+        // Размер буфера кратен числу битов на пиксель, чтобы каждая порция начиналась с целого пикселя.
+        int bpp = layout.bitsPerPixel();
+        int rowBytes = (int) Math.min(Integer.MAX_VALUE, (long) raster.getWidth() * bpp / 8);
+        this.buffer = new byte[Math.max(bpp, rowBytes / bpp * bpp)];
+        this.row = new byte[layout.channelCount()][(int) Math.min(raster.getWidth(), layout.pixelsFor(buffer.length * 8L))];
+    }
+
+    /**
+     * Заполняет буфер очередной порцией байтов.
+     *
+     * @return {@code false}, если данные в растре закончились.
+     */
+    private boolean fill() {
+        if (remaining == 0) {
+            return false;
+        }
+        int n = (int) Math.min(buffer.length, remaining);
+        raster.extractBytes(layout, pixel, buffer, 0, n, row);
+        pixel += (long) n * 8 / layout.bitsPerPixel();
+        remaining -= n;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    @Override
+    public int read() {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(buffer, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, limit - pos + remaining);
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        long buffered = Math.min(n, limit - pos);
+        pos += (int) buffered;
+        // Напрямую пропускаются только целые порции по границе пикселя.
+        int bpp = layout.bitsPerPixel();
+        long direct = Math.min(n - buffered, remaining) / bpp * bpp;
+        pixel += direct * 8 / bpp;
+        remaining -= direct;
+        return buffered + direct;
+    }
+}
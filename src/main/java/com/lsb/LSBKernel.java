@@ -0,0 +1,157 @@
+package com.lsb;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Базовые операции над младшими битами, общие для всех растров.
+ * <p>
+ * Этот класс содержит скалярную реализацию. Если при запуске доступен модуль
+ * {@code jdk.incubator.vector} (JVM запущена с {@code --add-modules jdk.incubator.vector}),
+ * {@link #INSTANCE} указывает на векторную реализацию {@code VectorLSBKernel},
+ * которая дает побитово тот же результат. Векторную реализацию можно отключить
+ * системным свойством {@code -Dlsb.simd=false}.
+ * </p>
+ * <p>
+ * Упаковка и распаковка битов выполняются над 64-битными словами (по 8 значений за шаг)
+ * и общие для обеих реализаций: векторы Vector API, пока метод не скомпилирован C2,
+ * создаются в куче, а эти операции лежат на пути каждого встраивания и извлечения.
+ * </p>
+ */
+class LSBKernel {
+
+    /** Чтение и запись {@code long} в массиве байтов; байт с меньшим индексом — младший. */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    /** Младший бит каждого байта слова. */
+    private static final long LOW_BITS = 0x0101010101010101L;
+    /** Множитель, собирающий младшие биты байтов 0..7 в биты 63..56 (байт 0 — старший бит). */
+    private static final long GATHER = 0x8040201008040201L;
+    /** Маска, оставляющая в байте {@code k} бит {@code 7 - k}. */
+    private static final long SPREAD = 0x0102040810204080L;
+
+    /** Реализация, выбранная при запуске. */
+    static final LSBKernel INSTANCE = select();
+
+    /**
+     * Выбирает векторную реализацию, если она доступна и не отключена.
+     *
+     * @return Реализация операций.
+     */
+    private static LSBKernel select() {
+        if (Boolean.parseBoolean(System.getProperty("lsb.simd", "true"))) {
+            LSBKernel vector = vector();
+            if (vector != null) {
+                return vector;
+            }
+        }
+        return new LSBKernel();
+    }
+
+    /**
+     * Создает векторную реализацию.
+     * <p>
+     * Класс загружается через отражение, чтобы при отсутствии модуля
+     * {@code jdk.incubator.vector} не возникало ошибок связывания.
+     * </p>
+     *
+     * @return Векторная реализация или {@code null}, если модуль недоступен.
+     */
+    static LSBKernel vector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (LSBKernel) Class.forName("com.lsb.VectorLSBKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /** @return {@code true}, если используются векторные инструкции. */
+    boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * Упаковывает биты (по одному значению 0/1 на элемент) в байты, старший бит первым.
+     *
+     * @param bits   Значения битов.
+     * @param off    Смещение в {@code bits}.
+     * @param dst    Приемник байтов.
+     * @param dstOff Смещение в {@code dst}.
+     * @param count  Число байтов (считывается {@code count * 8} значений).
+     */
+    final void packBits(byte[] bits, int off, byte[] dst, int dstOff, int count) {
+        for (int i = 0; i < count; i++, off += 8) {
+            long word = (long) LONGS.get(bits, off) & LOW_BITS;
+            dst[dstOff + i] = (byte) ((word * GATHER) >>> 56);
+        }
+    }
+
+    /**
+     * Раскладывает байты на биты (по одному значению 0/1 на элемент), старший бит первым.
+     *
+     * @param src    Источник байтов.
+     * @param srcOff Смещение в {@code src}.
+     * @param bits   Приемник значений битов.
+     * @param off    Смещение в {@code bits}.
+     * @param count  Число байтов (записывается {@code count * 8} значений).
+     */
+    final void unpackBits(byte[] src, int srcOff, byte[] bits, int off, int count) {
+        for (int i = 0; i < count; i++, off += 8) {
+            long word = ((src[srcOff + i] & 0xFFL) * LOW_BITS) & SPREAD;
+            // Ненулевой байт (степень двойки) после прибавления 0x7F получает старший бит; переносов нет.
+            LONGS.set(bits, off, ((word + (LOW_BITS * 0x7F)) >>> 7) & LOW_BITS);
+        }
+    }
+
+    /**
+     * Преобразует значения битовой плоскости в яркость: 0 для нулевого бита и 255 для единичного.
+     *
+     * @param values Значения канала (на месте заменяются яркостью).
+     * @param off    Смещение в {@code values}.
+     * @param len    Число значений.
+     * @param plane  Номер бита (0 — младший).
+     */
+    void planeToGray(byte[] values, int off, int len, int plane) {
+        for (int i = off, end = off + len; i < end; i++) {
+            values[i] = (byte) -((values[i] >> plane) & 1);
+        }
+    }
+
+    /**
+     * Считывает поле {@code (pixel >>> shift) & mask} упакованных пикселей.
+     *
+     * @param data   Пиксели.
+     * @param p      Индекс первого пикселя в {@code data}.
+     * @param shift  Сдвиг канала.
+     * @param mask   Маска младших битов канала.
+     * @param values Приемник значений.
+     * @param off    Смещение в {@code values}.
+     * @param len    Число пикселей.
+     */
+    void readField(int[] data, int p, int shift, int mask, byte[] values, int off, int len) {
+        for (int i = 0; i < len; i++) {
+            values[off + i] = (byte) ((data[p + i] >>> shift) & mask);
+        }
+    }
+
+    /**
+     * Записывает поле {@code mask << shift} упакованных пикселей, не затрагивая остальные биты.
+     *
+     * @param data   Пиксели.
+     * @param p      Индекс первого пикселя в {@code data}.
+     * @param shift  Сдвиг канала.
+     * @param mask   Маска младших битов канала.
+     * @param values Новые значения (не больше {@code mask}).
+     * @param off    Смещение в {@code values}.
+     * @param len    Число пикселей.
+     */
+    void writeField(int[] data, int p, int shift, int mask, byte[] values, int off, int len) {
+        int clear = ~(mask << shift);
+        for (int i = 0; i < len; i++) {
+            data[p + i] = (data[p + i] & clear) | (values[off + i] << shift);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.lsb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Поток байтов, последовательно встраиваемых в младшие биты растра согласно {@link BitLayout}.
+ * <p>
+ * Байты накапливаются в буфере размером {@link ParallelLSB#chunkBytes(BitLayout)} (но не больше
+ * емкости растра) и встраиваются целыми порциями через {@link ParallelLSB}; остаток встраивается
+ * при закрытии. По ходу записи подсчитываются число байтов и CRC-32 для заголовка контейнера.
+ * Запись за пределы емкости растра завершается исключением.
+ * </p>
+ */
+public class LSBOutputStream extends OutputStream {
+
+    /** Приемник битов. */
+    private final LSBRaster raster;
+    /** Схема размещения битов. */
+    private final BitLayout layout;
+    /** Исполнитель. */
+    private final ParallelLSB parallel;
+    /** Буфер порции. */
+    private final byte[] buffer;
+    /** Размер порции; кратен числу битов на пиксель. */
+    private final int size;
+    /** Буферы строки для последовательного встраивания или {@code null}. */
+    private final byte[][] values;
+    /** Контрольная сумма записанных байтов. */
+    private final CRC32 crc = new CRC32();
+    /** Индекс пикселя, с которого будет встроена следующая порция. */
+    private long pixel;
+    /** Число байтов, которые еще можно встроить в растр. */
+    private long remaining;
+    /** Число байтов в {@link #buffer}. */
+    private int count;
+    /** Общее число записанных байтов. */
+    private long written;
+    /** Поток закрыт. */
+    private boolean closed;
+
+    /**
+     * Создает поток, встраивающий байты начиная с указанного пикселя.
+     *
+     * @param raster     Растр.
+     * @param layout     Схема размещения битов.
+     * @param startPixel Индекс первого пикселя.
+     */
+    public LSBOutputStream(LSBRaster raster, BitLayout layout, long startPixel) {
+        this(raster, layout, startPixel, null, null);
+    }
+
+    /**
+     * Создает поток, использующий переданные рабочие буферы.
+     *
+     * @param raster     Растр.
+     * @param layout     Схема размещения битов.
+     * @param startPixel Индекс первого пикселя.
+     * @param buffer     Буфер порции длиной не меньше {@link #bufferSize(LSBRaster, BitLayout, long)}
+     *                   или {@code null}, чтобы выделить новый.
+     * @param values     Буферы строки (см. {@link LSBRaster#embedBytes(BitLayout, long, byte[], int, int, byte[][])})
+     *                   или {@code null}.
+     */
+    LSBOutputStream(LSBRaster raster, BitLayout layout, long startPixel, byte[] buffer, byte[][] values) {
+        this.raster = raster;
+        this.layout = layout;
+        this.parallel = ParallelLSB.common();
+        this.pixel = startPixel;
+        this.remaining = raster.capacityBits(layout, startPixel) / 8;
+        this.size = bufferSize(raster, layout, startPixel);
+        this.buffer = buffer != null ? buffer : new byte[size];
+        this.values = values;
+    }
+
+    /**
+     * Вычисляет размер порции: {@link ParallelLSB#chunkBytes(BitLayout)}, но не больше емкости растра
+     * (с округлением вверх до целого пикселя).
+     *
+     * @param raster     Растр.
+     * @param layout     Схема размещения битов.
+     * @param startPixel Индекс первого пикселя.
+     * @return Размер порции в байтах.
+     */
+    static int bufferSize(LSBRaster raster, BitLayout layout, long startPixel) {
+        int bpp = layout.bitsPerPixel();
+        long remaining = raster.capacityBits(layout, startPixel) / 8;
+        long capacity = (remaining + bpp - 1) / bpp * bpp;
+        return (int) Math.max(bpp, Math.min(ParallelLSB.chunkBytes(layout), capacity));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Поток закрыт");
+        }
+        if (len > remaining) {
+            throw new IOException("Изображение слишком мало для встраивания текста");
+        }
+        crc.update(b, off, len);
+        written += len;
+        remaining -= len;
+        while (len > 0) {
+            int n = Math.min(len, size - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == size) {
+                drain();
+            }
+        }
+    }
+
+    /**
+     * Встраивает накопленную порцию.
+     */
+    private void drain() {
+        if (values != null) {
+            parallel.embedBytes(raster, layout, pixel, buffer, 0, count, values);
+        } else {
+            parallel.embedBytes(raster, layout, pixel, buffer, 0, count);
+        }
+        pixel += layout.pixelsFor(count * 8L);
+        count = 0;
+    }
+
+    /**
+     * Встраивает оставшиеся байты. Растр не закрывается.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (count > 0) {
+                drain();
+            }
+        }
+    }
+
+    /** @return Число записанных байтов. */
+    public long getCount() {
+        return written;
+    }
+
+    /** @return CRC-32 записанных байтов. */
+    public int getChecksum() {
+        return (int) crc.getValue();
+    }
+
+    /** @return Индекс пикселя, следующего за встроенными данными (после закрытия потока). */
+    public long getEndPixel() {
+        return pixel;
+    }
+}
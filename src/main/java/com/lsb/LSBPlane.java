@@ -0,0 +1,109 @@
+package com.lsb;
+
+import java.util.stream.IntStream;
+
+/**
+ * Битовая плоскость одного канала изображения, упакованная по 8 пикселей в байт.
+ * <p>
+ * Занимает {@code ceil(width / 8) * height} байтов — в 24–32 раза меньше декодированного
+ * изображения, поэтому ее удобно хранить в кэше ({@link ImageCache}) и строить по ней
+ * визуализацию ({@link LSBTiles}) без повторного чтения файла.
+ * </p>
+ */
+public final class LSBPlane {
+
+    /** Число строк, обрабатываемых одной задачей при построении. */
+    private static final int BAND_ROWS = 64;
+
+    private final int width;
+    private final int height;
+    /** Байтов на строку. */
+    private final int stride;
+    /** Биты построчно, старший бит байта — левый пиксель. */
+    private final byte[] bits;
+
+    private LSBPlane(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.stride = (width + 7) / 8;
+        this.bits = new byte[Math.multiplyExact(stride, height)];
+    }
+
+    /**
+     * Извлекает битовую плоскость канала растра. Полосы строк обрабатываются параллельно;
+     * каждая строка отмечается в {@link LSBRaster#getProgress()}.
+     *
+     * @param raster  Растр.
+     * @param channel Канал.
+     * @param plane   Номер бита (0 — младший, не больше 7).
+     * @return Битовая плоскость.
+     * @throws IllegalArgumentException Если изображение не содержит канал или номер бита вне диапазона.
+     */
+    public static LSBPlane of(LSBRaster raster, BitLayout.Channel channel, int plane) {
+        if (plane < 0 || plane > 7) {
+            throw new IllegalArgumentException("Номер бита должен быть от 0 до 7");
+        }
+        if (!raster.hasChannel(channel)) {
+            throw new IllegalArgumentException("Изображение не содержит канал " + channel);
+        }
+        LSBPlane result = new LSBPlane(raster.getWidth(), raster.getHeight());
+        int bands = (result.height + BAND_ROWS - 1) / BAND_ROWS;
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            byte[] row = new byte[result.stride * 8]; // Хвост строки после width остается нулевым
+            int end = Math.min(result.height, (band + 1) * BAND_ROWS);
+            for (int y = band * BAND_ROWS; y < end; y++) {
+                raster.readLSB(y, 0, result.width, channel, 1 << plane, row, 0);
+                if (plane != 0) {
+                    for (int i = 0; i < result.width; i++) {
+                        row[i] = (byte) ((row[i] & 0xFF) >>> plane);
+                    }
+                }
+                LSBKernel.INSTANCE.packBits(row, 0, result.bits, y * result.stride, result.stride);
+                raster.getProgress().advance(result.width);
+            }
+        });
+        return result;
+    }
+
+    /** @return Ширина изображения. */
+    public int getWidth() {
+        return width;
+    }
+
+    /** @return Высота изображения. */
+    public int getHeight() {
+        return height;
+    }
+
+    /** @return Объем памяти, занимаемый битами. */
+    public long sizeInBytes() {
+        return bits.length;
+    }
+
+    /**
+     * Возвращает бит пикселя.
+     *
+     * @param x Столбец.
+     * @param y Строка.
+     * @return 0 или 1.
+     */
+    public int get(int x, int y) {
+        return (bits[y * stride + (x >> 3)] >> (7 - (x & 7))) & 1;
+    }
+
+    /**
+     * Читает биты фрагмента строки, по одному значению 0/1 на элемент.
+     *
+     * @param y      Строка.
+     * @param x0     Первый столбец.
+     * @param len    Число пикселей.
+     * @param values Приемник.
+     * @param off    Смещение в {@code values}.
+     */
+    void readRow(int y, int x0, int len, byte[] values, int off) {
+        int base = y * stride;
+        for (int i = 0, x = x0; i < len; i++, x++) {
+            values[off + i] = (byte) ((bits[base + (x >> 3)] >> (7 - (x & 7))) & 1);
+        }
+    }
+}
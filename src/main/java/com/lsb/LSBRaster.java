@@ -0,0 +1,713 @@
+package com.lsb;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.random.RandomGenerator;
+
+/**
+ * Построчный доступ к младшим битам каналов изображения.
+ * <p>
+ * Пиксели нумеруются построчно, начиная с (0, 0). Биты встраиваемой последовательности
+ * (старший бит байта первым) размещаются по пикселям согласно {@link BitLayout};
+ * в схеме по умолчанию пиксель с индексом {@code i} хранит {@code i}-й бит
+ * в младшем бите синего канала.
+ * Для распространенных форматов ({@link BufferedImage#TYPE_INT_RGB},
+ * {@link BufferedImage#TYPE_INT_ARGB}, {@link BufferedImage#TYPE_3BYTE_BGR},
+ * {@link BufferedImage#TYPE_4BYTE_ABGR}) работа ведется напрямую с массивом
+ * {@code DataBuffer} без преобразования цветовой модели на каждый пиксель.
+ * Для остальных форматов используется {@code getRGB}/{@code setRGB}; палитровые и полутоновые
+ * изображения при этом квантуют записанный цвет, поэтому перед встраиванием они преобразуются
+ * в RGB ({@link #trueColor(BufferedImage)}).
+ * Файлы BMP могут обрабатываться без декодирования через {@link BmpRaster}.
+ * Упаковка битов, визуализация и доступ к упакованным пикселям выполняются
+ * через {@link LSBKernel}, который при наличии Vector API использует SIMD-инструкции.
+ * </p>
+ */
+public abstract class LSBRaster implements Closeable {
+
+    /** Ширина изображения в пикселях. */
+    protected final int width;
+    /** Высота изображения в пикселях. */
+    protected final int height;
+    /** Ход выполнения текущей операции; циклы обработки отмечают в нем каждую строку. */
+    private Progress progress = Progress.NONE;
+
+    /**
+     * Создает растр заданного размера.
+     *
+     * @param width  Ширина изображения.
+     * @param height Высота изображения.
+     */
+    protected LSBRaster(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Создает растр для изображения, выбирая быстрый путь, если формат изображения это позволяет.
+     *
+     * @param image Изображение.
+     * @return Растр, изменения в котором отражаются непосредственно в {@code image}.
+     */
+    public static LSBRaster wrap(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                if (raster.getDataBuffer() instanceof DataBufferInt
+                        && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+                    return new IntPacked(image);
+                }
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                if (raster.getDataBuffer() instanceof DataBufferByte
+                        && raster.getSampleModel() instanceof PixelInterleavedSampleModel) {
+                    return new ByteInterleaved(image);
+                }
+                break;
+            default:
+                break;
+        }
+        return new Rgb(image);
+    }
+
+    /**
+     * Проверяет, сохраняет ли цветовая модель младшие биты, записанные через {@code setRGB}:
+     * палитра, оттенки серого, компоненты короче 8 битов и цветовые пространства, отличные от sRGB,
+     * квантуют или преобразуют цвет.
+     *
+     * @param model Цветовая модель изображения.
+     * @return {@code true}, если каждая компонента R, G, B (и A) хранится без потерь.
+     */
+    static boolean isTrueColor(ColorModel model) {
+        if (model instanceof IndexColorModel || !model.getColorSpace().isCS_sRGB()) {
+            return false;
+        }
+        for (int size : model.getComponentSize()) {
+            if (size < 8) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param model Цветовая модель исходного изображения.
+     * @return {@link BufferedImage#TYPE_4BYTE_ABGR}, если модель содержит альфа-канал, иначе
+     *         {@link BufferedImage#TYPE_3BYTE_BGR}.
+     */
+    static int trueColorType(ColorModel model) {
+        return model.hasAlpha() ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
+    }
+
+    /**
+     * Возвращает изображение, в которое можно встраивать без потерь: само {@code image}, если
+     * {@link #isTrueColor(ColorModel)}, иначе его копию в {@link #trueColorType(ColorModel)}.
+     *
+     * @param image Декодированное изображение.
+     * @return Изображение с 8-битными компонентами RGB.
+     */
+    public static BufferedImage trueColor(BufferedImage image) {
+        if (isTrueColor(image.getColorModel())) {
+            return image;
+        }
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), trueColorType(image.getColorModel()));
+        copyPixels(image, copy);
+        return copy;
+    }
+
+    /**
+     * Копирует цвет пикселей построчно через {@code getRGB}/{@code setRGB}; размеры изображений совпадают.
+     */
+    static void copyPixels(BufferedImage source, BufferedImage target) {
+        int width = source.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < source.getHeight(); y++) {
+            source.getRGB(0, y, width, 1, row, 0, width);
+            target.setRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+
+    /**
+     * Создает растр над упакованными строками с компонентами в порядке R, G, B[, A]
+     * (так хранятся 8-битные пиксели PNG).
+     *
+     * @param data     Пиксели, строка за строкой без выравнивания.
+     * @param width    Ширина изображения.
+     * @param height   Число строк.
+     * @param channels Число компонент пикселя: 3 или 4.
+     * @return Растр, изменения в котором отражаются непосредственно в {@code data}.
+     */
+    static LSBRaster packed(byte[] data, int width, int height, int channels) {
+        return new Packed(data, width, height, channels);
+    }
+
+    /**
+     * Открывает файл изображения для чтения младших битов.
+     * <p>
+     * Файлы BMP поддерживаемого формата отображаются в память без декодирования,
+     * остальные изображения декодируются через {@link ImageIO}.
+     * </p>
+     *
+     * @param path Путь к файлу изображения.
+     * @return Растр; должен быть закрыт после использования.
+     * @throws IOException Если изображение не удалось загрузить.
+     */
+    public static LSBRaster read(Path path) throws IOException {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.DECODE)) {
+            if (BmpRaster.isSupported(path)) {
+                BmpRaster raster = BmpRaster.open(path, false);
+                timer.pixels(raster.pixelCount());
+                return raster;
+            }
+            BufferedImage image = ImageIO.read(path.toFile());
+            if (image == null) {
+                throw new IOException("Не удалось загрузить изображение"); // Кидаем исключение, если изображение не загрузилось.
+            }
+            timer.pixels((long) image.getWidth() * image.getHeight());
+            return wrap(image);
+        }
+    }
+
+    /** @return Ширина изображения. */
+    public int getWidth() {
+        return width;
+    }
+
+    /** @return Высота изображения. */
+    public int getHeight() {
+        return height;
+    }
+
+    /** @return Общее число пикселей. */
+    public long pixelCount() {
+        return (long) width * height;
+    }
+
+    /**
+     * Подключает отслеживание хода выполнения и отмены к операциям над растром.
+     * Встраивание, извлечение, заполнение шумом и визуализация отмечают каждую
+     * обработанную строку и завершаются {@link java.util.concurrent.CancellationException}
+     * после отмены.
+     *
+     * @param progress Отслеживание или {@link Progress#NONE}.
+     */
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
+    /** @return Отслеживание хода выполнения операций над растром. */
+    public Progress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Проверяет, есть ли в изображении указанный канал.
+     *
+     * @param channel Канал.
+     * @return {@code true}, если канал можно использовать для встраивания.
+     */
+    public boolean hasChannel(BitLayout.Channel channel) {
+        return channel != BitLayout.Channel.ALPHA;
+    }
+
+    /**
+     * Вычисляет емкость изображения в битах при заданной схеме.
+     *
+     * @param layout     Схема размещения.
+     * @param startPixel Индекс первого используемого пикселя.
+     * @return Число битов, которое можно разместить начиная с {@code startPixel}.
+     */
+    public long capacityBits(BitLayout layout, long startPixel) {
+        return Math.max(0, pixelCount() - startPixel) * layout.bitsPerPixel();
+    }
+
+    /**
+     * Считывает младшие биты канала участка строки.
+     *
+     * @param y       Номер строки.
+     * @param x0      Первый столбец.
+     * @param len     Число пикселей.
+     * @param channel Канал.
+     * @param mask    Маска младших битов канала ({@code (1 << k) - 1}).
+     * @param values  Массив, в который записываются значения {@code sample & mask}, по одному на пиксель.
+     * @param off     Смещение в {@code values}.
+     */
+    protected abstract void readLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off);
+
+    /**
+     * Записывает младшие биты канала участка строки, не затрагивая остальные биты.
+     *
+     * @param y       Номер строки.
+     * @param x0      Первый столбец.
+     * @param len     Число пикселей.
+     * @param channel Канал.
+     * @param mask    Маска младших битов канала ({@code (1 << k) - 1}).
+     * @param values  Новые значения младших битов, по одному на пиксель.
+     * @param off     Смещение в {@code values}.
+     */
+    protected abstract void writeLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off);
+
+    /**
+     * Проверяет, что схема применима к изображению.
+     *
+     * @param layout Схема размещения.
+     * @throws IllegalArgumentException Если в изображении нет одного из каналов схемы.
+     */
+    private void checkLayout(BitLayout layout) {
+        for (int c = 0; c < layout.channelCount(); c++) {
+            if (!hasChannel(layout.channel(c))) {
+                throw new IllegalArgumentException("Изображение не содержит канал " + layout.channel(c));
+            }
+        }
+    }
+
+    /**
+     * Встраивает байты в младшие биты синего канала, начиная с пикселя {@code startPixel}.
+     *
+     * @param startPixel Индекс первого пикселя.
+     * @param src        Источник байтов.
+     * @param off        Смещение в {@code src}.
+     * @param len        Число байтов (занимает {@code len * 8} пикселей).
+     */
+    public void embedBytes(long startPixel, byte[] src, int off, int len) {
+        embedBytes(BitLayout.DEFAULT, startPixel, src, off, len);
+    }
+
+    /**
+     * Встраивает байты согласно схеме, начиная с пикселя {@code startPixel}.
+     * <p>
+     * Если последний пиксель заполнен не полностью, его неиспользуемые биты не изменяются.
+     * </p>
+     *
+     * @param layout     Схема размещения.
+     * @param startPixel Индекс первого пикселя.
+     * @param src        Источник байтов.
+     * @param off        Смещение в {@code src}.
+     * @param len        Число байтов (занимает {@code layout.pixelsFor(len * 8)} пикселей).
+     */
+    public void embedBytes(BitLayout layout, long startPixel, byte[] src, int off, int len) {
+        long pixels = layout.pixelsFor((long) len * 8);
+        embedBytes(layout, startPixel, src, off, len,
+                new byte[layout.channelCount()][(int) Math.min(width, pixels)]);
+    }
+
+    /**
+     * Встраивает байты согласно схеме, используя переданные буферы строки.
+     *
+     * @param layout     Схема размещения.
+     * @param startPixel Индекс первого пикселя.
+     * @param src        Источник байтов.
+     * @param off        Смещение в {@code src}.
+     * @param len        Число байтов.
+     * @param values     Рабочие буферы (по одному на канал схемы) длиной не меньше
+     *                   {@code min(width, layout.pixelsFor(len * 8))}.
+     */
+    void embedBytes(BitLayout layout, long startPixel, byte[] src, int off, int len, byte[][] values) {
+        checkLayout(layout);
+        int channels = layout.channelCount();
+        int bits = layout.getBitsPerChannel();
+        int mask = (1 << bits) - 1;
+        long totalBits = (long) len * 8;
+        long endPixel = startPixel + layout.pixelsFor(totalBits);
+        long bit = 0;
+        for (long pixel = startPixel; pixel < endPixel; ) {
+            int y = (int) (pixel / width);
+            int x = (int) (pixel % width);
+            int n = (int) Math.min(width - x, endPixel - pixel);
+            if (bit + (long) n * layout.bitsPerPixel() > totalBits) {
+                // Последний пиксель заполняется частично: сохраняем его текущие биты.
+                for (int c = 0; c < channels; c++) {
+                    readLSB(y, x, n, layout.channel(c), mask, values[c], 0);
+                }
+            }
+            int i = 0;
+            if (channels == 1 && bits == 1) {
+                // Один бит на пиксель: после выравнивания до границы байта целые байты раскладываются ядром.
+                for (; i < n && (bit & 7) != 0; i++, bit++) {
+                    values[0][i] = (byte) ((src[off + (int) (bit >>> 3)] >> (7 - (int) (bit & 7))) & 1);
+                }
+                int whole = (n - i) / 8;
+                LSBKernel.INSTANCE.unpackBits(src, off + (int) (bit >>> 3), values[0], i, whole);
+                i += whole * 8;
+                bit += whole * 8L;
+            }
+            for (; i < n; i++) {
+                for (int c = 0; c < channels; c++) {
+                    // Буферы могут быть общими с другими операциями: старшие биты не должны попасть в пиксель.
+                    int v = values[c][i] & mask;
+                    for (int b = bits - 1; b >= 0 && bit < totalBits; b--, bit++) {
+                        int next = (src[off + (int) (bit >>> 3)] >> (7 - (int) (bit & 7))) & 1;
+                        v = (v & ~(1 << b)) | (next << b);
+                    }
+                    values[c][i] = (byte) v;
+                }
+            }
+            for (int c = 0; c < channels; c++) {
+                writeLSB(y, x, n, layout.channel(c), mask, values[c], 0);
+            }
+            progress.advance(n);
+            pixel += n;
+        }
+    }
+
+    /**
+     * Извлекает байты из младших битов синего канала, начиная с пикселя {@code startPixel}.
+     *
+     * @param startPixel Индекс первого пикселя.
+     * @param dst        Приемник байтов.
+     * @param off        Смещение в {@code dst}.
+     * @param len        Число байтов (считывается {@code len * 8} пикселей).
+     */
+    public void extractBytes(long startPixel, byte[] dst, int off, int len) {
+        extractBytes(BitLayout.DEFAULT, startPixel, dst, off, len);
+    }
+
+    /**
+     * Извлекает байты согласно схеме, начиная с пикселя {@code startPixel}.
+     *
+     * @param layout     Схема размещения.
+     * @param startPixel Индекс первого пикселя.
+     * @param dst        Приемник байтов.
+     * @param off        Смещение в {@code dst}.
+     * @param len        Число байтов.
+     */
+    public void extractBytes(BitLayout layout, long startPixel, byte[] dst, int off, int len) {
+        long pixels = layout.pixelsFor((long) len * 8);
+        extractBytes(layout, startPixel, dst, off, len,
+                new byte[layout.channelCount()][(int) Math.min(width, pixels)]);
+    }
+
+    /**
+     * Извлекает байты согласно схеме, используя переданные буферы строки.
+     *
+     * @param layout     Схема размещения.
+     * @param startPixel Индекс первого пикселя.
+     * @param dst        Приемник байтов.
+     * @param off        Смещение в {@code dst}.
+     * @param len        Число байтов.
+     * @param values     Рабочие буферы (по одному на канал схемы) длиной не меньше
+     *                   {@code min(width, layout.pixelsFor(len * 8))}.
+     */
+    void extractBytes(BitLayout layout, long startPixel, byte[] dst, int off, int len, byte[][] values) {
+        checkLayout(layout);
+        int channels = layout.channelCount();
+        int bits = layout.getBitsPerChannel();
+        int mask = (1 << bits) - 1;
+        long totalBits = (long) len * 8;
+        long endPixel = startPixel + layout.pixelsFor(totalBits);
+        long bit = 0;
+        int acc = 0;
+        for (long pixel = startPixel; pixel < endPixel; ) {
+            int y = (int) (pixel / width);
+            int x = (int) (pixel % width);
+            int n = (int) Math.min(width - x, endPixel - pixel);
+            for (int c = 0; c < channels; c++) {
+                readLSB(y, x, n, layout.channel(c), mask, values[c], 0);
+            }
+            int i = 0;
+            if (channels == 1 && bits == 1) {
+                // Один бит на пиксель: после выравнивания до границы байта целые байты упаковываются ядром.
+                for (; i < n && (bit & 7) != 0; i++) {
+                    acc = (acc << 1) | values[0][i];
+                    bit++;
+                    if ((bit & 7) == 0) {
+                        dst[off + (int) ((bit >>> 3) - 1)] = (byte) acc;
+                        acc = 0;
+                    }
+                }
+                int whole = (n - i) / 8;
+                LSBKernel.INSTANCE.packBits(values[0], i, dst, off + (int) (bit >>> 3), whole);
+                i += whole * 8;
+                bit += whole * 8L;
+            }
+            for (; i < n; i++) {
+                for (int c = 0; c < channels; c++) {
+                    int v = values[c][i];
+                    for (int b = bits - 1; b >= 0 && bit < totalBits; b--) {
+                        acc = (acc << 1) | ((v >> b) & 1);
+                        bit++;
+                        if ((bit & 7) == 0) {
+                            dst[off + (int) ((bit >>> 3) - 1)] = (byte) acc;
+                            acc = 0;
+                        }
+                    }
+                }
+            }
+            progress.advance(n);
+            pixel += n;
+        }
+    }
+
+    /**
+     * Заполняет младшие биты синего канала пикселей от {@code startPixel} до конца изображения
+     * псевдослучайными значениями.
+     *
+     * @param startPixel Индекс первого пикселя.
+     * @param random     Генератор псевдослучайных чисел.
+     */
+    public void fillRandom(long startPixel, RandomGenerator random) {
+        fillRandom(BitLayout.DEFAULT, startPixel, pixelCount(), random);
+    }
+
+    /**
+     * Заполняет используемые схемой младшие биты пикселей в диапазоне
+     * {@code [startPixel, endPixel)} псевдослучайными значениями.
+     * <p>
+     * Биты берутся из {@link RandomGenerator#nextLong()} по 64 за обращение
+     * и записываются в растр целыми участками строк.
+     * </p>
+     *
+     * @param layout     Схема размещения.
+     * @param startPixel Индекс первого пикселя.
+     * @param endPixel   Индекс пикселя, следующего за последним.
+     * @param random     Генератор псевдослучайных чисел.
+     */
+    public void fillRandom(BitLayout layout, long startPixel, long endPixel, RandomGenerator random) {
+        fillRandom(layout, startPixel, endPixel, random,
+                new byte[layout.channelCount()][(int) Math.min(width, Math.max(0, endPixel - startPixel))]);
+    }
+
+    /**
+     * Заполняет биты схемы псевдослучайными значениями, используя переданные буферы строки.
+     *
+     * @param layout     Схема размещения.
+     * @param startPixel Индекс первого пикселя.
+     * @param endPixel   Индекс пикселя, следующего за последним.
+     * @param random     Генератор псевдослучайных чисел.
+     * @param values     Рабочие буферы (по одному на канал схемы) длиной не меньше
+     *                   {@code min(width, endPixel - startPixel)}.
+     */
+    void fillRandom(BitLayout layout, long startPixel, long endPixel, RandomGenerator random, byte[][] values) {
+        checkLayout(layout);
+        int channels = layout.channelCount();
+        int bits = layout.getBitsPerChannel();
+        int mask = (1 << bits) - 1;
+        long word = 0;
+        int available = 0;
+        for (long pixel = startPixel; pixel < endPixel; ) {
+            int y = (int) (pixel / width);
+            int x = (int) (pixel % width);
+            int n = (int) Math.min(width - x, endPixel - pixel);
+            for (int i = 0; i < n; i++) {
+                for (int c = 0; c < channels; c++) {
+                    if (available < bits) {
+                        word = random.nextLong();
+                        available = 64;
+                    }
+                    values[c][i] = (byte) (word & mask);
+                    word >>>= bits;
+                    available -= bits;
+                }
+            }
+            for (int c = 0; c < channels; c++) {
+                writeLSB(y, x, n, layout.channel(c), mask, values[c], 0);
+            }
+            progress.advance(n);
+            pixel += n;
+        }
+    }
+
+    /**
+     * Записывает строку визуализации младшего бита синего канала:
+     * 0 для нулевого бита и 255 для единичного.
+     *
+     * @param y    Номер строки.
+     * @param gray Приемник значений яркости.
+     * @param off  Смещение в {@code gray}.
+     */
+    public void visualizeRow(int y, byte[] gray, int off) {
+        visualizeRow(y, gray, off, BitLayout.Channel.BLUE, 0);
+    }
+
+    /**
+     * Записывает строку визуализации битовой плоскости канала:
+     * 0 для нулевого бита и 255 для единичного.
+     *
+     * @param y       Номер строки.
+     * @param gray    Приемник значений яркости.
+     * @param off     Смещение в {@code gray}.
+     * @param channel Канал.
+     * @param plane   Номер бита (0 — младший).
+     */
+    public void visualizeRow(int y, byte[] gray, int off, BitLayout.Channel channel, int plane) {
+        readLSB(y, 0, width, channel, 1 << plane, gray, off);
+        LSBKernel.INSTANCE.planeToGray(gray, off, width, plane);
+        progress.advance(width);
+    }
+
+    /**
+     * Освобождает ресурсы растра. Для растров в памяти ничего не делает.
+     *
+     * @throws IOException Если произошла ошибка закрытия файла.
+     */
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * Растр с упакованными пикселями в {@code int[]} (ARGB или RGB).
+     */
+    private static final class IntPacked extends LSBRaster {
+        private final int[] data;
+        private final int base;
+        private final int stride;
+        private final boolean alpha;
+
+        IntPacked(BufferedImage image) {
+            super(image.getWidth(), image.getHeight());
+            WritableRaster raster = image.getRaster();
+            DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            this.data = buffer.getData();
+            this.stride = sm.getScanlineStride();
+            this.base = buffer.getOffset()
+                    - raster.getSampleModelTranslateY() * stride
+                    - raster.getSampleModelTranslateX();
+            this.alpha = image.getColorModel().hasAlpha();
+        }
+
+        @Override
+        public boolean hasChannel(BitLayout.Channel channel) {
+            return alpha || channel != BitLayout.Channel.ALPHA;
+        }
+
+        @Override
+        protected void readLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+            LSBKernel.INSTANCE.readField(data, base + y * stride + x0, channel.shift(), mask, values, off, len);
+        }
+
+        @Override
+        protected void writeLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+            LSBKernel.INSTANCE.writeField(data, base + y * stride + x0, channel.shift(), mask, values, off, len);
+        }
+    }
+
+    /**
+     * Растр с чередующимися компонентами в {@code byte[]} (BGR, ABGR).
+     */
+    private static final class ByteInterleaved extends LSBRaster {
+        private final byte[] data;
+        private final int base;
+        private final int stride;
+        private final int pixelStride;
+        /** Смещения компонент R, G, B[, A] внутри пикселя. */
+        private final int[] bandOffsets;
+
+        ByteInterleaved(BufferedImage image) {
+            super(image.getWidth(), image.getHeight());
+            WritableRaster raster = image.getRaster();
+            DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+            PixelInterleavedSampleModel sm = (PixelInterleavedSampleModel) raster.getSampleModel();
+            this.data = buffer.getData();
+            this.stride = sm.getScanlineStride();
+            this.pixelStride = sm.getPixelStride();
+            // Полосы компонентной модели упорядочены как R, G, B[, A].
+            this.bandOffsets = sm.getBandOffsets();
+            this.base = buffer.getOffset()
+                    - raster.getSampleModelTranslateY() * stride
+                    - raster.getSampleModelTranslateX() * pixelStride;
+        }
+
+        @Override
+        public boolean hasChannel(BitLayout.Channel channel) {
+            return channel != BitLayout.Channel.ALPHA || bandOffsets.length > 3;
+        }
+
+        @Override
+        protected void readLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+            int p = base + bandOffsets[channel.ordinal()] + y * stride + x0 * pixelStride;
+            for (int i = 0; i < len; i++, p += pixelStride) {
+                values[off + i] = (byte) (data[p] & mask);
+            }
+        }
+
+        @Override
+        protected void writeLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+            int p = base + bandOffsets[channel.ordinal()] + y * stride + x0 * pixelStride;
+            for (int i = 0; i < len; i++, p += pixelStride) {
+                data[p] = (byte) ((data[p] & ~mask) | values[off + i]);
+            }
+        }
+    }
+
+    /**
+     * Растр над упакованными строками RGB или RGBA.
+     */
+    private static final class Packed extends LSBRaster {
+        private final byte[] data;
+        private final int pixelStride;
+
+        Packed(byte[] data, int width, int height, int pixelStride) {
+            super(width, height);
+            this.data = data;
+            this.pixelStride = pixelStride;
+        }
+
+        @Override
+        public boolean hasChannel(BitLayout.Channel channel) {
+            return channel != BitLayout.Channel.ALPHA || pixelStride > 3;
+        }
+
+        @Override
+        protected void readLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+            int p = (y * width + x0) * pixelStride + channel.ordinal();
+            for (int i = 0; i < len; i++, p += pixelStride) {
+                values[off + i] = (byte) (data[p] & mask);
+            }
+        }
+
+        @Override
+        protected void writeLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+            int p = (y * width + x0) * pixelStride + channel.ordinal();
+            for (int i = 0; i < len; i++, p += pixelStride) {
+                data[p] = (byte) ((data[p] & ~mask) | values[off + i]);
+            }
+        }
+    }
+
+    /**
+     * Универсальный растр через {@code getRGB}/{@code setRGB} для прочих цветовых моделей.
+     */
+    private static final class Rgb extends LSBRaster {
+        private final BufferedImage image;
+
+        Rgb(BufferedImage image) {
+            super(image.getWidth(), image.getHeight());
+            this.image = image;
+        }
+
+        @Override
+        public boolean hasChannel(BitLayout.Channel channel) {
+            return channel != BitLayout.Channel.ALPHA || image.getColorModel().hasAlpha();
+        }
+
+        @Override
+        protected void readLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+            int shift = channel.shift();
+            for (int i = 0; i < len; i++) {
+                values[off + i] = (byte) ((image.getRGB(x0 + i, y) >>> shift) & mask);
+            }
+        }
+
+        @Override
+        protected void writeLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+            int shift = channel.shift();
+            for (int i = 0; i < len; i++) {
+                int rgb = image.getRGB(x0 + i, y);
+                image.setRGB(x0 + i, y, (rgb & ~(mask << shift)) | (values[off + i] << shift));
+            }
+        }
+    }
+}
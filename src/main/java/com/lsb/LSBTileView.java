@@ -0,0 +1,273 @@
+package com.lsb;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Компонент просмотра визуализации битовой плоскости по тайлам {@link LSBTiles}.
+ * <p>
+ * Отрисовываются только тайлы, видимые при текущем масштабе, с уровня пирамиды, ближайшего
+ * к масштабу. Недостающие тайлы строятся в общем пуле {@link Workers}, а до их готовности на их месте
+ * показывается увеличенный фрагмент более грубого уровня. Готовые тайлы хранятся в кэше,
+ * ограниченном по объему. Колесо мыши меняет масштаб относительно курсора, перетаскивание
+ * сдвигает изображение, двойной щелчок вписывает изображение в компонент.
+ * </p>
+ * <p>
+ * Все методы, кроме построения тайлов, вызываются в потоке JavaFX.
+ * </p>
+ */
+public class LSBTileView extends Region {
+
+    /** Объем кэша готовых тайлов в байтах. */
+    private static final long CACHE_BYTES = 64L << 20;
+    /** Наибольшее увеличение (экранных пикселей на пиксель изображения). */
+    private static final double MAX_SCALE = 32;
+    private static final Logger logger = LogManager.getLogger(LSBTileView.class);
+
+    private final Canvas canvas = new Canvas();
+    /** Готовые тайлы по ключу {@link #key(int, int, int)}. */
+    private final LruCache<Long, WritableImage> tiles =
+            new LruCache<>(CACHE_BYTES, image -> (long) image.getWidth() * (long) image.getHeight() * 4);
+    /** Тайлы, построение которых запрошено. */
+    private final Set<Long> pending = new HashSet<>();
+    /** Тайлы, видимые при последней отрисовке; фоновые задачи пропускают остальные. */
+    private volatile Set<Long> visible = Set.of();
+
+    /** Отображаемая пирамида. */
+    private LSBTiles source;
+    /** Номер пирамиды; результаты задач для прежних пирамид отбрасываются. */
+    private volatile int generation;
+    /** Экранных пикселей на пиксель изображения. */
+    private double scale = 1;
+    /** Координаты изображения, соответствующие левому верхнему углу компонента. */
+    private double offsetX;
+    private double offsetY;
+    /** Изображение вписывается в компонент при изменении его размеров. */
+    private boolean fit = true;
+    /** Последняя точка перетаскивания. */
+    private double dragX;
+    private double dragY;
+
+    /**
+     * Создает пустой компонент.
+     */
+    public LSBTileView() {
+        getChildren().add(canvas);
+        setPrefSize(400, 300);
+        setOnScroll(this::handleScroll);
+        setOnMousePressed(this::handleMousePressed);
+        setOnMouseDragged(this::handleMouseDragged);
+        setOnMouseClicked(event -> {
+            if (event.getClickCount() == 2) {
+                fit = true;
+                redraw();
+            }
+        });
+    }
+
+    /**
+     * Показывает новую пирамиду тайлов. Предыдущая пирамида закрывается.
+     *
+     * @param tiles Пирамида или {@code null}, чтобы очистить компонент.
+     */
+    public void setTiles(LSBTiles tiles) {
+        LSBTiles previous = source;
+        source = tiles;
+        generation++;
+        this.tiles.clear();
+        pending.clear();
+        fit = true;
+        if (previous != null) {
+            // Строящиеся тайлы могут еще читать растр, поэтому он закрывается в фоне.
+            Workers.common().execute(() -> closeQuietly(previous));
+        }
+        redraw();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        canvas.setWidth(getWidth());
+        canvas.setHeight(getHeight());
+        redraw();
+    }
+
+    /**
+     * Перерисовывает видимую область и запрашивает недостающие тайлы.
+     */
+    private void redraw() {
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.setFill(Color.gray(0.2));
+        g.fillRect(0, 0, width, height);
+        if (source == null || width <= 0 || height <= 0) {
+            visible = Set.of();
+            return;
+        }
+        if (fit) {
+            scale = Math.min(width / source.getWidth(), height / source.getHeight());
+            offsetX = (source.getWidth() - width / scale) / 2;
+            offsetY = (source.getHeight() - height / scale) / 2;
+        }
+
+        int level = 0;
+        while (level < source.maxLevel() && scale * (2 << level) <= 1) {
+            level++;
+        }
+        double span = (double) LSBTiles.TILE_SIZE * (1 << level); // Пикселей изображения на тайл
+        int tx0 = Math.max(0, (int) Math.floor(offsetX / span));
+        int ty0 = Math.max(0, (int) Math.floor(offsetY / span));
+        int tx1 = Math.min(source.tilesX(level) - 1, (int) Math.floor((offsetX + width / scale) / span));
+        int ty1 = Math.min(source.tilesY(level) - 1, (int) Math.floor((offsetY + height / scale) / span));
+
+        g.setImageSmoothing(scale * (1 << level) < 1);
+        Set<Long> keys = new HashSet<>();
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                long key = key(level, tx, ty);
+                keys.add(key);
+                double x = (tx * span - offsetX) * scale;
+                double y = (ty * span - offsetY) * scale;
+                double w = source.tileWidth(level, tx) * (double) (1 << level) * scale;
+                double h = source.tileHeight(level, ty) * (double) (1 << level) * scale;
+                WritableImage image = tiles.get(key);
+                if (image != null) {
+                    g.drawImage(image, x, y, w, h);
+                } else {
+                    drawCoarser(g, level, tx, ty, x, y, w, h);
+                    request(level, tx, ty, key);
+                }
+            }
+        }
+        visible = keys;
+    }
+
+    /**
+     * Рисует на месте недостающего тайла фрагмент ближайшего готового тайла более грубого уровня.
+     */
+    private void drawCoarser(GraphicsContext g, int level, int tx, int ty, double x, double y, double w, double h) {
+        for (int coarse = level + 1; coarse <= source.maxLevel(); coarse++) {
+            int shift = coarse - level;
+            WritableImage image = tiles.get(key(coarse, tx >> shift, ty >> shift));
+            if (image != null) {
+                double size = (double) LSBTiles.TILE_SIZE / (1 << shift);
+                double sx = (tx - ((tx >> shift) << shift)) * size;
+                double sy = (ty - ((ty >> shift) << shift)) * size;
+                double sw = Math.min(size, image.getWidth() - sx);
+                double sh = Math.min(size, image.getHeight() - sy);
+                if (sw > 0 && sh > 0) {
+                    g.drawImage(image, sx, sy, sw, sh, x, y, w, h);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ставит построение тайла в очередь, если оно еще не запрошено.
+     */
+    private void request(int level, int tx, int ty, long key) {
+        if (!pending.add(key)) {
+            return;
+        }
+        LSBTiles tilesSource = source;
+        int tileGeneration = generation;
+        Workers.common().execute(() -> {
+            WritableImage image = null;
+            if (tileGeneration == generation && visible.contains(key)) {
+                try {
+                    image = toImage(tilesSource.renderTile(level, tx, ty),
+                            tilesSource.tileWidth(level, tx), tilesSource.tileHeight(level, ty));
+                } catch (RuntimeException e) {
+                    // Растр мог быть закрыт после смены изображения.
+                    logger.debug("Тайл {}/{}/{} не построен: {}", level, tx, ty, e.getMessage());
+                }
+            }
+            WritableImage result = image;
+            Platform.runLater(() -> {
+                if (tileGeneration != generation) {
+                    return;
+                }
+                pending.remove(key);
+                if (result != null) {
+                    tiles.put(key, result);
+                    redraw();
+                } else if (visible.contains(key)) {
+                    request(level, tx, ty, key); // Тайл снова стал видимым, пока задача ждала в очереди
+                }
+            });
+        });
+    }
+
+    /**
+     * Преобразует значения яркости в изображение JavaFX.
+     */
+    private static WritableImage toImage(byte[] gray, int width, int height) {
+        int[] argb = new int[gray.length];
+        for (int i = 0; i < gray.length; i++) {
+            int v = gray[i] & 0xFF;
+            argb[i] = 0xFF000000 | v << 16 | v << 8 | v;
+        }
+        WritableImage image = new WritableImage(width, height);
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), argb, 0, width);
+        return image;
+    }
+
+    private void handleScroll(ScrollEvent event) {
+        if (source == null || event.getDeltaY() == 0) {
+            return;
+        }
+        double fitScale = Math.min(canvas.getWidth() / source.getWidth(), canvas.getHeight() / source.getHeight());
+        double newScale = Math.max(fitScale / 2, Math.min(MAX_SCALE, scale * Math.pow(1.0015, event.getDeltaY())));
+        // Точка изображения под курсором остается на месте.
+        offsetX += event.getX() / scale - event.getX() / newScale;
+        offsetY += event.getY() / scale - event.getY() / newScale;
+        scale = newScale;
+        fit = false;
+        redraw();
+        event.consume();
+    }
+
+    private void handleMousePressed(MouseEvent event) {
+        dragX = event.getX();
+        dragY = event.getY();
+    }
+
+    private void handleMouseDragged(MouseEvent event) {
+        offsetX -= (event.getX() - dragX) / scale;
+        offsetY -= (event.getY() - dragY) / scale;
+        dragX = event.getX();
+        dragY = event.getY();
+        fit = false;
+        redraw();
+        event.consume();
+    }
+
+    /**
+     * Ключ тайла в кэше.
+     */
+    private static long key(int level, int tx, int ty) {
+        return (long) level << 48 | (long) ty << 24 | tx;
+    }
+
+    private static void closeQuietly(LSBTiles tiles) {
+        try {
+            tiles.close();
+        } catch (IOException e) {
+            logger.warn("Ошибка закрытия изображения: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.lsb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Пирамида тайлов визуализации битовой плоскости для просмотра больших изображений.
+ * <p>
+ * Уровень 0 совпадает с {@link LSBVisualization#visualizeLSBBits(LSBRaster, BitLayout.Channel, int)},
+ * каждый следующий уровень уменьшен вдвое по обеим осям. Пиксель уровня {@code level} соответствует
+ * блоку {@code 2^level × 2^level} исходных пикселей, а его яркость — доле единичных битов в блоке
+ * (а не значению одного выбранного пикселя), поэтому закономерности встроенных данных остаются видны
+ * и при сильном уменьшении. Тайлы строятся по запросу непосредственно из растра: читаются только
+ * строки, покрываемые тайлом, полноразмерное изображение визуализации не создается.
+ * Источником может быть растр или готовая битовая плоскость {@link LSBPlane} из кэша.
+ * </p>
+ * <p>
+ * Методы {@link #renderTile(int, int, int)} можно вызывать из нескольких потоков одновременно.
+ * </p>
+ */
+public final class LSBTiles implements Closeable {
+
+    /** Размер стороны тайла в пикселях уровня. */
+    public static final int TILE_SIZE = 256;
+
+    /** Источник строк: значения бита, сдвинутого на {@link #shift} разрядов. */
+    private final RowSource rows;
+    /** Сдвиг значений источника, приводящий их к 0/1. */
+    private final int shift;
+    /** Ресурс, закрываемый вместе с пирамидой, или {@code null}. */
+    private final Closeable resource;
+    private final int width;
+    private final int height;
+    /** Самый грубый уровень: изображение на нем помещается в один тайл. */
+    private final int maxLevel;
+
+    /**
+     * Создает пирамиду тайлов для битовой плоскости растра.
+     *
+     * @param raster  Растр; закрывается вместе с пирамидой.
+     * @param channel Канал.
+     * @param plane   Номер бита (0 — младший, не больше 7).
+     * @throws IllegalArgumentException Если изображение не содержит канал или номер бита вне диапазона.
+     */
+    public LSBTiles(LSBRaster raster, BitLayout.Channel channel, int plane) {
+        if (plane < 0 || plane > 7) {
+            throw new IllegalArgumentException("Номер бита должен быть от 0 до 7");
+        }
+        if (!raster.hasChannel(channel)) {
+            throw new IllegalArgumentException("Изображение не содержит канал " + channel);
+        }
+        this.rows = (y, x0, len, values) -> raster.readLSB(y, x0, len, channel, 1 << plane, values, 0);
+        this.shift = plane;
+        this.resource = raster;
+        this.width = raster.getWidth();
+        this.height = raster.getHeight();
+        this.maxLevel = coarsestLevel();
+    }
+
+    /**
+     * Создает пирамиду тайлов для готовой битовой плоскости.
+     *
+     * @param plane Битовая плоскость.
+     */
+    public LSBTiles(LSBPlane plane) {
+        this.rows = (y, x0, len, values) -> plane.readRow(y, x0, len, values, 0);
+        this.shift = 0;
+        this.resource = null;
+        this.width = plane.getWidth();
+        this.height = plane.getHeight();
+        this.maxLevel = coarsestLevel();
+    }
+
+    /**
+     * @return Номер уровня, на котором изображение помещается в один тайл.
+     */
+    private int coarsestLevel() {
+        int level = 0;
+        while (levelWidth(level) > TILE_SIZE || levelHeight(level) > TILE_SIZE) {
+            level++;
+        }
+        return level;
+    }
+
+    /** @return Ширина исходного изображения. */
+    public int getWidth() {
+        return width;
+    }
+
+    /** @return Высота исходного изображения. */
+    public int getHeight() {
+        return height;
+    }
+
+    /** @return Номер самого грубого уровня. */
+    public int maxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * @param level Уровень.
+     * @return Ширина изображения на уровне.
+     */
+    public int levelWidth(int level) {
+        return (int) (((long) width + (1L << level) - 1) >> level);
+    }
+
+    /**
+     * @param level Уровень.
+     * @return Высота изображения на уровне.
+     */
+    public int levelHeight(int level) {
+        return (int) (((long) height + (1L << level) - 1) >> level);
+    }
+
+    /**
+     * @param level Уровень.
+     * @return Число тайлов по горизонтали.
+     */
+    public int tilesX(int level) {
+        return (levelWidth(level) + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    /**
+     * @param level Уровень.
+     * @return Число тайлов по вертикали.
+     */
+    public int tilesY(int level) {
+        return (levelHeight(level) + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    /**
+     * @param level Уровень.
+     * @param tx    Номер тайла по горизонтали.
+     * @return Ширина тайла (крайние тайлы могут быть меньше {@link #TILE_SIZE}).
+     */
+    public int tileWidth(int level, int tx) {
+        return Math.min(TILE_SIZE, levelWidth(level) - tx * TILE_SIZE);
+    }
+
+    /**
+     * @param level Уровень.
+     * @param ty    Номер тайла по вертикали.
+     * @return Высота тайла (крайние тайлы могут быть меньше {@link #TILE_SIZE}).
+     */
+    public int tileHeight(int level, int ty) {
+        return Math.min(TILE_SIZE, levelHeight(level) - ty * TILE_SIZE);
+    }
+
+    /**
+     * Строит тайл в градациях серого: яркость пикселя равна доле единичных битов в
+     * соответствующем блоке исходного изображения, умноженной на 255.
+     *
+     * @param level Уровень (0 — исходный масштаб).
+     * @param tx    Номер тайла по горизонтали.
+     * @param ty    Номер тайла по вертикали.
+     * @return Значения яркости построчно, {@code tileWidth(level, tx) * tileHeight(level, ty)} байтов.
+     * @throws IllegalArgumentException Если тайл вне пирамиды.
+     */
+    public byte[] renderTile(int level, int tx, int ty) {
+        if (level < 0 || level > maxLevel || tx < 0 || tx >= tilesX(level) || ty < 0 || ty >= tilesY(level)) {
+            throw new IllegalArgumentException("Тайл вне изображения: " + level + "/" + tx + "/" + ty);
+        }
+        int tileWidth = tileWidth(level, tx);
+        int tileHeight = tileHeight(level, ty);
+        byte[] gray = new byte[tileWidth * tileHeight];
+        int block = 1 << level;
+        int x0 = (tx * TILE_SIZE) << level;
+        int span = Math.min(tileWidth << level, width - x0);
+        byte[] row = new byte[span];
+        if (level == 0) {
+            for (int r = 0; r < tileHeight; r++) {
+                rows.read(ty * TILE_SIZE + r, x0, span, row);
+                LSBKernel.INSTANCE.planeToGray(row, 0, span, shift);
+                System.arraycopy(row, 0, gray, r * tileWidth, span);
+            }
+            return gray;
+        }
+
+        int[] counts = new int[tileWidth];
+        int lastBlock = span - ((tileWidth - 1) << level); // Ширина последнего (возможно неполного) блока
+        for (int r = 0; r < tileHeight; r++) {
+            int y0 = (ty * TILE_SIZE + r) << level;
+            int blockRows = Math.min(block, height - y0);
+            Arrays.fill(counts, 0);
+            for (int y = y0; y < y0 + blockRows; y++) {
+                rows.read(y, x0, span, row);
+                for (int i = 0; i < span; i++) {
+                    counts[i >> level] += (row[i] & 0xFF) >>> shift;
+                }
+            }
+            for (int c = 0; c < tileWidth; c++) {
+                int pixels = (c == tileWidth - 1 ? lastBlock : block) * blockRows;
+                gray[r * tileWidth + c] = (byte) ((counts[c] * 255 + pixels / 2) / pixels);
+            }
+        }
+        return gray;
+    }
+
+    /**
+     * Закрывает исходный растр (для пирамиды над {@link LSBPlane} ничего не делает).
+     *
+     * @throws IOException Если произошла ошибка закрытия файла.
+     */
+    @Override
+    public void close() throws IOException {
+        if (resource != null) {
+            resource.close();
+        }
+    }
+
+    /**
+     * Источник значений бита для фрагмента строки.
+     */
+    @FunctionalInterface
+    private interface RowSource {
+        void read(int y, int x0, int len, byte[] values);
+    }
+}
@@ -1,12 +1,13 @@
 package com.lsb;
 
 import java.awt.image.BufferedImage;
-import java.awt.image.WritableRaster;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
 
 /**
  * Класс, предоставляющий методы для визуализации младших значащих битов (LSB) синего канала изображения.
  * Позволяет создавать изображение в градациях серого, где каждый пиксель представляет LSB соответствующего пикселя
- * исходного изображения.
+ * исходного изображения. Можно также показать любую битовую плоскость любого канала.
  */
 public class LSBVisualization {
 
@@ -20,27 +21,57 @@ public class LSBVisualization {
      *         Возвращает {@code null}, если входное изображение {@code null}.
      */
     public static BufferedImage visualizeLSBBits(BufferedImage inputImage) {
+        return visualizeLSBBits(inputImage, BitLayout.Channel.BLUE, 0);
+    }
+
+    /**
+     * Визуализирует битовую плоскость выбранного канала входного изображения.
+     * Значение каждого пикселя результата (0 или 255) соответствует биту {@code plane}
+     * канала {@code channel} пикселя исходного изображения.
+     *
+     * @param inputImage Исходное изображение.
+     * @param channel    Канал.
+     * @param plane      Номер бита (0 — младший, не больше 7).
+     * @return Изображение в градациях серого, визуализирующее выбранную битовую плоскость.
+     *         Возвращает {@code null}, если входное изображение {@code null}.
+     * @throws IllegalArgumentException Если изображение не содержит канал или номер бита вне диапазона.
+     */
+    public static BufferedImage visualizeLSBBits(BufferedImage inputImage, BitLayout.Channel channel, int plane) {
         if (inputImage == null) {
             return null;
         }
+        return visualizeLSBBits(LSBRaster.wrap(inputImage), channel, plane);
+    }
+
+    /**
+     * Визуализирует битовую плоскость выбранного канала растра.
+     * Позволяет строить визуализацию файла BMP через {@link BmpRaster} без декодирования изображения.
+     *
+     * @param raster  Растр исходного изображения.
+     * @param channel Канал.
+     * @param plane   Номер бита (0 — младший, не больше 7).
+     * @return Изображение в градациях серого, визуализирующее выбранную битовую плоскость.
+     * @throws IllegalArgumentException Если изображение не содержит канал или номер бита вне диапазона.
+     */
+    public static BufferedImage visualizeLSBBits(LSBRaster raster, BitLayout.Channel channel, int plane) {
+        if (plane < 0 || plane > 7) {
+            throw new IllegalArgumentException("Номер бита должен быть от 0 до 7");
+        }
+        if (!raster.hasChannel(channel)) {
+            throw new IllegalArgumentException("Изображение не содержит канал " + channel);
+        }
 
-        int width = inputImage.getWidth();
-        int height = inputImage.getHeight();
+        int width = raster.getWidth();
+        int height = raster.getHeight();
         BufferedImage outputImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY); // Используем градации серого
 
-        WritableRaster raster = outputImage.getRaster();
+        byte[] gray = ((DataBufferByte) outputImage.getRaster().getDataBuffer()).getData();
+        int stride = ((ComponentSampleModel) outputImage.getSampleModel()).getScanlineStride();
 
         for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = inputImage.getRGB(x, y);
-                int blue = rgb & 0xFF;
-                int lsb = blue & 1;
-                int grayScaleValue = lsb * 255;
-
-                raster.setSample(x, y, 0, grayScaleValue);
-            }
+            raster.visualizeRow(y, gray, y * stride, channel, plane);
         }
 
         return outputImage;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,171 @@
+package com.lsb;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Нагрузочный клиент для {@link StegoServer}: отправляет один и тот же запрос заданное число раз
+ * с заданным числом одновременных соединений и сообщает распределение кодов ответа,
+ * процентили задержки и пропускную способность.
+ * <p>
+ * Запуск: {@code loadtest --url URL --image ФАЙЛ [--payload ФАЙЛ] [--concurrency N] [--requests N]}.
+ * Если указан {@code --payload}, тело запроса — изображение, за которым следуют данные,
+ * а длина изображения передается заголовком {@code X-Image-Length}.
+ * </p>
+ */
+public final class LoadTestClient {
+
+    private LoadTestClient() {
+    }
+
+    /**
+     * Запускает нагрузочный клиент из командной строки.
+     *
+     * @param args Аргументы командной строки.
+     * @throws IOException Если файлы не удалось прочитать.
+     */
+    public static void main(String[] args) throws IOException {
+        URI url = null;
+        Path image = null;
+        Path payload = null;
+        int concurrency = 16;
+        int requests = 1000;
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--url": url = URI.create(value); i++; break;
+                case "--image": image = Path.of(value); i++; break;
+                case "--payload": payload = Path.of(value); i++; break;
+                case "--concurrency": concurrency = Integer.parseInt(value); i++; break;
+                case "--requests": requests = Integer.parseInt(value); i++; break;
+                default: throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+            }
+        }
+        if (url == null || image == null) {
+            throw new IllegalArgumentException("Укажите --url и --image");
+        }
+        byte[] body = Files.readAllBytes(image);
+        Map<String, String> headers = new HashMap<>();
+        if (payload != null) {
+            byte[] data = Files.readAllBytes(payload);
+            headers.put("X-Image-Length", Integer.toString(body.length));
+            byte[] combined = Arrays.copyOf(body, body.length + data.length);
+            System.arraycopy(data, 0, combined, body.length, data.length);
+            body = combined;
+        }
+        System.out.println(run(url, body, headers, concurrency, requests));
+    }
+
+    /**
+     * Отправляет запросы POST и собирает статистику.
+     *
+     * @param url         Адрес конечной точки.
+     * @param body        Тело запроса.
+     * @param headers     Дополнительные заголовки.
+     * @param concurrency Число одновременно выполняемых запросов.
+     * @param requests    Общее число запросов.
+     * @return Статистика.
+     */
+    public static Result run(URI url, byte[] body, Map<String, String> headers, int concurrency, int requests) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(url).POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        headers.forEach(builder::header);
+        HttpRequest request = builder.build();
+        long[] latencies = new long[requests];
+        int[] statuses = new int[requests];
+        AtomicInteger next = new AtomicInteger();
+        long started = System.nanoTime();
+        try (HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+             ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int w = 0; w < concurrency; w++) {
+                workers.submit(() -> {
+                    for (int i; (i = next.getAndIncrement()) < requests; ) {
+                        long t = System.nanoTime();
+                        try {
+                            statuses[i] = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        } catch (IOException e) {
+                            statuses[i] = -1; // Ошибка соединения
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        latencies[i] = System.nanoTime() - t;
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        Map<Integer, Integer> histogram = new TreeMap<>();
+        for (int status : statuses) {
+            histogram.merge(status, 1, Integer::sum);
+        }
+        Arrays.sort(latencies);
+        return new Result(histogram, latencies, elapsed);
+    }
+
+    /**
+     * Результат нагрузочного теста.
+     */
+    public static final class Result {
+        private final Map<Integer, Integer> statuses;
+        private final long[] sortedLatencies;
+        private final long elapsedNanos;
+
+        private Result(Map<Integer, Integer> statuses, long[] sortedLatencies, long elapsedNanos) {
+            this.statuses = Collections.unmodifiableMap(statuses);
+            this.sortedLatencies = sortedLatencies;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** @return Число ответов по кодам; код -1 обозначает ошибку соединения. */
+        public Map<Integer, Integer> getStatuses() {
+            return statuses;
+        }
+
+        /**
+         * @param status Код ответа.
+         * @return Число ответов с этим кодом.
+         */
+        public int count(int status) {
+            return statuses.getOrDefault(status, 0);
+        }
+
+        /**
+         * Возвращает процентиль задержки.
+         *
+         * @param percentile Процентиль от 0 до 100.
+         * @return Задержка в миллисекундах.
+         */
+        public double latencyMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(sortedLatencies.length - 1, index))] / 1e6;
+        }
+
+        /** @return Число запросов в секунду. */
+        public double throughput() {
+            return elapsedNanos == 0 ? 0 : sortedLatencies.length * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "statuses=%s p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms throughput=%.1f req/s",
+                    statuses, latencyMillis(50), latencyMillis(95), latencyMillis(99), latencyMillis(100), throughput());
+        }
+    }
+}
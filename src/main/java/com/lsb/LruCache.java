@@ -0,0 +1,178 @@
+package com.lsb;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Потокобезопасный кэш, ограниченный суммарным весом (обычно размером в байтах) значений.
+ * При превышении лимита вытесняются давно не использованные записи; самая новая запись
+ * остается в кэше, даже если одна превышает лимит.
+ * <p>
+ * Если включено мягкое вытеснение, вытесненные записи не удаляются сразу, а удерживаются
+ * через {@link SoftReference}: пока сборщик мусора не освободил память, такая запись возвращается
+ * {@link #get(Object)} и снова становится обычной. Мягкие ссылки в лимит веса не входят.
+ * </p>
+ *
+ * @param <K> Тип ключа.
+ * @param <V> Тип значения.
+ */
+final class LruCache<K, V> {
+
+    /** Записи в порядке обращения: первой идет давно не использованная. */
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** Вытесненные записи, удерживаемые мягкими ссылками, или {@code null}, если мягкое вытеснение выключено. */
+    private final Map<K, Spilled<K, V>> spilled;
+    /** Очередь мягких ссылок, освобожденных сборщиком мусора. */
+    private final ReferenceQueue<V> cleared = new ReferenceQueue<>();
+    /** Наибольший суммарный вес. */
+    private final long maxWeight;
+    /** Функция веса значения. */
+    private final ToLongFunction<? super V> weigher;
+    /** Текущий суммарный вес. */
+    private long weight;
+
+    /**
+     * @param maxWeight Наибольший суммарный вес значений.
+     * @param weigher   Функция веса значения.
+     */
+    LruCache(long maxWeight, ToLongFunction<? super V> weigher) {
+        this(maxWeight, weigher, false);
+    }
+
+    /**
+     * @param maxWeight     Наибольший суммарный вес значений.
+     * @param weigher       Функция веса значения.
+     * @param softSpillover Удерживать вытесненные записи через мягкие ссылки.
+     */
+    LruCache(long maxWeight, ToLongFunction<? super V> weigher, boolean softSpillover) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.spilled = softSpillover ? new HashMap<>() : null;
+    }
+
+    /**
+     * @param key Ключ.
+     * @return Значение или {@code null}, если его нет в кэше.
+     */
+    synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null && spilled != null) {
+            expunge();
+            Spilled<K, V> ref = spilled.remove(key);
+            value = ref != null ? ref.get() : null;
+            if (value != null) {
+                put(key, value); // Запись снова используется и возвращается в основную часть кэша
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Добавляет значение и вытесняет давно не использованные записи сверх лимита.
+     *
+     * @param key   Ключ.
+     * @param value Значение.
+     */
+    synchronized void put(K key, V value) {
+        V previous = entries.put(key, value);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+        weight += weigher.applyAsLong(value);
+        if (spilled != null) {
+            expunge();
+            spilled.remove(key);
+        }
+        Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && entries.size() > 1) {
+            Map.Entry<K, V> entry = eldest.next();
+            weight -= weigher.applyAsLong(entry.getValue());
+            if (spilled != null) {
+                spilled.put(entry.getKey(), new Spilled<>(entry.getKey(), entry.getValue(), cleared));
+            }
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @param key Ключ.
+     * @return Удаленное значение или {@code null}.
+     */
+    synchronized V remove(K key) {
+        V value = entries.remove(key);
+        if (value != null) {
+            weight -= weigher.applyAsLong(value);
+        }
+        if (spilled != null) {
+            spilled.remove(key);
+        }
+        return value;
+    }
+
+    /**
+     * Удаляет записи, ключи которых удовлетворяют условию.
+     *
+     * @param filter Условие.
+     */
+    synchronized void removeIf(Predicate<? super K> filter) {
+        Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, V> entry = it.next();
+            if (filter.test(entry.getKey())) {
+                weight -= weigher.applyAsLong(entry.getValue());
+                it.remove();
+            }
+        }
+        if (spilled != null) {
+            spilled.keySet().removeIf(filter);
+        }
+    }
+
+    /** Удаляет все записи. */
+    synchronized void clear() {
+        entries.clear();
+        weight = 0;
+        if (spilled != null) {
+            spilled.clear();
+        }
+    }
+
+    /** @return Число записей без учета удерживаемых мягкими ссылками. */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /** @return Суммарный вес записей. */
+    synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * Удаляет ключи записей, освобожденных сборщиком мусора.
+     */
+    @SuppressWarnings("unchecked")
+    private void expunge() {
+        Spilled<K, V> ref;
+        while ((ref = (Spilled<K, V>) cleared.poll()) != null) {
+            spilled.remove(ref.key, ref);
+        }
+    }
+
+    /**
+     * Мягкая ссылка на вытесненное значение вместе с ключом.
+     */
+    private static final class Spilled<K, V> extends SoftReference<V> {
+        final K key;
+
+        Spilled(K key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}
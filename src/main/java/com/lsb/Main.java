@@ -1,9 +1,31 @@
 package com.lsb;
+
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * Точка входа в приложение.
+ * <p>
+ * Если первый аргумент — подкоманда пакетного режима ({@code embed}, {@code extract},
+ * {@code visualize}, {@code help}), приложение работает без графического интерфейса
+ * (см. {@link BatchCli}). Подкоманда {@code serve} запускает HTTP-сервис ({@link StegoServer}),
+ * {@code loadtest} — нагрузочный клиент для него ({@link LoadTestClient}).
+ * Иначе запускается {@link SteganographyApp}.
+ * </p>
  */
 public class Main {
-    public static void main(String[] args){
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("serve")) {
+            StegoServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("loadtest")) {
+            LoadTestClient.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && BatchCli.isCommand(args[0])) {
+            System.exit(BatchCli.run(args, System.out, System.err));
+        }
         SteganographyApp.main(args);
     }
 }
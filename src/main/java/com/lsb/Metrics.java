@@ -0,0 +1,228 @@
+package com.lsb;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Метрики этапов встраивания, извлечения и анализа.
+ * <p>
+ * Каждый этап ({@link Phase}) оформляется таймером:
+ * </p>
+ * <pre>
+ * try (Metrics.Timer timer = Metrics.start(Metrics.Phase.DECODE)) {
+ *     ...
+ *     timer.pixels(n).bytes(size);
+ * }
+ * </pre>
+ * <p>
+ * Результат передается в установленный {@link MetricsRegistry} (длительность, пиксели, байты и
+ * объем памяти, выделенной потоком этапа) и записывается как событие JFR {@code com.lsb.Phase}.
+ * Глубина очередей пакетного режима и сервера передается через {@link #gauge(String, long)}
+ * (событие {@code com.lsb.Gauge}). Если реестр не установлен и события JFR не включены,
+ * {@link #start(Phase)} возвращает общий пустой таймер: стоимость — одно чтение поля и
+ * проверка флага события.
+ * </p>
+ */
+public final class Metrics {
+
+    /**
+     * Этап операции.
+     */
+    public enum Phase {
+        /** Открытие изображения: декодирование через ImageIO или отображение BMP в память (с копированием). */
+        DECODE,
+        /** Запись заголовка и полезной нагрузки в младшие биты. */
+        EMBED,
+        /** Заполнение неиспользуемых битов шумом. */
+        TAIL_FILL,
+        /** Чтение полезной нагрузки из младших битов с проверкой целостности. */
+        EXTRACT,
+        /** Кодирование и запись изображения (для BMP — сброс отображения на диск). */
+        ENCODE,
+        /** Статистический анализ ({@link Steganalysis}). */
+        ANALYZE
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    /** Поддерживается ли измерение памяти, выделенной потоком. */
+    private static final boolean ALLOCATION_SUPPORTED = THREADS instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported()
+            && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemoryEnabled();
+
+    /** Установленный реестр или {@code null}, если метрики не собираются. */
+    private static volatile MetricsRegistry registry;
+
+    private Metrics() {
+    }
+
+    /**
+     * Устанавливает реестр метрик.
+     *
+     * @param registry Реестр или {@code null}, чтобы отключить сбор метрик.
+     */
+    public static void setRegistry(MetricsRegistry registry) {
+        Metrics.registry = registry;
+    }
+
+    /** @return Установленный реестр или {@code null}. */
+    public static MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Начинает измерение этапа.
+     *
+     * @param phase Этап.
+     * @return Таймер; закрывается по завершении этапа.
+     */
+    public static Timer start(Phase phase) {
+        MetricsRegistry target = registry;
+        PhaseEvent event = new PhaseEvent();
+        if (target == null && !event.isEnabled()) {
+            return Timer.NONE;
+        }
+        return new Timer(phase, target, event);
+    }
+
+    /**
+     * Учитывает текущее значение показателя, например глубину очереди.
+     *
+     * @param name  Имя показателя.
+     * @param value Значение.
+     */
+    public static void gauge(String name, long value) {
+        MetricsRegistry target = registry;
+        if (target != null) {
+            target.recordGauge(name, value);
+        }
+        GaugeEvent event = new GaugeEvent();
+        if (event.shouldCommit()) {
+            event.name = name;
+            event.value = value;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return Объем памяти, выделенной текущим потоком, или -1, если он не измеряется
+     *         (в том числе для виртуальных потоков).
+     */
+    private static long allocatedBytes() {
+        return ALLOCATION_SUPPORTED ? ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Измерение одного этапа. Объем выделенной памяти учитывается только для потока,
+     * открывшего таймер: память, выделенная задачами {@link ParallelLSB}, в него не входит.
+     */
+    public static final class Timer implements AutoCloseable {
+
+        /** Пустой таймер, возвращаемый при отключенных метриках. */
+        private static final Timer NONE = new Timer(null, null, null);
+
+        private final Phase phase;
+        private final MetricsRegistry registry;
+        private final PhaseEvent event;
+        private final long startNanos;
+        private final long startAllocated;
+        private long pixels;
+        private long bytes;
+
+        private Timer(Phase phase, MetricsRegistry registry, PhaseEvent event) {
+            this.phase = phase;
+            this.registry = registry;
+            this.event = event;
+            if (event == null) {
+                this.startNanos = 0;
+                this.startAllocated = -1;
+                return;
+            }
+            this.startAllocated = registry != null ? allocatedBytes() : -1;
+            event.begin();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Задает число обработанных пикселей.
+         *
+         * @param pixels Число пикселей.
+         * @return Этот таймер.
+         */
+        public Timer pixels(long pixels) {
+            this.pixels = pixels;
+            return this;
+        }
+
+        /**
+         * Задает число обработанных байтов.
+         *
+         * @param bytes Число байтов.
+         * @return Этот таймер.
+         */
+        public Timer bytes(long bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        /**
+         * Завершает измерение и передает результат в реестр и JFR.
+         */
+        @Override
+        public void close() {
+            if (event == null) {
+                return;
+            }
+            long nanos = System.nanoTime() - startNanos;
+            long allocated = -1;
+            if (registry != null) {
+                long end = startAllocated < 0 ? -1 : allocatedBytes();
+                allocated = end < 0 ? -1 : end - startAllocated;
+                registry.recordPhase(phase, nanos, pixels, bytes, allocated);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.pixels = pixels;
+                event.bytes = bytes;
+                event.allocated = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    @Name("com.lsb.Phase")
+    @Label("LSB Phase")
+    @Category("LSB")
+    @Description("Этап встраивания, извлечения или анализа")
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Pixels")
+        long pixels;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Allocated")
+        @Description("Память, выделенная потоком этапа; -1, если не измерялась")
+        @DataAmount
+        long allocated;
+    }
+
+    @Name("com.lsb.Gauge")
+    @Label("LSB Gauge")
+    @Category("LSB")
+    @Description("Значение показателя, например глубина очереди")
+    static final class GaugeEvent extends Event {
+        @Label("Name")
+        String name;
+        @Label("Value")
+        long value;
+    }
+}
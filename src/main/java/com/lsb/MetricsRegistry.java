@@ -0,0 +1,32 @@
+package com.lsb;
+
+/**
+ * Приемник метрик, устанавливаемый через {@link Metrics#setRegistry(MetricsRegistry)}.
+ * <p>
+ * Методы вызываются из потоков, выполняющих операции, сразу по завершении этапа, поэтому
+ * реализация должна быть потокобезопасной и быстрой. Встроенная реализация —
+ * {@link InMemoryMetrics}; для передачи метрик во внешнюю систему достаточно реализовать
+ * этот интерфейс.
+ * </p>
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Учитывает завершенный этап операции.
+     *
+     * @param phase          Этап.
+     * @param nanos          Длительность в наносекундах.
+     * @param pixels         Число обработанных пикселей.
+     * @param bytes          Число обработанных байтов (файла или полезной нагрузки).
+     * @param allocatedBytes Объем памяти, выделенной потоком этапа, или -1, если он не измерялся.
+     */
+    void recordPhase(Metrics.Phase phase, long nanos, long pixels, long bytes, long allocatedBytes);
+
+    /**
+     * Учитывает текущее значение показателя, например глубину очереди.
+     *
+     * @param name  Имя показателя.
+     * @param value Значение.
+     */
+    void recordGauge(String name, long value);
+}
@@ -0,0 +1,42 @@
+package com.lsb;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Исключение, выбрасываемое при извлечении разделенных данных ({@link ShardedPayload}),
+ * если среди изображений нет некоторых частей.
+ */
+public class MissingShardsException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Номера отсутствующих частей (от 1). */
+    private final int[] missing;
+    /** Общее число частей. */
+    private final int total;
+
+    /**
+     * Создает исключение.
+     *
+     * @param missing Номера отсутствующих частей в порядке возрастания.
+     * @param total   Общее число частей.
+     */
+    public MissingShardsException(int[] missing, int total) {
+        super("Не хватает частей данных: " + Arrays.stream(missing).mapToObj(Integer::toString)
+                .collect(Collectors.joining(", ")) + " из " + total);
+        this.missing = missing.clone();
+        this.total = total;
+    }
+
+    /** @return Номера отсутствующих частей (от 1) в порядке возрастания. */
+    public int[] getMissing() {
+        return missing.clone();
+    }
+
+    /** @return Общее число частей. */
+    public int getTotal() {
+        return total;
+    }
+}
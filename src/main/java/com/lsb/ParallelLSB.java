@@ -0,0 +1,250 @@
+package com.lsb;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.random.RandomGenerator;
+
+/**
+ * Параллельное встраивание и извлечение битов полосами строк на {@link ForkJoinPool}.
+ * <p>
+ * Положение каждого бита в растре однозначно определяется его индексом, поэтому
+ * диапазон байтов делится на независимые полосы примерно по {@value #STRIPE_ROWS} строк,
+ * каждая из которых обрабатывается отдельной задачей. Результат совпадает с
+ * последовательными методами {@link LSBRaster}. Если объем работы меньше порога,
+ * вызов выполняется последовательно в текущем потоке.
+ * </p>
+ */
+public final class ParallelLSB {
+
+    /** Число строк изображения в одной полосе. */
+    public static final int STRIPE_ROWS = 64;
+    /**
+     * Порог по умолчанию (в пикселях), ниже которого работа выполняется последовательно.
+     * Может быть задан системным свойством {@code lsb.parallel.threshold}.
+     */
+    public static final long DEFAULT_THRESHOLD = Long.getLong("lsb.parallel.threshold", 1L << 22);
+
+    /**
+     * Число пикселей в одной порции потоковой обработки (см. {@link #chunkBytes(BitLayout)}).
+     * Порция в несколько раз больше порога по умолчанию, так что каждая обрабатывается параллельно.
+     */
+    public static final int CHUNK_PIXELS = 1 << 23;
+
+    /** Экземпляр на общем пуле с порогом по умолчанию. */
+    private static final ParallelLSB COMMON = new ParallelLSB(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+
+    /** Пул потоков. */
+    private final ForkJoinPool pool;
+    /** Порог в пикселях. */
+    private final long threshold;
+
+    /**
+     * Создает исполнитель.
+     *
+     * @param pool      Пул потоков.
+     * @param threshold Минимальное число обрабатываемых пикселей для параллельного выполнения.
+     */
+    public ParallelLSB(ForkJoinPool pool, long threshold) {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /** @return Экземпляр на общем пуле {@link ForkJoinPool#commonPool()} с порогом по умолчанию. */
+    public static ParallelLSB common() {
+        return COMMON;
+    }
+
+    /**
+     * Вычисляет размер порции потоковой обработки для схемы.
+     *
+     * @param layout Схема размещения битов.
+     * @return Число байтов, занимающее {@value #CHUNK_PIXELS} пикселей; кратно числу битов
+     *         на пиксель, поэтому каждая порция начинается с целого пикселя.
+     */
+    public static int chunkBytes(BitLayout layout) {
+        return CHUNK_PIXELS / 8 * layout.bitsPerPixel();
+    }
+
+    /**
+     * Встраивает байты так же, как {@link LSBRaster#embedBytes(BitLayout, long, byte[], int, int)}.
+     *
+     * @param raster     Растр.
+     * @param layout     Схема размещения битов.
+     * @param startPixel Индекс первого пикселя.
+     * @param src        Источник байтов.
+     * @param off        Смещение в {@code src}.
+     * @param len        Число байтов.
+     */
+    public void embedBytes(LSBRaster raster, BitLayout layout, long startPixel, byte[] src, int off, int len) {
+        if (layout.pixelsFor((long) len * 8) < threshold) {
+            raster.embedBytes(layout, startPixel, src, off, len);
+            return;
+        }
+        embedStripes(raster, layout, startPixel, src, off, len);
+    }
+
+    /**
+     * Встраивает байты; при последовательном выполнении использует переданные буферы строки
+     * (см. {@link LSBRaster#embedBytes(BitLayout, long, byte[], int, int, byte[][])}).
+     */
+    void embedBytes(LSBRaster raster, BitLayout layout, long startPixel, byte[] src, int off, int len, byte[][] values) {
+        if (layout.pixelsFor((long) len * 8) < threshold) {
+            raster.embedBytes(layout, startPixel, src, off, len, values);
+            return;
+        }
+        embedStripes(raster, layout, startPixel, src, off, len);
+    }
+
+    private void embedStripes(LSBRaster raster, BitLayout layout, long startPixel, byte[] src, int off, int len) {
+        int bpp = layout.bitsPerPixel();
+        pool.invoke(new Stripe(stripeBytes(raster, layout), 0, len,
+                (from, to) -> raster.embedBytes(layout, startPixel + (long) from * 8 / bpp, src, off + from, to - from)));
+    }
+
+    /**
+     * Извлекает байты так же, как {@link LSBRaster#extractBytes(BitLayout, long, byte[], int, int)}.
+     *
+     * @param raster     Растр.
+     * @param layout     Схема размещения битов.
+     * @param startPixel Индекс первого пикселя.
+     * @param dst        Приемник байтов.
+     * @param off        Смещение в {@code dst}.
+     * @param len        Число байтов.
+     */
+    public void extractBytes(LSBRaster raster, BitLayout layout, long startPixel, byte[] dst, int off, int len) {
+        if (layout.pixelsFor((long) len * 8) < threshold) {
+            raster.extractBytes(layout, startPixel, dst, off, len);
+            return;
+        }
+        extractStripes(raster, layout, startPixel, dst, off, len);
+    }
+
+    /**
+     * Извлекает байты; при последовательном выполнении использует переданные буферы строки
+     * (см. {@link LSBRaster#extractBytes(BitLayout, long, byte[], int, int, byte[][])}).
+     */
+    void extractBytes(LSBRaster raster, BitLayout layout, long startPixel, byte[] dst, int off, int len, byte[][] values) {
+        if (layout.pixelsFor((long) len * 8) < threshold) {
+            raster.extractBytes(layout, startPixel, dst, off, len, values);
+            return;
+        }
+        extractStripes(raster, layout, startPixel, dst, off, len);
+    }
+
+    private void extractStripes(LSBRaster raster, BitLayout layout, long startPixel, byte[] dst, int off, int len) {
+        int bpp = layout.bitsPerPixel();
+        pool.invoke(new Stripe(stripeBytes(raster, layout), 0, len,
+                (from, to) -> raster.extractBytes(layout, startPixel + (long) from * 8 / bpp, dst, off + from, to - from)));
+    }
+
+    /**
+     * Заполняет используемые схемой младшие биты от {@code startPixel} до конца изображения
+     * псевдослучайными значениями.
+     * <p>
+     * Хвост делится на полосы по {@value #STRIPE_ROWS} строк, и каждая полоса получает
+     * собственный генератор, отщепленный от {@code random} в текущем потоке. Поэтому при
+     * одинаковом начальном значении результат не зависит от порога и числа потоков.
+     * </p>
+     *
+     * @param raster     Растр.
+     * @param layout     Схема размещения битов.
+     * @param startPixel Индекс первого пикселя.
+     * @param random     Генератор псевдослучайных чисел.
+     */
+    public void fillRandom(LSBRaster raster, BitLayout layout, long startPixel,
+                           RandomGenerator.SplittableGenerator random) {
+        fillRandom(raster, layout, startPixel, random, null);
+    }
+
+    /**
+     * Заполняет хвост шумом; при последовательном выполнении использует переданные буферы строки
+     * (см. {@link LSBRaster#fillRandom(BitLayout, long, long, RandomGenerator, byte[][])}).
+     *
+     * @param values Буферы строки или {@code null}, чтобы выделить их для каждой полосы.
+     */
+    void fillRandom(LSBRaster raster, BitLayout layout, long startPixel,
+                    RandomGenerator.SplittableGenerator random, byte[][] values) {
+        long total = raster.pixelCount();
+        if (startPixel >= total) {
+            return;
+        }
+        long stripePixels = (long) raster.getWidth() * STRIPE_ROWS;
+        int stripes = (int) ((total - startPixel + stripePixels - 1) / stripePixels);
+        RandomGenerator[] generators = new RandomGenerator[stripes];
+        for (int i = 0; i < stripes; i++) {
+            generators[i] = random.split();
+        }
+        RangeAction fill = (from, to) -> {
+            for (int i = from; i < to; i++) {
+                long start = startPixel + i * stripePixels;
+                raster.fillRandom(layout, start, Math.min(total, start + stripePixels), generators[i]);
+            }
+        };
+        if (total - startPixel < threshold) {
+            if (values == null) {
+                fill.run(0, stripes);
+                return;
+            }
+            for (int i = 0; i < stripes; i++) {
+                long start = startPixel + i * stripePixels;
+                raster.fillRandom(layout, start, Math.min(total, start + stripePixels), generators[i], values);
+            }
+        } else {
+            pool.invoke(new Stripe(1, 0, stripes, fill));
+        }
+    }
+
+    /**
+     * Вычисляет размер полосы в байтах полезной нагрузки.
+     * <p>
+     * Размер кратен числу битов на пиксель, поэтому каждая полоса начинается с целого
+     * пикселя и соседние полосы никогда не изменяют один и тот же пиксель.
+     * </p>
+     *
+     * @param raster Растр.
+     * @param layout Схема размещения битов.
+     * @return Число байтов, занимающих около {@value #STRIPE_ROWS} строк.
+     */
+    private static int stripeBytes(LSBRaster raster, BitLayout layout) {
+        int bpp = layout.bitsPerPixel();
+        long bytes = (long) raster.getWidth() * STRIPE_ROWS * bpp / 8;
+        return (int) Math.max(bpp, Math.min(Integer.MAX_VALUE - bpp, bytes) / bpp * bpp);
+    }
+
+    /**
+     * Обработчик диапазона {@code [from, to)}.
+     */
+    @FunctionalInterface
+    private interface RangeAction {
+        void run(int from, int to);
+    }
+
+    /**
+     * Задача, рекурсивно делящая диапазон пополам до размера полосы.
+     */
+    private static final class Stripe extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int grain;
+        private final int from;
+        private final int to;
+        private final transient RangeAction action;
+
+        Stripe(int grain, int from, int to, RangeAction action) {
+            this.grain = grain;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                action.run(from, to);
+                return;
+            }
+            int mid = from + Math.max(grain, (to - from) / grain / 2 * grain);
+            invokeAll(new Stripe(grain, from, mid, action), new Stripe(grain, mid, to, action));
+        }
+    }
+}
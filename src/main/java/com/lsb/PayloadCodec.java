@@ -0,0 +1,41 @@
+package com.lsb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Метод сжатия полезной нагрузки контейнера.
+ * <p>
+ * Оба направления работают в потоковом режиме: кодер и декодер оборачивают выходной поток,
+ * поэтому ни исходные, ни сжатые данные не собираются целиком в памяти. Идентификатор
+ * метода записывается во флаги заголовка {@link PayloadHeader}; при извлечении декодер
+ * выбирается по нему через {@link PayloadCodecs#forId(int)}.
+ * </p>
+ */
+public interface PayloadCodec {
+
+    /**
+     * @return Идентификатор метода (1–{@value PayloadHeader#CODEC_MASK}), записываемый в заголовок.
+     */
+    int id();
+
+    /**
+     * Создает поток сжатия.
+     *
+     * @param out Приемник сжатых данных. Закрытие возвращаемого потока завершает сжатие
+     *            и закрывает {@code out}.
+     * @return Поток, в который записываются исходные данные.
+     * @throws IOException Если поток не удалось создать.
+     */
+    OutputStream encoder(OutputStream out) throws IOException;
+
+    /**
+     * Создает поток распаковки.
+     *
+     * @param out Приемник распакованных данных. Закрытие возвращаемого потока завершает
+     *            распаковку и закрывает {@code out}.
+     * @return Поток, в который записываются сжатые данные.
+     * @throws IOException Если поток не удалось создать.
+     */
+    OutputStream decoder(OutputStream out) throws IOException;
+}
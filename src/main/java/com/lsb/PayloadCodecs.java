@@ -0,0 +1,57 @@
+package com.lsb;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+/**
+ * Реестр методов сжатия полезной нагрузки.
+ * <p>
+ * По умолчанию зарегистрирован {@link #DEFLATE}; дополнительные методы регистрируются
+ * через {@link #register(PayloadCodec)} до извлечения изображений, встроенных с ними.
+ * </p>
+ */
+public final class PayloadCodecs {
+
+    /** Сжатие zlib с уровнем по умолчанию. */
+    public static final PayloadCodec DEFLATE = new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+
+    /** Зарегистрированные методы по идентификатору. */
+    private static final Map<Integer, PayloadCodec> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        register(DEFLATE);
+    }
+
+    private PayloadCodecs() {
+    }
+
+    /**
+     * Регистрирует метод сжатия; метод с тем же идентификатором заменяется.
+     *
+     * @param codec Метод сжатия.
+     * @throws IllegalArgumentException Если идентификатор вне диапазона 1–{@value PayloadHeader#CODEC_MASK}.
+     */
+    public static void register(PayloadCodec codec) {
+        if (codec.id() < 1 || codec.id() > PayloadHeader.CODEC_MASK) {
+            throw new IllegalArgumentException("Идентификатор метода сжатия должен быть от 1 до " + PayloadHeader.CODEC_MASK);
+        }
+        CODECS.put(codec.id(), codec);
+    }
+
+    /**
+     * Находит метод сжатия по идентификатору из заголовка.
+     *
+     * @param id Идентификатор.
+     * @return Метод сжатия.
+     * @throws IOException Если метод не зарегистрирован.
+     */
+    public static PayloadCodec forId(int id) throws IOException {
+        PayloadCodec codec = CODECS.get(id);
+        if (codec == null) {
+            throw new IOException("Неизвестный метод сжатия встроенных данных: " + id);
+        }
+        return codec;
+    }
+}
@@ -0,0 +1,230 @@
+package com.lsb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Заголовок контейнера полезной нагрузки, записываемый в первые пиксели изображения.
+ * <p>
+ * Заголовок всегда размещается по схеме {@link BitLayout#DEFAULT}, начиная с пикселя 0;
+ * полезная нагрузка следует сразу за ним по схеме, записанной в заголовке.
+ * Формат версии 2 (big-endian, {@value #SIZE} байтов):
+ * </p>
+ * <pre>
+ *  0  4  сигнатура 0x89 'L' 'S' 'B'
+ *  4  1  версия формата
+ *  5  1  флаги (биты 0–3 — метод сжатия {@link PayloadCodec#id()}, 0 — без сжатия)
+ *  6  1  схема размещения ({@link BitLayout#toByte()})
+ *  7  4  длина полезной нагрузки в байтах
+ * 11  4  CRC-32 полезной нагрузки
+ * </pre>
+ * <p>
+ * Длина и CRC-32 относятся к байтам, записанным в изображение (после сжатия, если оно применялось).
+ * </p>
+ * <p>
+ * В версии 1 (14 байтов) поле схемы отсутствует и используется {@link BitLayout#DEFAULT}.
+ * </p>
+ * <p>
+ * Первый байт сигнатуры 0x89 не может начинать корректную последовательность UTF-8,
+ * поэтому изображения, встроенные по старой схеме с разделителем, не принимаются за контейнер.
+ * </p>
+ */
+public final class PayloadHeader {
+
+    /** Сигнатура контейнера. */
+    static final byte[] MAGIC = {(byte) 0x89, 'L', 'S', 'B'};
+    /** Текущая версия формата. */
+    public static final int VERSION = 2;
+    /** Размер заголовка текущей версии в байтах. */
+    public static final int SIZE = 15;
+    /** Маска флагов с идентификатором метода сжатия. */
+    public static final int CODEC_MASK = 0x0F;
+    /** Размер заголовка версии 1 в байтах. */
+    private static final int SIZE_V1 = 14;
+
+    /** Версия формата. */
+    private final int version;
+    /** Флаги. */
+    private final int flags;
+    /** Схема размещения полезной нагрузки. */
+    private final BitLayout layout;
+    /** Длина полезной нагрузки в байтах. */
+    private final int length;
+    /** CRC-32 полезной нагрузки. */
+    private final int checksum;
+
+    /**
+     * Создает заголовок.
+     *
+     * @param version  Версия формата.
+     * @param flags    Флаги.
+     * @param layout   Схема размещения полезной нагрузки.
+     * @param length   Длина полезной нагрузки в байтах.
+     * @param checksum CRC-32 полезной нагрузки.
+     */
+    public PayloadHeader(int version, int flags, BitLayout layout, int length, int checksum) {
+        this.version = version;
+        this.flags = flags;
+        this.layout = layout;
+        this.length = length;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Создает заголовок текущей версии для заданной полезной нагрузки.
+     *
+     * @param payload Полезная нагрузка.
+     * @param flags   Флаги.
+     * @param layout  Схема размещения полезной нагрузки.
+     * @return Заголовок.
+     */
+    public static PayloadHeader of(byte[] payload, int flags, BitLayout layout) {
+        return new PayloadHeader(VERSION, flags, layout, payload.length, checksum(payload, 0, payload.length));
+    }
+
+    /**
+     * Вычисляет CRC-32 участка массива.
+     *
+     * @param data Данные.
+     * @param off  Смещение.
+     * @param len  Длина.
+     * @return Значение CRC-32.
+     */
+    public static int checksum(byte[] data, int off, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Проверяет, начинается ли массив с сигнатуры контейнера.
+     *
+     * @param bytes Первые байты, извлеченные из изображения.
+     * @return {@code true}, если сигнатура совпадает.
+     */
+    public static boolean hasMagic(byte[] bytes) {
+        if (bytes.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Разбирает заголовок.
+     *
+     * @param bytes Байты, извлеченные из начала изображения ({@value #SIZE} байтов
+     *              или 14 байтов для заголовка версии 1).
+     * @return Заголовок.
+     * @throws IOException Если сигнатура не совпадает или версия формата не поддерживается.
+     */
+    public static PayloadHeader parse(byte[] bytes) throws IOException {
+        if (bytes.length < SIZE_V1 || !hasMagic(bytes)) {
+            throw new IOException("Заголовок встроенных данных не найден");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(MAGIC.length);
+        int version = buffer.get() & 0xFF;
+        if (version < 1 || version > VERSION || (version > 1 && bytes.length < SIZE)) {
+            throw new IOException("Неподдерживаемая версия формата: " + version);
+        }
+        int flags = buffer.get() & 0xFF;
+        BitLayout layout = BitLayout.DEFAULT;
+        if (version > 1) {
+            try {
+                layout = BitLayout.fromByte(buffer.get() & 0xFF);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Некорректная схема размещения встроенных данных", e);
+            }
+        }
+        int length = buffer.getInt();
+        if (length < 0) {
+            throw new IOException("Некорректная длина встроенных данных: " + Integer.toUnsignedString(length));
+        }
+        return new PayloadHeader(version, flags, layout, length, buffer.getInt());
+    }
+
+    /**
+     * Сериализует заголовок в формате текущей версии.
+     *
+     * @return Массив из {@value #SIZE} байтов.
+     */
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(SIZE)
+                .put(MAGIC)
+                .put((byte) VERSION)
+                .put((byte) flags)
+                .put((byte) layout.toByte())
+                .putInt(length)
+                .putInt(checksum)
+                .array();
+    }
+
+    /** @return Размер заголовка этой версии в байтах. */
+    public int getSize() {
+        return version == 1 ? SIZE_V1 : SIZE;
+    }
+
+    /** @return Индекс пикселя, с которого начинается полезная нагрузка. */
+    public long payloadStartPixel() {
+        return getSize() * 8L;
+    }
+
+    /**
+     * Проверяет целостность полезной нагрузки.
+     *
+     * @param payload Извлеченная полезная нагрузка.
+     * @throws IOException Если длина или контрольная сумма не совпадают.
+     */
+    public void verify(byte[] payload) throws IOException {
+        verify(payload.length, checksum(payload, 0, payload.length));
+    }
+
+    /**
+     * Проверяет целостность полезной нагрузки, извлеченной потоком.
+     *
+     * @param actualLength   Число извлеченных байтов.
+     * @param actualChecksum CRC-32 извлеченных байтов.
+     * @throws IOException Если длина или контрольная сумма не совпадают.
+     */
+    public void verify(long actualLength, int actualChecksum) throws IOException {
+        if (actualLength != length || actualChecksum != checksum) {
+            throw new IOException("Контрольная сумма встроенных данных не совпадает");
+        }
+    }
+
+    /** @return Версия формата. */
+    public int getVersion() {
+        return version;
+    }
+
+    /** @return Флаги. */
+    public int getFlags() {
+        return flags;
+    }
+
+    /** @return Идентификатор метода сжатия или 0, если данные не сжаты. */
+    public int getCodecId() {
+        return flags & CODEC_MASK;
+    }
+
+    /** @return Схема размещения полезной нагрузки. */
+    public BitLayout getLayout() {
+        return layout;
+    }
+
+    /** @return Длина полезной нагрузки в байтах. */
+    public int getLength() {
+        return length;
+    }
+
+    /** @return CRC-32 полезной нагрузки. */
+    public int getChecksum() {
+        return checksum;
+    }
+}
@@ -0,0 +1,202 @@
+package com.lsb;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.SplittableRandom;
+
+/**
+ * Ключевая перестановка индексов пикселей {@code [0, size)} без таблиц.
+ * <p>
+ * Используется сбалансированная сеть Фейстеля на области из {@code 4^h} значений
+ * (наименьшей степени четверки, не меньшей {@code size}) с {@value #ROUNDS} раундами;
+ * значения за пределами {@code [0, size)} повторно шифруются, пока не попадут в диапазон
+ * (cycle walking). Так как область меньше {@code 4 * size}, в среднем требуется меньше четырех
+ * шифрований. Перестановка — чистая функция индекса, поэтому параллельные задачи вычисляют
+ * позиции независимо, а память не зависит от размера изображения.
+ * </p>
+ * <p>
+ * {@link #scatter(LSBRaster, byte[])} возвращает представление растра, в котором логический
+ * пиксель {@code i} соответствует физическому пикселю {@code apply(i)}: встраивание и извлечение
+ * через такое представление рассеивают контейнер (вместе с заголовком) по всему изображению, а
+ * извлечение с тем же ключом читает только пиксели контейнера. Перестановка не является
+ * шифрованием данных: она скрывает расположение битов, но не их значения.
+ * </p>
+ */
+public final class PixelPermutation {
+
+    /** Число раундов сети Фейстеля. */
+    static final int ROUNDS = 6;
+
+    private final long size;
+    /** Число битов половины блока. */
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    /**
+     * Создает перестановку.
+     *
+     * @param key  Ключ (произвольной длины).
+     * @param size Размер области; перестановка зависит от ключа и размера.
+     */
+    public PixelPermutation(byte[] key, long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Отрицательный размер области: " + size);
+        }
+        this.size = size;
+        int bits = size <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(size - 1);
+        this.halfBits = Math.max(1, (bits + 1) / 2);
+        this.halfMask = (1L << halfBits) - 1;
+        SplittableRandom random = new SplittableRandom(seed(key, size));
+        for (int r = 0; r < ROUNDS; r++) {
+            roundKeys[r] = random.nextLong();
+        }
+    }
+
+    /**
+     * Преобразует ключ в строку байтов UTF-8.
+     *
+     * @param key Ключ-строка.
+     * @return Байты ключа.
+     */
+    public static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Возвращает представление растра с рассеянным порядком пикселей.
+     *
+     * @param raster Растр; закрывается владельцем, а не представлением.
+     * @param key    Ключ.
+     * @return Представление того же размера; изменения отражаются в {@code raster}.
+     */
+    public static LSBRaster scatter(LSBRaster raster, byte[] key) {
+        return new Scattered(raster, new PixelPermutation(key, raster.pixelCount()));
+    }
+
+    /** @return Размер области. */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Вычисляет образ индекса.
+     *
+     * @param index Индекс от 0 до {@code size - 1}.
+     * @return Индекс пикселя, в который отображается {@code index}.
+     */
+    public long apply(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Индекс " + index + " вне диапазона [0, " + size + ")");
+        }
+        long x = index;
+        do {
+            x = encrypt(x);
+        } while (x >= size);
+        return x;
+    }
+
+    /**
+     * Один проход сети Фейстеля по области {@code 4^halfBits}.
+     */
+    private long encrypt(long x) {
+        long left = x >>> halfBits;
+        long right = x & halfMask;
+        for (int r = 0; r < ROUNDS; r++) {
+            long next = left ^ (mix(right ^ roundKeys[r]) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    /** Перемешивающая функция раунда (финализатор SplitMix64). */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long seed(byte[] key, long size) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(key);
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(size).array());
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 обязателен для любой реализации Java
+        }
+    }
+
+    /**
+     * Представление растра, в котором логические пиксели переставлены.
+     * Позиции участка строки вычисляются один раз для всех каналов схемы.
+     */
+    private static final class Scattered extends LSBRaster {
+        private final LSBRaster raster;
+        private final PixelPermutation permutation;
+        /** Позиции последнего участка строки в каждом потоке. */
+        private final ThreadLocal<Positions> cache = ThreadLocal.withInitial(Positions::new);
+
+        Scattered(LSBRaster raster, PixelPermutation permutation) {
+            super(raster.getWidth(), raster.getHeight());
+            this.raster = raster;
+            this.permutation = permutation;
+            setProgress(raster.getProgress());
+        }
+
+        @Override
+        public boolean hasChannel(BitLayout.Channel channel) {
+            return raster.hasChannel(channel);
+        }
+
+        @Override
+        protected void readLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+            long[] positions = positions(y, x0, len);
+            for (int i = 0; i < len; i++) {
+                long p = positions[i];
+                raster.readLSB((int) (p / width), (int) (p % width), 1, channel, mask, values, off + i);
+            }
+        }
+
+        @Override
+        protected void writeLSB(int y, int x0, int len, BitLayout.Channel channel, int mask, byte[] values, int off) {
+            long[] positions = positions(y, x0, len);
+            for (int i = 0; i < len; i++) {
+                long p = positions[i];
+                raster.writeLSB((int) (p / width), (int) (p % width), 1, channel, mask, values, off + i);
+            }
+        }
+
+        private long[] positions(int y, int x0, int len) {
+            Positions c = cache.get();
+            if (c.y != y || c.x0 != x0 || c.len != len) {
+                if (c.values.length < len) {
+                    c.values = new long[width];
+                }
+                long base = (long) y * width + x0;
+                for (int i = 0; i < len; i++) {
+                    c.values[i] = permutation.apply(base + i);
+                }
+                c.y = y;
+                c.x0 = x0;
+                c.len = len;
+            }
+            return c.values;
+        }
+
+        @Override
+        public void close() {
+            // Растр закрывается владельцем.
+        }
+    }
+
+    private static final class Positions {
+        int y = -1;
+        int x0;
+        int len;
+        long[] values = new long[0];
+    }
+}
@@ -0,0 +1,519 @@
+package com.lsb;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Кодирование растра в PNG (8 бит на канал, RGB, RGBA или оттенки серого) с параллельным сжатием.
+ * <p>
+ * Строки делятся на блоки примерно по {@value #BLOCK_BYTES} байтов. Каждый блок фильтруется и
+ * сжимается отдельной задачей в независимый поток deflate без обертки zlib: все блоки, кроме
+ * последнего, завершаются сбросом {@link Deflater#SYNC_FLUSH} (выравнивание на границу байта
+ * без признака последнего блока), последний — {@link Deflater#finish()}, поэтому их
+ * последовательная запись образует один корректный поток zlib, как в pigz. Словарь каждого блока
+ * инициализируется последними 32 КБ несжатых данных предыдущего блока, так что степень сжатия
+ * почти не отличается от последовательной. Контрольные суммы Adler-32 блоков объединяются без
+ * повторного прохода по данным.
+ * </p>
+ * <p>
+ * Фильтр строки (None, Sub, Up, Average, Paeth) выбирается по наименьшей сумме модулей
+ * отфильтрованных байтов; при уровне 0 фильтрация не применяется. В памяти одновременно
+ * находится не больше двух блоков на поток пула.
+ * </p>
+ * <p>
+ * Изображение, не помещающееся в память целиком, записывается по частям через
+ * {@link #writer(OutputStream, int, int, int)}: строки передаются полосами, а кодировщик
+ * хранит только текущий блок и строки словаря ({@link StripPipeline}).
+ * </p>
+ */
+public final class PngEncoder {
+
+    /** Уровень сжатия по умолчанию. */
+    public static final int DEFAULT_LEVEL = 6;
+    /** Примерный объем несжатых данных одного блока. */
+    public static final int BLOCK_BYTES = 1 << 20;
+    /** Размер окна deflate. */
+    private static final int WINDOW = 32 * 1024;
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int ADLER_BASE = 65521;
+
+    /** Кодер на общем пуле с уровнем по умолчанию. */
+    private static final PngEncoder COMMON = new PngEncoder(ForkJoinPool.commonPool(), DEFAULT_LEVEL);
+
+    private final ForkJoinPool pool;
+    private final int level;
+
+    /**
+     * Создает кодер.
+     *
+     * @param pool  Пул потоков для сжатия блоков.
+     * @param level Уровень сжатия от 0 (без сжатия) до 9.
+     */
+    public PngEncoder(ForkJoinPool pool, int level) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Уровень сжатия PNG должен быть от 0 до 9: " + level);
+        }
+        this.pool = pool;
+        this.level = level;
+    }
+
+    /** @return Кодер на общем пуле {@link ForkJoinPool#commonPool()} с уровнем {@value #DEFAULT_LEVEL}. */
+    public static PngEncoder common() {
+        return COMMON;
+    }
+
+    /**
+     * @param level Уровень сжатия от 0 до 9.
+     * @return Кодер на общем пуле с указанным уровнем.
+     */
+    public static PngEncoder withLevel(int level) {
+        return level == DEFAULT_LEVEL ? COMMON : new PngEncoder(ForkJoinPool.commonPool(), level);
+    }
+
+    /** @return Уровень сжатия. */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Проверяет, указывает ли расширение файла на PNG.
+     *
+     * @param path Путь к файлу.
+     * @return {@code true} для {@code *.png} (без учета регистра).
+     */
+    public static boolean isPng(Path path) {
+        String name = path.getFileName().toString();
+        return name.regionMatches(true, name.length() - 4, ".png", 0, 4);
+    }
+
+    /**
+     * Записывает растр в файл PNG.
+     *
+     * @param raster Растр.
+     * @param target Путь к файлу; существующий файл перезаписывается.
+     * @throws IOException Если произошла ошибка записи.
+     */
+    public void write(LSBRaster raster, Path target) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), 1 << 16)) {
+            write(raster, out);
+        }
+    }
+
+    /**
+     * Записывает растр в поток в формате PNG.
+     *
+     * @param raster Растр; при наличии альфа-канала сохраняется RGBA, иначе RGB.
+     * @param out    Поток; не закрывается.
+     * @throws IOException Если произошла ошибка записи.
+     */
+    public void write(LSBRaster raster, OutputStream out) throws IOException {
+        int channels = raster.hasChannel(BitLayout.Channel.ALPHA) ? 4 : 3;
+        try (Writer writer = writer(out, raster.getWidth(), raster.getHeight(), channels);
+             Metrics.Timer timer = Metrics.start(Metrics.Phase.ENCODE)) {
+            writer.writeRaster(raster);
+            writer.finish();
+            timer.pixels(raster.pixelCount()).bytes(writer.written);
+        }
+    }
+
+    /**
+     * Начинает запись PNG, строки которого передаются по частям через {@link Writer#writeRows(byte[], int, int)}.
+     * Сигнатура и заголовок IHDR записываются сразу.
+     *
+     * @param out      Поток; не закрывается.
+     * @param width    Ширина изображения.
+     * @param height   Высота изображения.
+     * @param channels Число компонент пикселя: 1 (оттенки серого), 3 (RGB) или 4 (RGBA).
+     * @return Запись; после передачи всех строк должен быть вызван {@link Writer#finish()}.
+     * @throws IOException Если произошла ошибка записи или изображение слишком широкое.
+     */
+    public Writer writer(OutputStream out, int width, int height, int channels) throws IOException {
+        if (channels != 1 && channels != 3 && channels != 4) {
+            throw new IllegalArgumentException("Неподдерживаемое число компонент PNG: " + channels);
+        }
+        if ((long) width * channels + 1 > Integer.MAX_VALUE / 2) {
+            throw new IOException("Слишком широкое изображение для PNG: " + width);
+        }
+        return new Writer(out, width, height, channels);
+    }
+
+    /**
+     * Последовательная запись PNG по частям.
+     * <p>
+     * Переданные строки копируются во внутренний буфер; как только набирается блок,
+     * он вместе с предшествующими строками словаря отдается на сжатие в пул, а сжатые
+     * блоки записываются строго по порядку. Памяти требуется на блок и словарь плюс
+     * не больше двух блоков на поток пула в работе, независимо от высоты изображения.
+     * </p>
+     */
+    public final class Writer implements AutoCloseable {
+        private final OutputStream out;
+        private final int width;
+        private final int height;
+        private final int channels;
+        /** Длина упакованной строки без байта фильтра. */
+        private final int stride;
+        private final int rowsPerBlock;
+        /** Строки словаря и одна предшествующая им строка для фильтров. */
+        private final int history;
+        /** Наибольшее число блоков в работе. */
+        private final int window;
+        private final ArrayDeque<ForkJoinTask<Block>> pending = new ArrayDeque<>();
+        private long adler = 1;
+        /** Записано сжатых байтов. */
+        private long written;
+        /** Строки {@code [bufferFirst, next)}: хвост предыдущего блока и начало текущего. */
+        private byte[] buffer;
+        private int bufferFirst;
+        /** Первая строка текущего, еще не отданного на сжатие блока. */
+        private int blockStart;
+        /** Число принятых строк. */
+        private int next;
+
+        private Writer(OutputStream out, int width, int height, int channels) throws IOException {
+            this.out = out;
+            this.width = width;
+            this.height = height;
+            this.channels = channels;
+            this.stride = width * channels;
+            this.rowsPerBlock = Math.max(1, BLOCK_BYTES / (stride + 1));
+            this.history = (WINDOW + stride) / (stride + 1) + 1;
+            // Не больше двух блоков на поток пула в работе, запись — строго по порядку.
+            this.window = Math.max(2, 2 * pool.getParallelism());
+
+            out.write(SIGNATURE);
+            byte[] ihdr = new byte[13];
+            putInt(ihdr, 0, width);
+            putInt(ihdr, 4, height);
+            ihdr[8] = 8;                                                  // Бит на канал
+            ihdr[9] = (byte) (channels == 1 ? 0 : channels == 3 ? 2 : 6); // Тип цвета: серый, RGB или RGBA
+            writeChunk(out, "IHDR", ihdr, 0, ihdr.length);
+            writeChunk(out, "IDAT", new byte[]{0x78, zlibFlags(level)}, 0, 2);
+        }
+
+        /**
+         * Передает следующие строки изображения.
+         *
+         * @param src  Упакованные строки с компонентами в порядке R, G, B[, A] или значениями яркости.
+         * @param off  Смещение в {@code src}.
+         * @param rows Число строк; не больше числа оставшихся.
+         * @throws IOException Если произошла ошибка записи или сжатия.
+         */
+        public void writeRows(byte[] src, int off, int rows) throws IOException {
+            if (rows < 0 || rows > height - next) {
+                throw new IllegalArgumentException("Передано " + rows + " строк, осталось " + (height - next));
+            }
+            if (buffer == null) {
+                buffer = new byte[(history + rowsPerBlock) * stride];
+            }
+            for (int r = 0; r < rows; ) {
+                int n = Math.min(rows - r, rowsPerBlock - (next - blockStart));
+                System.arraycopy(src, off + r * stride, buffer, (next - bufferFirst) * stride, n * stride);
+                next += n;
+                r += n;
+                if (next - blockStart == rowsPerBlock || next == height) {
+                    byte[] data = Arrays.copyOf(buffer, (next - bufferFirst) * stride);
+                    int base = bufferFirst;
+                    int from = blockStart;
+                    int to = next;
+                    submit(() -> compress((y, row) -> System.arraycopy(data, (y - base) * stride, row, 0, stride),
+                            stride, channels, from, to, to == height));
+                    // Последние строки остаются словарем следующего блока.
+                    int keep = Math.min(history, next - bufferFirst);
+                    System.arraycopy(buffer, (next - bufferFirst - keep) * stride, buffer, 0, keep * stride);
+                    bufferFirst = next - keep;
+                    blockStart = next;
+                }
+            }
+        }
+
+        /**
+         * Отдает на сжатие все строки растра; блоки читают строки прямо из растра.
+         */
+        private void writeRaster(LSBRaster raster) throws IOException {
+            while (next < height) {
+                int from = next;
+                int to = Math.min(height, from + rowsPerBlock);
+                submit(() -> {
+                    byte[] channel = new byte[width];
+                    return compress((y, row) -> readRow(raster, y, channels, channel, row),
+                            stride, channels, from, to, to == height);
+                });
+                next = to;
+            }
+        }
+
+        private void submit(Callable<Block> task) throws IOException {
+            while (pending.size() >= window) {
+                drain();
+            }
+            pending.add(pool.submit(task));
+        }
+
+        /** Записывает самый ранний из сжимаемых блоков. */
+        private void drain() throws IOException {
+            Block block = join(pending.poll());
+            writeChunk(out, "IDAT", block.data, 0, block.length);
+            adler = combineAdler(adler, block.adler, block.rawLength);
+            written += block.length;
+        }
+
+        /**
+         * Дожидается сжатия всех блоков и завершает файл.
+         *
+         * @throws IOException Если переданы не все строки или произошла ошибка записи.
+         */
+        public void finish() throws IOException {
+            if (next != height) {
+                throw new IOException("Записано " + next + " строк PNG из " + height);
+            }
+            while (!pending.isEmpty()) {
+                drain();
+            }
+            byte[] trailer = new byte[4];
+            putInt(trailer, 0, (int) adler);
+            writeChunk(out, "IDAT", trailer, 0, trailer.length);
+            writeChunk(out, "IEND", new byte[0], 0, 0);
+            out.flush();
+        }
+
+        /**
+         * Отменяет незавершенное сжатие; после {@link #finish()} ничего не делает. Поток не закрывается.
+         */
+        @Override
+        public void close() {
+            pending.forEach(task -> task.cancel(true));
+            pending.clear();
+        }
+    }
+
+    /**
+     * Сжатый блок строк.
+     */
+    private static final class Block {
+        final byte[] data;
+        final int length;
+        final long adler;
+        final long rawLength;
+
+        Block(byte[] data, int length, long adler, long rawLength) {
+            this.data = data;
+            this.length = length;
+            this.adler = adler;
+            this.rawLength = rawLength;
+        }
+    }
+
+    /**
+     * Источник строк блока.
+     */
+    private interface Rows {
+        /** Считывает строку {@code y} в порядке байтов PNG. */
+        void read(int y, byte[] row);
+    }
+
+    /**
+     * Фильтрует и сжимает строки {@code [fromRow, toRow)}. Последние строки предыдущего блока
+     * фильтруются повторно (не больше {@value #WINDOW} байтов) и служат словарем сжатия.
+     */
+    private Block compress(Rows rows, int stride, int channels, int fromRow, int toRow, boolean last) {
+        int dictionaryRows = Math.min(fromRow, (WINDOW + stride) / (stride + 1));
+        int firstRow = fromRow - dictionaryRows;
+        byte[] raw = new byte[(toRow - firstRow) * (stride + 1)];
+        byte[] previous = new byte[stride];
+        byte[] current = new byte[stride];
+        byte[][] candidates = new byte[5][stride];
+        if (firstRow > 0) {
+            rows.read(firstRow - 1, previous);
+        }
+        for (int y = firstRow, p = 0; y < toRow; y++, p += stride + 1) {
+            rows.read(y, current);
+            int filter = level == 0 ? 0 : chooseFilter(current, previous, channels, candidates);
+            raw[p] = (byte) filter;
+            System.arraycopy(level == 0 ? current : candidates[filter], 0, raw, p + 1, stride);
+            byte[] t = previous;
+            previous = current;
+            current = t;
+        }
+
+        int offset = dictionaryRows * (stride + 1);
+        int length = raw.length - offset;
+        Adler32 adler = new Adler32();
+        adler.update(raw, offset, length);
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (offset > 0) {
+                int dictionary = Math.min(offset, WINDOW);
+                deflater.setDictionary(raw, offset - dictionary, dictionary);
+            }
+            deflater.setInput(raw, offset, length);
+            if (last) {
+                deflater.finish();
+            }
+            byte[] buffer = new byte[length / 2 + 1024];
+            int size = 0;
+            while (true) {
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                size += deflater.deflate(buffer, size, buffer.length - size, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                // Неполный выходной буфер после SYNC_FLUSH означает, что весь вход сжат и сброшен.
+                if (last ? deflater.finished() : size < buffer.length) {
+                    break;
+                }
+            }
+            return new Block(buffer, size, adler.getValue(), length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static Block join(ForkJoinTask<Block> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Кодирование PNG прервано", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Ошибка кодирования PNG", e.getCause());
+        }
+    }
+
+    /**
+     * Считывает строку растра в порядке байтов PNG (R, G, B[, A]).
+     */
+    private static void readRow(LSBRaster raster, int y, int channels, byte[] channel, byte[] row) {
+        int width = raster.getWidth();
+        BitLayout.Channel[] order = {BitLayout.Channel.RED, BitLayout.Channel.GREEN,
+                BitLayout.Channel.BLUE, BitLayout.Channel.ALPHA};
+        for (int c = 0; c < channels; c++) {
+            raster.readLSB(y, 0, width, order[c], 0xFF, channel, 0);
+            for (int x = 0, p = c; x < width; x++, p += channels) {
+                row[p] = channel[x];
+            }
+        }
+    }
+
+    /**
+     * Заполняет {@code candidates} строкой после каждого из пяти фильтров и возвращает номер
+     * фильтра с наименьшей суммой модулей байтов (как знаковых).
+     */
+    static int chooseFilter(byte[] row, byte[] prior, int bpp, byte[][] candidates) {
+        int n = row.length;
+        byte[] none = candidates[0];
+        byte[] sub = candidates[1];
+        byte[] up = candidates[2];
+        byte[] avg = candidates[3];
+        byte[] paeth = candidates[4];
+        long[] sums = new long[5];
+        for (int i = 0; i < n; i++) {
+            int x = row[i] & 0xFF;
+            int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+            int b = prior[i] & 0xFF;
+            int c = i >= bpp ? prior[i - bpp] & 0xFF : 0;
+            none[i] = (byte) x;
+            sub[i] = (byte) (x - a);
+            up[i] = (byte) (x - b);
+            avg[i] = (byte) (x - ((a + b) >>> 1));
+            paeth[i] = (byte) (x - paethPredictor(a, b, c));
+            sums[0] += Math.abs(none[i]);
+            sums[1] += Math.abs(sub[i]);
+            sums[2] += Math.abs(up[i]);
+            sums[3] += Math.abs(avg[i]);
+            sums[4] += Math.abs(paeth[i]);
+        }
+        int best = 0;
+        for (int f = 1; f < sums.length; f++) {
+            if (sums[f] < sums[best]) {
+                best = f;
+            }
+        }
+        return best;
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * Объединяет контрольные суммы Adler-32 двух последовательных участков (как adler32_combine в zlib).
+     *
+     * @param adler1 Сумма первого участка.
+     * @param adler2 Сумма второго участка.
+     * @param length2 Длина второго участка.
+     * @return Сумма объединенных данных.
+     */
+    static long combineAdler(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= 2L * ADLER_BASE) {
+            sum2 -= 2L * ADLER_BASE;
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    /** Байт FLG заголовка zlib: уровень сжатия и контрольные биты ({@code (CMF * 256 + FLG) % 31 == 0}). */
+    private static byte zlibFlags(int level) {
+        int flevel = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+        int flg = flevel << 6;
+        flg += 31 - ((0x78 << 8) + flg) % 31;
+        return (byte) flg;
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int off, int len) throws IOException {
+        byte[] head = new byte[8];
+        putInt(head, 0, len);
+        for (int i = 0; i < 4; i++) {
+            head[4 + i] = (byte) type.charAt(i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(head, 4, 4);
+        crc.update(data, off, len);
+        byte[] tail = new byte[4];
+        putInt(tail, 0, (int) crc.getValue());
+        out.write(head);
+        out.write(data, off, len);
+        out.write(tail);
+    }
+
+    private static void putInt(byte[] b, int off, int value) {
+        b[off] = (byte) (value >>> 24);
+        b[off + 1] = (byte) (value >>> 16);
+        b[off + 2] = (byte) (value >>> 8);
+        b[off + 3] = (byte) value;
+    }
+}
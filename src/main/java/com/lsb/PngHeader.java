@@ -0,0 +1,153 @@
+package com.lsb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Заголовок файла PNG (сигнатура и блок IHDR).
+ * <p>
+ * Разбирается непосредственно из первых {@value #SIZE} байтов файла без распаковки пикселей.
+ * Построчное чтение без декодирования всего изображения ({@link PngRowReader}) поддерживается
+ * для 8-битных изображений RGB и RGBA без чересстрочной развертки — именно такие изображения
+ * создает {@link PngEncoder}.
+ * </p>
+ */
+public final class PngHeader {
+
+    /** Сигнатура PNG. */
+    static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    /** Размер сигнатуры и блока IHDR вместе с длиной, типом и CRC. */
+    public static final int SIZE = 33;
+    /** Тип цвета: RGB. */
+    static final int COLOR_RGB = 2;
+    /** Тип цвета: RGBA. */
+    static final int COLOR_RGBA = 6;
+
+    /** Ширина изображения. */
+    private final int width;
+    /** Высота изображения. */
+    private final int height;
+    /** Бит на отсчет. */
+    private final int bitDepth;
+    /** Тип цвета (0 — оттенки серого, 2 — RGB, 3 — палитра, 4 — серый с альфа, 6 — RGBA). */
+    private final int colorType;
+    /** Метод чересстрочной развертки (0 — нет, 1 — Adam7). */
+    private final int interlace;
+
+    private PngHeader(int width, int height, int bitDepth, int colorType, int interlace) {
+        this.width = width;
+        this.height = height;
+        this.bitDepth = bitDepth;
+        this.colorType = colorType;
+        this.interlace = interlace;
+    }
+
+    /**
+     * Читает заголовок PNG из файла.
+     *
+     * @param path Путь к файлу.
+     * @return Заголовок или {@code null}, если файл не является PNG.
+     * @throws IOException Если произошла ошибка чтения файла.
+     */
+    public static PngHeader read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // Читаем, пока не заполним буфер или не достигнем конца файла.
+            }
+            buffer.flip();
+            return parse(buffer);
+        }
+    }
+
+    /**
+     * Разбирает заголовок PNG.
+     *
+     * @param buffer Первые байты файла.
+     * @return Заголовок или {@code null}, если данные не являются PNG с корректным блоком IHDR.
+     */
+    public static PngHeader parse(ByteBuffer buffer) {
+        ByteBuffer b = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int base = b.position();
+        if (b.remaining() < SIZE) {
+            return null;
+        }
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (b.get(base + i) != SIGNATURE[i]) {
+                return null;
+            }
+        }
+        if (b.getInt(base + 8) != 13 || b.getInt(base + 12) != ('I' << 24 | 'H' << 16 | 'D' << 8 | 'R')) {
+            return null;
+        }
+        int width = b.getInt(base + 16);
+        int height = b.getInt(base + 20);
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        return new PngHeader(width, height, b.get(base + 24) & 0xFF, b.get(base + 25) & 0xFF, b.get(base + 28) & 0xFF);
+    }
+
+    /**
+     * Проверяет, поддерживается ли построчное чтение через {@link PngRowReader}.
+     *
+     * @return {@code true} для 8-битных изображений RGB и RGBA без чересстрочной развертки.
+     */
+    public boolean isStreamingSupported() {
+        return bitDepth == 8 && (colorType == COLOR_RGB || colorType == COLOR_RGBA) && interlace == 0;
+    }
+
+    /** @return Ширина изображения. */
+    public int getWidth() {
+        return width;
+    }
+
+    /** @return Высота изображения. */
+    public int getHeight() {
+        return height;
+    }
+
+    /** @return Бит на отсчет канала. */
+    public int getBitDepth() {
+        return bitDepth;
+    }
+
+    /** @return Тип цвета PNG. */
+    public int getColorType() {
+        return colorType;
+    }
+
+    /** @return {@code true}, если используется чересстрочная развертка Adam7. */
+    public boolean isInterlaced() {
+        return interlace != 0;
+    }
+
+    /** @return Число каналов пикселя. */
+    public int getChannels() {
+        switch (colorType) {
+            case 2: return 3;
+            case 4: return 2;
+            case 6: return 4;
+            default: return 1;
+        }
+    }
+
+    /** @return Бит на пиксель. */
+    public int getBitsPerPixel() {
+        return getChannels() * bitDepth;
+    }
+
+    /** @return {@code true}, если изображение содержит альфа-канал. */
+    public boolean hasAlpha() {
+        return colorType == 4 || colorType == COLOR_RGBA;
+    }
+
+    /** @return Общее число пикселей. */
+    public long pixelCount() {
+        return (long) width * height;
+    }
+}
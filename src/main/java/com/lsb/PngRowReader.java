@@ -0,0 +1,253 @@
+package com.lsb;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Последовательное чтение строк PNG без декодирования всего изображения.
+ * <p>
+ * Блоки IDAT распаковываются по мере необходимости, и из потока восстанавливается
+ * ровно столько строк, сколько запрошено: для чтения первых строк достаточно
+ * распаковать начало данных. Памяти требуется на две строки и буфер сжатых данных.
+ * Поддерживаются 8-битные изображения RGB и RGBA без чересстрочной развертки
+ * ({@link PngHeader#isStreamingSupported()}); строки возвращаются в упакованном виде
+ * с компонентами R, G, B[, A] и могут обрабатываться через {@link #raster(byte[], int)}.
+ * Контрольные суммы блоков не проверяются, как и при чтении через {@code ImageIO}.
+ * </p>
+ */
+public final class PngRowReader implements Closeable {
+
+    /** Размер буфера сжатых данных. */
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+    /** Тип блока IDAT. */
+    private static final int IDAT = 'I' << 24 | 'D' << 16 | 'A' << 8 | 'T';
+
+    private final DataInputStream in;
+    private final PngHeader header;
+    /** Байт на пиксель. */
+    private final int pixelStride;
+    /** Длина строки без байта фильтра. */
+    private final int stride;
+    private final Inflater inflater = new Inflater();
+    private final byte[] input = new byte[INPUT_BUFFER_SIZE];
+    /** Предыдущая и текущая строки; байт 0 — тип фильтра. */
+    private byte[] prior;
+    private byte[] current;
+    /** Оставшиеся байты текущего блока IDAT или -1, если данные IDAT закончились. */
+    private long chunkRemaining;
+    /** {@code true}, если уже начато чтение блоков IDAT. */
+    private boolean idat;
+    /** Номер следующей строки. */
+    private int row;
+
+    /**
+     * Создает читатель над потоком, начинающимся с сигнатуры PNG.
+     *
+     * @param stream Поток; закрывается вместе с читателем.
+     * @throws IOException Если данные не являются PNG или формат не поддерживается.
+     */
+    public PngRowReader(InputStream stream) throws IOException {
+        this.in = new DataInputStream(stream instanceof BufferedInputStream ? stream : new BufferedInputStream(stream));
+        byte[] head = in.readNBytes(PngHeader.SIZE);
+        this.header = PngHeader.parse(ByteBuffer.wrap(head));
+        if (header == null) {
+            throw new IOException("Файл не является изображением PNG");
+        }
+        if (!header.isStreamingSupported()) {
+            throw new IOException("Неподдерживаемый формат PNG: разрядность " + header.getBitDepth()
+                    + ", тип цвета " + header.getColorType() + (header.isInterlaced() ? ", чересстрочный" : ""));
+        }
+        this.pixelStride = header.getChannels();
+        long rowBytes = (long) header.getWidth() * pixelStride;
+        if (rowBytes + 1 > Integer.MAX_VALUE - 8) {
+            throw new IOException("Слишком широкое изображение PNG: " + header.getWidth());
+        }
+        this.stride = (int) rowBytes;
+        this.prior = new byte[stride + 1];
+        this.current = new byte[stride + 1];
+    }
+
+    /**
+     * Открывает файл PNG для построчного чтения.
+     *
+     * @param path Путь к файлу.
+     * @return Читатель; должен быть закрыт после использования.
+     * @throws IOException Если файл не удалось открыть или его формат не поддерживается.
+     */
+    public static PngRowReader open(Path path) throws IOException {
+        InputStream stream = Files.newInputStream(path);
+        try {
+            return new PngRowReader(stream);
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /** @return Заголовок изображения. */
+    public PngHeader getHeader() {
+        return header;
+    }
+
+    /** @return Длина упакованной строки в байтах. */
+    public int getRowBytes() {
+        return stride;
+    }
+
+    /** @return Номер следующей строки. */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Считывает следующие строки изображения.
+     *
+     * @param dst  Массив для упакованных строк.
+     * @param off  Смещение в {@code dst}.
+     * @param rows Число строк; не больше числа оставшихся.
+     * @throws IOException Если данные повреждены или закончились раньше времени.
+     */
+    public void readRows(byte[] dst, int off, int rows) throws IOException {
+        if (rows < 0 || rows > header.getHeight() - row) {
+            throw new IllegalArgumentException("Запрошено " + rows + " строк, осталось " + (header.getHeight() - row));
+        }
+        for (int r = 0; r < rows; r++) {
+            byte[] swap = prior;
+            prior = current;
+            current = swap;
+            inflate(current);
+            unfilter();
+            System.arraycopy(current, 1, dst, off + r * stride, stride);
+            row++;
+        }
+    }
+
+    /**
+     * Возвращает растр над строками, считанными {@link #readRows(byte[], int, int)}.
+     *
+     * @param data Упакованные строки.
+     * @param rows Число строк.
+     * @return Растр шириной в изображение.
+     */
+    public LSBRaster raster(byte[] data, int rows) {
+        return LSBRaster.packed(data, header.getWidth(), rows, pixelStride);
+    }
+
+    /**
+     * Распаковывает очередную строку вместе с байтом фильтра.
+     */
+    private void inflate(byte[] target) throws IOException {
+        int filled = 0;
+        try {
+            while (filled < target.length) {
+                int n = inflater.inflate(target, filled, target.length - filled);
+                filled += n;
+                if (n == 0) {
+                    if (inflater.finished() || inflater.needsDictionary()) {
+                        throw new EOFException("Файл PNG поврежден: недостаточно пиксельных данных");
+                    }
+                    if (inflater.needsInput()) {
+                        fill();
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Файл PNG поврежден: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Передает распаковщику очередную порцию данных IDAT, пропуская прочие блоки.
+     */
+    private void fill() throws IOException {
+        while (chunkRemaining == 0) {
+            if (idat) {
+                in.skipNBytes(4); // CRC предыдущего блока IDAT
+            }
+            int length = in.readInt();
+            int type = in.readInt();
+            if (type == IDAT) {
+                chunkRemaining = Integer.toUnsignedLong(length);
+                idat = true;
+            } else if (idat) {
+                chunkRemaining = -1; // Блоки IDAT идут подряд: данные закончились.
+            } else {
+                in.skipNBytes(Integer.toUnsignedLong(length) + 4); // Блок до IDAT вместе с CRC
+            }
+        }
+        if (chunkRemaining < 0) {
+            throw new EOFException("Файл PNG поврежден: недостаточно пиксельных данных");
+        }
+        int n = in.read(input, 0, (int) Math.min(input.length, chunkRemaining));
+        if (n < 0) {
+            throw new EOFException("Файл PNG поврежден: неожиданный конец файла");
+        }
+        chunkRemaining -= n;
+        inflater.setInput(input, 0, n);
+    }
+
+    /**
+     * Восстанавливает значения текущей строки по предыдущей.
+     */
+    private void unfilter() throws IOException {
+        byte[] cur = current;
+        byte[] up = prior; // Перед первой строкой заполнена нулями
+        int bpp = pixelStride;
+        switch (cur[0]) {
+            case 0:
+                break;
+            case 1: // Sub
+                for (int i = 1 + bpp; i < cur.length; i++) {
+                    cur[i] += cur[i - bpp];
+                }
+                break;
+            case 2: // Up
+                for (int i = 1; i < cur.length; i++) {
+                    cur[i] += up[i];
+                }
+                break;
+            case 3: // Average
+                for (int i = 1; i < cur.length; i++) {
+                    int left = i > bpp ? cur[i - bpp] & 0xFF : 0;
+                    cur[i] += (byte) ((left + (up[i] & 0xFF)) >>> 1);
+                }
+                break;
+            case 4: // Paeth
+                for (int i = 1; i < cur.length; i++) {
+                    int a = i > bpp ? cur[i - bpp] & 0xFF : 0;
+                    int b = up[i] & 0xFF;
+                    int c = i > bpp ? up[i - bpp] & 0xFF : 0;
+                    cur[i] += (byte) paeth(a, b, c);
+                }
+                break;
+            default:
+                throw new IOException("Файл PNG поврежден: неизвестный фильтр строки " + (cur[0] & 0xFF));
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+}
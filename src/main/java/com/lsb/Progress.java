@@ -0,0 +1,142 @@
+package com.lsb;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ход выполнения и отмена одной длительной операции (встраивания, извлечения, визуализации).
+ * <p>
+ * Операция сообщает общий объем работы в пикселях ({@link #begin(long)}), а циклы обработки
+ * растра отмечают каждую обработанную строку ({@link #advance(long)}), в том числе из нескольких
+ * потоков {@link ParallelLSB}. Слушатель вызывается не чаще одного раза за интервал, поэтому
+ * его можно напрямую передавать в {@code Platform.runLater}. Отмена кооперативная: после
+ * {@link #cancel()} очередная строка завершается исключением {@link CancellationException}.
+ * </p>
+ */
+public final class Progress {
+
+    /** Интервал уведомлений по умолчанию. */
+    public static final long DEFAULT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /** Операция без отслеживания: не сообщает о ходе выполнения и не отменяется. */
+    public static final Progress NONE = new Progress(null, 0);
+
+    /**
+     * Получатель уведомлений о ходе выполнения.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param done  Обработано пикселей.
+         * @param total Всего пикселей.
+         */
+        void progress(long done, long total);
+    }
+
+    /** Слушатель или {@code null}. */
+    private final Listener listener;
+    /** Минимальный интервал между уведомлениями. */
+    private final long intervalNanos;
+    /** Обработано пикселей. */
+    private final AtomicLong done = new AtomicLong();
+    /** Время последнего уведомления. */
+    private final AtomicLong reported = new AtomicLong();
+    /** Общий объем работы. */
+    private volatile long total;
+    /** Операция отменена. */
+    private volatile boolean cancelled;
+
+    /**
+     * Создает отслеживание с интервалом уведомлений по умолчанию.
+     *
+     * @param listener Слушатель.
+     */
+    public Progress(Listener listener) {
+        this(listener, DEFAULT_INTERVAL_NANOS);
+    }
+
+    /**
+     * Создает отслеживание.
+     *
+     * @param listener      Слушатель или {@code null}, если нужна только отмена.
+     * @param intervalNanos Минимальный интервал между уведомлениями в наносекундах.
+     */
+    public Progress(Listener listener, long intervalNanos) {
+        this.listener = listener;
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * Начинает отсчет: задает общий объем работы и сбрасывает выполненный.
+     *
+     * @param totalPixels Общий объем работы в пикселях.
+     */
+    public void begin(long totalPixels) {
+        if (this == NONE) {
+            return;
+        }
+        total = Math.max(totalPixels, 1);
+        done.set(0);
+        if (listener != null) {
+            reported.set(System.nanoTime());
+            listener.progress(0, total);
+        }
+    }
+
+    /**
+     * Отмечает обработанные пиксели и проверяет отмену.
+     *
+     * @param pixels Число обработанных пикселей.
+     * @throws CancellationException Если операция отменена.
+     */
+    public void advance(long pixels) {
+        if (cancelled) {
+            throw new CancellationException("Операция отменена");
+        }
+        if (listener == null) {
+            return;
+        }
+        long value = done.addAndGet(pixels);
+        long now = System.nanoTime();
+        long last = reported.get();
+        if (now - last >= intervalNanos && reported.compareAndSet(last, now)) {
+            long all = total;
+            listener.progress(Math.min(value, all), all);
+        }
+    }
+
+    /**
+     * Сообщает о завершении работы.
+     */
+    public void finish() {
+        if (listener != null) {
+            listener.progress(total, total);
+        }
+    }
+
+    /**
+     * Отменяет операцию. Для {@link #NONE} ничего не делает.
+     */
+    public void cancel() {
+        if (this != NONE) {
+            cancelled = true;
+        }
+    }
+
+    /** @return {@code true}, если операция отменена. */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Проверяет отмену между этапами операции.
+     *
+     * @throws CancellationException Если операция отменена.
+     */
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Операция отменена");
+        }
+    }
+}
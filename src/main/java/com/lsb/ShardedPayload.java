@@ -0,0 +1,456 @@
+package com.lsb;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Разделение полезной нагрузки между несколькими изображениями-носителями.
+ * <p>
+ * Данные делятся на части пропорционально емкости носителей. Каждая часть встраивается в свой
+ * носитель как обычный контейнер ({@link EmbedText#embedData(String, java.nio.channels.ReadableByteChannel, long, String, EmbedOptions)})
+ * и начинается с заголовка части (big-endian, {@value #HEADER_SIZE} байтов):
+ * </p>
+ * <pre>
+ *  0  4  сигнатура 0x89 'S' 'H' 'D'
+ *  4  8  идентификатор данных (общий для всех частей)
+ * 12  4  номер части (от 1)
+ * 16  4  число частей
+ * 20  8  общая длина данных в байтах
+ * 28  8  смещение части в данных
+ * </pre>
+ * <p>
+ * Встраивание и извлечение выполняются параллельно, по виртуальному потоку на изображение.
+ * При извлечении порядок файлов не важен: сначала параллельно читаются только заголовки частей
+ * (первые строки каждого изображения, см. {@link ImageProbe#payloadPrefix(Path, int)}), и если каких-то частей не хватает, сразу выбрасывается
+ * {@link MissingShardsException}. Затем части извлекаются целиком и записываются по своим смещениям.
+ * </p>
+ */
+public final class ShardedPayload {
+
+    /** Размер заголовка части в байтах. */
+    public static final int HEADER_SIZE = 36;
+    /** Сигнатура заголовка части. */
+    static final byte[] MAGIC = {(byte) 0x89, 'S', 'H', 'D'};
+
+    private ShardedPayload() {
+    }
+
+    /**
+     * Разделяет данные из памяти между носителями.
+     *
+     * @param payload  Данные.
+     * @param carriers Исходные изображения.
+     * @param outputs  Пути для сохранения результирующих изображений, по одному на носитель.
+     * @param options  Параметры встраивания (одинаковые для всех частей); ключ не поддерживается.
+     * @throws IOException Если задан ключ, если суммарной емкости носителей не хватает или встраивание
+     *                     в одно из изображений завершилось ошибкой.
+     */
+    public static void embed(byte[] payload, List<Path> carriers, List<Path> outputs, EmbedOptions options) throws IOException {
+        embed(payload.length, offset -> new ByteArrayInputStream(payload, (int) offset, payload.length - (int) offset),
+                carriers, outputs, options);
+    }
+
+    /**
+     * Разделяет содержимое файла между носителями. Каждая часть читается из файла
+     * независимо, порциями, без загрузки файла в память.
+     *
+     * @param payloadFile Файл с данными.
+     * @param carriers    Исходные изображения.
+     * @param outputs     Пути для сохранения результирующих изображений, по одному на носитель.
+     * @param options     Параметры встраивания (одинаковые для всех частей); ключ не поддерживается.
+     * @throws IOException Если задан ключ, если суммарной емкости носителей не хватает или встраивание
+     *                     в одно из изображений завершилось ошибкой.
+     */
+    public static void embed(Path payloadFile, List<Path> carriers, List<Path> outputs, EmbedOptions options) throws IOException {
+        embed(Files.size(payloadFile), offset -> {
+            FileChannel channel = FileChannel.open(payloadFile);
+            channel.position(offset);
+            return Channels.newInputStream(channel);
+        }, carriers, outputs, options);
+    }
+
+    /**
+     * Извлекает разделенные данные и записывает их в файл.
+     *
+     * @param images     Изображения с частями в любом порядке (повторы допускаются).
+     * @param outputFile Файл для данных; перезаписывается.
+     * @throws MissingShardsException Если не хватает частей.
+     * @throws IOException            Если изображение не содержит части, если части относятся
+     *                                к разным данным или если произошла ошибка чтения или записи.
+     */
+    public static void extract(List<Path> images, Path outputFile) throws IOException {
+        List<Shard> shards = probe(images);
+        try (FileChannel out = FileChannel.open(outputFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            extractShards(shards, (position, data) -> {
+                while (data.hasRemaining()) {
+                    position += out.write(data, position);
+                }
+            });
+        }
+    }
+
+    /**
+     * Извлекает разделенные данные в память.
+     *
+     * @param images Изображения с частями в любом порядке (повторы допускаются).
+     * @return Данные.
+     * @throws MissingShardsException Если не хватает частей.
+     * @throws IOException            Если изображение не содержит части, если части относятся
+     *                                к разным данным, если данные не помещаются в массив
+     *                                или если произошла ошибка чтения.
+     */
+    public static byte[] extract(List<Path> images) throws IOException {
+        List<Shard> shards = probe(images);
+        long length = shards.get(0).length;
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Данные слишком велики для размещения в памяти: " + length);
+        }
+        byte[] result = new byte[(int) length];
+        extractShards(shards, (position, data) -> data.get(result, (int) position, data.remaining()));
+        return result;
+    }
+
+    /**
+     * Вычисляет, сколько байтов данных помещается в носитель вместе с заголовками контейнера и части.
+     * Изображение не декодируется: размеры берутся из заголовка файла ({@link ImageProbe}).
+     *
+     * @param carrier Изображение.
+     * @param layout  Схема размещения.
+     * @return Емкость в байтах (0, если не помещается даже заголовок).
+     * @throws IOException Если размеры изображения не удалось прочитать.
+     */
+    public static long capacity(Path carrier, BitLayout layout) throws IOException {
+        return Math.max(0, ImageProbe.probe(carrier).capacityBytes(layout) - HEADER_SIZE);
+    }
+
+    /**
+     * Источник данных, открываемый с заданного смещения.
+     */
+    @FunctionalInterface
+    private interface Source {
+        InputStream open(long offset) throws IOException;
+    }
+
+    /**
+     * Приемник извлеченных данных.
+     */
+    @FunctionalInterface
+    private interface Target {
+        /**
+         * @param position Смещение в данных.
+         * @param data     Байты; считываются целиком.
+         */
+        void write(long position, ByteBuffer data) throws IOException;
+    }
+
+    private static void embed(long length, Source source, List<Path> carriers, List<Path> outputs,
+                              EmbedOptions options) throws IOException {
+        if (carriers.isEmpty() || carriers.size() != outputs.size()) {
+            throw new IllegalArgumentException("Число носителей и выходных файлов должно совпадать и быть больше нуля");
+        }
+        if (options.getKey() != null) {
+            // Заголовки частей читаются из первых строк изображения, поэтому части не рассеиваются.
+            throw new IOException("Рассеивание ключом не поддерживается при разделении данных");
+        }
+        int total = carriers.size();
+        long[] capacities = new long[total];
+        long capacity = 0;
+        for (int i = 0; i < total; i++) {
+            capacities[i] = capacity(carriers.get(i), options.getLayout());
+            capacity += capacities[i];
+        }
+        if (length > capacity) {
+            throw new IOException("Изображения слишком малы для встраивания данных: емкость "
+                    + capacity + " байтов, требуется " + length);
+        }
+        long[] sizes = split(length, capacities, capacity);
+        long id = ThreadLocalRandom.current().nextLong();
+
+        List<Callable<Void>> tasks = new ArrayList<>(total);
+        long offset = 0;
+        for (int i = 0; i < total; i++) {
+            Path carrier = carriers.get(i);
+            Path output = outputs.get(i);
+            byte[] header = header(id, i + 1, total, length, offset);
+            long start = offset;
+            long size = sizes[i];
+            tasks.add(() -> {
+                try (InputStream data = source.open(start)) {
+                    InputStream shard = new SequenceInputStream(new ByteArrayInputStream(header), data);
+                    EmbedText.embedData(carrier.toString(), Channels.newChannel(shard), HEADER_SIZE + size,
+                            output.toString(), options);
+                }
+                return null;
+            });
+            offset += size;
+        }
+        runAll(tasks);
+    }
+
+    /**
+     * Делит данные пропорционально емкости носителей.
+     */
+    private static long[] split(long length, long[] capacities, long capacity) {
+        long[] sizes = new long[capacities.length];
+        long assigned = 0;
+        for (int i = 0; i < capacities.length && capacity > 0; i++) {
+            sizes[i] = Math.min(capacities[i], (long) ((double) length * capacities[i] / capacity));
+            assigned += sizes[i];
+        }
+        // Остаток от округления — в носители со свободной емкостью.
+        for (int i = 0; i < capacities.length && assigned < length; i++) {
+            long extra = Math.min(length - assigned, capacities[i] - sizes[i]);
+            sizes[i] += extra;
+            assigned += extra;
+        }
+        return sizes;
+    }
+
+    private static byte[] header(long id, int seq, int total, long length, long offset) {
+        return ByteBuffer.allocate(HEADER_SIZE)
+                .put(MAGIC)
+                .putLong(id)
+                .putInt(seq)
+                .putInt(total)
+                .putLong(length)
+                .putLong(offset)
+                .array();
+    }
+
+    /**
+     * Параллельно читает заголовки частей и проверяет, что части образуют одни данные целиком.
+     *
+     * @return Части в порядке номеров, без повторов.
+     */
+    private static List<Shard> probe(List<Path> images) throws IOException {
+        if (images.isEmpty()) {
+            throw new IllegalArgumentException("Не указаны изображения");
+        }
+        List<Callable<Shard>> tasks = new ArrayList<>(images.size());
+        for (Path image : images) {
+            tasks.add(() -> readHeader(image));
+        }
+        List<Shard> found = runAll(tasks);
+
+        Shard first = found.get(0);
+        TreeMap<Integer, Shard> bySeq = new TreeMap<>();
+        for (Shard shard : found) {
+            if (shard.id != first.id || shard.total != first.total || shard.length != first.length) {
+                throw new IOException("Изображения " + first.image.getFileName() + " и " + shard.image.getFileName()
+                        + " содержат части разных данных");
+            }
+            bySeq.putIfAbsent(shard.seq, shard);
+        }
+        if (bySeq.size() < first.total) {
+            int[] missing = new int[first.total - bySeq.size()];
+            for (int seq = 1, i = 0; seq <= first.total; seq++) {
+                if (!bySeq.containsKey(seq)) {
+                    missing[i++] = seq;
+                }
+            }
+            throw new MissingShardsException(missing, first.total);
+        }
+        return new ArrayList<>(bySeq.values());
+    }
+
+    /**
+     * Параллельно извлекает части и проверяет, что они без пропусков покрывают данные.
+     */
+    private static void extractShards(List<Shard> shards, Target target) throws IOException {
+        List<Callable<Long>> tasks = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            tasks.add(() -> readShard(shard.image, target).written);
+        }
+        List<Long> written = runAll(tasks);
+        long expected = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            if (shards.get(i).offset != expected) {
+                throw new IOException("Части данных не образуют непрерывную последовательность: " + shards.get(i).image.getFileName());
+            }
+            expected += written.get(i);
+        }
+        if (expected != shards.get(0).length) {
+            throw new IOException("Длина извлеченных данных не совпадает с заявленной");
+        }
+    }
+
+    /**
+     * Читает заголовок части из первых строк изображения ({@link ImageProbe#payloadPrefix(Path, int)}),
+     * не декодируя изображение целиком. Заголовок сжатого контейнера доступен только после
+     * распаковки, поэтому такой контейнер извлекается до конца заголовка части.
+     */
+    private static Shard readHeader(Path image) throws IOException {
+        try {
+            byte[] header = ImageProbe.payloadPrefix(image, HEADER_SIZE);
+            if (header != null) {
+                return new Shard(image, header);
+            }
+        } catch (IOException e) {
+            throw new IOException(image.getFileName() + ": " + e.getMessage(), e);
+        }
+        return readShard(image, null).shard;
+    }
+
+    /**
+     * Извлекает часть из изображения. Если приемник не задан, чтение прекращается сразу после заголовка части.
+     */
+    private static ShardChannel readShard(Path image, Target target) throws IOException {
+        ShardChannel channel = new ShardChannel(image, target);
+        try {
+            ExtractText.extractData(image.toString(), channel);
+        } catch (HeaderRead e) {
+            return channel;
+        } catch (IOException e) {
+            throw new IOException(image.getFileName() + ": " + e.getMessage(), e);
+        }
+        if (channel.shard == null) {
+            throw new IOException(image.getFileName() + ": изображение не содержит части разделенных данных");
+        }
+        return channel;
+    }
+
+    private static <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    executor.shutdownNow();
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException io) {
+                        throw io;
+                    }
+                    if (cause instanceof RuntimeException runtime) {
+                        throw runtime;
+                    }
+                    throw new IOException(cause);
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Операция прервана");
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Заголовок части и изображение, в котором она найдена.
+     */
+    private static final class Shard {
+        final Path image;
+        final long id;
+        final int seq;
+        final int total;
+        final long length;
+        final long offset;
+
+        Shard(Path image, byte[] header) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            for (byte b : MAGIC) {
+                if (buffer.get() != b) {
+                    throw new IOException("изображение не содержит части разделенных данных");
+                }
+            }
+            this.image = image;
+            this.id = buffer.getLong();
+            this.seq = buffer.getInt();
+            this.total = buffer.getInt();
+            this.length = buffer.getLong();
+            this.offset = buffer.getLong();
+            if (total < 1 || seq < 1 || seq > total || length < 0 || offset < 0 || offset > length) {
+                throw new IOException("некорректный заголовок части данных");
+            }
+        }
+    }
+
+    /**
+     * Канал, принимающий полезную нагрузку контейнера: отделяет заголовок части
+     * и передает остальные байты приемнику по смещению части.
+     */
+    private static final class ShardChannel implements WritableByteChannel {
+        private final Path image;
+        private final Target target;
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        private Shard shard;
+        /** Байтов данных, переданных приемнику. */
+        private long written;
+
+        ShardChannel(Path image, Target target) {
+            this.image = image;
+            this.target = target;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int n = src.remaining();
+            if (header.hasRemaining()) {
+                int k = Math.min(header.remaining(), src.remaining());
+                header.put(src.slice(src.position(), k));
+                src.position(src.position() + k);
+                if (header.hasRemaining()) {
+                    return n;
+                }
+                shard = new Shard(image, header.array());
+                if (target == null) {
+                    throw new HeaderRead();
+                }
+            }
+            if (src.hasRemaining()) {
+                long position = shard.offset + written;
+                if (position + src.remaining() > shard.length) {
+                    throw new IOException("часть выходит за пределы данных");
+                }
+                written += src.remaining();
+                target.write(position, src);
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Прерывает извлечение после чтения заголовка части.
+     */
+    private static final class HeaderRead extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
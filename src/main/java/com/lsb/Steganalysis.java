@@ -0,0 +1,407 @@
+package com.lsb;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Статистический анализ изображения на наличие данных, встроенных в младшие биты.
+ * <p>
+ * За один проход по строкам для каждого цветового канала вычисляются:
+ * </p>
+ * <ul>
+ *     <li>критерий хи-квадрат по парам значений (Westfeld, Pfitzmann) — вероятность того,
+ *     что частоты значений {@code 2k} и {@code 2k+1} выровнены встраиванием;</li>
+ *     <li>RS-анализ (Fridrich, Goljan, Du) — оценка доли пикселей, несущих встроенные данные,
+ *     по группам из четырех соседних пикселей строки;</li>
+ *     <li>анализ пар отсчетов, SPA (Dumitrescu, Wu, Wang) — та же оценка по парам соседних пикселей;</li>
+ *     <li>энтропия плоскости младших битов (1 — единицы и нули равновероятны).</li>
+ * </ul>
+ * <p>
+ * Все статистики накапливаются в массивах примитивов: гистограмма значений и счетчики групп.
+ * Полосы по {@value #STRIPE_ROWS} строк обрабатываются параллельно, а их счетчики складываются,
+ * поэтому результат не зависит от числа потоков. Каждая строка отмечается в
+ * {@link LSBRaster#getProgress()}.
+ * </p>
+ */
+public final class Steganalysis {
+
+    /** Число строк в полосе, обрабатываемой одной задачей. */
+    private static final int STRIPE_ROWS = 64;
+    /** Минимальная ожидаемая частота пары значений, учитываемой критерием хи-квадрат. */
+    private static final int MIN_EXPECTED = 5;
+    /** Анализируемые каналы. */
+    private static final BitLayout.Channel[] CHANNELS = {
+            BitLayout.Channel.RED, BitLayout.Channel.GREEN, BitLayout.Channel.BLUE};
+
+    // Индексы счетчиков канала после гистограммы.
+    private static final int RM = 256;      // Регулярные группы для маски M
+    private static final int SM = 257;      // Сингулярные группы для маски M
+    private static final int RNM = 258;     // Регулярные группы для маски -M
+    private static final int SNM = 259;     // Сингулярные группы для маски -M
+    private static final int RM_FLIPPED = 260;
+    private static final int SM_FLIPPED = 261;
+    private static final int RNM_FLIPPED = 262;
+    private static final int SNM_FLIPPED = 263;
+    private static final int SPA_X = 264;   // Пары (u, v): v четное и u < v или v нечетное и u > v
+    private static final int SPA_Y = 265;   // Пары (u, v): v четное и u > v или v нечетное и u < v
+    private static final int SPA_K = 266;   // Пары с равными старшими 7 битами
+    private static final int SPA_P = 267;   // Все пары
+    private static final int COUNTERS = 268;
+
+    private Steganalysis() {
+    }
+
+    /**
+     * Анализирует изображение из файла (несжатый BMP читается без декодирования).
+     *
+     * @param path Путь к изображению.
+     * @return Результат анализа.
+     * @throws IOException Если изображение не удалось прочитать.
+     */
+    public static Report analyze(Path path) throws IOException {
+        try (LSBRaster raster = LSBRaster.read(path)) {
+            return analyze(raster);
+        }
+    }
+
+    /**
+     * Анализирует растр.
+     *
+     * @param raster Растр.
+     * @return Результат анализа.
+     */
+    public static Report analyze(LSBRaster raster) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int stripes = (height + STRIPE_ROWS - 1) / STRIPE_ROWS;
+        long[][] totals;
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.ANALYZE)) {
+            totals = IntStream.range(0, stripes).parallel()
+                    .mapToObj(stripe -> scanStripe(raster, stripe * STRIPE_ROWS, Math.min(height, (stripe + 1) * STRIPE_ROWS)))
+                    .reduce(Steganalysis::merge)
+                    .orElseGet(() -> new long[CHANNELS.length][COUNTERS]);
+            timer.pixels(raster.pixelCount());
+        }
+        List<ChannelReport> channels = new ArrayList<>(CHANNELS.length);
+        for (int c = 0; c < CHANNELS.length; c++) {
+            channels.add(new ChannelReport(CHANNELS[c], totals[c]));
+        }
+        return new Report(width, height, channels);
+    }
+
+    /**
+     * Накапливает статистики строк полосы.
+     *
+     * @return Счетчики по каналам: гистограмма из 256 значений и счетчики групп.
+     */
+    private static long[][] scanStripe(LSBRaster raster, int fromRow, int toRow) {
+        int width = raster.getWidth();
+        long[][] counts = new long[CHANNELS.length][COUNTERS];
+        byte[] row = new byte[width];
+        for (int y = fromRow; y < toRow; y++) {
+            for (int c = 0; c < CHANNELS.length; c++) {
+                raster.readLSB(y, 0, width, CHANNELS[c], 0xFF, row, 0);
+                scanRow(row, width, counts[c]);
+            }
+            raster.getProgress().advance(width);
+        }
+        return counts;
+    }
+
+    /**
+     * Добавляет значения одной строки канала к счетчикам.
+     */
+    private static void scanRow(byte[] row, int width, long[] counts) {
+        int previous = -1;
+        for (int i = 0; i < width; i++) {
+            int v = row[i] & 0xFF;
+            counts[v]++;
+            if (previous >= 0) {
+                int u = previous;
+                if ((u >> 1) == (v >> 1)) {
+                    counts[SPA_K]++;
+                }
+                if (u != v) {
+                    boolean even = (v & 1) == 0;
+                    counts[(even == (u < v)) ? SPA_X : SPA_Y]++;
+                }
+                counts[SPA_P]++;
+            }
+            previous = v;
+        }
+
+        // Неперекрывающиеся группы из четырех пикселей; маска M = [0, 1, 1, 0].
+        for (int i = 0; i + 4 <= width; i += 4) {
+            int a = row[i] & 0xFF;
+            int b = row[i + 1] & 0xFF;
+            int c = row[i + 2] & 0xFF;
+            int d = row[i + 3] & 0xFF;
+            classify(a, b, c, d, counts, RM);
+            classify(a ^ 1, b ^ 1, c ^ 1, d ^ 1, counts, RM_FLIPPED);
+        }
+    }
+
+    /**
+     * Относит группу к регулярным или сингулярным для масок M и -M.
+     *
+     * @param base Индекс счетчика {@code R_M}; за ним следуют {@code S_M}, {@code R_-M}, {@code S_-M}.
+     */
+    private static void classify(int a, int b, int c, int d, long[] counts, int base) {
+        int f = smoothness(a, b, c, d);
+        int positive = smoothness(a, b ^ 1, c ^ 1, d);
+        int negative = smoothness(a, ((b + 1) ^ 1) - 1, ((c + 1) ^ 1) - 1, d);
+        if (positive > f) {
+            counts[base]++;
+        } else if (positive < f) {
+            counts[base + 1]++;
+        }
+        if (negative > f) {
+            counts[base + 2]++;
+        } else if (negative < f) {
+            counts[base + 3]++;
+        }
+    }
+
+    /** Дискриминирующая функция группы: сумма модулей разностей соседних значений. */
+    private static int smoothness(int a, int b, int c, int d) {
+        return Math.abs(b - a) + Math.abs(c - b) + Math.abs(d - c);
+    }
+
+    private static long[][] merge(long[][] left, long[][] right) {
+        for (int c = 0; c < left.length; c++) {
+            for (int i = 0; i < COUNTERS; i++) {
+                left[c][i] += right[c][i];
+            }
+        }
+        return left;
+    }
+
+    /**
+     * Меньший по модулю корень уравнения {@code a x^2 + b x + c = 0}; при отрицательном
+     * дискриминанте — абсцисса вершины параболы.
+     */
+    private static double smallerRoot(double a, double b, double c) {
+        if (a == 0) {
+            return b == 0 ? 0 : -c / b;
+        }
+        double discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) {
+            return -b / (2 * a);
+        }
+        double sqrt = Math.sqrt(discriminant);
+        double r1 = (-b + sqrt) / (2 * a);
+        double r2 = (-b - sqrt) / (2 * a);
+        return Math.abs(r1) <= Math.abs(r2) ? r1 : r2;
+    }
+
+    private static double clamp(double value) {
+        return Double.isNaN(value) ? 0 : Math.max(0, Math.min(1, value));
+    }
+
+    /**
+     * Верхняя регуляризованная неполная гамма-функция {@code Q(s, x)}; для {@code s = df / 2},
+     * {@code x = chi2 / 2} — вероятность превышения значения статистики хи-квадрат.
+     */
+    static double upperGamma(double s, double x) {
+        if (x <= 0) {
+            return 1;
+        }
+        double logPrefix = s * Math.log(x) - x - logGamma(s);
+        if (x < s + 1) {
+            // Ряд для нижней функции.
+            double term = 1 / s;
+            double sum = term;
+            for (int n = 1; n < 1000 && Math.abs(term) > Math.abs(sum) * 1e-15; n++) {
+                term *= x / (s + n);
+                sum += term;
+            }
+            return Math.max(0, 1 - sum * Math.exp(logPrefix));
+        }
+        // Цепная дробь для верхней функции (метод Ленца).
+        double tiny = 1e-300;
+        double b = x + 1 - s;
+        double c = 1 / tiny;
+        double d = 1 / b;
+        double h = d;
+        for (int n = 1; n < 1000; n++) {
+            double an = -n * (n - s);
+            b += 2;
+            d = an * d + b;
+            d = Math.abs(d) < tiny ? tiny : d;
+            c = b + an / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            d = 1 / d;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1) < 1e-15) {
+                break;
+            }
+        }
+        return Math.min(1, Math.exp(logPrefix) * h);
+    }
+
+    /** Логарифм гамма-функции (приближение Ланцоша). */
+    private static double logGamma(double x) {
+        double[] g = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+                -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+        double y = x;
+        double tmp = x + 5.5;
+        tmp -= (x + 0.5) * Math.log(tmp);
+        double series = 1.000000000190015;
+        for (double coefficient : g) {
+            series += coefficient / ++y;
+        }
+        return -tmp + Math.log(2.5066282746310005 * series / x);
+    }
+
+    /**
+     * Результаты анализа одного канала.
+     */
+    public static final class ChannelReport {
+        private final BitLayout.Channel channel;
+        private final double chiSquare;
+        private final double chiSquareProbability;
+        private final double rsEstimate;
+        private final double spaEstimate;
+        private final double entropy;
+
+        private ChannelReport(BitLayout.Channel channel, long[] counts) {
+            this.channel = channel;
+
+            double chi = 0;
+            int categories = 0;
+            long samples = 0;
+            long ones = 0;
+            for (int k = 0; k < 128; k++) {
+                long even = counts[2 * k];
+                long odd = counts[2 * k + 1];
+                samples += even + odd;
+                ones += odd;
+                double expected = (even + odd) / 2.0;
+                if (expected >= MIN_EXPECTED) {
+                    double diff = even - expected;
+                    chi += diff * diff / expected;
+                    categories++;
+                }
+            }
+            this.chiSquare = chi;
+            this.chiSquareProbability = categories < 2 ? 0 : upperGamma((categories - 1) / 2.0, chi / 2);
+
+            double p1 = samples == 0 ? 0 : (double) ones / samples;
+            this.entropy = p1 <= 0 || p1 >= 1 ? 0
+                    : -(p1 * Math.log(p1) + (1 - p1) * Math.log(1 - p1)) / Math.log(2);
+
+            double d0 = counts[RM] - counts[SM];
+            double d1 = counts[RM_FLIPPED] - counts[SM_FLIPPED];
+            double n0 = counts[RNM] - counts[SNM];
+            double n1 = counts[RNM_FLIPPED] - counts[SNM_FLIPPED];
+            double z = smallerRoot(2 * (d1 + d0), n0 - n1 - d1 - 3 * d0, d0 - n0);
+            this.rsEstimate = z == 0.5 ? 1 : clamp(z / (z - 0.5));
+
+            double x = counts[SPA_X];
+            double y = counts[SPA_Y];
+            double pairs = counts[SPA_P];
+            this.spaEstimate = counts[SPA_K] == 0 ? 0
+                    : clamp(smallerRoot(counts[SPA_K] / 2.0, 2 * x - pairs, y - x));
+        }
+
+        /** @return Канал. */
+        public BitLayout.Channel getChannel() {
+            return channel;
+        }
+
+        /** @return Значение статистики хи-квадрат по парам значений. */
+        public double getChiSquare() {
+            return chiSquare;
+        }
+
+        /** @return Вероятность встраивания по критерию хи-квадрат (близка к 1 для заполненной плоскости). */
+        public double getChiSquareProbability() {
+            return chiSquareProbability;
+        }
+
+        /** @return Оценка доли пикселей, несущих данные, по RS-анализу, от 0 до 1. */
+        public double getRsEstimate() {
+            return rsEstimate;
+        }
+
+        /** @return Оценка доли пикселей, несущих данные, по анализу пар отсчетов, от 0 до 1. */
+        public double getSpaEstimate() {
+            return spaEstimate;
+        }
+
+        /** @return Энтропия плоскости младших битов в битах, от 0 до 1. */
+        public double getEntropy() {
+            return entropy;
+        }
+
+        /** @return Оценка канала: среднее оценок RS и SPA. */
+        public double getScore() {
+            return (rsEstimate + spaEstimate) / 2;
+        }
+    }
+
+    /**
+     * Результаты анализа изображения.
+     */
+    public static final class Report {
+        private final int width;
+        private final int height;
+        private final List<ChannelReport> channels;
+
+        private Report(int width, int height, List<ChannelReport> channels) {
+            this.width = width;
+            this.height = height;
+            this.channels = Collections.unmodifiableList(channels);
+        }
+
+        /** @return Ширина изображения. */
+        public int getWidth() {
+            return width;
+        }
+
+        /** @return Высота изображения. */
+        public int getHeight() {
+            return height;
+        }
+
+        /** @return Результаты по каналам (красный, зеленый, синий). */
+        public List<ChannelReport> getChannels() {
+            return channels;
+        }
+
+        /**
+         * Возвращает результат по каналу.
+         *
+         * @param channel Канал.
+         * @return Результат.
+         * @throws IllegalArgumentException Если канал не анализировался.
+         */
+        public ChannelReport getChannel(BitLayout.Channel channel) {
+            for (ChannelReport report : channels) {
+                if (report.getChannel() == channel) {
+                    return report;
+                }
+            }
+            throw new IllegalArgumentException("Канал не анализировался: " + channel);
+        }
+
+        /**
+         * Оценка изображения: наибольшая оценка канала ({@link ChannelReport#getScore()}).
+         * Близка к 0 для чистых изображений и к доле пикселей, несущих данные, для стегоизображений.
+         *
+         * @return Оценка от 0 до 1.
+         */
+        public double getScore() {
+            double score = 0;
+            for (ChannelReport report : channels) {
+                score = Math.max(score, report.getScore());
+            }
+            return score;
+        }
+    }
+}
@@ -19,10 +19,9 @@ import javafx.stage.Stage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Главный класс приложения, запускающий графический интерфейс для стеганографии.
@@ -46,9 +45,9 @@ public class SteganographyApp extends Application {
     /** Отображение результирующего изображения. */
     private ImageView outputImage;
     /** Отображение LSB исходного изображения. */
-    private ImageView inputLSBImageView;
+    private LSBTileView inputLSBImageView;
     /** Отображение LSB результирующего изображения. */
-    private ImageView outputLSBImageView;
+    private LSBTileView outputLSBImageView;
 
     /** Кнопка выбора исходного изображения. */
     private Button chooseInput;
@@ -58,13 +57,21 @@ public class SteganographyApp extends Application {
     private Button embed;
     /** Кнопка извлечения текста. */
     private Button extract;
+    /** Индикатор хода выполнения текущей операции. */
+    private ProgressBar progressBar;
+    /** Кнопка отмены выполняющихся операций. */
+    private Button cancel;
+    /** Сведения о последнем выбранном изображении: размеры, емкость и найденный контейнер. */
+    private Label imageInfo;
+    /** Выполняющиеся операции в порядке запуска. */
+    private final List<OperationTask<?>> operations = new ArrayList<>();
 
     /** Файл исходного изображения. */
     private File inputFile;
     /** Файл результирующего изображения. */
     private File outputFile;
 
-    /** Разделитель, используемый для обозначения конца встроенного текста. */
+    /** Разделитель, используемый для извлечения текста, встроенного по старой схеме (без заголовка). */
     private static final String DELIMITER = "END";
     /** Логгер для записи событий приложения. */
     private static final Logger logger = LogManager.getLogger(SteganographyApp.class);
@@ -92,8 +99,13 @@ public class SteganographyApp extends Application {
         chooseOutput = createButton("Выбрать файл");
         embed = createButton("Вложить текст");
         extract = createButton("Извлечь текст");
-        inputLSBImageView = new ImageView();
-        outputLSBImageView = new ImageView();
+        cancel = createButton("Отменить");
+        cancel.setDisable(true);
+        progressBar = new ProgressBar(0);
+        progressBar.setPrefWidth(300);
+        imageInfo = new Label();
+        inputLSBImageView = new LSBTileView();
+        outputLSBImageView = new LSBTileView();
 
         chooseInput.setOnAction(e -> handleImageSelection(inputPathField, inputImage, inputLSBImageView, true));
         chooseOutput.setOnAction(e -> handleImageSelection(outputPathField, outputImage, outputLSBImageView, false));
@@ -133,6 +145,11 @@ public class SteganographyApp extends Application {
             buttons.setAlignment(Pos.CENTER);
             grid.add(buttons, 1, 8);
 
+            HBox progress = new HBox(10, progressBar, cancel);
+            progress.setAlignment(Pos.CENTER);
+            grid.add(progress, 1, 9);
+            grid.add(imageInfo, 1, 10);
+
             ScrollPane scrollPane = new ScrollPane(grid);
             scrollPane.setFitToWidth(true);
             scrollPane.setFitToHeight(true);
@@ -158,6 +175,7 @@ public class SteganographyApp extends Application {
         chooseOutput.setOnAction(e -> handleImageSelection(outputPathField, outputImage, outputLSBImageView, false));
         embed.setOnAction(e -> embedText());
         extract.setOnAction(e -> extractText());
+        cancel.setOnAction(e -> new ArrayList<>(operations).forEach(Task::cancel));
     }
 
     /**
@@ -204,24 +222,94 @@ public class SteganographyApp extends Application {
      * @param lsbImageView Отображение LSB изображения.
      * @param isInput  {@code true}, если выбирается исходное изображение, {@code false} - если результирующее.
      */
-    private void handleImageSelection(TextField pathField, ImageView imageView, ImageView lsbImageView, boolean isInput) {
+    private void handleImageSelection(TextField pathField, ImageView imageView, LSBTileView lsbImageView, boolean isInput) {
         File file = chooseFile(isInput);
         if (file != null) {
             pathField.setText(file.getAbsolutePath());
-            try {
-                Image image = new Image(file.toURI().toString());
-                if (image.isError()) {
-                    throw new IOException("Не удалось загрузить изображение");
-                }
-                imageView.setImage(image);
-                updateLSBVisualization(lsbImageView, file);
+            showProbe(file);
+            showImage(file, imageView, lsbImageView, () -> {
                 if (isInput) inputFile = file; else outputFile = file;
                 logger.info("Изображение {} успешно загружено", file.getName());
-            } catch (IOException e) {
-                showAlert(Alert.AlertType.ERROR, "Ошибка загрузки изображения: " + e.getMessage());
-                logger.error("Ошибка загрузки изображения: {}", e.getMessage());
+            });
+        }
+    }
+
+    /**
+     * Показывает размеры, емкость и заголовок контейнера изображения, не дожидаясь его загрузки:
+     * сведения берутся из заголовка файла и первых строк через {@link ImageProbe}.
+     *
+     * @param file Файл изображения.
+     */
+    private void showProbe(File file) {
+        OperationTask<ImageProbe> task = new OperationTask<ImageProbe>() {
+            protected ImageProbe call() throws Exception {
+                return ImageProbe.probe(file.toPath());
             }
+        };
+        task.setOnSucceeded(event -> imageInfo.setText(describe(file.getName(), task.getValue())));
+        task.setOnFailed(event -> imageInfo.setText(file.getName() + ": " + task.getException().getMessage()));
+        runOperation(task);
+    }
+
+    /**
+     * Формирует строку со сведениями об изображении.
+     *
+     * @param name  Имя файла.
+     * @param probe Сведения об изображении.
+     * @return Строка для отображения.
+     */
+    private static String describe(String name, ImageProbe probe) {
+        StringBuilder sb = new StringBuilder(name).append(": ")
+                .append(probe.getWidth()).append('×').append(probe.getHeight()).append(", емкость:");
+        String separator = " ";
+        for (BitLayout layout : ImageProbe.COMMON_LAYOUTS) {
+            sb.append(separator).append(layout).append(" — ").append(probe.capacityBytes(layout)).append(" байт");
+            separator = ", ";
+        }
+        PayloadHeader header = probe.getPayloadHeader();
+        if (header == null) {
+            return sb.append("; контейнер не найден").toString();
         }
+        return sb.append("; контейнер: ").append(header.getLength()).append(" байт, схема ")
+                .append(header.getLayout()).append(header.getCodecId() != 0 ? ", сжат" : "").toString();
+    }
+
+    /**
+     * Загружает изображение в фоновом потоке и отображает его вместе с визуализацией LSB.
+     * <p>
+     * Изображение декодируется не больше одного раза: декодированные пиксели и изображение для
+     * отображения берутся из {@link ImageCache#common()}, как и битовая плоскость для визуализации.
+     * </p>
+     *
+     * @param file Файл изображения.
+     * @param imageView Отображение изображения.
+     * @param lsbImageView Отображение LSB изображения.
+     * @param onLoaded Действие после успешной загрузки или {@code null}.
+     */
+    private void showImage(File file, ImageView imageView, LSBTileView lsbImageView, Runnable onLoaded) {
+        OperationTask<Image> task = new OperationTask<Image>() {
+            protected Image call() throws Exception {
+                ImageCache cache = ImageCache.common();
+                return cache.get(file.toPath(), "fx", path -> SwingFXUtils.toFXImage(cache.image(path), null),
+                        image -> (long) (image.getWidth() * image.getHeight() * 4));
+            }
+        };
+
+        task.setOnSucceeded(event -> {
+            imageView.setImage(task.getValue());
+            updateLSBVisualization(lsbImageView, file);
+            if (onLoaded != null) {
+                onLoaded.run();
+            }
+        });
+
+        task.setOnFailed(event -> {
+            Throwable exception = task.getException();
+            showAlert(Alert.AlertType.ERROR, "Ошибка загрузки изображения: " + exception.getMessage());
+            logger.error("Ошибка загрузки изображения: {}", exception.getMessage());
+        });
+
+        runOperation(task);
     }
 
     /**
@@ -233,12 +321,19 @@ public class SteganographyApp extends Application {
     private File chooseFile(boolean forInput) {
         FileChooser chooser = new FileChooser();
         chooser.setTitle(forInput ? "Выберите изображение для извлечения" : "Выберите изображение для вложения");
-        chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("BMP Files", "*.bmp"));
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Images (BMP, PNG)", "*.bmp", "*.png"),
+                new FileChooser.ExtensionFilter("BMP Files", "*.bmp"),
+                new FileChooser.ExtensionFilter("PNG Files", "*.png"));
         return chooser.showOpenDialog(null);
     }
 
     /**
      * Встраивает текст в изображение.
+     * <p>
+     * Изображение, не являющееся BMP, не декодируется повторно: пиксели копируются из
+     * {@link ImageCache#common()}; несжатый BMP копируется и изменяется без декодирования.
+     * </p>
      */
     private void embedText() {
         if (outputFile == null || inputText.getText().isEmpty()) {
@@ -252,9 +347,14 @@ public class SteganographyApp extends Application {
             return;
         }
 
-        Task<File> task = new Task<File>() {
+        String text = inputText.getText();
+        OperationTask<File> task = new OperationTask<File>() {
             protected File call() throws Exception {
-                EmbedText.embedText(outputFile.getAbsolutePath(), inputText.getText() + DELIMITER, outputFileToSave.getAbsolutePath(), DELIMITER);
+                // Пиксели берутся из кэша, заполненного при выборе файла, и встраивание идет в их копию.
+                try (StegoEngine engine = new StegoEngine(ImageCache.common())) {
+                    engine.embedText(outputFile.getAbsolutePath(), text, outputFileToSave.getAbsolutePath(),
+                            EmbedOptions.DEFAULT, progress);
+                }
                 return outputFileToSave;
             }
         };
@@ -273,7 +373,9 @@ public class SteganographyApp extends Application {
             logger.error("Ошибка при вложении текста");
         }));
 
-        new Thread(task).start();
+        task.setOnCancelled(event -> logger.info("Вложение текста отменено"));
+
+        runOperation(task);
     }
 
     /**
@@ -284,42 +386,75 @@ public class SteganographyApp extends Application {
      * @param result Результирующее изображение.
      * @param resultLSB Отображение LSB результирующего изображения.
      */
-    private void updateImages(File original, ImageView originalLSB, File result, ImageView resultLSB) {
+    private void updateImages(File original, LSBTileView originalLSB, File result, LSBTileView resultLSB) {
         if (original != null) {
-            inputImage.setImage(new Image(original.toURI().toString()));
-            updateLSBVisualization(originalLSB, original);
+            showImage(original, inputImage, originalLSB, null);
         } else {
             inputImage.setImage(null);
-            originalLSB.setImage(null);
+            originalLSB.setTiles(null);
         }
         if (result != null) {
-            outputImage.setImage(new Image(result.toURI().toString()));
-            updateLSBVisualization(resultLSB, result);
+            ImageCache.common().invalidate(result.toPath()); // Файл только что перезаписан
+            showImage(result, outputImage, resultLSB, null);
         } else {
             outputImage.setImage(null);
-            resultLSB.setImage(null);
+            resultLSB.setTiles(null);
         }
     }
 
     /**
      * Обновляет визуализацию LSB для заданного изображения.
+     * <p>
+     * Битовая плоскость берется из {@link ImageCache#common()} (или строится в фоновом потоке
+     * по уже декодированному изображению), а тайлы визуализации строятся компонентом по мере
+     * необходимости для видимой области.
+     * </p>
      *
-     * @param imageView Отображение для визуализации LSB.
+     * @param tileView Отображение для визуализации LSB.
      * @param file Файл изображения.
      */
-    private void updateLSBVisualization(ImageView imageView, File file) {
-        try {
-            BufferedImage lsbImage = LSBVisualization.visualizeLSBBits(ImageIO.read(file));
-            if (lsbImage != null) {
-                Image fxImage = SwingFXUtils.toFXImage(lsbImage, null);
-                imageView.setImage(fxImage);
-            } else {
-                showAlert("Ошибка создания визуализации LSB.");
+    private void updateLSBVisualization(LSBTileView tileView, File file) {
+        OperationTask<LSBTiles> task = new OperationTask<LSBTiles>() {
+            protected LSBTiles call() throws Exception {
+                return new LSBTiles(ImageCache.common().plane(file.toPath(), BitLayout.Channel.BLUE, 0, progress));
             }
-        } catch (IOException e) {
-            showAlert("Ошибка чтения изображения при обновлении визуализации LSB: " + e.getMessage());
-            logger.error("Ошибка чтения изображения при обновлении визуализации LSB: {}", e.getMessage(), e);
-        }
+        };
+
+        task.setOnSucceeded(event -> tileView.setTiles(task.getValue()));
+
+        task.setOnFailed(event -> {
+            Throwable exception = task.getException();
+            showAlert("Ошибка чтения изображения при обновлении визуализации LSB: " + exception.getMessage());
+            logger.error("Ошибка чтения изображения при обновлении визуализации LSB: {}", exception.getMessage(), exception);
+        });
+
+        runOperation(task);
+    }
+
+    /**
+     * Запускает операцию в общем пуле {@link Workers} и показывает ее ход в индикаторе.
+     * Индикатор отображает последнюю запущенную операцию; кнопка отмены доступна, пока
+     * выполняется хотя бы одна операция.
+     *
+     * @param task Операция.
+     */
+    private void runOperation(OperationTask<?> task) {
+        operations.add(task);
+        progressBar.progressProperty().bind(task.progressProperty());
+        cancel.setDisable(false);
+        task.runningProperty().addListener((observable, wasRunning, running) -> {
+            if (!running) {
+                operations.remove(task);
+                progressBar.progressProperty().unbind();
+                if (operations.isEmpty()) {
+                    progressBar.setProgress(0);
+                    cancel.setDisable(true);
+                } else {
+                    progressBar.progressProperty().bind(operations.get(operations.size() - 1).progressProperty());
+                }
+            }
+        });
+        Workers.common().execute(task);
     }
 
     /**
@@ -330,8 +465,18 @@ public class SteganographyApp extends Application {
     private File chooseSaveFile() {
         FileChooser chooser = new FileChooser();
         chooser.setTitle("Сохранить изображение");
-        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("BMP Files", "*.bmp"));
-        return chooser.showSaveDialog(null);
+        // Формат результата определяется расширением: PNG кодируется параллельно (PngEncoder), иначе BMP.
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("BMP Files", "*.bmp"),
+                new FileChooser.ExtensionFilter("PNG Files", "*.png"));
+        File file = chooser.showSaveDialog(null);
+        if (file == null || file.getName().toLowerCase().matches(".*\\.(bmp|png)")) {
+            return file;
+        }
+        // Расширение не указано: добавляем расширение выбранного фильтра.
+        FileChooser.ExtensionFilter filter = chooser.getSelectedExtensionFilter();
+        String extension = filter != null ? filter.getExtensions().get(0).substring(1) : ".bmp";
+        return new File(file.getParentFile(), file.getName() + extension);
     }
 
     /**
@@ -342,20 +487,37 @@ public class SteganographyApp extends Application {
             showAlert("Выберите изображение для извлечения текста.");
             return;
         }
-        try {
-            String extracted = ExtractText.extractText(inputFile.getAbsolutePath(), DELIMITER);
+        File file = inputFile;
+        OperationTask<String> task = new OperationTask<String>() {
+            protected String call() throws Exception {
+                try (LSBRaster raster = ImageCache.common().raster(file.toPath())) {
+                    raster.setProgress(progress);
+                    return ExtractText.extractText(raster, DELIMITER);
+                }
+            }
+        };
+
+        task.setOnSucceeded(event -> {
+            String extracted = task.getValue();
             if (extracted.isEmpty()) {
                 showAlert(Alert.AlertType.ERROR, "Текст не найден в изображении.");
-                logger.warn("Текст не найден в изображении {}", inputFile.getName());
+                logger.warn("Текст не найден в изображении {}", file.getName());
             } else {
                 outputText.setText(extracted);
                 showAlert("Текст успешно извлечен!");
-                logger.info("Текст успешно извлечен из изображения {}", inputFile.getName());
+                logger.info("Текст успешно извлечен из изображения {}", file.getName());
             }
-        } catch (IOException | IllegalArgumentException e) {
-            showAlert(Alert.AlertType.ERROR, "Ошибка извлечения текста: " + e.getMessage());
-            logger.error("Ошибка извлечения текста: {}", e.getMessage(), e);
-        }
+        });
+
+        task.setOnFailed(event -> {
+            Throwable exception = task.getException();
+            showAlert(Alert.AlertType.ERROR, "Ошибка извлечения текста: " + exception.getMessage());
+            logger.error("Ошибка извлечения текста: {}", exception.getMessage(), exception);
+        });
+
+        task.setOnCancelled(event -> logger.info("Извлечение текста отменено"));
+
+        runOperation(task);
     }
 
     /**
@@ -381,6 +543,28 @@ public class SteganographyApp extends Application {
         alert.showAndWait();
     }
 
+    /**
+     * Длительная операция с отслеживанием хода выполнения и отменой.
+     * <p>
+     * Циклы обработки пикселей сообщают о ходе выполнения через {@link #progress} не чаще
+     * раза в {@value Progress#DEFAULT_INTERVAL_NANOS} нс, а {@link Task#updateProgress(long, long)}
+     * дополнительно объединяет обновления перед передачей в поток JavaFX. Отмена задачи
+     * отменяет и {@link #progress}, поэтому работа прерывается на ближайшей строке.
+     * </p>
+     *
+     * @param <V> Тип результата.
+     */
+    private abstract static class OperationTask<V> extends Task<V> {
+        /** Отслеживание хода выполнения, передаваемое в операции над растром. */
+        final Progress progress = new Progress(this::updateProgress);
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            progress.cancel();
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
     /**
      * Главный метод запуска приложения.
      *
@@ -0,0 +1,518 @@
+package com.lsb;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Контекст встраивания и извлечения, повторно использующий рабочие буферы между изображениями.
+ * <p>
+ * Контекст хранит декодированное изображение (для форматов, декодируемых через {@link ImageIO}),
+ * содержимое BMP, буферы порций полезной нагрузки и строк растра, а также кодер и декодер UTF-8.
+ * Буферы растут до наибольшего встреченного размера и затем используются повторно, поэтому
+ * при обработке изображений одного размера встраивание и извлечение почти не выделяют памяти:
+ * BMP отображается в память, а изображения прочих форматов декодируются в то же изображение.
+ * Статические методы {@link EmbedText} и {@link ExtractText} — обертки, берущие контекст из общего
+ * пула ({@link #pooled()}).
+ * </p>
+ * <p>
+ * Контекст, созданный с {@link ImageCache}, не декодирует изображения повторно: для извлечения
+ * растр берется из кэша, а для встраивания пиксели из кэша копируются в изображение контекста,
+ * так что изображение в кэше не изменяется.
+ * </p>
+ * <p>
+ * Контекст не потокобезопасен: каждый поток (или задача) использует собственный экземпляр.
+ * Параллельные полосы {@link ParallelLSB} для больших изображений по-прежнему выделяют
+ * буферы строк в рабочих потоках.
+ * </p>
+ */
+public final class StegoEngine implements Closeable {
+
+    /**
+     * Наибольший объем буфера, который контекст из пула сохраняет после возврата;
+     * буферы большего размера отбрасываются, чтобы простаивающий пул не удерживал память.
+     */
+    public static final int MAX_RETAINED_BYTES = 16 << 20;
+    /** Наибольшее число свободных контекстов в общем пуле. */
+    private static final int MAX_IDLE = Runtime.getRuntime().availableProcessors();
+    /** Размер буфера копирования и записи BMP. */
+    private static final int COPY_BUFFER_SIZE = Math.max(64 * 1024, EmbedText.PROBE_BYTES);
+
+    /** Свободные контексты общего пула. */
+    private static final ConcurrentLinkedDeque<StegoEngine> IDLE = new ConcurrentLinkedDeque<>();
+    private static final AtomicInteger idleCount = new AtomicInteger();
+
+    /** Контекст принадлежит общему пулу. */
+    private final boolean pooled;
+    /** Кэш декодированных изображений или {@code null}. */
+    private final ImageCache cache;
+    /** Порция полезной нагрузки. */
+    private byte[] chunk = new byte[0];
+    /** Буфер копирования, пробной порции и записи BMP. */
+    private byte[] copy;
+    /** Буферы строки растра по каналам. */
+    private byte[][] rows = new byte[0][0];
+    /** Текст в UTF-8 или извлеченные данные. */
+    private byte[] text = new byte[0];
+    /** Число байтов в {@link #text}. */
+    private int textLength;
+    /** Декодированный текст. */
+    private CharBuffer chars = CharBuffer.allocate(0);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    /** Приемник извлекаемых данных в {@link #text}. */
+    private final WritableByteChannel textSink = new TextSink();
+    /** Содержимое файла BMP. */
+    private byte[] file = new byte[0];
+    /** Декодер последнего изображения. */
+    private ImageReader reader;
+    /** Изображение, в которое декодируются файлы, и его тип. */
+    private BufferedImage image;
+    private ImageTypeSpecifier imageType;
+    /** Контекст выдан из пула и еще не возвращен. */
+    private boolean acquired;
+
+    /**
+     * Создает контекст для использования в одном потоке. Буферы освобождаются при {@link #close()}.
+     */
+    public StegoEngine() {
+        this(false, null);
+    }
+
+    /**
+     * Создает контекст для использования в одном потоке, берущий декодированные изображения из кэша.
+     *
+     * @param cache Кэш декодированных изображений.
+     */
+    public StegoEngine(ImageCache cache) {
+        this(false, Objects.requireNonNull(cache));
+    }
+
+    private StegoEngine(boolean pooled, ImageCache cache) {
+        this.pooled = pooled;
+        this.cache = cache;
+    }
+
+    /**
+     * Выдает контекст из общего пула или создает новый, если свободных нет.
+     * Контекст возвращается в пул методом {@link #close()}.
+     *
+     * @return Контекст для использования в текущем потоке.
+     */
+    public static StegoEngine pooled() {
+        StegoEngine engine = IDLE.pollFirst();
+        if (engine == null) {
+            engine = new StegoEngine(true, null);
+        } else {
+            idleCount.decrementAndGet();
+        }
+        engine.acquired = true;
+        return engine;
+    }
+
+    /**
+     * Встраивает текст в формате контейнера
+     * (см. {@link EmbedText#embedText(String, String, String, EmbedOptions, Progress)}).
+     *
+     * @param imagePath  Путь к исходному изображению (BMP или PNG).
+     * @param text       Текст для встраивания (будет закодирован в UTF-8).
+     * @param outputPath Путь для сохранения результирующего изображения.
+     * @param options    Параметры встраивания.
+     * @param progress   Отслеживание хода выполнения или {@link Progress#NONE}.
+     * @throws IOException Если произошла ошибка чтения или записи изображения, если изображение
+     *                     слишком мало или не содержит каналов схемы.
+     * @throws java.util.concurrent.CancellationException Если операция отменена.
+     */
+    public void embedText(String imagePath, String text, String outputPath, EmbedOptions options, Progress progress) throws IOException {
+        int length = encode(text);
+        embedData(imagePath, Channels.newChannel(new ByteArrayInputStream(this.text, 0, length)), length,
+                outputPath, options, progress);
+    }
+
+    /**
+     * Встраивает двоичные данные из канала в формате контейнера
+     * (см. {@link EmbedText#embedData(String, ReadableByteChannel, long, String, EmbedOptions, Progress)}).
+     *
+     * @param imagePath  Путь к исходному изображению (BMP или PNG).
+     * @param payload    Источник данных; не закрывается.
+     * @param length     Число байтов для встраивания.
+     * @param outputPath Путь для сохранения результирующего изображения.
+     * @param options    Параметры встраивания.
+     * @param progress   Отслеживание хода выполнения или {@link Progress#NONE}.
+     * @throws IOException Если произошла ошибка чтения или записи, если канал короче {@code length}
+     *                     или если изображение слишком мало или не содержит каналов схемы.
+     * @throws java.util.concurrent.CancellationException Если операция отменена.
+     */
+    public void embedData(String imagePath, ReadableByteChannel payload, long length, String outputPath,
+                          EmbedOptions options, Progress progress) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Недопустимая длина встраиваемых данных: " + length);
+        }
+        BitLayout layout = options.getLayout();
+        // Размер сжатых данных заранее неизвестен; их емкость проверяется при записи.
+        long pixelsNeeded = PayloadHeader.SIZE * 8L + (options.getCodec() == null ? layout.pixelsFor(length * 8) : 0);
+        EmbedText.embed(this, imagePath, outputPath, pixelsNeeded, options, progress,
+                raster -> EmbedText.embedContainer(this, raster, options, payload, (int) length));
+    }
+
+    /**
+     * Извлекает текст контейнера (см. {@link ExtractText#extractText(String, byte[])}).
+     *
+     * @param imagePath Путь к файлу изображения, содержащему контейнер.
+     * @param key       Ключ, использованный при встраивании, или {@code null}.
+     * @return Извлеченный текст.
+     * @throws IOException Если произошла ошибка чтения, если заголовок не найден
+     *                     или если длина и контрольная сумма не совпадают.
+     */
+    public String extractText(String imagePath, byte[] key) throws IOException {
+        textLength = 0;
+        extractData(imagePath, textSink, Progress.NONE, key);
+        return decode();
+    }
+
+    /**
+     * Извлекает двоичные данные контейнера в канал
+     * (см. {@link ExtractText#extractData(String, WritableByteChannel, Progress, byte[])}).
+     *
+     * @param imagePath Путь к файлу изображения, содержащему контейнер.
+     * @param out       Приемник данных; не закрывается.
+     * @param progress  Отслеживание хода выполнения или {@link Progress#NONE}.
+     * @param key       Ключ, использованный при встраивании, или {@code null}.
+     * @return Число извлеченных байтов.
+     * @throws IOException Если произошла ошибка чтения или записи, если заголовок
+     *                     не найден или если длина и контрольная сумма не совпадают.
+     * @throws java.util.concurrent.CancellationException Если операция отменена.
+     */
+    public long extractData(String imagePath, WritableByteChannel out, Progress progress, byte[] key) throws IOException {
+        try (LSBRaster raster = read(Path.of(imagePath))) {
+            raster.setProgress(progress);
+            return ExtractText.extractData(this, key == null ? raster : PixelPermutation.scatter(raster, key), out);
+        }
+    }
+
+    /**
+     * Возвращает контекст в пул (для контекстов из {@link #pooled()}) или освобождает буферы.
+     * Буферы больше {@value #MAX_RETAINED_BYTES} байтов в пуле не сохраняются.
+     */
+    @Override
+    public void close() {
+        if (!pooled) {
+            release(0);
+            return;
+        }
+        if (!acquired) {
+            return;
+        }
+        acquired = false;
+        release(MAX_RETAINED_BYTES);
+        if (idleCount.incrementAndGet() <= MAX_IDLE) {
+            IDLE.offerFirst(this);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Отбрасывает буферы больше {@code limit} байтов.
+     */
+    private void release(long limit) {
+        if (chunk.length > limit) {
+            chunk = new byte[0];
+        }
+        if (text.length > limit) {
+            text = new byte[0];
+        }
+        if ((long) chars.capacity() * Character.BYTES > limit) {
+            chars = CharBuffer.allocate(0);
+        }
+        if (file.length > limit) {
+            file = new byte[0];
+        }
+        if (rows.length > 0 && (long) rows.length * rows[0].length > limit) {
+            rows = new byte[0][0];
+        }
+        if (limit == 0) {
+            copy = null;
+        }
+        if (image != null && (long) image.getWidth() * image.getHeight() * Integer.BYTES > limit) {
+            image = null;
+            imageType = null;
+        }
+        if (reader != null && limit == 0) {
+            reader.dispose();
+            reader = null;
+        }
+    }
+
+    /**
+     * Выдает буфер порции полезной нагрузки.
+     *
+     * @param size Необходимый размер.
+     * @return Массив длиной не меньше {@code size}; содержимое не очищается.
+     */
+    byte[] chunk(int size) {
+        if (chunk.length < size) {
+            chunk = new byte[size];
+        }
+        return chunk;
+    }
+
+    /** @return Буфер копирования длиной не меньше {@link EmbedText#PROBE_BYTES}. */
+    byte[] copyBuffer() {
+        if (copy == null) {
+            copy = new byte[COPY_BUFFER_SIZE];
+        }
+        return copy;
+    }
+
+    /**
+     * Выдает буферы строки растра.
+     *
+     * @param channels Число каналов.
+     * @param width    Ширина растра.
+     * @return Не меньше {@code channels} массивов длиной не меньше {@code width}.
+     */
+    byte[][] rows(int channels, int width) {
+        if (rows.length < channels || rows[0].length < width) {
+            rows = new byte[Math.max(channels, rows.length)][Math.max(width, rows.length > 0 ? rows[0].length : 0)];
+        }
+        return rows;
+    }
+
+    /**
+     * Открывает изображение для чтения младших битов так же, как {@link LSBRaster#read(Path)},
+     * но декодирует изображения, не являющиеся BMP, в изображение контекста
+     * (или берет растр из кэша, см. {@link ImageCache#raster(Path)}).
+     *
+     * @param path Путь к файлу изображения.
+     * @return Растр; действителен до следующего обращения к контексту.
+     * @throws IOException Если изображение не удалось загрузить.
+     */
+    LSBRaster read(Path path) throws IOException {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.DECODE)) {
+            if (cache != null) {
+                LSBRaster raster = cache.raster(path);
+                timer.pixels(raster.pixelCount());
+                return raster;
+            }
+            if (BmpRaster.isSupported(path)) {
+                BmpRaster raster = BmpRaster.open(path, false);
+                timer.pixels(raster.pixelCount());
+                return raster;
+            }
+            BufferedImage decoded = decode(path);
+            timer.pixels((long) decoded.getWidth() * decoded.getHeight());
+            return LSBRaster.wrap(decoded);
+        }
+    }
+
+    /**
+     * Декодирует изображение через {@link ImageIO}, повторно используя декодер и изображение
+     * контекста, если размер и тип совпадают с предыдущим. Палитровые и полутоновые изображения
+     * преобразуются в RGB ({@link LSBRaster#trueColor(BufferedImage)}), чтобы записанные биты сохранились. Если контекст создан с кэшем,
+     * в изображение контекста копируются пиксели из {@link ImageCache#image(Path)}.
+     *
+     * @param path Путь к файлу изображения.
+     * @return Изображение; действительно до следующего обращения к контексту.
+     * @throws IOException Если изображение не удалось загрузить.
+     */
+    BufferedImage decode(Path path) throws IOException {
+        if (cache != null) {
+            return copy(cache.image(path));
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            ImageReader decoder = in == null ? null : reader(in);
+            if (decoder == null) {
+                throw new IOException("Не удалось загрузить изображение: " + path);
+            }
+            try {
+                decoder.setInput(in, true, true);
+                int width = decoder.getWidth(0);
+                int height = decoder.getHeight(0);
+                ImageTypeSpecifier type = decoder.getImageTypes(0).next();
+                if (!LSBRaster.isTrueColor(type.getColorModel())) {
+                    // Палитра и оттенки серого квантуют записанные биты: пиксели копируются в RGB.
+                    return copy(decoder.read(0));
+                }
+                if (image == null || image.getWidth() != width || image.getHeight() != height || !type.equals(imageType)) {
+                    image = null; // Прежнее изображение может быть собрано до выделения нового
+                    image = type.createBufferedImage(width, height);
+                    imageType = type;
+                }
+                ImageReadParam param = decoder.getDefaultReadParam();
+                param.setDestination(image);
+                return decoder.read(0, param);
+            } finally {
+                decoder.setInput(null);
+            }
+        }
+    }
+
+    /**
+     * Копирует изображение в изображение контекста, повторно используя его при совпадении размера и типа.
+     * Изображения, не хранящие цвет без потерь ({@link LSBRaster#isTrueColor}), копируются в RGB.
+     */
+    private BufferedImage copy(BufferedImage source) {
+        boolean trueColor = LSBRaster.isTrueColor(source.getColorModel());
+        ImageTypeSpecifier type = trueColor ? new ImageTypeSpecifier(source)
+                : ImageTypeSpecifier.createFromBufferedImageType(LSBRaster.trueColorType(source.getColorModel()));
+        if (image == null || image.getWidth() != source.getWidth() || image.getHeight() != source.getHeight()
+                || !type.equals(imageType)) {
+            image = null;
+            image = type.createBufferedImage(source.getWidth(), source.getHeight());
+            imageType = type;
+        }
+        if (trueColor) {
+            source.copyData(image.getRaster());
+        } else {
+            LSBRaster.copyPixels(source, image);
+        }
+        return image;
+    }
+
+    /**
+     * Выбирает декодер для потока: прежний, если он распознает формат, иначе новый.
+     */
+    private ImageReader reader(ImageInputStream in) throws IOException {
+        if (reader != null && reader.getOriginatingProvider() != null
+                && reader.getOriginatingProvider().canDecodeInput(in)) {
+            return reader;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        if (reader != null) {
+            reader.dispose();
+        }
+        reader = readers.next();
+        return reader;
+    }
+
+    /**
+     * Считывает файл целиком в буфер контекста.
+     *
+     * @param path Путь к файлу.
+     * @return Содержимое файла (позиция 0, предел — размер файла).
+     * @throws IOException Если файл не удалось прочитать или он больше 2 ГБ.
+     */
+    ByteBuffer readFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Файл слишком велик: " + path);
+            }
+            if (file.length < size) {
+                file = new byte[(int) size];
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(file, 0, (int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // Читаем до конца файла.
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Файл изменился во время чтения: " + path);
+            }
+            return buffer.flip();
+        }
+    }
+
+    /**
+     * Сохраняет растр в файл BMP через {@link BmpRaster#write}, используя буферы контекста.
+     *
+     * @param raster Растр без альфа-канала.
+     * @param target Путь к файлу.
+     * @throws IOException Если произошла ошибка записи.
+     */
+    void writeBmp(LSBRaster raster, Path target) throws IOException {
+        int stride = (raster.getWidth() * 3 + 3) & ~3;
+        byte[] buffer = stride <= COPY_BUFFER_SIZE ? copyBuffer() : chunk(Math.max(stride, BmpRaster.WRITE_HEADER_SIZE));
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BmpRaster.write(raster, out, buffer, rows(3, raster.getWidth()));
+        }
+    }
+
+    /**
+     * Кодирует текст в UTF-8 в буфер контекста.
+     *
+     * @return Число байтов.
+     */
+    private int encode(String value) {
+        // UTF-8 занимает не больше трех байтов на символ UTF-16 (суррогатная пара — четыре на два символа).
+        int max = value.length() * 3;
+        if (text.length < max) {
+            text = new byte[max];
+        }
+        ByteBuffer out = ByteBuffer.wrap(text);
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(value), out, true);
+        encoder.flush(out);
+        return out.position();
+    }
+
+    /**
+     * Декодирует извлеченные байты из буфера контекста.
+     */
+    private String decode() {
+        if (chars.capacity() < textLength) {
+            chars = CharBuffer.allocate(textLength);
+        }
+        chars.clear();
+        decoder.reset();
+        ByteBuffer in = ByteBuffer.wrap(text, 0, textLength);
+        decoder.decode(in, chars, true);
+        decoder.flush(chars);
+        return new String(chars.array(), 0, chars.position());
+    }
+
+    /**
+     * Канал, дописывающий данные в {@link #text} с ростом буфера.
+     */
+    private final class TextSink implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            if (text.length - textLength < n) {
+                byte[] grown = new byte[Math.max(textLength + n, text.length * 2)];
+                System.arraycopy(text, 0, grown, 0, textLength);
+                text = grown;
+            }
+            src.get(text, textLength, n);
+            textLength += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
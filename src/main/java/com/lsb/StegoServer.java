@@ -0,0 +1,672 @@
+package com.lsb;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP-сервис встраивания, извлечения и визуализации на основе {@code com.sun.net.httpserver}.
+ * <p>
+ * Конечные точки (тело запроса — изображение):
+ * </p>
+ * <pre>
+ * POST /embed?text=ТЕКСТ[&amp;layout=rgb:2][&amp;compress=true][&amp;tailFill=false]  — ответ: изображение BMP
+ *             [&amp;format=png[&amp;level=6]]                                     — ответ: изображение PNG ({@link PngEncoder})
+ * POST /embed  (заголовок X-Image-Length; тело — изображение, за ним данные)   — ответ: изображение BMP
+ * POST /extract                                                                — ответ: данные контейнера
+ * POST /visualize[?channel=b][&amp;plane=0]                                        — ответ: изображение PNG
+ * POST /capacity[?layout=rgb:2]                                                — ответ: JSON с емкостью
+ * POST /probe                                                                  — ответ: JSON {@link ImageProbe#toJson()}
+ * GET  /stats                                                                  — ответ: JSON со счетчиками
+ * GET  /metrics                                                                — ответ: снимок {@link InMemoryMetrics}
+ * </pre>
+ * <p>
+ * Каждый запрос обрабатывается в отдельном потоке пула из {@code maxConcurrent + maxQueued} потоков
+ * (не виртуальных: поток, читающий тело медленного клиента, не должен занимать поток-носитель).
+ * Одновременно выполняется не больше {@code maxConcurrent} запросов; остальные ждут в очереди
+ * не дольше {@code queueTimeout}, после чего получают ответ 503 с заголовком {@code Retry-After}.
+ * Запросы, для которых в пуле нет свободного потока, получают ответ 503 в отдельном потоке
+ * отказов; если отказов накопилось больше {@value #MAX_OVERFLOW}, соединение закрывается без ответа.
+ * Поэтому число потоков не растет с числом медленных соединений. Соединение, не передавшее
+ * запрос целиком за {@value #DEFAULT_REQUEST_TIMEOUT_SECONDS} с (свойство {@code sun.net.httpserver.maxReqTime}),
+ * закрывается, освобождая разрешение или поток отказов. Тело запроса считывается в массив
+ * из {@link BufferPool}; несжатый BMP изменяется прямо в этом массиве через
+ * {@link BmpRaster#wrap(ByteBuffer, boolean)} и отправляется обратно без декодирования и
+ * кодирования; прочие изображения возвращаются 24-битным BMP без альфа-канала, поэтому схемы
+ * с каналом {@code a} требуют {@code format=png}. Встраиваемые данные считываются из тела запроса потоком;
+ * извлеченные собираются в массив из пула и отправляются с известной длиной только после проверки
+ * контрольной суммы. Ошибки возвращаются текстом с кодом 400 (некорректный запрос),
+ * 413 (тело или извлеченные данные слишком велики) или 422 (изображение не подходит или контейнер
+ * поврежден).
+ * </p>
+ */
+public final class StegoServer implements Closeable {
+
+    /** Порт по умолчанию. */
+    public static final int DEFAULT_PORT = 8080;
+    /** Время ожидания в очереди по умолчанию. */
+    public static final long DEFAULT_QUEUE_TIMEOUT_MILLIS = 1000;
+    /** Наибольший размер тела запроса по умолчанию. */
+    public static final long DEFAULT_MAX_BODY_BYTES = 256L << 20;
+    /** Наибольшее время приема запроса вместе с телом по умолчанию, в секундах. */
+    public static final long DEFAULT_REQUEST_TIMEOUT_SECONDS = 120;
+    /** Свойство {@link HttpServer}: наибольшее время приема запроса, в секундах. */
+    private static final String MAX_REQ_TIME = "sun.net.httpserver.maxReqTime";
+    /** Наибольшее число запросов, ожидающих ответа 503 в потоке отказов. */
+    static final int MAX_OVERFLOW = 64;
+    /** Наибольший размер буфера, возвращаемого в пул. */
+    private static final int MAX_POOLED_BUFFER = 256 << 20;
+    private static final Logger logger = LogManager.getLogger(StegoServer.class);
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    /** Поток отказов обрабатывает запрос, не вставая в очередь. */
+    private static final ThreadLocal<Boolean> OVERFLOW = ThreadLocal.withInitial(() -> false);
+
+    static {
+        // Соединение, не передавшее запрос целиком за это время, закрывается: клиент, остановившийся
+        // посреди загрузки, не удерживает разрешение, а поток, дочитывающий тело после ответа 503, —
+        // поток обработки. Значение читается HttpServer один раз.
+        if (System.getProperty(MAX_REQ_TIME) == null) {
+            System.setProperty(MAX_REQ_TIME, Long.toString(DEFAULT_REQUEST_TIMEOUT_SECONDS));
+        }
+    }
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    /** Поток отказов: отвечает 503 на запросы, не получившие потока пула. */
+    private final ThreadPoolExecutor overflow;
+    private final int maxConcurrent;
+    /** Разрешения на выполнение; справедливый семафор обслуживает очередь по порядку. */
+    private final Semaphore permits;
+    private final long queueTimeoutNanos;
+    private final long maxBodyBytes;
+    private final BufferPool pool;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Обработчик конечной точки.
+     */
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Создает сервер, в очереди которого может ждать столько же запросов, сколько выполняется.
+     * Прием запросов начинается после {@link #start()}.
+     *
+     * @param address            Адрес и порт (порт 0 — любой свободный).
+     * @param maxConcurrent      Наибольшее число одновременно выполняемых запросов.
+     * @param queueTimeoutMillis Наибольшее время ожидания запроса в очереди.
+     * @param maxBodyBytes       Наибольший размер тела запроса.
+     * @throws IOException Если порт не удалось занять.
+     */
+    public StegoServer(InetSocketAddress address, int maxConcurrent, long queueTimeoutMillis, long maxBodyBytes) throws IOException {
+        this(address, maxConcurrent, maxConcurrent, queueTimeoutMillis, maxBodyBytes);
+    }
+
+    /**
+     * Создает сервер. Прием запросов начинается после {@link #start()}.
+     *
+     * @param address            Адрес и порт (порт 0 — любой свободный).
+     * @param maxConcurrent      Наибольшее число одновременно выполняемых запросов.
+     * @param maxQueued          Наибольшее число запросов, ожидающих в очереди.
+     * @param queueTimeoutMillis Наибольшее время ожидания запроса в очереди.
+     * @param maxBodyBytes       Наибольший размер тела запроса.
+     * @throws IOException Если порт не удалось занять.
+     */
+    public StegoServer(InetSocketAddress address, int maxConcurrent, int maxQueued, long queueTimeoutMillis,
+                       long maxBodyBytes) throws IOException {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("Число одновременных запросов должно быть положительным");
+        }
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("Длина очереди не может быть отрицательной");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.maxBodyBytes = maxBodyBytes;
+        int pooled = (int) Math.min(maxBodyBytes, MAX_POOLED_BUFFER);
+        // Свободных буферов — примерно по одному самому большому на каждый одновременный запрос.
+        this.pool = new BufferPool(Math.min(Runtime.getRuntime().maxMemory() / 4, (long) maxConcurrent * pooled), pooled);
+        ThreadFactory threads = runnable -> {
+            Thread thread = new Thread(runnable, "lsb-http-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // Переполненный поток отказов бросает RejectedExecutionException, и HttpServer закрывает соединение.
+        this.overflow = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_OVERFLOW), threads);
+        overflow.allowCoreThreadTimeOut(true);
+        this.executor = new ThreadPoolExecutor(0, maxConcurrent + maxQueued, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), threads, (task, pool) -> overflow.execute(() -> {
+                    OVERFLOW.set(true);
+                    try {
+                        task.run();
+                    } finally {
+                        OVERFLOW.remove();
+                    }
+                }));
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/embed", exchange -> serve(exchange, "POST", this::embed));
+        server.createContext("/extract", exchange -> serve(exchange, "POST", this::extract));
+        server.createContext("/visualize", exchange -> serve(exchange, "POST", this::visualize));
+        server.createContext("/capacity", exchange -> serve(exchange, "POST", this::capacity));
+        server.createContext("/probe", exchange -> serve(exchange, "POST", this::probe));
+        server.createContext("/stats", this::stats);
+        server.createContext("/metrics", this::metrics);
+    }
+
+    /**
+     * Запускает сервер из командной строки:
+     * {@code serve [--host АДРЕС] [--port N] [--concurrency N] [--max-queued N] [--queue-timeout МС]
+     * [--request-timeout СЕК] [--max-body БАЙТОВ] [--metrics]}.
+     * Сервис не проверяет подлинность клиентов, поэтому по умолчанию принимает соединения только
+     * с локального адреса; {@code --host 0.0.0.0} открывает его для всех интерфейсов.
+     * Параметр {@code --request-timeout} ограничивает время приема запроса вместе с телом
+     * (по умолчанию {@value #DEFAULT_REQUEST_TIMEOUT_SECONDS} с).
+     * Параметр {@code --metrics} включает сбор метрик в {@link InMemoryMetrics} (см. {@code GET /metrics}).
+     *
+     * @param args Аргументы командной строки.
+     * @throws IOException Если порт не удалось занять.
+     */
+    public static void main(String[] args) throws IOException {
+        InetAddress host = InetAddress.getLoopbackAddress();
+        int port = DEFAULT_PORT;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        int maxQueued = -1;
+        long queueTimeout = DEFAULT_QUEUE_TIMEOUT_MILLIS;
+        long maxBody = DEFAULT_MAX_BODY_BYTES;
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--host": host = InetAddress.getByName(value); i++; break;
+                case "--port": port = Integer.parseInt(value); i++; break;
+                case "--concurrency": concurrency = Integer.parseInt(value); i++; break;
+                case "--max-queued": maxQueued = Integer.parseInt(value); i++; break;
+                case "--queue-timeout": queueTimeout = Long.parseLong(value); i++; break;
+                case "--request-timeout": System.setProperty(MAX_REQ_TIME, Long.toString(Long.parseLong(value))); i++; break;
+                case "--max-body": maxBody = Long.parseLong(value); i++; break;
+                case "--metrics": Metrics.setRegistry(new InMemoryMetrics()); break;
+                default: throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+            }
+        }
+        StegoServer server = new StegoServer(new InetSocketAddress(host, port), concurrency,
+                maxQueued < 0 ? concurrency : maxQueued, queueTimeout, maxBody);
+        server.start();
+        logger.info("Сервер запущен на {}:{} (одновременных запросов: {})", host.getHostAddress(), server.getPort(), concurrency);
+    }
+
+    /**
+     * Начинает прием запросов.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /** @return Порт, на котором принимаются запросы. */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** @return Пул буферов сервера. */
+    public BufferPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Останавливает сервер, не дожидаясь завершения выполняемых запросов.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        overflow.shutdown();
+    }
+
+    /**
+     * Проверяет метод, применяет ограничение числа одновременных запросов и преобразует
+     * исключения обработчика в ответы с кодом ошибки.
+     */
+    private void serve(HttpExchange exchange, String method, Handler handler) {
+        try {
+            if (!exchange.getRequestMethod().equals(method)) {
+                sendError(exchange, 405, "Метод не поддерживается: " + exchange.getRequestMethod());
+                return;
+            }
+            boolean admitted = false;
+            try {
+                admitted = !OVERFLOW.get() && permits.tryAcquire(queueTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!admitted) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "Сервер перегружен, повторите запрос позже");
+                return;
+            }
+            Metrics.gauge("server.queue", permits.getQueueLength());
+            Metrics.gauge("server.active", maxConcurrent - permits.availablePermits());
+            try {
+                handler.handle(exchange);
+                completed.incrementAndGet();
+            } finally {
+                permits.release();
+            }
+        } catch (HttpError e) {
+            failed.incrementAndGet();
+            sendError(exchange, e.status, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            failed.incrementAndGet();
+            sendError(exchange, 400, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            logger.debug("Ошибка обработки {}: {}", exchange.getRequestURI(), e.getMessage());
+            sendError(exchange, e instanceof IOException ? 422 : 500, String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void embed(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        EmbedOptions options = EmbedOptions.DEFAULT
+                .withLayout(BitLayout.parse(query.getOrDefault("layout", "b:1")))
+                .withTailFill(Boolean.parseBoolean(query.getOrDefault("tailFill", "true")) ? TailFill.RANDOM : TailFill.NONE)
+                .withCodec(Boolean.parseBoolean(query.get("compress")) ? PayloadCodecs.DEFLATE : null);
+        InputStream in = exchange.getRequestBody();
+        long contentLength = header(exchange, "Content-Length");
+        long imageLength;
+        long payloadLength;
+        ReadableByteChannel payload;
+        String text = query.get("text");
+        if (text != null) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            imageLength = contentLength;
+            payloadLength = bytes.length;
+            payload = Channels.newChannel(new ByteArrayInputStream(bytes));
+        } else {
+            imageLength = header(exchange, "X-Image-Length");
+            if (imageLength < 0) {
+                throw new HttpError(400, "Укажите параметр text или заголовок X-Image-Length");
+            }
+            long declared = header(exchange, "X-Payload-Length");
+            payloadLength = declared >= 0 ? declared : contentLength >= 0 ? contentLength - imageLength : -1;
+            if (payloadLength < 0) {
+                throw new HttpError(411, "Не удалось определить длину данных: укажите Content-Length или X-Payload-Length");
+            }
+            payload = Channels.newChannel(in); // Данные читаются из тела запроса по мере встраивания
+        }
+        if (payloadLength > Integer.MAX_VALUE) {
+            throw new HttpError(413, "Слишком большой объем данных: " + payloadLength);
+        }
+
+        boolean png = "png".equalsIgnoreCase(query.get("format"));
+        if (options.getLayout().usesAlpha() && !png) {
+            throw new IOException("Канал " + BitLayout.Channel.ALPHA + " не сохраняется в BMP");
+        }
+        PngEncoder encoder = png ? PngEncoder.withLevel(Integer.parseInt(query.getOrDefault("level",
+                Integer.toString(PngEncoder.DEFAULT_LEVEL)))) : null;
+        Body image = readBody(in, imageLength);
+        try {
+            BmpRaster bmp = image.bmpRaster(true);
+            LSBRaster raster = bmp != null ? bmp : LSBRaster.wrap(LSBRaster.trueColor(image.decode()));
+            embedInto(raster, options, payload, (int) payloadLength);
+            if (png) {
+                exchange.getResponseHeaders().set("Content-Type", "image/png");
+                exchange.sendResponseHeaders(200, 0);
+                encoder.write(raster, exchange.getResponseBody());
+            } else if (bmp != null) {
+                exchange.getResponseHeaders().set("Content-Type", "image/bmp");
+                exchange.sendResponseHeaders(200, image.length);
+                exchange.getResponseBody().write(image.data, 0, image.length);
+            } else {
+                writeBmp(exchange, raster);
+            }
+        } finally {
+            image.release();
+        }
+    }
+
+    /**
+     * Отправляет растр 24-битным BMP без альфа-канала. Длина ответа известна заранее,
+     * поэтому ошибка размера изображения еще передается кодом ответа.
+     */
+    private void writeBmp(HttpExchange exchange, LSBRaster raster) throws IOException {
+        int width = raster.getWidth();
+        int stride = (width * 3 + 3) & ~3;
+        long size = BmpRaster.WRITE_HEADER_SIZE + (long) stride * raster.getHeight();
+        if (size > 0xFFFFFFFFL) {
+            throw new IOException("Изображение слишком велико для BMP: " + width + "x" + raster.getHeight());
+        }
+        byte[] buffer = pool.acquire(Math.max(stride, BmpRaster.WRITE_HEADER_SIZE));
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "image/bmp");
+            exchange.sendResponseHeaders(200, size);
+            BmpRaster.write(raster, Channels.newChannel(exchange.getResponseBody()), buffer,
+                    new byte[][]{new byte[width], new byte[width], new byte[width]});
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Проверяет емкость и каналы и встраивает контейнер.
+     */
+    private static void embedInto(LSBRaster raster, EmbedOptions options, ReadableByteChannel payload, int length) throws IOException {
+        BitLayout layout = options.getLayout();
+        for (BitLayout.Channel channel : layout.getChannels()) {
+            if (!raster.hasChannel(channel)) {
+                throw new IOException("Изображение не содержит канал " + channel);
+            }
+        }
+        if (options.getCodec() == null
+                && PayloadHeader.SIZE * 8L + layout.pixelsFor(length * 8L) > raster.pixelCount()) {
+            throw new IOException("Изображение слишком мало для встраивания текста");
+        }
+        EmbedText.embedContainer(raster, options, payload, length);
+    }
+
+    private void extract(HttpExchange exchange) throws IOException {
+        Body image = readBody(exchange.getRequestBody(), header(exchange, "Content-Length"));
+        PayloadBuffer payload = new PayloadBuffer();
+        try {
+            // Контрольная сумма проверяется после последней порции, поэтому ответ отправляется
+            // только после извлечения: поврежденный контейнер еще передается кодом 422.
+            ExtractText.extractData(image.raster(), payload);
+            payload.send(exchange, "application/octet-stream");
+        } finally {
+            payload.release();
+            image.release();
+        }
+    }
+
+    private void visualize(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        BitLayout.Channel channel = BitLayout.Channel.parse(query.getOrDefault("channel", "b"));
+        int plane = Integer.parseInt(query.getOrDefault("plane", "0"));
+        BufferedImage visualization;
+        Body image = readBody(exchange.getRequestBody(), header(exchange, "Content-Length"));
+        try {
+            visualization = LSBVisualization.visualizeLSBBits(image.raster(), channel, plane);
+        } finally {
+            image.release();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "image/png");
+        exchange.sendResponseHeaders(200, 0);
+        if (!ImageIO.write(visualization, "png", exchange.getResponseBody())) {
+            throw new IOException("Не удалось закодировать изображение в PNG");
+        }
+    }
+
+    private void capacity(HttpExchange exchange) throws IOException {
+        BitLayout layout = BitLayout.parse(query(exchange).getOrDefault("layout", "b:1"));
+        ImageProbe probe = readProbe(exchange);
+        sendJson(exchange, String.format(Locale.ROOT, "{\"width\":%d,\"height\":%d,\"layout\":%s,\"capacityBytes\":%d}",
+                probe.getWidth(), probe.getHeight(), BatchCli.json(layout.toString()), probe.capacityBytes(layout)));
+    }
+
+    private void probe(HttpExchange exchange) throws IOException {
+        sendJson(exchange, readProbe(exchange).toJson());
+    }
+
+    /**
+     * Исследует изображение из тела запроса: размеры берутся из заголовка файла, пиксели не декодируются.
+     */
+    private ImageProbe readProbe(HttpExchange exchange) throws IOException {
+        Body image = readBody(exchange.getRequestBody(), header(exchange, "Content-Length"));
+        try {
+            return ImageProbe.probe(image.data, 0, image.length);
+        } finally {
+            image.release();
+        }
+    }
+
+    private void stats(HttpExchange exchange) {
+        try {
+            sendJson(exchange, String.format(Locale.ROOT,
+                    "{\"active\":%d,\"queued\":%d,\"completed\":%d,\"rejected\":%d,\"failed\":%d,"
+                            + "\"poolIdleBytes\":%d,\"poolHits\":%d,\"poolMisses\":%d}",
+                    maxConcurrent - permits.availablePermits(), permits.getQueueLength(), completed.get(),
+                    rejected.get(), failed.get(), pool.idleBytes(), pool.hits(), pool.misses()));
+        } catch (IOException e) {
+            logger.debug("Ошибка отправки статистики: {}", e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void metrics(HttpExchange exchange) {
+        try {
+            if (Metrics.getRegistry() instanceof InMemoryMetrics metrics) {
+                sendJson(exchange, metrics.snapshot().toJson());
+            } else {
+                sendError(exchange, 404, "Сбор метрик не включен (параметр --metrics)");
+            }
+        } catch (IOException e) {
+            logger.debug("Ошибка отправки метрик: {}", e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Считывает тело (или его начало) в массив из пула.
+     *
+     * @param in     Тело запроса.
+     * @param length Число байтов или -1, чтобы читать до конца.
+     */
+    private Body readBody(InputStream in, long length) throws IOException {
+        if (length > maxBodyBytes) {
+            throw new HttpError(413, "Тело запроса слишком велико: " + length);
+        }
+        if (length >= 0) {
+            byte[] data = pool.acquire((int) length);
+            int n = in.readNBytes(data, 0, (int) length);
+            if (n < length) {
+                pool.release(data);
+                throw new HttpError(400, "Тело запроса короче заявленного");
+            }
+            return new Body(data, n);
+        }
+        byte[] data = pool.acquire(BufferPool.MIN_SIZE);
+        int n = 0;
+        for (int r; (r = in.read(data, n, data.length - n)) >= 0; ) {
+            n += r;
+            if (n > maxBodyBytes) {
+                pool.release(data);
+                throw new HttpError(413, "Тело запроса слишком велико");
+            }
+            if (n == data.length) {
+                byte[] larger = pool.acquire((int) Math.min(Integer.MAX_VALUE - 8, 2L * n));
+                System.arraycopy(data, 0, larger, 0, n);
+                pool.release(data);
+                data = larger;
+            }
+        }
+        return new Body(data, n);
+    }
+
+    /**
+     * Тело запроса в массиве из пула.
+     */
+    private final class Body {
+        final byte[] data;
+        final int length;
+
+        Body(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        /**
+         * @return Растр над массивом для несжатого BMP или {@code null} для прочих форматов.
+         */
+        BmpRaster bmpRaster(boolean writable) throws IOException {
+            ByteBuffer file = ByteBuffer.wrap(data, 0, length);
+            BmpHeader header = BmpHeader.parse(file);
+            return header != null && header.isDirectAccessSupported() ? BmpRaster.wrap(file, writable) : null;
+        }
+
+        BufferedImage decode() throws IOException {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(data, 0, length));
+            if (image == null) {
+                throw new IOException("Не удалось загрузить изображение");
+            }
+            return image;
+        }
+
+        /** @return Растр для чтения: BMP без декодирования, прочие форматы — через {@link ImageIO}. */
+        LSBRaster raster() throws IOException {
+            BmpRaster bmp = bmpRaster(false);
+            return bmp != null ? bmp : LSBRaster.wrap(decode());
+        }
+
+        void release() {
+            pool.release(data);
+        }
+    }
+
+    /**
+     * Извлеченные данные в массиве из пула. Массив растет вдвое по мере записи;
+     * объем ограничен наибольшим размером тела запроса.
+     */
+    private final class PayloadBuffer implements WritableByteChannel {
+        private byte[] data = pool.acquire(BufferPool.MIN_SIZE);
+        private int length;
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int n = src.remaining();
+            if ((long) length + n > maxBodyBytes) {
+                throw new HttpError(413, "Извлеченные данные слишком велики");
+            }
+            if (length + n > data.length) {
+                byte[] larger = pool.acquire((int) Math.min(Integer.MAX_VALUE - 8, Math.max(2L * data.length, length + n)));
+                System.arraycopy(data, 0, larger, 0, length);
+                pool.release(data);
+                data = larger;
+            }
+            src.get(data, length, n);
+            length += n;
+            return n;
+        }
+
+        /** Отправляет данные ответом с известной длиной. */
+        void send(HttpExchange exchange, String contentType) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, length == 0 ? -1 : length);
+            exchange.getResponseBody().write(data, 0, length);
+        }
+
+        void release() {
+            pool.release(data);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Ошибка запроса с кодом ответа HTTP.
+     */
+    private static final class HttpError extends IOException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Отправляет текст ошибки, если ответ еще не начат; иначе соединение будет разорвано при закрытии.
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        if (exchange.getResponseCode() != -1) {
+            return;
+        }
+        try {
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        } catch (IOException e) {
+            logger.debug("Ошибка отправки ответа: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Значение числового заголовка или -1, если заголовок отсутствует.
+     */
+    private static long header(HttpExchange exchange, String name) throws HttpError {
+        String value = exchange.getRequestHeaders().getFirst(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "Некорректное значение заголовка " + name + ": " + value);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+}
@@ -0,0 +1,895 @@
+package com.lsb;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.random.RandomGenerator;
+import java.util.zip.CRC32;
+
+/**
+ * Встраивание, извлечение и визуализация для изображений, не помещающихся в память целиком.
+ * <p>
+ * Изображение читается полосами примерно по {@link #getBandBytes()} байтов пикселей: PNG — через
+ * {@link PngRowReader}, BMP — через отображение файла ({@link BmpRaster}), прочие форматы — через
+ * {@link ImageReader} с {@link ImageReadParam#setSourceRegion(Rectangle)}. Каждая полоса
+ * обрабатывается как растр ({@link LSBRaster}) и сразу записывается в результат: PNG — через
+ * {@link PngEncoder#writer(java.io.OutputStream, int, int, int)}, BMP — позиционной записью строк.
+ * Пиксели группы, которая не поместилась в полосу целиком, остаются в памяти до следующей
+ * полосы, поэтому формат контейнера тот же, что у {@link EmbedText} и {@link ExtractText}.
+ * Памяти требуется порядка размера полосы независимо от размеров изображения; чем больше
+ * полоса, тем меньше обращений к чтению и записи.
+ * </p>
+ * <p>
+ * Заголовок контейнера записывается в первые пиксели, поэтому длина и контрольная сумма
+ * должны быть известны до записи первой полосы: несжатые данные из файла проверяются
+ * отдельным проходом, остальные предварительно записываются во временный файл
+ * (при необходимости сжатыми). Рассеивание ключом ({@link PixelPermutation}) требует
+ * произвольного доступа к пикселям и при потоковой обработке не поддерживается.
+ * Шум хвоста ({@link TailFill}) создается одним генератором по ходу записи, поэтому
+ * при фиксированном начальном значении он отличается от шума {@link EmbedText}.
+ * </p>
+ */
+public final class StripPipeline {
+
+    /** Размер полосы по умолчанию. */
+    public static final long DEFAULT_BAND_BYTES = 16L << 20;
+    /** Наибольшая длина массива. */
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+    /**
+     * Пиксели, которые могут понадобиться следующей полосе: группа схемы занимает не больше
+     * 8 пикселей, а заголовок версии 1 короче текущего на один байт (8 пикселей).
+     */
+    private static final int CARRY_PIXELS = 16;
+
+    /** Экземпляр с размером полосы по умолчанию. */
+    private static final StripPipeline COMMON = new StripPipeline(DEFAULT_BAND_BYTES);
+
+    private final long bandBytes;
+
+    /**
+     * Создает конвейер.
+     *
+     * @param bandBytes Примерный объем пикселей одной полосы в байтах; полоса содержит не меньше одной строки.
+     */
+    public StripPipeline(long bandBytes) {
+        if (bandBytes <= 0) {
+            throw new IllegalArgumentException("Размер полосы должен быть положительным: " + bandBytes);
+        }
+        this.bandBytes = bandBytes;
+    }
+
+    /** @return Конвейер с размером полосы {@value #DEFAULT_BAND_BYTES} байтов. */
+    public static StripPipeline common() {
+        return COMMON;
+    }
+
+    /** @return Примерный объем пикселей одной полосы в байтах. */
+    public long getBandBytes() {
+        return bandBytes;
+    }
+
+    /**
+     * Встраивает данные в формате контейнера (см. {@link EmbedText#embedData(String, ReadableByteChannel, long, String, EmbedOptions)}).
+     *
+     * @param source  Исходное изображение.
+     * @param payload Источник данных; считывается ровно {@code length} байтов, не закрывается.
+     * @param length  Число байтов для встраивания.
+     * @param target  Результат (PNG при расширении {@code .png}, иначе BMP); должен отличаться от {@code source}.
+     * @param options Параметры встраивания; ключ не поддерживается.
+     * @throws IOException Если произошла ошибка чтения или записи, если источник короче {@code length},
+     *                     если изображение слишком мало или не содержит каналов схемы.
+     */
+    public void embed(Path source, ReadableByteChannel payload, long length, Path target, EmbedOptions options) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Недопустимая длина встраиваемых данных: " + length);
+        }
+        if (options.getKey() != null) {
+            throw new IOException("Рассеивание ключом не поддерживается при потоковой обработке");
+        }
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            throw new IOException("Результат потоковой обработки должен записываться в другой файл");
+        }
+        BitLayout layout = options.getLayout();
+        boolean png = PngEncoder.isPng(target);
+        if (layout.usesAlpha() && !png) {
+            throw new IOException("Канал " + BitLayout.Channel.ALPHA + " не сохраняется в BMP");
+        }
+        try (Source image = Source.open(source); Staged staged = stage(payload, length, options)) {
+            checkChannels(image, layout);
+            long pixelsNeeded = PayloadHeader.SIZE * 8L + layout.pixelsFor(staged.length * 8);
+            if (pixelsNeeded > image.pixelCount()) {
+                throw new IOException("Изображение слишком мало для встраивания текста");
+            }
+            PayloadHeader header = new PayloadHeader(PayloadHeader.VERSION, staged.flags, layout,
+                    (int) staged.length, staged.checksum);
+            EmbedStage stage = new EmbedStage(header.toBytes(), layout, staged, options.getTailFill().generator());
+            boolean done = false;
+            try (Sink sink = png
+                    ? new PngSink(target, PngEncoder.withLevel(options.getPngLevel()), image.width, image.height, image.channels)
+                    : new BmpSink(target, image.width, image.height, image.channels)) {
+                run(image, sink, stage);
+                sink.finish();
+                done = true;
+            } finally {
+                if (!done) {
+                    Files.deleteIfExists(target); // Не оставляем наполовину записанный файл
+                }
+            }
+        }
+    }
+
+    /**
+     * Извлекает данные контейнера (см. {@link ExtractText#extractData(String, WritableByteChannel)}).
+     * Чтение изображения прекращается, как только извлечена вся полезная нагрузка.
+     *
+     * @param source Изображение с контейнером (без ключа).
+     * @param out    Приемник данных; не закрывается.
+     * @return Число байтов, записанных в {@code out} (после распаковки).
+     * @throws IOException Если произошла ошибка чтения или записи, если заголовок
+     *                     не найден или если длина и контрольная сумма не совпадают.
+     */
+    public long extract(Path source, WritableByteChannel out) throws IOException {
+        try (Source image = Source.open(source)) {
+            ExtractStage stage = new ExtractStage(image, out);
+            run(image, null, stage);
+            return stage.finish();
+        }
+    }
+
+    /**
+     * Сохраняет визуализацию битовой плоскости канала в PNG в оттенках серого
+     * (см. {@link LSBVisualization#visualizeLSBBits(LSBRaster, BitLayout.Channel, int)}).
+     *
+     * @param source  Исходное изображение.
+     * @param channel Канал.
+     * @param plane   Номер бита (0 — младший, не больше 7).
+     * @param target  Файл PNG.
+     * @throws IOException Если произошла ошибка чтения или записи.
+     * @throws IllegalArgumentException Если изображение не содержит канал или номер бита вне диапазона.
+     */
+    public void visualize(Path source, BitLayout.Channel channel, int plane, Path target) throws IOException {
+        if (plane < 0 || plane > 7) {
+            throw new IllegalArgumentException("Номер бита должен быть от 0 до 7");
+        }
+        try (Source image = Source.open(source)) {
+            if (channel.ordinal() >= image.channels) {
+                throw new IllegalArgumentException("Изображение не содержит канал " + channel);
+            }
+            byte[][] gray = new byte[1][];
+            boolean done = false;
+            try (PngSink png = new PngSink(target, PngEncoder.common(), image.width, image.height, 1)) {
+                Sink sink = new Sink() {
+                    @Override
+                    void write(byte[] src, int rows) throws IOException {
+                        LSBRaster band = LSBRaster.packed(src, image.width, rows, image.channels);
+                        if (gray[0] == null || gray[0].length < rows * image.width) {
+                            gray[0] = new byte[rows * image.width];
+                        }
+                        for (int y = 0; y < rows; y++) {
+                            band.visualizeRow(y, gray[0], y * image.width, channel, plane);
+                        }
+                        png.write(gray[0], rows);
+                    }
+
+                    @Override
+                    void finish() throws IOException {
+                        png.finish();
+                    }
+                };
+                run(image, sink, (window, firstPixel) -> Long.MAX_VALUE);
+                sink.finish();
+                done = true;
+            } finally {
+                if (!done) {
+                    Files.deleteIfExists(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Читает изображение полосами и передает каждую обработчику, а готовые строки — приемнику.
+     * Строки, начиная с возвращенного обработчиком пикселя, переносятся в начало следующей полосы.
+     *
+     * @param image Источник строк.
+     * @param sink  Приемник строк или {@code null}.
+     * @param stage Обработчик полос.
+     */
+    private void run(Source image, Sink sink, Stage stage) throws IOException {
+        int width = image.width;
+        int height = image.height;
+        int rowBytes = width * image.channels;
+        int carry = Math.min(height, (CARRY_PIXELS + width - 1) / width);
+        int bandRows = (int) Math.max(1, Math.min(bandBytes / rowBytes, MAX_ARRAY / rowBytes - carry));
+        bandRows = Math.min(bandRows, height);
+        byte[] data = new byte[(bandRows + carry) * rowBytes];
+        int first = 0;
+        int rows = 0;
+        int read = 0;
+        while (read < height && !stage.isComplete()) {
+            int n = Math.min(bandRows + carry - rows, height - read);
+            image.read(data, rows * rowBytes, n);
+            rows += n;
+            read += n;
+            long frontier = stage.process(LSBRaster.packed(data, width, rows, image.channels), (long) first * width);
+            int done = read == height ? rows : (int) Math.min(rows, frontier / width - first);
+            if (rows - done > carry) {
+                throw new IllegalStateException("Полоса не обработана: строк осталось " + (rows - done));
+            }
+            if (sink != null) {
+                sink.write(data, done);
+            }
+            System.arraycopy(data, done * rowBytes, data, 0, (rows - done) * rowBytes);
+            first += done;
+            rows -= done;
+        }
+    }
+
+    /**
+     * Проверяет, что изображение содержит каналы схемы.
+     */
+    private static void checkChannels(Source image, BitLayout layout) throws IOException {
+        for (BitLayout.Channel channel : layout.getChannels()) {
+            if (channel.ordinal() >= image.channels) {
+                throw new IOException("Изображение не содержит канал " + channel);
+            }
+        }
+    }
+
+    /**
+     * Подготавливает полезную нагрузку так, чтобы ее длина и контрольная сумма были известны
+     * до встраивания: несжатые данные из файла проверяются отдельным проходом, остальные
+     * записываются во временный файл, который удаляется при закрытии.
+     */
+    private static Staged stage(ReadableByteChannel payload, long length, EmbedOptions options) throws IOException {
+        PayloadCodec codec = options.getCodec();
+        byte[] buffer = new byte[EmbedText.PROBE_BYTES];
+        if (codec == null && payload instanceof FileChannel file) {
+            long position = file.position();
+            CRC32 crc = new CRC32();
+            InputStream in = Channels.newInputStream(file);
+            for (long left = length; left > 0; ) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                if (n < 0) {
+                    throw new EOFException("Данные закончились раньше заявленной длины " + length);
+                }
+                crc.update(buffer, 0, n);
+                left -= n;
+            }
+            file.position(position);
+            return new Staged(file, null, 0, length, (int) crc.getValue());
+        }
+
+        Path temp = Files.createTempFile("lsb-strip", ".payload");
+        FileChannel spool = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        try {
+            CRC32 crc = new CRC32();
+            long[] count = new long[1];
+            // Считает байты, попавшие во временный файл; закрытие не закрывает канал.
+            OutputStream counted = new FilterOutputStream(new BufferedOutputStream(Channels.newOutputStream(spool), 1 << 16)) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    crc.update(b);
+                    count[0]++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    crc.update(b, off, len);
+                    count[0] += len;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            InputStream in = Channels.newInputStream(payload);
+            int probe = in.readNBytes(buffer, 0, (int) Math.min(length, buffer.length));
+            if (probe < Math.min(length, buffer.length)) {
+                throw new EOFException("Данные закончились раньше заявленной длины " + length);
+            }
+            int flags = 0;
+            long copied = probe;
+            if (codec != null && probe > 0 && EmbedText.compresses(codec, buffer, probe)) {
+                flags = codec.id();
+                try (OutputStream encoder = codec.encoder(counted)) {
+                    encoder.write(buffer, 0, probe);
+                    copied += EmbedText.copy(in, encoder, length - copied, buffer);
+                }
+            } else {
+                counted.write(buffer, 0, probe);
+                copied += EmbedText.copy(in, counted, length - copied, buffer);
+                counted.close();
+            }
+            if (copied < length) {
+                throw new EOFException("Данные закончились раньше заявленной длины " + length);
+            }
+            if (count[0] > Integer.MAX_VALUE) {
+                throw new IOException("Недопустимая длина встраиваемых данных: " + count[0]);
+            }
+            spool.position(0);
+            return new Staged(spool, spool, flags, count[0], (int) crc.getValue());
+        } catch (IOException | RuntimeException e) {
+            spool.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Полезная нагрузка, подготовленная к встраиванию.
+     */
+    private static final class Staged implements Closeable {
+        /** Источник ровно {@link #length} байтов. */
+        final ReadableByteChannel channel;
+        /** Временный файл, закрываемый вместе с нагрузкой, или {@code null}. */
+        final FileChannel spool;
+        /** Флаги заголовка (метод сжатия). */
+        final int flags;
+        final long length;
+        final int checksum;
+
+        Staged(ReadableByteChannel channel, FileChannel spool, int flags, long length, int checksum) {
+            this.channel = channel;
+            this.spool = spool;
+            this.flags = flags;
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spool != null) {
+                spool.close();
+            }
+        }
+    }
+
+    /**
+     * Обработчик полосы.
+     */
+    private interface Stage {
+        /**
+         * Обрабатывает полосу.
+         *
+         * @param window     Растр полосы.
+         * @param firstPixel Индекс первого пикселя полосы в изображении.
+         * @return Индекс первого пикселя, который понадобится при обработке следующей полосы.
+         */
+        long process(LSBRaster window, long firstPixel) throws IOException;
+
+        /** @return {@code true}, если оставшиеся строки изображения не нужны. */
+        default boolean isComplete() {
+            return false;
+        }
+    }
+
+    /**
+     * Наименьшее число байтов, занимающее целое число пикселей схемы: такие группы
+     * встраиваются и извлекаются независимо (для 6 битов на пиксель — 3 байта в 4 пикселях).
+     */
+    private static int groupBytes(BitLayout layout) {
+        int bitsPerPixel = layout.bitsPerPixel();
+        // НОД(bitsPerPixel, 8) — наибольшая степень двойки, делящая bitsPerPixel, но не больше 8.
+        return bitsPerPixel / Math.min(Integer.lowestOneBit(bitsPerPixel), 8);
+    }
+
+    /**
+     * Встраивает заголовок и полезную нагрузку целыми группами по мере поступления полос
+     * и заполняет шумом хвост.
+     */
+    private static final class EmbedStage implements Stage {
+        private final byte[] header;
+        private final BitLayout layout;
+        private final Staged payload;
+        private final RandomGenerator random;
+        private final int group;
+        private byte[] chunk;
+        private byte[][] values;
+        /** Следующий пиксель для записи. */
+        private long pixel;
+        /** Записано байтов заголовка. */
+        private int headerDone;
+        /** Осталось байтов полезной нагрузки. */
+        private long remaining;
+        /** Хвост заполнен до этого пикселя. */
+        private long filled;
+
+        EmbedStage(byte[] header, BitLayout layout, Staged payload, RandomGenerator random) {
+            this.header = header;
+            this.layout = layout;
+            this.payload = payload;
+            this.random = random;
+            this.group = groupBytes(layout);
+            this.remaining = payload.length;
+        }
+
+        @Override
+        public long process(LSBRaster window, long firstPixel) throws IOException {
+            long end = firstPixel + window.pixelCount();
+            if (values == null) {
+                values = new byte[Math.max(layout.channelCount(), 1)][window.getWidth()];
+                long fit = window.pixelCount() * layout.bitsPerPixel() / 8 / group * group;
+                chunk = new byte[(int) Math.max(group, Math.min(ParallelLSB.chunkBytes(layout), fit))];
+            }
+            if (headerDone < header.length) {
+                int n = (int) Math.min(header.length - headerDone, (end - pixel) / 8);
+                window.embedBytes(BitLayout.DEFAULT, pixel - firstPixel, header, headerDone, n, values);
+                headerDone += n;
+                pixel += n * 8L;
+                if (headerDone < header.length) {
+                    return pixel;
+                }
+            }
+            while (remaining > 0) {
+                long available = end - pixel;
+                int n;
+                if (layout.pixelsFor(remaining * 8) <= available) {
+                    n = (int) Math.min(remaining, chunk.length);
+                } else {
+                    n = (int) Math.min(available * layout.bitsPerPixel() / 8 / group * group, chunk.length);
+                }
+                if (n == 0) {
+                    return pixel;
+                }
+                readFully(payload.channel, chunk, n);
+                ParallelLSB.common().embedBytes(window, layout, pixel - firstPixel, chunk, 0, n);
+                pixel += layout.pixelsFor(n * 8L);
+                remaining -= n;
+            }
+            if (random != null) {
+                long from = Math.max(pixel, filled);
+                window.fillRandom(layout, from - firstPixel, end - firstPixel, random, values);
+                filled = end;
+            }
+            return end;
+        }
+
+        private static void readFully(ReadableByteChannel channel, byte[] dst, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(dst, 0, len);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Данные закончились раньше заявленной длины");
+                }
+            }
+        }
+    }
+
+    /**
+     * Считывает заголовок, затем полезную нагрузку целыми группами по мере поступления полос.
+     */
+    private static final class ExtractStage implements Stage {
+        /** Пиксели, после которых может начинаться полезная нагрузка (заголовок версии 1). */
+        private static final long MIN_START = (PayloadHeader.SIZE - 1) * 8L;
+
+        private final Source image;
+        private final byte[] head = new byte[PayloadHeader.SIZE];
+        private final CRC32 crc = new CRC32();
+        private final long[] written = new long[1];
+        private final OutputStream counted;
+        private PayloadHeader header;
+        private BitLayout layout;
+        private int group;
+        private OutputStream sink;
+        private byte[] chunk;
+        private byte[][] values;
+        private long pixel;
+        private int headerDone;
+        private long remaining;
+
+        ExtractStage(Source image, WritableByteChannel target) {
+            this.image = image;
+            // Подсчитывает байты, записанные в target (поле out — поток над ним); закрытие не закрывает канал.
+            this.counted = new FilterOutputStream(Channels.newOutputStream(target)) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    written[0]++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    written[0] += len;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+
+        @Override
+        public long process(LSBRaster window, long firstPixel) throws IOException {
+            long end = firstPixel + window.pixelCount();
+            if (values == null) {
+                values = new byte[BitLayout.DEFAULT.channelCount()][window.getWidth()];
+            }
+            if (header == null) {
+                int n = (int) Math.min(head.length - headerDone, (end - pixel) / 8);
+                window.extractBytes(BitLayout.DEFAULT, pixel - firstPixel, head, headerDone, n, values);
+                headerDone += n;
+                pixel += n * 8L;
+                if (headerDone < head.length) {
+                    return Math.min(pixel, MIN_START);
+                }
+                start(window);
+            }
+            while (remaining > 0) {
+                long available = end - pixel;
+                int n;
+                if (layout.pixelsFor(remaining * 8) <= available) {
+                    n = (int) Math.min(remaining, chunk.length);
+                } else {
+                    n = (int) Math.min(available * layout.bitsPerPixel() / 8 / group * group, chunk.length);
+                }
+                if (n == 0) {
+                    return pixel;
+                }
+                ParallelLSB.common().extractBytes(window, layout, pixel - firstPixel, chunk, 0, n);
+                crc.update(chunk, 0, n);
+                sink.write(chunk, 0, n);
+                pixel += layout.pixelsFor(n * 8L);
+                remaining -= n;
+            }
+            return end;
+        }
+
+        /**
+         * Разбирает заголовок и готовит чтение полезной нагрузки.
+         */
+        private void start(LSBRaster window) throws IOException {
+            header = PayloadHeader.parse(head);
+            layout = header.getLayout();
+            pixel = header.payloadStartPixel();
+            if ((long) header.getLength() * 8 > Math.max(0, image.pixelCount() - pixel) * layout.bitsPerPixel()) {
+                throw new IOException("Длина встроенных данных превышает емкость изображения");
+            }
+            checkChannels(image, layout);
+            group = groupBytes(layout);
+            remaining = header.getLength();
+            long fit = window.pixelCount() * layout.bitsPerPixel() / 8 / group * group;
+            chunk = new byte[(int) Math.max(group, Math.min(ParallelLSB.chunkBytes(layout), fit))];
+            PayloadCodec codec = header.getCodecId() == 0 ? null : PayloadCodecs.forId(header.getCodecId());
+            sink = codec == null ? counted : codec.decoder(counted);
+        }
+
+        @Override
+        public boolean isComplete() {
+            return header != null && remaining == 0;
+        }
+
+        /**
+         * Проверяет целостность и завершает распаковку.
+         *
+         * @return Число байтов, записанных в приемник.
+         */
+        long finish() throws IOException {
+            if (header == null) {
+                throw new IOException("Заголовок встроенных данных не найден");
+            }
+            header.verify(header.getLength() - remaining, (int) crc.getValue());
+            // Закрытие декодера завершает распаковку и проверяет целостность сжатого потока.
+            sink.close();
+            return written[0];
+        }
+    }
+
+    /**
+     * Источник упакованных строк изображения с компонентами в порядке R, G, B[, A].
+     */
+    private abstract static class Source implements Closeable {
+        /** Порядок компонент упакованного пикселя. */
+        private static final BitLayout.Channel[] ORDER = BitLayout.Channel.values();
+
+        final int width;
+        final int height;
+        /** Число компонент пикселя: 3 или 4. */
+        final int channels;
+
+        Source(int width, int height, int channels) {
+            this.width = width;
+            this.height = height;
+            this.channels = channels;
+        }
+
+        /**
+         * Открывает изображение, выбирая способ чтения по формату файла.
+         */
+        static Source open(Path path) throws IOException {
+            BmpHeader bmp = BmpHeader.read(path);
+            if (bmp != null && bmp.isDirectAccessSupported()) {
+                return new RasterSource(BmpRaster.open(path, false));
+            }
+            PngHeader png = PngHeader.read(path);
+            if (png != null && png.isStreamingSupported()) {
+                return new PngSource(PngRowReader.open(path));
+            }
+            return RegionSource.open(path);
+        }
+
+        long pixelCount() {
+            return (long) width * height;
+        }
+
+        /**
+         * Считывает следующие строки.
+         *
+         * @param dst  Приемник упакованных строк.
+         * @param off  Смещение в {@code dst}.
+         * @param rows Число строк.
+         */
+        abstract void read(byte[] dst, int off, int rows) throws IOException;
+
+        /**
+         * Упаковывает строки растра.
+         */
+        void pack(LSBRaster raster, int fromRow, int rows, byte[] channel, byte[] dst, int off) {
+            for (int y = 0; y < rows; y++, off += width * channels) {
+                for (int c = 0; c < channels; c++) {
+                    if (raster.hasChannel(ORDER[c])) {
+                        raster.readLSB(fromRow + y, 0, width, ORDER[c], 0xFF, channel, 0);
+                    } else {
+                        Arrays.fill(channel, 0, width, (byte) 0xFF); // Непрозрачный пиксель
+                    }
+                    for (int x = 0, p = off + c; x < width; x++, p += channels) {
+                        dst[p] = channel[x];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Строки PNG, распаковываемые по мере чтения.
+     */
+    private static final class PngSource extends Source {
+        private final PngRowReader reader;
+
+        PngSource(PngRowReader reader) {
+            super(reader.getHeader().getWidth(), reader.getHeader().getHeight(), reader.getHeader().getChannels());
+            this.reader = reader;
+        }
+
+        @Override
+        void read(byte[] dst, int off, int rows) throws IOException {
+            reader.readRows(dst, off, rows);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Строки растра с произвольным доступом, например BMP, отображенного в память.
+     */
+    private static final class RasterSource extends Source {
+        private final LSBRaster raster;
+        private final byte[] channel;
+        private int next;
+
+        RasterSource(LSBRaster raster) {
+            super(raster.getWidth(), raster.getHeight(), raster.hasChannel(BitLayout.Channel.ALPHA) ? 4 : 3);
+            this.raster = raster;
+            this.channel = new byte[raster.getWidth()];
+        }
+
+        @Override
+        void read(byte[] dst, int off, int rows) {
+            pack(raster, next, rows, channel, dst, off);
+            next += rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            raster.close();
+        }
+    }
+
+    /**
+     * Полосы, декодируемые {@link ImageReader} по областям.
+     */
+    private static final class RegionSource extends Source {
+        private final ImageInputStream in;
+        private final ImageReader reader;
+        private final byte[] channel;
+        private int next;
+
+        private RegionSource(ImageInputStream in, ImageReader reader, int width, int height, int channels) {
+            super(width, height, channels);
+            this.in = in;
+            this.reader = reader;
+            this.channel = new byte[width];
+        }
+
+        static RegionSource open(Path path) throws IOException {
+            ImageInputStream in = ImageIO.createImageInputStream(path.toFile());
+            if (in == null) {
+                throw new IOException("Не удалось загрузить изображение");
+            }
+            try {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+                if (!readers.hasNext()) {
+                    throw new IOException("Не удалось загрузить изображение");
+                }
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(in, false, true);
+                    Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+                    boolean alpha = types.hasNext() && types.next().getColorModel().hasAlpha();
+                    return new RegionSource(in, reader, reader.getWidth(0), reader.getHeight(0), alpha ? 4 : 3);
+                } catch (IOException | RuntimeException e) {
+                    reader.dispose();
+                    throw e;
+                }
+            } catch (IOException | RuntimeException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        @Override
+        void read(byte[] dst, int off, int rows) throws IOException {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, next, width, rows));
+            BufferedImage band = reader.read(0, param);
+            pack(LSBRaster.wrap(band), 0, rows, channel, dst, off);
+            next += rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.dispose();
+            in.close();
+        }
+    }
+
+    /**
+     * Приемник готовых строк.
+     */
+    private abstract static class Sink implements Closeable {
+        /**
+         * Записывает следующие строки из начала массива.
+         *
+         * @param src  Упакованные строки.
+         * @param rows Число строк.
+         */
+        abstract void write(byte[] src, int rows) throws IOException;
+
+        /** Завершает файл после записи всех строк. */
+        abstract void finish() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    /**
+     * Запись PNG блоками по мере поступления строк.
+     */
+    private static final class PngSink extends Sink {
+        private final OutputStream out;
+        private final PngEncoder.Writer writer;
+
+        PngSink(Path target, PngEncoder encoder, int width, int height, int channels) throws IOException {
+            this.out = new BufferedOutputStream(Files.newOutputStream(target), 1 << 16);
+            try {
+                this.writer = encoder.writer(out, width, height, channels);
+            } catch (IOException | RuntimeException e) {
+                out.close();
+                throw e;
+            }
+        }
+
+        @Override
+        void write(byte[] src, int rows) throws IOException {
+            writer.writeRows(src, 0, rows);
+        }
+
+        @Override
+        void finish() throws IOException {
+            writer.finish();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+            out.close();
+        }
+    }
+
+    /**
+     * Запись 24-битного BMP: строки хранятся снизу вверх, поэтому каждая полоса
+     * записывается одним обращением по своему смещению в файле. Альфа-канал не записывается.
+     */
+    private static final class BmpSink extends Sink {
+        private final FileChannel file;
+        private final int width;
+        private final int height;
+        private final int channels;
+        /** Длина строки файла с выравниванием. */
+        private final int stride;
+        private ByteBuffer band;
+        private int next;
+
+        BmpSink(Path target, int width, int height, int channels) throws IOException {
+            this.width = width;
+            this.height = height;
+            this.channels = channels;
+            ByteBuffer head = ByteBuffer.allocate(BmpRaster.WRITE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            this.stride = BmpRaster.putHeader(head, width, height);
+            this.file = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                file.write(head.flip(), 0);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        @Override
+        void write(byte[] src, int rows) throws IOException {
+            if (band == null || band.capacity() < rows * stride) {
+                band = ByteBuffer.allocate(rows * stride);
+            }
+            byte[] buffer = band.array();
+            // Последняя строка полосы идет в файле первой.
+            for (int r = 0; r < rows; r++) {
+                int p = (rows - 1 - r) * stride;
+                for (int x = 0, s = r * width * channels; x < width; x++, s += channels, p += 3) {
+                    buffer[p] = src[s + 2];
+                    buffer[p + 1] = src[s + 1];
+                    buffer[p + 2] = src[s];
+                }
+                Arrays.fill(buffer, p, (rows - r) * stride, (byte) 0); // Выравнивание строки до 4 байтов
+            }
+            band.clear().limit(rows * stride);
+            long position = BmpRaster.WRITE_HEADER_SIZE + (long) (height - next - rows) * stride;
+            while (band.hasRemaining()) {
+                position += file.write(band, position);
+            }
+            next += rows;
+        }
+
+        @Override
+        void finish() throws IOException {
+            if (next != height) {
+                throw new IOException("Записано " + next + " строк BMP из " + height);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.lsb;
+
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+/**
+ * Способ заполнения младших битов, оставшихся после полезной нагрузки.
+ * <p>
+ * Шум маскирует границу встроенных данных. Биты берутся по 64 за одно обращение
+ * к генератору; хвост делится на полосы, и каждая полоса получает собственный
+ * генератор через {@link RandomGenerator.SplittableGenerator#split()}, поэтому
+ * результат не зависит от того, выполняется ли заполнение параллельно.
+ * Для каждой операции создается новый генератор, так что один экземпляр
+ * можно безопасно использовать из разных потоков.
+ * </p>
+ */
+public final class TailFill {
+
+    /** Хвост не изменяется. */
+    public static final TailFill NONE = new TailFill(null);
+    /** Хвост заполняется шумом {@link SplittableRandom} с непредсказуемым начальным значением. */
+    public static final TailFill RANDOM = new TailFill(SplittableRandom::new);
+
+    /** Фабрика генераторов; {@code null} для {@link #NONE}. */
+    private final Supplier<? extends RandomGenerator.SplittableGenerator> factory;
+
+    private TailFill(Supplier<? extends RandomGenerator.SplittableGenerator> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Создает заполнение с фиксированным начальным значением (воспроизводимый результат, например в тестах).
+     *
+     * @param seed Начальное значение генератора.
+     * @return Способ заполнения.
+     */
+    public static TailFill seeded(long seed) {
+        return new TailFill(() -> new SplittableRandom(seed));
+    }
+
+    /**
+     * Создает заполнение с произвольным генератором.
+     *
+     * @param factory Фабрика, вызываемая один раз на операцию встраивания.
+     * @return Способ заполнения.
+     */
+    public static TailFill of(Supplier<? extends RandomGenerator.SplittableGenerator> factory) {
+        return new TailFill(factory);
+    }
+
+    /** @return {@code true}, если хвост заполняется шумом. */
+    public boolean isEnabled() {
+        return factory != null;
+    }
+
+    /**
+     * Создает генератор для одной операции, заполняющей хвост по частям (см. {@link StripPipeline}).
+     *
+     * @return Новый генератор или {@code null} для {@link #NONE}.
+     */
+    RandomGenerator.SplittableGenerator generator() {
+        return factory == null ? null : factory.get();
+    }
+
+    /**
+     * Заполняет шумом биты схемы от {@code startPixel} до конца изображения.
+     *
+     * @param parallel   Исполнитель.
+     * @param raster     Растр.
+     * @param layout     Схема размещения битов.
+     * @param startPixel Индекс первого пикселя хвоста.
+     */
+    void apply(ParallelLSB parallel, LSBRaster raster, BitLayout layout, long startPixel) {
+        apply(parallel, raster, layout, startPixel, null);
+    }
+
+    /**
+     * Заполняет шумом биты схемы от {@code startPixel} до конца изображения,
+     * используя буферы строки при последовательном выполнении.
+     *
+     * @param parallel   Исполнитель.
+     * @param raster     Растр.
+     * @param layout     Схема размещения битов.
+     * @param startPixel Индекс первого пикселя хвоста.
+     * @param values     Буферы строки (по одному на канал схемы, длиной не меньше ширины растра)
+     *                   или {@code null}.
+     */
+    void apply(ParallelLSB parallel, LSBRaster raster, BitLayout layout, long startPixel, byte[][] values) {
+        if (factory != null) {
+            try (Metrics.Timer timer = Metrics.start(Metrics.Phase.TAIL_FILL)) {
+                parallel.fillRandom(raster, layout, startPixel, factory.get(), values);
+                timer.pixels(Math.max(0, raster.pixelCount() - startPixel));
+            }
+        }
+    }
+
+    /**
+     * Заполняет шумом биты схемы в диапазоне пикселей.
+     *
+     * @param raster     Растр.
+     * @param layout     Схема размещения битов.
+     * @param startPixel Индекс первого пикселя.
+     * @param endPixel   Индекс пикселя, следующего за последним.
+     */
+    void apply(LSBRaster raster, BitLayout layout, long startPixel, long endPixel) {
+        if (factory != null) {
+            try (Metrics.Timer timer = Metrics.start(Metrics.Phase.TAIL_FILL)) {
+                raster.fillRandom(layout, startPixel, endPixel, factory.get());
+                timer.pixels(Math.max(0, endPixel - startPixel));
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.lsb;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Реализация {@link LSBKernel} на Vector API ({@code jdk.incubator.vector}) для визуализации
+ * битовой плоскости и чтения и записи полей каналов в упакованных {@code int}-пикселях.
+ * <p>
+ * Основная часть массива обрабатывается векторами предпочтительной для процессора ширины,
+ * остаток — скалярным кодом базового класса. Упаковка и распаковка битов полезной нагрузки
+ * не переопределяются и выполняются словами по 64 бита (см. {@link LSBKernel}).
+ * Создается только через {@link LSBKernel#vector()}.
+ * </p>
+ */
+final class VectorLSBKernel extends LSBKernel {
+
+    /** Байтовые векторы предпочтительной ширины. */
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    /** Целочисленные векторы предпочтительной ширины. */
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    /** Байтовые векторы с тем же числом полос, что и {@link #INTS}; {@code null}, если такой формы нет. */
+    private static final VectorSpecies<Byte> INT_BYTES = INTS.length() >= 8
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * 8))
+            : null;
+
+    @Override
+    boolean isVectorized() {
+        return true;
+    }
+
+    @Override
+    void planeToGray(byte[] values, int off, int len, int plane) {
+        int i = 0;
+        for (int bound = BYTES.loopBound(len); i < bound; i += BYTES.length()) {
+            ByteVector.fromArray(BYTES, values, off + i)
+                    .lanewise(VectorOperators.LSHR, plane)
+                    .and((byte) 1)
+                    .neg()
+                    .intoArray(values, off + i);
+        }
+        super.planeToGray(values, off + i, len - i, plane);
+    }
+
+    @Override
+    void readField(int[] data, int p, int shift, int mask, byte[] values, int off, int len) {
+        int i = 0;
+        if (INT_BYTES != null) {
+            for (int bound = INTS.loopBound(len); i < bound; i += INTS.length()) {
+                IntVector field = IntVector.fromArray(INTS, data, p + i)
+                        .lanewise(VectorOperators.LSHR, shift)
+                        .and(mask);
+                ((ByteVector) field.convertShape(VectorOperators.I2B, INT_BYTES, 0)).intoArray(values, off + i);
+            }
+        }
+        super.readField(data, p + i, shift, mask, values, off + i, len - i);
+    }
+
+    @Override
+    void writeField(int[] data, int p, int shift, int mask, byte[] values, int off, int len) {
+        int i = 0;
+        if (INT_BYTES != null) {
+            int clear = ~(mask << shift);
+            for (int bound = INTS.loopBound(len); i < bound; i += INTS.length()) {
+                IntVector field = (IntVector) ByteVector.fromArray(INT_BYTES, values, off + i)
+                        .convertShape(VectorOperators.B2I, INTS, 0);
+                IntVector.fromArray(INTS, data, p + i)
+                        .and(clear)
+                        .or(field.lanewise(VectorOperators.LSHL, shift))
+                        .intoArray(data, p + i);
+            }
+        }
+        super.writeField(data, p + i, shift, mask, values, off + i, len - i);
+    }
+}
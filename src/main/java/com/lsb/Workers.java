@@ -0,0 +1,37 @@
+package com.lsb;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Общий ограниченный пул потоков для длительных операций графического интерфейса:
+ * загрузки изображений, встраивания, извлечения и построения визуализации.
+ * <p>
+ * Число потоков равно числу ядер (не меньше двух), поэтому одновременные операции не создают
+ * новых потоков на каждое действие пользователя, а лишние задачи ждут в очереди. Сами циклы
+ * по пикселям распараллеливаются через {@link ParallelLSB}; потоки пула — служебные
+ * (daemon) и не мешают завершению приложения.
+ * </p>
+ */
+public final class Workers {
+
+    /** Число потоков общего пула. */
+    public static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private static final ExecutorService COMMON = Executors.newFixedThreadPool(POOL_SIZE, runnable -> {
+        Thread thread = new Thread(runnable, "lsb-worker-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Workers() {
+    }
+
+    /** @return Общий пул потоков. */
+    public static ExecutorService common() {
+        return COMMON;
+    }
+}
@@ -13,6 +13,12 @@ module com.lsb {
     requires eu.hansolo.tilesfx;
     requires org.apache.logging.log4j.core;
     requires org.apache.logging.log4j;
+    requires jdk.httpserver;
+    requires java.net.http;
+    requires jdk.jfr;
+    requires jdk.management;
+    // Необязательный модуль: без него используется скалярная реализация LSBKernel.
+    requires static jdk.incubator.vector;
 
 
     exports com.lsb;
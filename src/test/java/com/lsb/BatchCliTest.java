@@ -0,0 +1,146 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BatchCliTest {
+    private static final Logger logger = LogManager.getLogger(BatchCliTest.class);
+
+    private static Path createCarriers(Path dir, int count) throws IOException {
+        Files.createDirectories(dir);
+        Random random = new Random(5);
+        for (int i = 0; i < count; i++) {
+            BufferedImage img = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < img.getHeight(); y++) {
+                for (int x = 0; x < img.getWidth(); x++) {
+                    img.setRGB(x, y, random.nextInt());
+                }
+            }
+            ImageIO.write(img, "bmp", dir.resolve("carrier" + i + ".bmp").toFile());
+        }
+        return dir;
+    }
+
+    private static int run(ByteArrayOutputStream out, String... args) {
+        PrintStream stdout = new PrintStream(out, true, StandardCharsets.UTF_8);
+        PrintStream stderr = new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8);
+        return BatchCli.run(args, stdout, stderr);
+    }
+
+    @Test
+    void testEmbedAndExtractDirectory() throws IOException {
+        logger.info("Starting testEmbedAndExtractDirectory");
+        Path root = Files.createTempDirectory("batch");
+        Path carriers = createCarriers(root.resolve("in"), 3);
+        Path stego = root.resolve("stego");
+        Path texts = root.resolve("texts");
+
+        ByteArrayOutputStream embedReport = new ByteArrayOutputStream();
+        assertEquals(BatchCli.EXIT_OK, run(embedReport, "embed", "--text", "Пакетный \"режим\"", "--concurrency", "2",
+                "--out", stego.toString(), carriers.toString()));
+        assertEquals(3, embedReport.toString(StandardCharsets.UTF_8).lines().filter(l -> l.contains("\"status\":\"ok\"")).count());
+
+        ByteArrayOutputStream extractReport = new ByteArrayOutputStream();
+        assertEquals(BatchCli.EXIT_OK, run(extractReport, "extract", "--out", texts.toString(), stego.toString()));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Пакетный \"режим\"", Files.readString(texts.resolve("carrier" + i + ".txt"), StandardCharsets.UTF_8));
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testManifestReportsFailedJobs() throws IOException {
+        logger.info("Starting testManifestReportsFailedJobs");
+        Path root = Files.createTempDirectory("batch");
+        createCarriers(root, 1);
+        Path manifest = root.resolve("jobs.txt");
+        Files.write(manifest, List.of("# вход<TAB>выход", "carrier0.bmp\tvis.png", "missing.bmp\tmissing.png"));
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        assertEquals(BatchCli.EXIT_FAILED, run(report, "visualize", "@" + manifest));
+
+        List<String> lines = report.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(2, lines.size());
+        assertTrue(lines.stream().anyMatch(l -> l.contains("missing.bmp") && l.contains("\"status\":\"error\"")));
+        assertNotNull(ImageIO.read(root.resolve("vis.png").toFile()));
+
+        assertEquals(BatchCli.EXIT_USAGE, run(new ByteArrayOutputStream(), "visualize", "--plane"));
+        // --channel принимает ровно одну букву канала.
+        for (String channel : List.of("rgb", "b:2", "x")) {
+            assertEquals(BatchCli.EXIT_USAGE, run(new ByteArrayOutputStream(), "visualize", "--channel", channel, "@" + manifest));
+        }
+
+        // carrier0.bmp и carrier0.png дали бы один результат carrier0.bmp.
+        ImageIO.write(ImageIO.read(root.resolve("carrier0.bmp").toFile()), "png", root.resolve("carrier0.png").toFile());
+        Path out = root.resolve("out");
+        ByteArrayOutputStream duplicate = new ByteArrayOutputStream();
+        assertEquals(BatchCli.EXIT_USAGE, run(duplicate, "embed", "--text", "дубль", "--out", out.toString(), root.toString()));
+        assertEquals(0, duplicate.size());
+        assertFalse(Files.exists(out));
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testErrorSkipsRemainingJobs() throws IOException {
+        logger.info("Starting testErrorSkipsRemainingJobs");
+        Path carriers = createCarriers(Files.createTempDirectory("batch").resolve("in"), 3);
+        AtomicBoolean thrown = new AtomicBoolean();
+        // Первое задание завершается Error: остальные пропускаются, но каждое попадает в отчет и в число ошибок.
+        Metrics.setRegistry(new MetricsRegistry() {
+            @Override
+            public void recordPhase(Metrics.Phase phase, long nanos, long pixels, long bytes, long allocatedBytes) {
+            }
+
+            @Override
+            public void recordGauge(String name, long value) {
+                if (name.equals("batch.queue") && thrown.compareAndSet(false, true)) {
+                    throw new OutOfMemoryError("тест");
+                }
+            }
+        });
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        try {
+            assertEquals(BatchCli.EXIT_FAILED, run(report, "probe", "--concurrency", "1", carriers.toString()));
+        } finally {
+            Metrics.setRegistry(null);
+        }
+
+        List<String> lines = report.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(3, lines.size());
+        assertEquals(1, lines.stream().filter(l -> l.contains("\"errorType\":\"OutOfMemoryError\"")).count());
+        assertEquals(2, lines.stream().filter(l -> l.contains("\"status\":\"skipped\"")).count());
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testAnalyzeFlagsStegoImages() throws IOException {
+        logger.info("Starting testAnalyzeFlagsStegoImages");
+        Path root = Files.createTempDirectory("batch");
+        Path clean = root.resolve("clean.bmp");
+        ImageIO.write(SteganalysisTest.cover(200, 100, 4), "bmp", clean.toFile());
+        EmbedText.embedText(clean.toString(), "метка", root.resolve("stego.bmp").toString());
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        assertEquals(BatchCli.EXIT_OK, run(report, "analyze", root.toString()));
+        List<String> lines = report.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(2, lines.size());
+        assertTrue(lines.stream().anyMatch(l -> l.contains("clean.bmp") && l.contains("\"suspicious\":false")));
+        assertTrue(lines.stream().anyMatch(l -> l.contains("stego.bmp") && l.contains("\"suspicious\":true")
+                && l.contains("\"blue\":{\"chiSquare\"")));
+        logger.info("Test finished successfully");
+    }
+}
@@ -7,6 +7,9 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -86,4 +89,192 @@ public class ExtractTextTest {
             fail("Test failed due to an exception: " + e.getMessage());
         }
     }
+
+    @Test
+    void testDelimiterMatcherOverlappingPrefix() {
+        logger.info("Starting testDelimiterMatcherOverlappingPrefix");
+        DelimiterMatcher matcher = new DelimiterMatcher("ENEND".getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        byte[] input = "xENENENENDy".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        int matchedAt = -1;
+        for (int i = 0; i < input.length; i++) {
+            if (matcher.accept(input[i])) {
+                matchedAt = i;
+                break;
+            }
+        }
+        assertEquals(9, matchedAt); // Разделитель заканчивается на последнем 'D'
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testContainerRoundTripWithDelimiterInText() throws IOException {
+        logger.info("Starting testContainerRoundTripWithDelimiterInText");
+
+        Path tempDir = Files.createTempDirectory("lsb-test");
+        File originalImage = new File(tempDir.toFile(), "original.bmp");
+        File imageWithText = new File(tempDir.toFile(), "with_text.bmp");
+        String message = "Payload with " + DELIMITER + " inside";
+
+        try {
+            ImageIO.write(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB), "bmp", originalImage);
+
+            EmbedText.embedText(originalImage.getAbsolutePath(), message, imageWithText.getAbsolutePath());
+
+            assertEquals(message, ExtractText.extractText(imageWithText.getAbsolutePath()));
+            assertEquals(message, ExtractText.extractText(imageWithText.getAbsolutePath(), DELIMITER)); // Заголовок распознается автоматически
+            logger.info("Test passed successfully");
+        } finally {
+            originalImage.delete();
+            imageWithText.delete();
+            Files.deleteIfExists(tempDir);
+        }
+    }
+
+    @Test
+    void testContainerRoundTripWithMultiBitLayout() throws IOException {
+        logger.info("Starting testContainerRoundTripWithMultiBitLayout");
+
+        Path tempDir = Files.createTempDirectory("lsb-test");
+        File originalImage = new File(tempDir.toFile(), "original.bmp");
+        File imageWithText = new File(tempDir.toFile(), "with_text.bmp");
+        // 12 битов на пиксель: текст длиннее, чем поместилось бы в синий канал 20x20
+        String message = "Multi-bit payload ".repeat(20);
+
+        try {
+            ImageIO.write(new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB), "bmp", originalImage);
+
+            assertThrows(IOException.class, () -> EmbedText.embedText(
+                    originalImage.getAbsolutePath(), message, imageWithText.getAbsolutePath()));
+            EmbedText.embedText(originalImage.getAbsolutePath(), message, imageWithText.getAbsolutePath(),
+                    BitLayout.parse("rgb:4"));
+
+            assertEquals(message, ExtractText.extractText(imageWithText.getAbsolutePath()));
+            logger.info("Test passed successfully");
+        } finally {
+            originalImage.delete();
+            imageWithText.delete();
+            Files.deleteIfExists(tempDir);
+        }
+    }
+
+    @Test
+    void testBinaryStreamRoundTrip() throws IOException {
+        logger.info("Starting testBinaryStreamRoundTrip");
+
+        Path tempDir = Files.createTempDirectory("lsb-test");
+        File originalImage = new File(tempDir.toFile(), "original.bmp");
+        File imageWithData = new File(tempDir.toFile(), "with_data.bmp");
+        Path payloadFile = tempDir.resolve("payload.bin");
+        // Все значения байтов, включая некорректные последовательности UTF-8
+        byte[] payload = new byte[1000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i * 7);
+        }
+
+        try {
+            ImageIO.write(new BufferedImage(100, 100, BufferedImage.TYPE_3BYTE_BGR), "bmp", originalImage);
+            Files.write(payloadFile, payload);
+
+            EmbedText.embedData(originalImage.getAbsolutePath(), payloadFile, imageWithData.getAbsolutePath(),
+                    EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgb:1")));
+            ByteArrayOutputStream extracted = new ByteArrayOutputStream();
+            assertEquals(payload.length, ExtractText.extractData(imageWithData.getAbsolutePath(), extracted));
+            assertArrayEquals(payload, extracted.toByteArray());
+
+            // Поток короче заявленной длины
+            assertThrows(EOFException.class, () -> EmbedText.embedData(originalImage.getAbsolutePath(),
+                    new ByteArrayInputStream(payload), payload.length + 1, imageWithData.getAbsolutePath(), EmbedOptions.DEFAULT));
+            assertFalse(imageWithData.exists(), "Наполовину записанный файл должен быть удален");
+            logger.info("Test passed successfully");
+        } finally {
+            originalImage.delete();
+            imageWithData.delete();
+            Files.deleteIfExists(payloadFile);
+            Files.deleteIfExists(tempDir);
+        }
+    }
+
+    @Test
+    void testCompressedContainerRoundTrip() throws IOException {
+        logger.info("Starting testCompressedContainerRoundTrip");
+
+        Path tempDir = Files.createTempDirectory("lsb-test");
+        File originalImage = new File(tempDir.toFile(), "original.bmp");
+        File imageWithText = new File(tempDir.toFile(), "with_text.bmp");
+        // Без сжатия текст не помещается в изображение 100x100 (1250 байтов)
+        String message = "{\"key\": \"value\", \"n\": 42}\n".repeat(200);
+        EmbedOptions options = EmbedOptions.DEFAULT.withCodec(PayloadCodecs.DEFLATE);
+
+        try {
+            ImageIO.write(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB), "bmp", originalImage);
+
+            EmbedText.embedText(originalImage.getAbsolutePath(), message, imageWithText.getAbsolutePath(), options);
+            assertEquals(message, ExtractText.extractText(imageWithText.getAbsolutePath()));
+
+            // Несжимаемые данные встраиваются без сжатия
+            byte[] noise = new byte[1000];
+            new java.util.Random(1).nextBytes(noise);
+            EmbedText.embedData(originalImage.getAbsolutePath(), new ByteArrayInputStream(noise), noise.length,
+                    imageWithText.getAbsolutePath(), options);
+            ByteArrayOutputStream extracted = new ByteArrayOutputStream();
+            assertEquals(noise.length, ExtractText.extractData(imageWithText.getAbsolutePath(), extracted));
+            assertArrayEquals(noise, extracted.toByteArray());
+            try (LSBRaster raster = LSBRaster.read(imageWithText.toPath())) {
+                byte[] head = new byte[PayloadHeader.SIZE];
+                raster.extractBytes(0, head, 0, head.length);
+                assertEquals(0, PayloadHeader.parse(head).getCodecId());
+            }
+            logger.info("Test passed successfully");
+        } finally {
+            originalImage.delete();
+            imageWithText.delete();
+            Files.deleteIfExists(tempDir);
+        }
+    }
+
+    @Test
+    void testIncrementalUpdateRewritesOnlyChangedBits() throws IOException {
+        logger.info("Starting testIncrementalUpdateRewritesOnlyChangedBits");
+
+        Path tempDir = Files.createTempDirectory("lsb-test");
+        Path image = tempDir.resolve("stego.bmp");
+        EmbedOptions options = EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgb:2"));
+        String message = "Version 1 of the document. ".repeat(40);
+
+        try {
+            ImageIO.write(new BufferedImage(200, 150, BufferedImage.TYPE_3BYTE_BGR), "bmp", image.toFile());
+            // Контейнера еще нет — встраивается целиком
+            assertEquals(200L * 150, EmbedText.updateText(image.toString(), message, options));
+            assertEquals(message, ExtractText.extractText(image.toString()));
+
+            byte[] before = Files.readAllBytes(image);
+            String edited = message.replaceFirst("Version 1", "Version 2");
+            long written = EmbedText.updateText(image.toString(), edited, options);
+            assertEquals(edited, ExtractText.extractText(image.toString()));
+            // Один байт данных (4 пикселя по 6 битов) и байты контрольной суммы в заголовке
+            assertTrue(written <= 4 + 4 * 8, "перезаписано пикселей: " + written);
+            byte[] after = Files.readAllBytes(image);
+            int changed = 0;
+            for (int i = 0; i < before.length; i++) {
+                if (before[i] != after[i]) {
+                    changed++;
+                }
+            }
+            assertTrue(changed > 0 && changed <= written * 3, "изменено байтов файла: " + changed);
+
+            String shorter = "Short";
+            EmbedText.updateText(image.toString(), shorter, options);
+            assertEquals(shorter, ExtractText.extractText(image.toString()));
+            EmbedText.updateText(image.toString(), message + message, options);
+            assertEquals(message + message, ExtractText.extractText(image.toString()));
+
+            // Другая схема размещения — контейнер встраивается заново
+            EmbedText.updateText(image.toString(), shorter, EmbedOptions.DEFAULT);
+            assertEquals(shorter, ExtractText.extractText(image.toString()));
+            logger.info("Test passed successfully");
+        } finally {
+            Files.deleteIfExists(image);
+            Files.deleteIfExists(tempDir);
+        }
+    }
 }
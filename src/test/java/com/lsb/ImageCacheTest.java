@@ -0,0 +1,124 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ImageCacheTest {
+    private static final Logger logger = LogManager.getLogger(ImageCacheTest.class);
+
+    private static Path writeImage(Path file, int width, int height, int seed, String format) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        ImageIO.write(image, format, file.toFile());
+        return file;
+    }
+
+    @Test
+    void testConcurrentRequestsLoadOnce() throws Exception {
+        logger.info("Starting testConcurrentRequestsLoadOnce");
+        Path file = writeImage(Files.createTempFile("cache", ".png"), 40, 30, 1, "png");
+        ImageCache cache = new ImageCache(1 << 20);
+        AtomicInteger loads = new AtomicInteger();
+        ImageCache.Loader<BufferedImage> loader = path -> {
+            loads.incrementAndGet();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ImageIO.read(path.toFile());
+        };
+
+        List<Future<BufferedImage>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> cache.get(file, "image", loader, ImageCache::sizeOf)));
+            }
+        }
+        for (Future<BufferedImage> result : results) {
+            assertSame(results.get(0).get(), result.get());
+        }
+        assertEquals(1, loads.get());
+
+        // Изображение из get("image") используется растром и битовой плоскостью без повторного чтения.
+        LSBPlane plane = cache.plane(file, BitLayout.Channel.RED, 0);
+        BufferedImage image = results.get(0).get();
+        assertEquals((image.getRGB(7, 5) >>> 16) & 1, plane.get(7, 5));
+        assertSame(plane, cache.plane(file, BitLayout.Channel.RED, 0));
+        assertEquals(1, loads.get());
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testRewrittenFileAndEviction() throws IOException {
+        logger.info("Starting testRewrittenFileAndEviction");
+        Path dir = Files.createTempDirectory("cache");
+        Path first = writeImage(dir.resolve("first.bmp"), 64, 64, 1, "bmp");
+        Path second = writeImage(dir.resolve("second.bmp"), 64, 64, 2, "bmp");
+        // Лимит меньше двух изображений: при загрузке второго первое вытесняется в мягкую ссылку.
+        ImageCache cache = new ImageCache(64 * 64 * 3 + 100);
+
+        BufferedImage firstImage = cache.image(first);
+        BufferedImage secondImage = cache.image(second);
+        assertEquals(ImageCache.sizeOf(secondImage), cache.sizeInBytes());
+        assertSame(firstImage, cache.image(first));
+        assertSame(secondImage, cache.image(second));
+
+        writeImage(first, 32, 32, 3, "bmp");
+        BufferedImage rewritten = cache.image(first);
+        assertNotSame(firstImage, rewritten);
+        assertEquals(32, rewritten.getWidth());
+
+        cache.invalidate(first);
+        assertNotSame(rewritten, cache.image(first));
+        assertThrows(IOException.class, () -> cache.image(dir.resolve("missing.bmp")));
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testEngineEmbedsIntoCopyOfCachedImage() throws IOException {
+        logger.info("Starting testEngineEmbedsIntoCopyOfCachedImage");
+        Path dir = Files.createTempDirectory("cache");
+        Path carrier = writeImage(dir.resolve("carrier.png"), 90, 70, 4, "png");
+        ImageCache cache = new ImageCache(1 << 20);
+        AtomicInteger loads = new AtomicInteger();
+        BufferedImage cached = cache.get(carrier, "image", path -> {
+            loads.incrementAndGet();
+            return ImageIO.read(path.toFile());
+        }, ImageCache::sizeOf);
+        int[] before = cached.getRGB(0, 0, 90, 70, null, 0, 90);
+
+        try (StegoEngine engine = new StegoEngine(cache)) {
+            for (String name : new String[]{"stego.bmp", "stego.png"}) {
+                Path stego = dir.resolve(name);
+                engine.embedText(carrier.toString(), "из кэша", stego.toString(), EmbedOptions.DEFAULT, Progress.NONE);
+                assertEquals("из кэша", engine.extractText(stego.toString(), null));
+            }
+        }
+        // Файл не декодировался повторно, а изображение в кэше не изменилось.
+        assertEquals(1, loads.get());
+        assertSame(cached, cache.image(carrier));
+        assertArrayEquals(before, cached.getRGB(0, 0, 90, 70, null, 0, 90));
+        logger.info("Test finished successfully");
+    }
+}
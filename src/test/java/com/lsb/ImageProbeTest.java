@@ -0,0 +1,117 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class ImageProbeTest {
+    private static final Logger logger = LogManager.getLogger(ImageProbeTest.class);
+
+    @Test
+    void testPngRowReaderMatchesImageIO() throws IOException {
+        logger.info("Starting testPngRowReaderMatchesImageIO");
+        Path dir = Files.createTempDirectory("rows");
+        BufferedImage argb = new BufferedImage(131, 47, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(5);
+        for (int y = 0; y < argb.getHeight(); y++) {
+            for (int x = 0; x < argb.getWidth(); x++) {
+                // Гладкие участки и шум, чтобы кодировщик выбирал разные фильтры строк.
+                argb.setRGB(x, y, y < 20 ? (x * 7 << 24) | (x << 16) | (y << 8) | (x + y) : random.nextInt());
+            }
+        }
+        BufferedImage rgb = SteganalysisTest.cover(97, 61, 2);
+        for (BufferedImage image : new BufferedImage[]{argb, rgb}) {
+            Path png = dir.resolve("image" + image.getType() + ".png");
+            ImageIO.write(image, "png", png.toFile());
+            try (PngRowReader reader = PngRowReader.open(png)) {
+                int channels = reader.getHeader().getChannels();
+                assertEquals(image.getColorModel().hasAlpha() ? 4 : 3, channels);
+                byte[] row = new byte[reader.getRowBytes()];
+                for (int y = 0; y < image.getHeight(); y++) {
+                    reader.readRows(row, 0, 1);
+                    for (int x = 0; x < image.getWidth(); x++) {
+                        int p = x * channels;
+                        int value = (row[p] & 0xFF) << 16 | (row[p + 1] & 0xFF) << 8 | (row[p + 2] & 0xFF)
+                                | (channels == 4 ? (row[p + 3] & 0xFF) << 24 : 0xFF << 24);
+                        assertEquals(image.getRGB(x, y), value, x + "," + y);
+                    }
+                }
+                assertThrows(IllegalArgumentException.class, () -> reader.readRows(row, 0, 1));
+            }
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testProbeReportsCapacityAndContainer() throws IOException {
+        logger.info("Starting testProbeReportsCapacityAndContainer");
+        Path dir = Files.createTempDirectory("probe");
+        Path carrier = dir.resolve("carrier.bmp");
+        ImageIO.write(SteganalysisTest.cover(100, 80, 3), "bmp", carrier.toFile());
+
+        ImageProbe clean = ImageProbe.probe(carrier);
+        assertEquals("bmp", clean.getFormat());
+        assertEquals(100, clean.getWidth());
+        assertEquals(80, clean.getHeight());
+        assertEquals(24, clean.getBitsPerPixel());
+        assertFalse(clean.hasAlpha());
+        assertNull(clean.getPayloadHeader());
+        assertEquals((100L * 80 - PayloadHeader.SIZE * 8L) * 6 / 8, clean.capacityBytes(BitLayout.parse("rgb:2")));
+        assertEquals(0, clean.capacityBytes(BitLayout.parse("rgba:1")));
+        assertEquals(ShardedPayload.capacity(carrier, BitLayout.DEFAULT) + ShardedPayload.HEADER_SIZE,
+                clean.capacityBytes(BitLayout.DEFAULT));
+
+        String text = "емкость и заголовок";
+        int length = text.getBytes(StandardCharsets.UTF_8).length;
+        EmbedOptions options = EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgb:2"));
+        for (String name : new String[]{"stego.bmp", "stego.png"}) {
+            Path stego = dir.resolve(name);
+            EmbedText.embedText(carrier.toString(), text, stego.toString(), options);
+            byte[] file = Files.readAllBytes(stego);
+            for (ImageProbe probe : new ImageProbe[]{ImageProbe.probe(stego), ImageProbe.probe(file, 0, file.length)}) {
+                assertEquals(name.substring(name.indexOf('.') + 1), probe.getFormat());
+                assertEquals(100, probe.getWidth());
+                PayloadHeader header = probe.getPayloadHeader();
+                assertNotNull(header);
+                assertEquals(length, header.getLength());
+                assertEquals(BitLayout.parse("rgb:2"), header.getLayout());
+                assertEquals(0, header.getCodecId());
+                assertTrue(probe.toJson().contains("\"container\":{\"version\":2,\"layout\":\"rgb:2\",\"codec\":0,\"length\":" + length + "}"),
+                        probe.toJson());
+            }
+        }
+
+        // Рассеянный ключом контейнер без ключа не виден.
+        Path keyed = dir.resolve("keyed.png");
+        EmbedText.embedText(carrier.toString(), text, keyed.toString(), options.withKey(PixelPermutation.key("к")));
+        assertNull(ImageProbe.probe(keyed).getPayloadHeader());
+
+        // Для изображения с альфа-каналом приводится емкость схем rgba.
+        Path alpha = dir.resolve("alpha.png");
+        ImageIO.write(new BufferedImage(30, 20, BufferedImage.TYPE_INT_ARGB), "png", alpha.toFile());
+        ImageProbe probe = ImageProbe.probe(alpha);
+        assertTrue(probe.hasAlpha());
+        assertEquals(32, probe.getBitsPerPixel());
+        assertEquals((600L - PayloadHeader.SIZE * 8L) * 4 / 8, probe.capacityBytes(BitLayout.parse("rgba:1")));
+        assertTrue(probe.toJson().contains("\"rgba:2\":"), probe.toJson());
+
+        // Прочие форматы читаются через ImageReader.
+        Path gray = dir.resolve("gray.png");
+        ImageIO.write(new BufferedImage(40, 10, BufferedImage.TYPE_BYTE_GRAY), "png", gray.toFile());
+        probe = ImageProbe.probe(gray);
+        assertEquals("png", probe.getFormat());
+        assertEquals(40, probe.getWidth());
+        assertEquals(8, probe.getBitsPerPixel());
+        assertNull(probe.getPayloadHeader());
+        logger.info("Test finished successfully");
+    }
+}
@@ -0,0 +1,136 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+public class LSBKernelTest {
+    private static final Logger logger = LogManager.getLogger(LSBKernelTest.class);
+
+    private static final LSBKernel SCALAR = new LSBKernel();
+
+    /** Длины, покрывающие пустой массив, неполный вектор, несколько векторов и скалярный остаток. */
+    private static final int[] LENGTHS = {0, 1, 7, 8, 15, 16, 31, 64, 65, 129, 1000};
+
+    private static LSBKernel vectorKernel() {
+        LSBKernel vector = LSBKernel.vector();
+        assumeTrue(vector != null, "Модуль jdk.incubator.vector недоступен");
+        return vector;
+    }
+
+    private static byte[] randomBits(Random random, int len) {
+        byte[] bits = new byte[len];
+        for (int i = 0; i < len; i++) {
+            bits[i] = (byte) random.nextInt(2);
+        }
+        return bits;
+    }
+
+    @Test
+    void testPackAndUnpackMatchBitByBit() {
+        logger.info("Starting testPackAndUnpackMatchBitByBit");
+        Random random = new Random(1);
+
+        // Упаковка по словам общая для обеих реализаций, поэтому сравнивается с побитовым разбором.
+        for (int count : LENGTHS) {
+            byte[] bits = randomBits(random, count * 8 + 3);
+            byte[] expected = new byte[count + 2];
+            byte[] actual = new byte[count + 2];
+            for (int i = 0; i < count * 8; i++) {
+                expected[2 + i / 8] |= (byte) (bits[3 + i] << (7 - i % 8));
+            }
+            LSBKernel.INSTANCE.packBits(bits, 3, actual, 2, count);
+            assertArrayEquals(expected, actual, "packBits, count = " + count);
+
+            byte[] src = new byte[count + 1];
+            random.nextBytes(src);
+            byte[] expectedBits = new byte[count * 8 + 5];
+            byte[] actualBits = new byte[count * 8 + 5];
+            for (int i = 0; i < count * 8; i++) {
+                expectedBits[5 + i] = (byte) ((src[1 + i / 8] >> (7 - i % 8)) & 1);
+            }
+            LSBKernel.INSTANCE.unpackBits(src, 1, actualBits, 5, count);
+            assertArrayEquals(expectedBits, actualBits, "unpackBits, count = " + count);
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testPlaneToGrayMatchesScalar() {
+        logger.info("Starting testPlaneToGrayMatchesScalar");
+        LSBKernel vector = vectorKernel();
+        Random random = new Random(2);
+
+        for (int len : LENGTHS) {
+            for (int plane = 0; plane < 8; plane++) {
+                byte[] expected = new byte[len + 1];
+                random.nextBytes(expected);
+                byte[] actual = expected.clone();
+                SCALAR.planeToGray(expected, 1, len, plane);
+                vector.planeToGray(actual, 1, len, plane);
+                assertArrayEquals(expected, actual, "len = " + len + ", plane = " + plane);
+            }
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testFieldAccessMatchesScalar() {
+        logger.info("Starting testFieldAccessMatchesScalar");
+        LSBKernel vector = vectorKernel();
+        Random random = new Random(3);
+
+        for (int len : LENGTHS) {
+            for (BitLayout.Channel channel : BitLayout.Channel.values()) {
+                for (int bits = 1; bits <= BitLayout.MAX_BITS_PER_CHANNEL; bits++) {
+                    int mask = (1 << bits) - 1;
+                    int[] data = random.ints(len + 2).toArray();
+
+                    byte[] expected = new byte[len];
+                    byte[] actual = new byte[len];
+                    SCALAR.readField(data, 2, channel.shift(), mask, expected, 0, len);
+                    vector.readField(data, 2, channel.shift(), mask, actual, 0, len);
+                    assertArrayEquals(expected, actual, "readField " + channel + ":" + bits + ", len = " + len);
+
+                    byte[] values = new byte[len];
+                    for (int i = 0; i < len; i++) {
+                        values[i] = (byte) random.nextInt(mask + 1);
+                    }
+                    int[] expectedData = data.clone();
+                    SCALAR.writeField(expectedData, 2, channel.shift(), mask, values, 0, len);
+                    vector.writeField(data, 2, channel.shift(), mask, values, 0, len);
+                    assertArrayEquals(expectedData, data, "writeField " + channel + ":" + bits + ", len = " + len);
+                }
+            }
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testRasterRoundTripWithSelectedKernel() {
+        logger.info("Starting testRasterRoundTripWithSelectedKernel");
+        BufferedImage img = new BufferedImage(37, 29, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        Random random = new Random(4);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        byte[] payload = new byte[(pixels.length - 3) / 8];
+        random.nextBytes(payload);
+
+        // Смещение 3 проверяет выравнивание до границы байта на стыках строк.
+        LSBRaster raster = LSBRaster.wrap(img);
+        raster.embedBytes(3, payload, 0, payload.length);
+        byte[] extracted = new byte[payload.length];
+        raster.extractBytes(3, extracted, 0, extracted.length);
+
+        assertArrayEquals(payload, extracted);
+        logger.info("Test finished successfully");
+    }
+}
@@ -0,0 +1,96 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+public class LSBTilesTest {
+    private static final Logger logger = LogManager.getLogger(LSBTilesTest.class);
+
+    private static BufferedImage noise(int width, int height, int seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    @Test
+    void testLevelZeroMatchesVisualization() {
+        logger.info("Starting testLevelZeroMatchesVisualization");
+        BufferedImage image = noise(600, 300, 1);
+        BufferedImage expected = LSBVisualization.visualizeLSBBits(image, BitLayout.Channel.GREEN, 3);
+        LSBTiles tiles = new LSBTiles(LSBRaster.wrap(image), BitLayout.Channel.GREEN, 3);
+
+        assertEquals(2, tiles.maxLevel());
+        assertEquals(3, tiles.tilesX(0));
+        assertEquals(2, tiles.tilesY(0));
+        for (int ty = 0; ty < tiles.tilesY(0); ty++) {
+            for (int tx = 0; tx < tiles.tilesX(0); tx++) {
+                byte[] tile = tiles.renderTile(0, tx, ty);
+                int w = tiles.tileWidth(0, tx);
+                for (int i = 0; i < tile.length; i++) {
+                    int x = tx * LSBTiles.TILE_SIZE + i % w;
+                    int y = ty * LSBTiles.TILE_SIZE + i / w;
+                    assertEquals(expected.getRaster().getSample(x, y, 0), tile[i] & 0xFF);
+                }
+            }
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testCoarseLevelsAggregateBitDensity() {
+        logger.info("Starting testCoarseLevelsAggregateBitDensity");
+        // Левая половина — все биты единичные, правая — чередование по столбцам (плотность 1/2).
+        int width = 515;
+        int height = 301;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, x < 256 ? 1 : x & 1);
+            }
+        }
+        LSBTiles tiles = new LSBTiles(LSBRaster.wrap(image), BitLayout.Channel.BLUE, 0);
+
+        assertEquals(2, tiles.maxLevel());
+        assertEquals(129, tiles.levelWidth(2));
+        byte[] coarse = tiles.renderTile(2, 0, 0);
+        assertEquals(129 * 76, coarse.length);
+        assertEquals(255, coarse[0] & 0xFF);
+        assertEquals(128, coarse[70] & 0xFF);
+        // Неполный последний столбец (3 пикселя: 512 — 0, 513 — 1, 514 — 0) и строка из одного ряда.
+        assertEquals(85, coarse[128] & 0xFF);
+        assertEquals(255, coarse[75 * 129] & 0xFF);
+
+        byte[] middle = tiles.renderTile(1, 1, 0);
+        assertEquals(2, tiles.tileWidth(1, 1));
+        assertEquals(128, middle[0] & 0xFF);
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testPlaneSourceMatchesRaster() {
+        logger.info("Starting testPlaneSourceMatchesRaster");
+        BufferedImage image = noise(700, 333, 2);
+        LSBTiles fromRaster = new LSBTiles(LSBRaster.wrap(image), BitLayout.Channel.RED, 5);
+        LSBTiles fromPlane = new LSBTiles(LSBPlane.of(LSBRaster.wrap(image), BitLayout.Channel.RED, 5));
+
+        assertEquals(fromRaster.maxLevel(), fromPlane.maxLevel());
+        for (int level = 0; level <= fromRaster.maxLevel(); level++) {
+            for (int ty = 0; ty < fromRaster.tilesY(level); ty++) {
+                for (int tx = 0; tx < fromRaster.tilesX(level); tx++) {
+                    assertArrayEquals(fromRaster.renderTile(level, tx, ty), fromPlane.renderTile(level, tx, ty));
+                }
+            }
+        }
+        logger.info("Test finished successfully");
+    }
+}
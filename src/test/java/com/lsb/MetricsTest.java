@@ -0,0 +1,91 @@
+package com.lsb;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+public class MetricsTest {
+    private static final Logger logger = LogManager.getLogger(MetricsTest.class);
+
+    private static Path carrier(Path dir, String format) throws IOException {
+        Path file = dir.resolve("carrier." + format);
+        ImageIO.write(SteganalysisTest.cover(160, 120, 2), format, file.toFile());
+        return file;
+    }
+
+    @Test
+    void testPhasesAreRecorded() throws IOException {
+        logger.info("Starting testPhasesAreRecorded");
+        Path dir = Files.createTempDirectory("metrics");
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        Metrics.setRegistry(metrics);
+        try {
+            Path stego = dir.resolve("stego.bmp");
+            EmbedText.embedText(carrier(dir, "bmp").toString(), "метрики", stego.toString());
+            assertEquals("метрики", ExtractText.extractText(stego.toString()));
+            EmbedText.embedText(carrier(dir, "png").toString(), "метрики", dir.resolve("fromPng.bmp").toString());
+            Metrics.gauge("test.queue", 3);
+            Metrics.gauge("test.queue", 1);
+        } finally {
+            Metrics.setRegistry(null);
+        }
+
+        InMemoryMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.getPhase(Metrics.Phase.DECODE).getCount());
+        assertEquals(2, snapshot.getPhase(Metrics.Phase.EMBED).getCount());
+        assertEquals(2, snapshot.getPhase(Metrics.Phase.TAIL_FILL).getCount());
+        assertEquals(2, snapshot.getPhase(Metrics.Phase.ENCODE).getCount());
+        assertEquals(1, snapshot.getPhase(Metrics.Phase.EXTRACT).getCount());
+        assertEquals(0, snapshot.getPhase(Metrics.Phase.ANALYZE).getCount());
+        assertEquals(3L * 160 * 120, snapshot.getPhase(Metrics.Phase.DECODE).getPixels());
+        assertEquals(2L * "метрики".getBytes(StandardCharsets.UTF_8).length,
+                snapshot.getPhase(Metrics.Phase.EMBED).getBytes());
+        assertTrue(snapshot.getPhase(Metrics.Phase.EMBED).getTotalNanos() > 0);
+        assertEquals(1, snapshot.getGauge("test.queue"));
+        assertEquals(3, snapshot.getGaugeMax("test.queue"));
+        String json = snapshot.toJson();
+        assertTrue(json.contains("\"embed\":{\"count\":2,"), json);
+        assertFalse(json.contains("\"analyze\""), json);
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testJfrEventsAndDisabledTimer() throws IOException {
+        logger.info("Starting testJfrEventsAndDisabledTimer");
+        // Без реестра и записи JFR таймер — общий пустой объект.
+        assertSame(Metrics.start(Metrics.Phase.EMBED), Metrics.start(Metrics.Phase.EXTRACT));
+
+        Path dir = Files.createTempDirectory("jfr");
+        Path file = dir.resolve("phases.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.lsb.Phase").withThreshold(Duration.ZERO);
+            recording.start();
+            assertNotSame(Metrics.start(Metrics.Phase.EMBED), Metrics.start(Metrics.Phase.EMBED));
+            Path stego = dir.resolve("stego.bmp");
+            EmbedText.embedText(carrier(dir, "bmp").toString(), "JFR", stego.toString());
+            ExtractText.extractText(stego.toString());
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals("com.lsb.Phase"))
+                .toList();
+        assertTrue(events.stream().anyMatch(e -> e.getString("phase").equals("EMBED") && e.getLong("bytes") == 3));
+        assertTrue(events.stream().anyMatch(e -> e.getString("phase").equals("EXTRACT")
+                && e.getLong("pixels") == PayloadHeader.SIZE * 8L + 24));
+        logger.info("Test finished successfully");
+    }
+}
@@ -0,0 +1,115 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelLSBTest {
+    private static final Logger logger = LogManager.getLogger(ParallelLSBTest.class);
+
+    /** Порог 0 заставляет выполнять любую работу параллельно. */
+    private static final ParallelLSB PARALLEL = new ParallelLSB(ForkJoinPool.commonPool(), 0);
+
+    private static BufferedImage createNoiseImage(int type, int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, type);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "Пиксель (" + x + ", " + y + ")");
+            }
+        }
+    }
+
+    @Test
+    void testParallelEmbedMatchesSequential() {
+        logger.info("Starting testParallelEmbedMatchesSequential");
+        byte[] payload = new byte[4000];
+        new Random(7).nextBytes(payload);
+
+        for (int type : new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR}) {
+            for (BitLayout layout : new BitLayout[]{BitLayout.DEFAULT, BitLayout.parse("rgb:3")}) {
+                BufferedImage sequential = createNoiseImage(type, 61, 1024);
+                BufferedImage parallel = createNoiseImage(type, 61, 1024);
+
+                LSBRaster.wrap(sequential).embedBytes(layout, 13, payload, 0, payload.length);
+                PARALLEL.embedBytes(LSBRaster.wrap(parallel), layout, 13, payload, 0, payload.length);
+
+                assertSamePixels(sequential, parallel);
+            }
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testParallelExtractMatchesSequential() {
+        logger.info("Starting testParallelExtractMatchesSequential");
+        LSBRaster raster = LSBRaster.wrap(createNoiseImage(BufferedImage.TYPE_3BYTE_BGR, 61, 1024));
+        int len = (int) ((raster.pixelCount() - 5) / 8);
+
+        byte[] sequential = new byte[len];
+        byte[] parallel = new byte[len];
+        raster.extractBytes(5, sequential, 0, len);
+        PARALLEL.extractBytes(raster, BitLayout.DEFAULT, 5, parallel, 0, len);
+
+        assertArrayEquals(sequential, parallel);
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testParallelFillRandomKeepsPayload() {
+        logger.info("Starting testParallelFillRandomKeepsPayload");
+        BufferedImage img = createNoiseImage(BufferedImage.TYPE_INT_RGB, 61, 1024);
+        LSBRaster raster = LSBRaster.wrap(img);
+        byte[] payload = "Parallel payload".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+
+        PARALLEL.embedBytes(raster, BitLayout.DEFAULT, 0, payload, 0, payload.length);
+        PARALLEL.fillRandom(raster, BitLayout.DEFAULT, payload.length * 8L, new SplittableRandom(1));
+
+        byte[] extracted = new byte[payload.length];
+        raster.extractBytes(0, extracted, 0, extracted.length);
+        assertArrayEquals(payload, extracted);
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testSeededTailFillIndependentOfParallelism() {
+        logger.info("Starting testSeededTailFillIndependentOfParallelism");
+        ParallelLSB sequentialOnly = new ParallelLSB(ForkJoinPool.commonPool(), Long.MAX_VALUE);
+        BitLayout layout = BitLayout.parse("rgb:3");
+
+        BufferedImage sequential = createNoiseImage(BufferedImage.TYPE_3BYTE_BGR, 61, 1024);
+        BufferedImage parallel = createNoiseImage(BufferedImage.TYPE_3BYTE_BGR, 61, 1024);
+        TailFill.seeded(99).apply(sequentialOnly, LSBRaster.wrap(sequential), layout, 100);
+        TailFill.seeded(99).apply(PARALLEL, LSBRaster.wrap(parallel), layout, 100);
+
+        assertSamePixels(sequential, parallel);
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testTailFillNoneLeavesPixelsUntouched() {
+        logger.info("Starting testTailFillNoneLeavesPixelsUntouched");
+        BufferedImage expected = createNoiseImage(BufferedImage.TYPE_INT_RGB, 61, 1024);
+        BufferedImage actual = createNoiseImage(BufferedImage.TYPE_INT_RGB, 61, 1024);
+
+        TailFill.NONE.apply(PARALLEL, LSBRaster.wrap(actual), BitLayout.DEFAULT, 0);
+
+        assertSamePixels(expected, actual);
+        logger.info("Test finished successfully");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class PixelPermutationTest {
+    private static final Logger logger = LogManager.getLogger(PixelPermutationTest.class);
+
+    @Test
+    void testPermutationIsBijection() {
+        logger.info("Starting testPermutationIsBijection");
+        byte[] key = PixelPermutation.key("ключ");
+        for (int size : new int[]{1, 2, 3, 7, 16, 17, 1000, 4097, 65_536, 100_003}) {
+            PixelPermutation permutation = new PixelPermutation(key, size);
+            BitSet seen = new BitSet(size);
+            int fixed = 0;
+            for (int i = 0; i < size; i++) {
+                long p = permutation.apply(i);
+                assertTrue(p >= 0 && p < size, "размер " + size + ": " + p);
+                assertFalse(seen.get((int) p), "размер " + size + ": повтор " + p);
+                seen.set((int) p);
+                if (p == i) {
+                    fixed++;
+                }
+            }
+            if (size >= 1000) {
+                assertTrue(fixed < size / 100, "размер " + size + ": неподвижных точек " + fixed);
+            }
+        }
+        // Перестановка определяется ключом.
+        PixelPermutation a = new PixelPermutation(key, 1000);
+        PixelPermutation b = new PixelPermutation(PixelPermutation.key("другой"), 1000);
+        int same = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(a.apply(i), new PixelPermutation(key, 1000).apply(i));
+            if (a.apply(i) == b.apply(i)) {
+                same++;
+            }
+        }
+        assertTrue(same < 10, "совпадений " + same);
+        assertThrows(IndexOutOfBoundsException.class, () -> a.apply(1000));
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testScatteredRoundTrip() throws IOException {
+        logger.info("Starting testScatteredRoundTrip");
+        Path dir = Files.createTempDirectory("scatter");
+        Path carrier = dir.resolve("carrier.bmp");
+        BufferedImage cover = SteganalysisTest.cover(301, 203, 4);
+        ImageIO.write(cover, "bmp", carrier.toFile());
+        byte[] key = PixelPermutation.key("секрет");
+        EmbedOptions options = EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgb:1"))
+                .withTailFill(TailFill.NONE).withKey(key);
+        String text = "рассеянный текст ".repeat(40);
+
+        for (String name : new String[]{"stego.bmp", "stego.png"}) {
+            Path stego = dir.resolve(name);
+            EmbedText.embedText(carrier.toString(), text, stego.toString(), options);
+            assertEquals(text, ExtractText.extractText(stego.toString(), key));
+            assertThrows(IOException.class, () -> ExtractText.extractText(stego.toString()));
+            assertThrows(IOException.class, () -> ExtractText.extractText(stego.toString(), PixelPermutation.key("чужой")));
+        }
+
+        // Измененные пиксели распределены по всему изображению, а не занимают первые строки.
+        BufferedImage stego = ImageIO.read(dir.resolve("stego.bmp").toFile());
+        int[] changedPerQuarter = new int[4];
+        for (int y = 0; y < cover.getHeight(); y++) {
+            for (int x = 0; x < cover.getWidth(); x++) {
+                if (cover.getRGB(x, y) != stego.getRGB(x, y)) {
+                    changedPerQuarter[y * 4 / cover.getHeight()]++;
+                }
+            }
+        }
+        for (int count : changedPerQuarter) {
+            assertTrue(count > 100, Arrays.toString(changedPerQuarter));
+        }
+
+        // Обновление на месте с тем же ключом.
+        Path bmp = dir.resolve("stego.bmp");
+        EmbedText.updateText(bmp.toString(), "короче", options);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExtractText.extractData(bmp.toString(), Channels.newChannel(out), Progress.NONE, key);
+        assertEquals("короче", out.toString(StandardCharsets.UTF_8));
+        logger.info("Test finished successfully");
+    }
+}
@@ -0,0 +1,167 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+
+public class PngEncoderTest {
+    private static final Logger logger = LogManager.getLogger(PngEncoderTest.class);
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "пиксель " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void testMultiBlockRoundTripAtEveryLevel() throws IOException {
+        logger.info("Starting testMultiBlockRoundTripAtEveryLevel");
+        // Около 1,2 КБ на строку: 2000 строк дают три блока.
+        BufferedImage image = SteganalysisTest.cover(400, 2000, 6);
+        ByteArrayOutputStream reference = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", reference);
+        for (int level : new int[]{0, 1, 6, 9}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new PngEncoder(new ForkJoinPool(3), level).write(LSBRaster.wrap(image), out);
+            assertSamePixels(image, ImageIO.read(new ByteArrayInputStream(out.toByteArray())));
+            if (level >= PngEncoder.DEFAULT_LEVEL) {
+                assertTrue(out.size() < 400 * 2000 * 3 * 2 / 3, "уровень " + level + ": " + out.size());
+                assertTrue(out.size() <= reference.size(), "ImageIO: " + reference.size() + ", уровень " + level + ": " + out.size());
+            }
+        }
+
+        BufferedImage argb = new BufferedImage(97, 1500, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(2);
+        for (int y = 0; y < argb.getHeight(); y++) {
+            for (int x = 0; x < argb.getWidth(); x++) {
+                argb.setRGB(x, y, random.nextInt(4) == 0 ? random.nextInt() : (x * 2) << 24 | y);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngEncoder.common().write(LSBRaster.wrap(argb), out);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(decoded.getColorModel().hasAlpha());
+        assertSamePixels(argb, decoded);
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testAdlerCombineMatchesSequential() {
+        logger.info("Starting testAdlerCombineMatchesSequential");
+        byte[] data = new byte[300_000];
+        new Random(8).nextBytes(data);
+        Adler32 whole = new Adler32();
+        whole.update(data);
+        long combined = 1;
+        for (int from = 0, size = 1; from < data.length; from += size, size = size * 3 + 7) {
+            int n = Math.min(size, data.length - from);
+            Adler32 part = new Adler32();
+            part.update(data, from, n);
+            combined = PngEncoder.combineAdler(combined, part.getValue(), n);
+        }
+        assertEquals(whole.getValue(), combined);
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testEmbedIntoPngOutput() throws IOException {
+        logger.info("Starting testEmbedIntoPngOutput");
+        Path dir = Files.createTempDirectory("png");
+        Path bmp = dir.resolve("carrier.bmp");
+        ImageIO.write(SteganalysisTest.cover(300, 200, 1), "bmp", bmp.toFile());
+        Path png = dir.resolve("stego.png");
+        EmbedOptions options = EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgb:1"))
+                .withTailFill(TailFill.NONE).withPngLevel(9);
+        EmbedText.embedText(bmp.toString(), "в PNG", png.toString(), options);
+        assertEquals("в PNG", ExtractText.extractText(png.toString()));
+        assertTrue(Files.size(png) * 3 < Files.size(bmp) * 2, "PNG: " + Files.size(png) + ", BMP: " + Files.size(bmp));
+
+        // PNG на входе, PNG на выходе.
+        Path again = dir.resolve("again.png");
+        EmbedText.embedText(png.toString(), "снова", again.toString(), options);
+        assertEquals("снова", ExtractText.extractText(again.toString()));
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testRgbaCarrierIntoBmpOutput() throws IOException {
+        logger.info("Starting testRgbaCarrierIntoBmpOutput");
+        Path dir = Files.createTempDirectory("rgba");
+        BufferedImage argb = new BufferedImage(80, 60, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(4);
+        for (int y = 0; y < argb.getHeight(); y++) {
+            for (int x = 0; x < argb.getWidth(); x++) {
+                argb.setRGB(x, y, random.nextInt());
+            }
+        }
+        Path png = dir.resolve("carrier.png");
+        ImageIO.write(argb, "png", png.toFile());
+
+        // BMP сохраняется в 24 бита: альфа-канал отбрасывается, цвет изменяется только в младшем бите синего.
+        Path bmp = dir.resolve("stego.bmp");
+        EmbedText.embedText(png.toString(), "без альфы", bmp.toString());
+        assertEquals("без альфы", ExtractText.extractText(bmp.toString()));
+        BufferedImage result = ImageIO.read(bmp.toFile());
+        for (int y = 0; y < argb.getHeight(); y++) {
+            for (int x = 0; x < argb.getWidth(); x++) {
+                assertEquals(argb.getRGB(x, y) & 0xFFFFFE, result.getRGB(x, y) & 0xFFFFFE, x + "," + y);
+            }
+        }
+
+        // Схема с альфа-каналом в BMP не сохраняется: ошибка до записи файла.
+        Path rejected = dir.resolve("rejected.bmp");
+        EmbedOptions alpha = EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgba:1"));
+        assertThrows(IOException.class, () -> EmbedText.embedText(png.toString(), "альфа", rejected.toString(), alpha));
+        assertFalse(Files.exists(rejected));
+        Path kept = dir.resolve("alpha.png");
+        EmbedText.embedText(png.toString(), "альфа", kept.toString(), alpha);
+        assertEquals("альфа", ExtractText.extractText(kept.toString()));
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testPaletteAndGrayCarriersRoundTrip() throws IOException {
+        logger.info("Starting testPaletteAndGrayCarriersRoundTrip");
+        Path dir = Files.createTempDirectory("indexed");
+        Random random = new Random(8);
+        for (int type : new int[]{BufferedImage.TYPE_BYTE_INDEXED, BufferedImage.TYPE_BYTE_GRAY}) {
+            BufferedImage carrier = new BufferedImage(64, 48, type);
+            for (int y = 0; y < carrier.getHeight(); y++) {
+                for (int x = 0; x < carrier.getWidth(); x++) {
+                    carrier.setRGB(x, y, random.nextInt());
+                }
+            }
+            Path png = dir.resolve("carrier" + type + ".png");
+            ImageIO.write(carrier, "png", png.toFile());
+
+            // Палитра и оттенки серого квантовали бы записанные биты: встраивание идет в RGB-копию.
+            ImageProbe probe = ImageProbe.probe(png);
+            EmbedOptions rgb = EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgb:1"));
+            String text = "x".repeat((int) probe.capacityBytes(rgb.getLayout()));
+            for (String name : new String[]{"stego" + type + ".bmp", "stego" + type + ".png"}) {
+                Path output = dir.resolve(name);
+                EmbedText.embedText(png.toString(), "тип " + type, output.toString());
+                assertEquals("тип " + type, ExtractText.extractText(output.toString()), name);
+                EmbedText.embedText(png.toString(), text, output.toString(), rgb);
+                assertEquals(text, ExtractText.extractText(output.toString()), name);
+            }
+        }
+        logger.info("Test finished successfully");
+    }
+}
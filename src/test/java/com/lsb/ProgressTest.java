@@ -0,0 +1,87 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ProgressTest {
+    private static final Logger logger = LogManager.getLogger(ProgressTest.class);
+
+    private static Path carrier(Path dir) throws IOException {
+        BufferedImage image = new BufferedImage(512, 384, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(9);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        Path file = dir.resolve("carrier.bmp");
+        ImageIO.write(image, "bmp", file.toFile());
+        return file;
+    }
+
+    @Test
+    void testEmbedAndExtractReportProgress() throws IOException {
+        logger.info("Starting testEmbedAndExtractReportProgress");
+        Path dir = Files.createTempDirectory("progress");
+        Path input = carrier(dir);
+        Path output = dir.resolve("stego.bmp");
+
+        List<long[]> updates = new ArrayList<>();
+        Progress progress = new Progress((done, total) -> updates.add(new long[]{done, total}), 0);
+        EmbedText.embedText(input.toString(), "Ход выполнения", output.toString(), EmbedOptions.DEFAULT, progress);
+
+        assertTrue(updates.size() > 384, "ожидается уведомление на каждую строку");
+        long[] last = updates.get(updates.size() - 1);
+        assertEquals(512L * 384, last[1]);
+        assertEquals(last[1], last[0]);
+        for (int i = 1; i < updates.size(); i++) {
+            assertTrue(updates.get(i)[0] >= updates.get(i - 1)[0]);
+        }
+
+        updates.clear();
+        assertEquals("Ход выполнения", ExtractText.extractText(output.toString(), "END", progress));
+        last = updates.get(updates.size() - 1);
+        assertEquals(last[1], last[0]);
+        assertTrue(last[1] < 512L * 384, "извлечение читает только пиксели контейнера");
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testCancelStopsEmbeddingAndRemovesOutput() throws IOException {
+        logger.info("Starting testCancelStopsEmbeddingAndRemovesOutput");
+        Path dir = Files.createTempDirectory("progress");
+        Path input = carrier(dir);
+        Path output = dir.resolve("stego.bmp");
+
+        AtomicReference<Progress> self = new AtomicReference<>();
+        Progress progress = new Progress((done, total) -> {
+            if (done > total / 4) {
+                self.get().cancel();
+            }
+        }, 0);
+        self.set(progress);
+
+        assertThrows(CancellationException.class, () ->
+                EmbedText.embedText(input.toString(), "Отмена", output.toString(), EmbedOptions.DEFAULT, progress));
+        assertTrue(progress.isCancelled());
+        assertFalse(Files.exists(output));
+        assertTrue(Files.exists(input));
+
+        Progress.NONE.cancel();
+        assertFalse(Progress.NONE.isCancelled());
+        logger.info("Test finished successfully");
+    }
+}
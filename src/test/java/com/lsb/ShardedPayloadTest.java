@@ -0,0 +1,124 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ShardedPayloadTest {
+    private static final Logger logger = LogManager.getLogger(ShardedPayloadTest.class);
+
+    private static List<Path> carriers(Path dir, int... heights) throws IOException {
+        List<Path> carriers = new ArrayList<>();
+        for (int i = 0; i < heights.length; i++) {
+            Path file = dir.resolve("carrier" + i + ".bmp");
+            ImageIO.write(new BufferedImage(160, heights[i], BufferedImage.TYPE_3BYTE_BGR), "bmp", file.toFile());
+            carriers.add(file);
+        }
+        return carriers;
+    }
+
+    private static List<Path> outputs(Path dir, String prefix, int count) {
+        List<Path> outputs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            outputs.add(dir.resolve(prefix + i + ".bmp"));
+        }
+        return outputs;
+    }
+
+    @Test
+    void testShardsRebuildInAnyOrder() throws IOException {
+        logger.info("Starting testShardsRebuildInAnyOrder");
+        Path dir = Files.createTempDirectory("shards");
+        List<Path> carriers = carriers(dir, 100, 60, 140);
+        List<Path> stego = outputs(dir, "stego", 3);
+        EmbedOptions options = EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgb:1"));
+        long largest = ShardedPayload.capacity(carriers.get(2), options.getLayout());
+        // Больше емкости любого отдельного носителя
+        byte[] payload = new byte[(int) largest + 4000];
+        new Random(3).nextBytes(payload);
+
+        ShardedPayload.embed(payload, carriers, stego, options);
+
+        List<Path> shuffled = new ArrayList<>(stego);
+        Collections.shuffle(shuffled, new Random(1));
+        shuffled.add(stego.get(1)); // Повтор не мешает
+        assertArrayEquals(payload, ShardedPayload.extract(shuffled));
+
+        Path restored = dir.resolve("restored.bin");
+        ShardedPayload.extract(stego, restored);
+        assertArrayEquals(payload, Files.readAllBytes(restored));
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testPngShardHeadersReadWithoutDecoding() throws IOException {
+        logger.info("Starting testPngShardHeadersReadWithoutDecoding");
+        Path dir = Files.createTempDirectory("shards");
+        List<Path> carriers = carriers(dir, 80, 80, 80);
+        List<Path> stego = new ArrayList<>();
+        for (int i = 0; i < carriers.size(); i++) {
+            stego.add(dir.resolve("stego" + i + ".png"));
+        }
+        byte[] payload = new byte[3000];
+        new Random(6).nextBytes(payload);
+        ShardedPayload.embed(payload, carriers, stego, EmbedOptions.DEFAULT);
+
+        // Заголовки частей читаются из первых строк: каждое изображение декодируется один раз.
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        Metrics.setRegistry(metrics);
+        try {
+            assertArrayEquals(payload, ShardedPayload.extract(stego));
+        } finally {
+            Metrics.setRegistry(null);
+        }
+        assertEquals(stego.size(), metrics.snapshot().getPhase(Metrics.Phase.DECODE).getCount());
+
+        // Заголовок части в сжатом контейнере доступен только после распаковки.
+        List<Path> compressed = outputs(dir, "compressed", 3);
+        ShardedPayload.embed(new byte[4000], carriers, compressed, EmbedOptions.DEFAULT.withCodec(PayloadCodecs.DEFLATE));
+        assertArrayEquals(new byte[4000], ShardedPayload.extract(compressed));
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testMissingAndForeignShardsAreReported() throws IOException {
+        logger.info("Starting testMissingAndForeignShardsAreReported");
+        Path dir = Files.createTempDirectory("shards");
+        List<Path> carriers = carriers(dir, 50, 50, 50, 50);
+        List<Path> stego = outputs(dir, "stego", 4);
+        byte[] payload = new byte[2000];
+        new Random(4).nextBytes(payload);
+        ShardedPayload.embed(payload, carriers, stego, EmbedOptions.DEFAULT);
+
+        MissingShardsException missing = assertThrows(MissingShardsException.class,
+                () -> ShardedPayload.extract(List.of(stego.get(3), stego.get(0))));
+        assertArrayEquals(new int[]{2, 3}, missing.getMissing());
+        assertEquals(4, missing.getTotal());
+
+        List<Path> other = outputs(dir, "other", 4);
+        ShardedPayload.embed(payload, carriers, other, EmbedOptions.DEFAULT);
+        assertThrows(IOException.class, () -> ShardedPayload.extract(List.of(stego.get(0), other.get(1))));
+        // Изображение без части
+        assertThrows(IOException.class, () -> ShardedPayload.extract(List.of(carriers.get(0))));
+        // Суммарной емкости не хватает
+        assertThrows(IOException.class, () -> ShardedPayload.embed(new byte[4000], carriers, other, EmbedOptions.DEFAULT));
+        // Части с ключом нельзя было бы найти по заголовкам: встраивание отклоняется до записи файлов
+        List<Path> keyed = outputs(dir, "keyed", 4);
+        assertThrows(IOException.class, () -> ShardedPayload.embed(payload, carriers, keyed,
+                EmbedOptions.DEFAULT.withKey("секрет".getBytes(StandardCharsets.UTF_8))));
+        assertTrue(keyed.stream().noneMatch(Files::exists));
+        logger.info("Test finished successfully");
+    }
+}
@@ -0,0 +1,85 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class SteganalysisTest {
+    private static final Logger logger = LogManager.getLogger(SteganalysisTest.class);
+
+    /** Гладкое изображение со слабым шумом, похожее по статистике на фотографию. */
+    static BufferedImage cover(int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double base = 128 + 60 * Math.sin(x / 37.0) + 40 * Math.cos(y / 23.0 + x / 71.0);
+                int r = clamp(base + random.nextGaussian() * 2);
+                int g = clamp(base * 0.8 + 20 + random.nextGaussian() * 2);
+                int b = clamp(255 - base + random.nextGaussian() * 2);
+                image.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    @Test
+    void testEstimatesFollowEmbeddingRate() {
+        logger.info("Starting testEstimatesFollowEmbeddingRate");
+        Steganalysis.Report clean = Steganalysis.analyze(LSBRaster.wrap(cover(512, 512, 1)));
+        assertTrue(clean.getScore() < 0.05, "оценка чистого изображения: " + clean.getScore());
+        for (Steganalysis.ChannelReport channel : clean.getChannels()) {
+            assertTrue(channel.getChiSquareProbability() < 0.1);
+        }
+
+        for (double rate : new double[]{0.25, 0.5}) {
+            LSBRaster raster = LSBRaster.wrap(cover(512, 512, 1));
+            byte[] payload = new byte[(int) (512 * 512 * rate / 8)];
+            new Random(2).nextBytes(payload);
+            raster.embedBytes(0, payload, 0, payload.length);
+
+            Steganalysis.Report report = Steganalysis.analyze(raster);
+            Steganalysis.ChannelReport blue = report.getChannel(BitLayout.Channel.BLUE);
+            assertEquals(rate, blue.getRsEstimate(), 0.05);
+            assertEquals(rate, blue.getSpaEstimate(), 0.05);
+            assertEquals(rate, report.getScore(), 0.05);
+            assertTrue(report.getChannel(BitLayout.Channel.RED).getScore() < 0.05);
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testFullyEmbeddedBmpIsDetected() throws IOException {
+        logger.info("Starting testFullyEmbeddedBmpIsDetected");
+        Path dir = Files.createTempDirectory("steganalysis");
+        Path carrier = dir.resolve("carrier.bmp");
+        Path stego = dir.resolve("stego.bmp");
+        ImageIO.write(cover(300, 200, 3), "bmp", carrier.toFile());
+        // Хвост заполняется шумом, поэтому занята вся плоскость младших битов синего канала.
+        EmbedText.embedText(carrier.toString(), "секрет", stego.toString(),
+                EmbedOptions.DEFAULT.withTailFill(TailFill.seeded(7)));
+
+        Steganalysis.Report report = Steganalysis.analyze(stego);
+        Steganalysis.ChannelReport blue = report.getChannel(BitLayout.Channel.BLUE);
+        assertTrue(blue.getChiSquareProbability() > 0.9, "p = " + blue.getChiSquareProbability());
+        assertTrue(report.getScore() > 0.8, "оценка: " + report.getScore());
+        assertEquals(1.0, blue.getEntropy(), 0.01);
+        assertTrue(Steganalysis.analyze(carrier).getScore() < 0.05);
+
+        // Сумма счетчиков полос не зависит от порядка их обработки.
+        assertEquals(report.getScore(), Steganalysis.analyze(stego).getScore());
+        logger.info("Test finished successfully");
+    }
+}
@@ -0,0 +1,125 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class StegoEngineTest {
+    private static final Logger logger = LogManager.getLogger(StegoEngineTest.class);
+
+    @Test
+    void testEngineRoundTripAcrossFormatsAndSizes() throws IOException {
+        logger.info("Starting testEngineRoundTripAcrossFormatsAndSizes");
+        Path dir = Files.createTempDirectory("engine");
+        try (StegoEngine engine = new StegoEngine()) {
+            int i = 0;
+            for (int size : new int[]{96, 200, 64}) {
+                for (String format : new String[]{"bmp", "png"}) {
+                    Path carrier = dir.resolve("carrier" + size + "." + format);
+                    BufferedImage cover = SteganalysisTest.cover(size + 3, size, size);
+                    ImageIO.write(cover, format, carrier.toFile());
+                    String text = "контекст " + size + " " + format;
+                    Path stego = dir.resolve("stego" + i++ + ".bmp");
+                    engine.embedText(carrier.toString(), text, stego.toString(), EmbedOptions.DEFAULT, Progress.NONE);
+                    assertEquals(text, engine.extractText(stego.toString(), null));
+                    assertEquals(text, ExtractText.extractText(stego.toString()));
+
+                    // Изменяются только младшие биты синего канала.
+                    BufferedImage result = ImageIO.read(stego.toFile());
+                    for (int y = 0; y < cover.getHeight(); y++) {
+                        for (int x = 0; x < cover.getWidth(); x++) {
+                            assertEquals(cover.getRGB(x, y) & ~1, result.getRGB(x, y) & ~1, format + " " + x + "," + y);
+                        }
+                    }
+                }
+            }
+
+            // PNG декодируется в одно и то же изображение.
+            Path png = dir.resolve("carrier200.png");
+            assertSame(engine.decode(png), engine.decode(png));
+
+            EmbedOptions options = EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgb:2"))
+                    .withCodec(PayloadCodecs.DEFLATE).withKey(PixelPermutation.key("к"));
+            String text = "сжатый текст ".repeat(100);
+            Path stego = dir.resolve("options.png");
+            engine.embedText(png.toString(), text, stego.toString(), options, Progress.NONE);
+            assertEquals(text, engine.extractText(stego.toString(), PixelPermutation.key("к")));
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testReusedBuffersChangeOnlyLayoutBits() throws IOException {
+        logger.info("Starting testReusedBuffersChangeOnlyLayoutBits");
+        Path dir = Files.createTempDirectory("reuse");
+        BufferedImage cover = SteganalysisTest.cover(61, 43, 8);
+        Path png = dir.resolve("carrier.png");
+        Path bmp = dir.resolve("carrier.bmp");
+        ImageIO.write(cover, "png", png.toFile());
+        ImageIO.write(cover, "bmp", bmp.toFile());
+        try (StegoEngine engine = new StegoEngine()) {
+            // Запись BMP из PNG заполняет буферы строк полными значениями каналов.
+            engine.embedText(png.toString(), "первый", dir.resolve("first.bmp").toString(), EmbedOptions.DEFAULT, Progress.NONE);
+            // Следующее встраивание с теми же буферами не должно переносить их старшие биты в пиксели.
+            Path stego = dir.resolve("second.bmp");
+            engine.embedText(bmp.toString(), "второй", stego.toString(),
+                    EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgb:2")), Progress.NONE);
+            BufferedImage result = ImageIO.read(stego.toFile());
+            for (int y = 0; y < cover.getHeight(); y++) {
+                for (int x = 0; x < cover.getWidth(); x++) {
+                    assertEquals(cover.getRGB(x, y) & ~0x030303, result.getRGB(x, y) & ~0x030303, x + "," + y);
+                }
+            }
+            assertEquals("второй", engine.extractText(stego.toString(), null));
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testSteadyStateAllocation() throws IOException {
+        logger.info("Starting testSteadyStateAllocation");
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().threadId();
+
+        Path dir = Files.createTempDirectory("allocation");
+        Path carrier = dir.resolve("carrier.bmp");
+        ImageIO.write(SteganalysisTest.cover(256, 256, 3), "bmp", carrier.toFile());
+        Path stego = dir.resolve("stego.bmp");
+        String text = "текст ".repeat(80);
+        long imageBytes = 256L * 256 * 3;
+
+        try (StegoEngine engine = new StegoEngine()) {
+            for (int i = 0; i < 300; i++) {
+                engine.embedText(carrier.toString(), text, stego.toString(), EmbedOptions.DEFAULT, Progress.NONE);
+                assertEquals(text, engine.extractText(stego.toString(), null));
+            }
+            // Берется лучший из нескольких замеров: перекомпиляция JIT (особенно после других тестов
+            // в той же JVM) искажает отдельные из них.
+            int rounds = 20;
+            long perImage = Long.MAX_VALUE;
+            for (int attempt = 0; attempt < 5; attempt++) {
+                long before = threads.getThreadAllocatedBytes(thread);
+                for (int i = 0; i < rounds; i++) {
+                    engine.embedText(carrier.toString(), text, stego.toString(), EmbedOptions.DEFAULT, Progress.NONE);
+                    engine.extractText(stego.toString(), null);
+                }
+                perImage = Math.min(perImage, (threads.getThreadAllocatedBytes(thread) - before) / rounds);
+            }
+            logger.info("Allocated per embed and extract: " + perImage + " bytes");
+            // Буферы контекста используются повторно, поэтому на изображение приходятся лишь мелкие объекты.
+            assertTrue(perImage < imageBytes / 6, "выделено " + perImage + " байтов на изображение");
+        }
+        logger.info("Test finished successfully");
+    }
+}
@@ -0,0 +1,225 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class StegoServerTest {
+    private static final Logger logger = LogManager.getLogger(StegoServerTest.class);
+
+    private static byte[] bmp(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR), "bmp", out);
+        return out.toByteArray();
+    }
+
+    private static StegoServer start(int concurrency, long queueTimeoutMillis) throws IOException {
+        StegoServer server = new StegoServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                concurrency, queueTimeoutMillis, StegoServer.DEFAULT_MAX_BODY_BYTES);
+        server.start();
+        return server;
+    }
+
+    private static HttpResponse<byte[]> post(HttpClient client, StegoServer server, String path, byte[] body,
+                                             String... headers) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        if (headers.length > 0) {
+            builder.headers(headers);
+        }
+        return client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    @Test
+    void testEmbedExtractRoundTrip() throws Exception {
+        logger.info("Starting testEmbedExtractRoundTrip");
+        byte[] image = bmp(200, 150);
+        String text = "Привет, сервер! 🎉";
+        try (StegoServer server = start(4, 1000); HttpClient client = HttpClient.newHttpClient()) {
+            HttpResponse<byte[]> embedded = post(client, server,
+                    "/embed?layout=rgb:1&text=" + URLEncoder.encode(text, StandardCharsets.UTF_8), image);
+            assertEquals(200, embedded.statusCode());
+            assertEquals(image.length, embedded.body().length);
+            HttpResponse<byte[]> extracted = post(client, server, "/extract", embedded.body());
+            assertEquals(200, extracted.statusCode());
+            assertEquals(text, new String(extracted.body(), StandardCharsets.UTF_8));
+
+            // Двоичные данные передаются в теле запроса вслед за изображением.
+            byte[] payload = new byte[5000];
+            new Random(5).nextBytes(payload);
+            byte[] body = new byte[image.length + payload.length];
+            System.arraycopy(image, 0, body, 0, image.length);
+            System.arraycopy(payload, 0, body, image.length, payload.length);
+            embedded = post(client, server, "/embed?layout=rgb:2", body, "X-Image-Length", Integer.toString(image.length));
+            assertEquals(200, embedded.statusCode());
+            assertArrayEquals(payload, post(client, server, "/extract", embedded.body()).body());
+
+            byte[] tooLarge = new byte[image.length + 20000];
+            System.arraycopy(image, 0, tooLarge, 0, image.length);
+            HttpResponse<byte[]> rejected = post(client, server, "/embed", tooLarge, "X-Image-Length", Integer.toString(image.length));
+            assertEquals(422, rejected.statusCode());
+
+            assertEquals(200, post(client, server, "/visualize?channel=g&plane=1", image).statusCode());
+            // Параметр channel — ровно одна буква канала.
+            assertEquals(400, post(client, server, "/visualize?channel=rgb", image).statusCode());
+            assertEquals(400, post(client, server, "/visualize?channel=b:2", image).statusCode());
+
+            assertTrue(server.getPool().hits() > 0, "Буферы должны переиспользоваться");
+        }
+        logger.info("Test finished successfully");
+    }
+
+    /** Инвертирует младший бит пикселя, не затрагивая остальные. */
+    private static byte[] flipBit(byte[] image, int x, int y, int mask) throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(image));
+        decoded.setRGB(x, y, decoded.getRGB(x, y) ^ mask);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(decoded, "bmp", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void testCorruptContainerReturns422() throws Exception {
+        logger.info("Starting testCorruptContainerReturns422");
+        byte[] image = bmp(200, 150);
+        byte[] payload = new byte[3000];
+        new Random(11).nextBytes(payload);
+        byte[] body = new byte[image.length + payload.length];
+        System.arraycopy(image, 0, body, 0, image.length);
+        System.arraycopy(payload, 0, body, image.length, payload.length);
+        try (StegoServer server = start(2, 1000); HttpClient client = HttpClient.newHttpClient()) {
+            HttpResponse<byte[]> embedded = post(client, server, "/embed?layout=rgb:1", body,
+                    "X-Image-Length", Integer.toString(image.length));
+            assertEquals(200, embedded.statusCode());
+            assertArrayEquals(payload, post(client, server, "/extract", embedded.body()).body());
+
+            // Бит полезной нагрузки (красный канал пикселя внутри данных) и бит контрольной суммы
+            // (синий канал последнего пикселя заголовка): ответ не должен начинаться до проверки.
+            HttpResponse<byte[]> payloadBit = post(client, server, "/extract", flipBit(embedded.body(), 0, 5, 0x010000));
+            assertEquals(422, payloadBit.statusCode());
+            HttpResponse<byte[]> checksumBit = post(client, server, "/extract",
+                    flipBit(embedded.body(), PayloadHeader.SIZE * 8 - 1, 0, 0x000001));
+            assertEquals(422, checksumBit.statusCode());
+            assertTrue(new String(checksumBit.body(), StandardCharsets.UTF_8).contains("Контрольная сумма"));
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testRgbaPngCarrierReturnsBmp() throws Exception {
+        logger.info("Starting testRgbaPngCarrierReturnsBmp");
+        BufferedImage carrier = new BufferedImage(60, 40, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(7);
+        for (int y = 0; y < carrier.getHeight(); y++) {
+            for (int x = 0; x < carrier.getWidth(); x++) {
+                carrier.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(carrier, "png", png);
+        try (StegoServer server = start(2, 1000); HttpClient client = HttpClient.newHttpClient()) {
+            HttpResponse<byte[]> embedded = post(client, server, "/embed?text=hi", png.toByteArray());
+            assertEquals(200, embedded.statusCode());
+            assertEquals(BmpRaster.WRITE_HEADER_SIZE + 60 * 3 * 40, embedded.body().length);
+            assertEquals("hi", new String(post(client, server, "/extract", embedded.body()).body(), StandardCharsets.UTF_8));
+
+            // Альфа-канал не сохраняется в BMP: запрос отклоняется до отправки заголовков ответа.
+            assertEquals(422, post(client, server, "/embed?layout=rgba:1&text=hi", png.toByteArray()).statusCode());
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testCapacityReadsHeaderOnly() throws Exception {
+        logger.info("Starting testCapacityReadsHeaderOnly");
+        try (StegoServer server = start(2, 1000); HttpClient client = HttpClient.newHttpClient()) {
+            HttpResponse<byte[]> response = post(client, server, "/capacity?layout=rgb:2", bmp(100, 80));
+            assertEquals(200, response.statusCode());
+            long expected = (100L * 80 - PayloadHeader.SIZE * 8L) * 6 / 8;
+            assertEquals("{\"width\":100,\"height\":80,\"layout\":\"rgb:2\",\"capacityBytes\":" + expected + "}",
+                    new String(response.body(), StandardCharsets.UTF_8));
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testOverloadReturns503() throws Exception {
+        logger.info("Starting testOverloadReturns503");
+        try (StegoServer server = start(1, 50); HttpClient client = HttpClient.newHttpClient();
+             Socket stalled = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            // Запрос без обещанного тела занимает единственное разрешение.
+            OutputStream out = stalled.getOutputStream();
+            out.write(("POST /extract HTTP/1.1\r\nHost: localhost\r\nContent-Length: 100000\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            String stats;
+            do {
+                Thread.sleep(10);
+                stats = new String(client.send(HttpRequest.newBuilder(
+                                URI.create("http://127.0.0.1:" + server.getPort() + "/stats")).build(),
+                        HttpResponse.BodyHandlers.ofByteArray()).body(), StandardCharsets.UTF_8);
+            } while (!stats.contains("\"active\":1") && System.nanoTime() < deadline);
+            assertTrue(stats.contains("\"active\":1"), stats);
+
+            HttpResponse<byte[]> response = post(client, server, "/capacity", bmp(10, 10));
+            assertEquals(503, response.statusCode());
+            assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+
+            LoadTestClient.Result result = LoadTestClient.run(
+                    URI.create("http://127.0.0.1:" + server.getPort() + "/capacity"), bmp(10, 10), Map.of(), 4, 8);
+            assertEquals(8, result.count(503), result.toString());
+        }
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testSlowConnectionsDoNotAddThreads() throws Exception {
+        logger.info("Starting testSlowConnectionsDoNotAddThreads");
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        List<Socket> stalled = new ArrayList<>();
+        try (StegoServer server = start(1, 50)) {
+            // Каждое соединение обещает тело и не присылает его, удерживая поток, который его читает.
+            for (int i = 0; i < 12; i++) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                stalled.add(socket);
+                socket.getOutputStream().write(("POST /extract HTTP/1.1\r\nHost: localhost\r\nContent-Length: 100000\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().flush();
+            }
+            Thread.sleep(500);
+            long handlers = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> !before.contains(thread) && thread.getName().startsWith("lsb-http-"))
+                    .count();
+            // Один выполняемый запрос, один в очереди и поток отказов.
+            assertTrue(handlers <= 3, "потоков обработки: " + handlers);
+        } finally {
+            for (Socket socket : stalled) {
+                socket.close();
+            }
+        }
+        logger.info("Test finished successfully");
+    }
+}
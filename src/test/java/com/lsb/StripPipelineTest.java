@@ -0,0 +1,121 @@
+package com.lsb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class StripPipelineTest {
+    private static final Logger logger = LogManager.getLogger(StripPipelineTest.class);
+
+    @Test
+    void testStreamingMatchesInMemoryEmbedding() throws IOException {
+        logger.info("Starting testStreamingMatchesInMemoryEmbedding");
+        Path dir = Files.createTempDirectory("strip");
+        Path carrier = dir.resolve("carrier.bmp");
+        ImageIO.write(SteganalysisTest.cover(37, 29, 4), "bmp", carrier.toFile());
+        byte[] payload = new byte[100];
+        new Random(9).nextBytes(payload);
+        Path payloadFile = dir.resolve("payload.bin");
+        Files.write(payloadFile, payload);
+
+        // Полоса в одну строку меньше заголовка; группы схем rgb:1 и rgb:2 пересекают границы полос.
+        StripPipeline pipeline = new StripPipeline(1);
+        for (String layout : new String[]{"b:1", "rgb:1", "rgb:2"}) {
+            EmbedOptions options = EmbedOptions.DEFAULT.withLayout(BitLayout.parse(layout)).withTailFill(TailFill.NONE);
+            for (String format : new String[]{"bmp", "png"}) {
+                Path expected = dir.resolve("expected-" + layout.replace(':', '-') + "." + format);
+                Path actual = dir.resolve("actual-" + layout.replace(':', '-') + "." + format);
+                EmbedText.embedData(carrier.toString(), payloadFile, expected.toString(), options);
+                try (FileChannel channel = FileChannel.open(payloadFile)) {
+                    pipeline.embed(carrier, channel, payload.length, actual, options);
+                }
+                BufferedImage a = ImageIO.read(expected.toFile());
+                BufferedImage b = ImageIO.read(actual.toFile());
+                for (int y = 0; y < a.getHeight(); y++) {
+                    for (int x = 0; x < a.getWidth(); x++) {
+                        assertEquals(a.getRGB(x, y), b.getRGB(x, y), layout + " " + format + " " + x + "," + y);
+                    }
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(payload.length, pipeline.extract(actual, Channels.newChannel(out)));
+                assertArrayEquals(payload, out.toByteArray());
+            }
+        }
+
+        // Сжатые данные проходят через временный файл; результат читается обычным извлечением.
+        byte[] text = "полоса за полосой ".repeat(40).getBytes(StandardCharsets.UTF_8);
+        Path compressed = dir.resolve("compressed.png");
+        new StripPipeline(500).embed(carrier, Channels.newChannel(new ByteArrayInputStream(text)), text.length, compressed,
+                EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgb:2")).withCodec(PayloadCodecs.DEFLATE));
+        assertEquals(PayloadCodecs.DEFLATE.id(), ImageProbe.probe(compressed).getPayloadHeader().getCodecId());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExtractText.extractData(compressed.toString(), out);
+        assertArrayEquals(text, out.toByteArray());
+
+        // Данные, не помещающиеся в изображение, и ключ отвергаются без создания файла.
+        Path rejected = dir.resolve("rejected.png");
+        byte[] large = new byte[37 * 29];
+        assertThrows(IOException.class, () -> pipeline.embed(carrier, Channels.newChannel(new ByteArrayInputStream(large)),
+                large.length, rejected, EmbedOptions.DEFAULT));
+        assertThrows(IOException.class, () -> pipeline.embed(carrier, Channels.newChannel(new ByteArrayInputStream(payload)),
+                payload.length, rejected, EmbedOptions.DEFAULT.withKey(PixelPermutation.key("к"))));
+        assertFalse(Files.exists(rejected));
+        assertThrows(IOException.class, () -> pipeline.extract(carrier, Channels.newChannel(new ByteArrayOutputStream())));
+        logger.info("Test finished successfully");
+    }
+
+    @Test
+    void testNarrowImagesAndVisualization() throws IOException {
+        logger.info("Starting testNarrowImagesAndVisualization");
+        Path dir = Files.createTempDirectory("strip");
+        StripPipeline pipeline = new StripPipeline(7);
+        byte[] payload = "узкое изображение".getBytes(StandardCharsets.UTF_8);
+
+        // Ширина 3: заголовок занимает 40 строк, полоса — 2 строки.
+        Path narrow = dir.resolve("narrow.png");
+        ImageIO.write(SteganalysisTest.cover(3, 200, 6), "png", narrow.toFile());
+        // Оттенки серого читаются через ImageReader по областям.
+        Path gray = dir.resolve("gray.png");
+        BufferedImage grayImage = new BufferedImage(20, 30, BufferedImage.TYPE_BYTE_GRAY);
+        new Random(3).nextBytes(((java.awt.image.DataBufferByte) grayImage.getRaster().getDataBuffer()).getData());
+        ImageIO.write(grayImage, "png", gray.toFile());
+
+        for (Path source : new Path[]{narrow, gray}) {
+            Path stego = dir.resolve("stego-" + source.getFileName());
+            pipeline.embed(source, Channels.newChannel(new ByteArrayInputStream(payload)), payload.length, stego,
+                    EmbedOptions.DEFAULT.withLayout(BitLayout.parse("rgb:2")));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            pipeline.extract(stego, Channels.newChannel(out));
+            assertArrayEquals(payload, out.toByteArray());
+            assertEquals(new String(payload, StandardCharsets.UTF_8), ExtractText.extractText(stego.toString()));
+
+            Path visualization = dir.resolve("lsb-" + source.getFileName());
+            pipeline.visualize(source, BitLayout.Channel.GREEN, 1, visualization);
+            BufferedImage expected = LSBVisualization.visualizeLSBBits(ImageIO.read(source.toFile()), BitLayout.Channel.GREEN, 1);
+            BufferedImage actual = ImageIO.read(visualization.toFile());
+            assertEquals(expected.getWidth(), actual.getWidth());
+            assertEquals(expected.getHeight(), actual.getHeight());
+            for (int y = 0; y < expected.getHeight(); y++) {
+                for (int x = 0; x < expected.getWidth(); x++) {
+                    assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), source.getFileName() + " " + x + "," + y);
+                }
+            }
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> pipeline.visualize(narrow, BitLayout.Channel.ALPHA, 0, dir.resolve("alpha.png")));
+        logger.info("Test finished successfully");
+    }
+}